@@ -4,6 +4,7 @@
    import mars.assembler.*;
    import mars.simulator.*;
    import mars.mips.hardware.*;
+   import mars.mips.instructions.syscalls.*;
 	
    import java.util.*;
    import java.io.*;
@@ -58,6 +59,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private ArrayList parsedList;
       private ArrayList machineList;
       private BackStepper backStepper;
+      private SimulationClock clock = new SimulationClock();
+      private RandomStreams randomStreams = new RandomStreams();
       private SymbolTable localSymbolTable;
       private MacroPool macroPool;
       private ArrayList<SourceLine> sourceLineList;
@@ -169,6 +172,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return backStepper;
       }
    
+   /**
+    * Returns SimulationClock associated with this program.  It is reset upon each assembly
+    * but keeps its real/virtual time mode.
+    * @return SimulationClock object, never null.
+    **/
+    
+       public SimulationClock getClock() {
+         return clock;
+      }
+   
+   /**
+    * Returns the pseudorandom number streams used by this program's random number syscalls.
+    * They are reset upon each assembly.
+    * @return RandomStreams object, never null.
+    **/
+    
+       public RandomStreams getRandomStreams() {
+         return randomStreams;
+      }
+   
    /**
     * Returns SymbolTable associated with this program.  It is created at assembly time,
     * and stores local labels (those not declared using .globl directive).
@@ -317,9 +340,24 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          Assembler asm = new Assembler();
          this.machineList = asm.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
          this.backStepper = new BackStepper();
+         this.clock.reset();
+         this.randomStreams.reset();
          return asm.getErrorList();
       }
    
+   /**
+    * Prepares to simulate a program whose machine code and data were loaded into memory
+    * from binary images (see Memory.loadImage()) instead of being assembled.  There is
+    * no source, so the list of machine statements is empty.
+    **/
+    
+       public void useLoadedImage() {
+         this.machineList = new ArrayList();
+         this.backStepper = new BackStepper();
+         this.clock.reset();
+         this.randomStreams.reset();
+      }
+   
    
    /**
     * Simulates execution of the MIPS program. Program must have already been assembled.
@@ -2,8 +2,13 @@
    import mars.venus.*;
    import mars.util.*;
    import mars.mips.dump.*;
+   import mars.mips.cache.*;
+   import mars.mips.branch.*;
+   import mars.mips.pipeline.*;
+   import mars.mips.trace.*;
    import mars.mips.hardware.*;
    import mars.simulator.*;
+   import mars.mips.instructions.syscalls.MidiRecorder;
    import java.io.*;
    import java.util.*;
    import java.awt.*;
@@ -56,30 +61,70 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.<br>
    	  ascii  -- display memory or register contents interpreted as ASCII
    		   b  -- brief - do not display register/memory address along with contents<br>
+           bp  -- evaluate a branch predictor on the program's branches and report mispredictions<br>
+                  in total and per branch at end of run.  Option has 1 argument, e.g. <tt>bp gshare:4096:12</tt>;<br>
+                  predictors are bimodal:&lt;entries&gt;[:&lt;bits&gt;], gshare:&lt;entries&gt;:&lt;history&gt;,<br>
+                  tournament:&lt;entries&gt;:&lt;history&gt;, btb:&lt;entries&gt; and ras:&lt;depth&gt;.  Option may be repeated.<br>
+      bpsweep  -- like bp, for every predictor listed in a file, one per line.<br>
+        cache  -- simulate a cache hierarchy fed by the program's memory accesses and report<br>
+                  miss rates at end of run.  Option has 1 argument, e.g. <tt>cache i=8K/32/2,d=8K/32/4,l2=256K/64/8</tt>;<br>
+                  each level is size/block/ways[/lru|fifo|random|plru][/wb|wt].  Option may be repeated.<br>
+   cachesweep  -- like cache, for every hierarchy listed in a file, one per line.<br>
    		   d  -- print debugging statements<br>
            da  -- both a and d<br>
            db  -- MIPS delayed branching is enabled.<br>
           dec  -- display memory or register contents in decimal.<br>
+      display  -- headless MMIO display: bytes the program transmits (0xffff000c) are written to file.<br>
+                  Option has 1 argument, e.g. <tt>display &lt;file&gt;</tt>; use - for standard output.<br>
          dump  -- dump memory contents to file.  Option has 3 arguments, e.g. <br>
                   <tt>dump &lt;segment&gt; &lt;format&gt; &lt;file&gt;</tt>.  Also supports<br>
                   an address range (see <i>m-n</i> below).  Current supported <br>
                   segments are <tt>.text</tt> and <tt>.data</tt>.  Current supported dump formats <br>
                   are <tt>Binary</tt>, <tt>HexText</tt>, <tt>BinaryText</tt>.<br>
+           fb  -- headless Bitmap Display frame buffer.  Option has 3 arguments, e.g.<br>
+                  <tt>fb &lt;base&gt; &lt;width&gt;x&lt;height&gt;[/&lt;unitwidth&gt;x&lt;unitheight&gt;] &lt;output&gt;</tt>.<br>
+                  Each store to the frame register (0xffff0020) and the end of the run capture a<br>
+                  frame as a PNG file, or into an animated GIF if &lt;output&gt; ends in .gif.  A<br>
+                  perceptual hash of each frame is written to &lt;output&gt;.phash.<br>
+       fbi<n>  -- with fb, also capture a frame every <n> instructions.<br>
             h  -- display help.  Use by itself and with no filename</br>
           hex  -- display memory or register contents in hexadecimal (default)<br>
            ic  -- display count of MIPS basic instructions 'executed'");
+          kbd  -- headless MMIO keyboard: bytes of a file are typed into the receiver registers<br>
+                  (0xffff0000, 0xffff0004).  Option has 1 argument, e.g. <tt>kbd &lt;file&gt;</tt>.<br>
            mc  -- set memory configuration.  Option has 1 argument, e.g.<br>
                   <tt>mc &lt;config$gt;</tt>, where &lt;config$gt; is <tt>Default</tt><br>
                   for the MARS default 32-bit address space, <tt>CompactDataAtZero</tt> for<br>
-                  a 32KB address space with data segment at address 0, or <tt>CompactTextAtZero</tt><br>
-                  for a 32KB address space with text segment at address 0.<br>
+                  a 32KB address space with data segment at address 0, <tt>CompactTextAtZero</tt><br>
+                  for a 32KB address space with text segment at address 0, or <tt>Large</tt> for the<br>
+                  default address space with a 1GB heap and 256MB stack, allocated as used.<br>
+                  <tt>Large:&lt;heap MB&gt;:&lt;stack MB&gt;</tt> sets the heap and stack sizes.<br>
            me  -- display MARS messages to standard err instead of standard out. Can separate via redirection.</br>
+         midi  -- record MIDI syscall output to file instead of playing it.  Option has 1 argument, e.g.<br>
+                  <tt>midi &lt;file&gt;</tt>.  A file name ending in .wav is rendered to audio, otherwise<br>
+                  a Standard MIDI File is written.  Implies virtual time (see <i>vt</i>) unless given.<br>
            nc  -- do not display copyright notice (for cleaner redirected/piped output).</br>
    		  np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
    		   p  -- Project mode - assemble all files in the same directory as given file.<br>
+     pipeline  -- estimate cycles on a 5 stage pipeline and report CPI and stall cycles by cause and<br>
+                  per instruction.  Option has 1 argument: <tt>default</tt>, or colon separated settings<br>
+                  <tt>forward=yes|no:branch=&lt;n&gt;:mul=&lt;n&gt;:div=&lt;n&gt;:l2=&lt;n&gt;:memory=&lt;n&gt;:cache=&lt;hierarchy&gt;</tt><br>
+                  (defaults yes, 1, 4, 32, 10, 100, no cache; hierarchy as for <i>cache</i>).<br>
+       replay  -- instead of running a program, feed a trace written by <i>trace</i> to the requested<br>
+                  analyses (e.g. <i>cache</i>, <i>bp</i>).  Option has 1 argument, e.g. <tt>replay &lt;file&gt;</tt>.<br>
    	  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.<br>
            sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
           smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+        stats  -- write execution statistics to file: executions per instruction mnemonic, register reads<br>
+                  and writes, loads/stores and address range per memory segment, heap and stack high-water<br>
+                  marks and syscall counts.  Option has 1 argument, e.g. <tt>stats &lt;file&gt;</tt>; JSON, or CSV<br>
+                  if the file name ends in .csv.<br>
+        trace  -- write every instruction fetch, load, store and branch outcome to a compact binary<br>
+                  trace file.  Option has 1 argument, e.g. <tt>trace &lt;file&gt;</tt>.<br>
+        vt<n>  -- Virtual Time - Time and Sleep syscalls use simulated time at nominal clock rate <n> Hz<br>
+                  (instructions per second, default 1000000) instead of real time.<br>
+        rs<n>  -- Random Seed - streams of the random number syscalls not seeded by the program are<br>
+                  seeded from <n>, so every run produces the same numbers.<br>
            we  -- assembler Warnings will be considered Errors<br>
           <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
                   If 0, negative or not specified, there is no maximum.<br>
@@ -107,7 +152,24 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private boolean warningsAreErrors; // Whether assembler warnings should be considered errors.
       private boolean startAtMain; // Whether to start execution at statement labeled 'main' 
       private boolean countInstructions; // Whether to count and report number of instructions executed 
+      private boolean reportHeap; // Whether to report malloc/free heap usage at end of run
       private boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
+      private long virtualClockRate; // Nominal clock rate (Hz) for virtual time; 0 means real time
+      private Long randomRunSeed; // Seed for random number syscall streams; null means random
+      private String midiFilename; // file to receive recorded MIDI syscall output; null means play it
+      private HeadlessDeviceRegistry devices; // MMIO devices given by "kbd", "display" and "fb" options
+      private FramebufferDevice framebuffer; // device given by "fb" option, if any
+      private long frameCaptureInterval; // "fbi" option: capture a frame every so many instructions
+      private ArrayList cacheHierarchies; // CacheHierarchy for each "cache" option and "cachesweep" line
+      private CacheSweep cacheSweep; // runs the memory accesses through cacheHierarchies during simulation
+      private ArrayList branchPredictors; // BranchPredictor for each "bp" option and "bpsweep" line
+      private BranchPredictorEvaluator branchEvaluator; // runs the branch outcomes through branchPredictors
+      private String pipelineSpec; // "pipeline" option: configuration of the pipeline timing model
+      private PipelineTimingModel pipeline; // times the run on a 5 stage pipeline
+      private String statisticsFilename; // "stats" option: file to receive execution analytics
+      private ExecutionAnalytics analytics; // collects them during the run
+      private TraceWriter traceWriter; // "trace" option: writes the memory accesses to a trace file
+      private String replayFilename; // "replay" option: trace file to analyze instead of running a program
       private static final String rangeSeparator = "-";
       private static final int splashDuration = 2000; // time in MS to show splash screen
       private static final int memoryWordsPerLine = 4; // display 4 memory words, tab separated, per line
@@ -122,6 +184,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private int instructionCount;
       private PrintStream out; // stream for display of command line output
       private ArrayList dumpTriples = null; // each element holds 3 arguments for dump option
+      private ArrayList loadTriples = null; // each element holds 3 arguments for load option
       private ArrayList programArgumentList; // optional program args for MIPS program (becomes argc, argv)
       private int assembleErrorExitCode;  // MARS command exit code to return if assemble error occurs
       private int simulateErrorExitCode;// MARS command exit code to return if simulation error occurs
@@ -144,7 +207,24 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             warningsAreErrors = false;
             startAtMain = false;
             countInstructions = false;
+            reportHeap = false;
 				selfModifyingCode = false;
+            virtualClockRate = 0;
+            randomRunSeed = null;
+            midiFilename = null;
+            devices = new HeadlessDeviceRegistry();
+            framebuffer = null;
+            frameCaptureInterval = 0;
+            cacheHierarchies = new ArrayList();
+            cacheSweep = null;
+            branchPredictors = new ArrayList();
+            branchEvaluator = null;
+            pipelineSpec = null;
+            pipeline = null;
+            statisticsFilename = null;
+            analytics = null;
+            traceWriter = null;
+            replayFilename = null;
             instructionCount = 0;
             assembleErrorExitCode = 0;
             simulateErrorExitCode = 0;
@@ -157,12 +237,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             maxSteps = -1;
             out = System.out;  
             if (parseCommandArgs(args)) {
-               if (runCommand()) {
+               if (replayFilename != null) {
+                  replayTrace();
+               }
+               else if (runCommand()) {
                   displayMiscellaneousPostMortem();
                   displayRegistersPostMortem();
                   displayMemoryPostMortem();
                }
                dumpSegments();
+               saveMidiRecording();
+               saveDataImage();
             }
             System.exit(Globals.exitCode);
          }
@@ -231,6 +316,39 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       } 	
    	
    		
+   	/////////////////////////////////////////////////////////////////
+   	// Save recorded MIDI syscall output, if any.  See "midi" option.
+   	//
+   
+      private void saveMidiRecording() {
+         MidiRecorder recorder = MidiRecorder.getRecorder();
+         if (midiFilename == null || recorder == null) 
+            return;
+         File file = new File(midiFilename);
+         try {
+            recorder.save(file);
+         } 
+            catch (IOException e) {
+               out.println("Error while attempting to save MIDI recording, file " + file + "!  " + e.getMessage());
+            }
+      }
+   		
+   	/////////////////////////////////////////////////////////////////
+   	// Write the data segment back to its image file and release the files
+   	// of off-heap memory, if any.  See "mapdata" and "offheap" options.
+   	//
+   
+      private void saveDataImage() {
+         if (!Globals.memory.isOffHeap()) 
+            return;
+         try {
+            Globals.memory.setOffHeap(false, null);
+         } 
+            catch (IOException e) {
+               out.println("Error while attempting to save data image!  " + e.getMessage());
+            }
+      }
+   		
    	/////////////////////////////////////////////////////////////////
    	// There are no command arguments, so run in interactive mode by
    	// launching the GUI-fronted integrated development environment.
@@ -311,9 +429,271 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                }
                continue;
             } 
+            if (args[i].toLowerCase().equals("load")) {
+               if (args.length <= (i+3)) {
+                  out.println("Load command line argument requires a segment or address, format and file name.");
+                  argsOK = false;
+               } 
+               else {
+                  if (loadTriples == null) 
+                     loadTriples = new ArrayList();
+                  loadTriples.add(new String[] {args[++i], args[++i], args[++i]});
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("midi")) {
+               if (args.length <= (i+1)) {
+                  out.println("MIDI command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  midiFilename = args[++i];
+                  MidiRecorder.setRecorder(new MidiRecorder());
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("mapdata")) {
+               if (args.length <= (i+1)) {
+                  out.println("Mapdata command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  File image = new File(args[++i]);
+                  try {
+                     Globals.memory.setOffHeap(true, image);
+                  } 
+                     catch (IOException e) {
+                        out.println("Could not map data segment onto file " + image + "!  " + e.getMessage());
+                        argsOK = false;
+                     }
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("offheap")) {
+               try {
+                  Globals.memory.setOffHeap(true, null);
+               } 
+                  catch (IOException e) {
+                     out.println("Could not keep memory off the Java heap, using it instead.  " + e.getMessage());
+                  }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("bp")) {
+               if (args.length <= (i+1)) {
+                  out.println("Branch predictor command line argument requires a predictor.");
+                  argsOK = false;
+               } 
+               else {
+                  try {
+                     branchPredictors.add(BranchPredictor.parse(args[++i]));
+                  } 
+                     catch (IllegalArgumentException e) {
+                        out.println("Invalid "+e.getMessage());
+                        argsOK = false;
+                     }
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("bpsweep")) {
+               if (args.length <= (i+1)) {
+                  out.println("Branch predictor sweep command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  try {
+                     branchPredictors.addAll(BranchPredictorEvaluator.readPredictors(new File(args[++i])));
+                  } 
+                     catch (IOException e) {
+                        out.println("Branch predictor sweep file "+args[i]+" could not be read.");
+                        argsOK = false;
+                     }
+                     catch (IllegalArgumentException e) {
+                        out.println("Invalid "+e.getMessage()+" in "+args[i]);
+                        argsOK = false;
+                     }
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("cache")) {
+               if (args.length <= (i+1)) {
+                  out.println("Cache command line argument requires a cache hierarchy.");
+                  argsOK = false;
+               } 
+               else {
+                  try {
+                     cacheHierarchies.add(CacheHierarchy.parse(args[++i]));
+                  } 
+                     catch (IllegalArgumentException e) {
+                        out.println("Invalid cache hierarchy "+args[i]+": "+e.getMessage());
+                        argsOK = false;
+                     }
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("cachesweep")) {
+               if (args.length <= (i+1)) {
+                  out.println("Cache sweep command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  try {
+                     cacheHierarchies.addAll(CacheSweep.readHierarchies(new File(args[++i])));
+                  } 
+                     catch (IOException e) {
+                        out.println("Cache sweep file "+args[i]+" could not be read.");
+                        argsOK = false;
+                     }
+                     catch (IllegalArgumentException e) {
+                        out.println("Invalid cache hierarchy in "+args[i]+": "+e.getMessage());
+                        argsOK = false;
+                     }
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("pipeline")) {
+               if (args.length <= (i+1)) {
+                  out.println("Pipeline command line argument requires a configuration.");
+                  argsOK = false;
+               } 
+               else {
+                  try {
+                     new PipelineTimingModel(args[++i], false); // check it
+                     pipelineSpec = args[i];
+                  } 
+                     catch (IllegalArgumentException e) {
+                        out.println("Invalid "+e.getMessage());
+                        argsOK = false;
+                     }
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("stats")) {
+               if (args.length <= (i+1)) {
+                  out.println("Statistics command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  statisticsFilename = args[++i];
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("trace")) {
+               if (args.length <= (i+1)) {
+                  out.println("Trace command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  try {
+                     traceWriter = new TraceWriter(new File(args[++i]));
+                  } 
+                     catch (IOException e) {
+                        out.println("Trace file "+args[i]+" could not be created.");
+                        argsOK = false;
+                     }
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("replay")) {
+               if (args.length <= (i+1)) {
+                  out.println("Replay command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  replayFilename = args[++i];
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("kbd")) {
+               if (args.length <= (i+1)) {
+                  out.println("Keyboard command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  try {
+                     devices.add(new ScriptedKeyboard(new File(args[++i])));
+                  } 
+                     catch (IOException e) {
+                        out.println("Keyboard script file "+args[i]+" could not be read.");
+                        argsOK = false;
+                     }
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("display")) {
+               if (args.length <= (i+1)) {
+                  out.println("Display command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else if (args[++i].equals("-")) {
+                  devices.add(new DisplaySink(System.out, false, DisplaySink.DEFAULT_TRANSMIT_DELAY));
+               } 
+               else {
+                  try {
+                     devices.add(new DisplaySink(new File(args[i])));
+                  } 
+                     catch (IOException e) {
+                        out.println("Display file "+args[i]+" could not be created.");
+                        argsOK = false;
+                     }
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().equals("fb")) {
+               if (args.length <= (i+3)) {
+                  out.println("Frame buffer command line argument requires a base address, size and output file name.");
+                  argsOK = false;
+               } 
+               else if (framebuffer != null) {
+                  out.println("Frame buffer command line argument may be given only once.");
+                  argsOK = false;
+               } 
+               else {
+                  String base = args[++i];
+                  String geometry = args[++i].toLowerCase();
+                  try {
+                     // <width>x<height> in pixels, optionally /<unitwidth>x<unitheight>, default 1x1
+                     String[] parts = (geometry + "/1x1").split("/");
+                     String[] size = parts[0].split("x");
+                     String[] unit = parts[1].split("x");
+                     framebuffer = new FramebufferDevice(base, Integer.parseInt(size[0]), Integer.parseInt(size[1]),
+                                      Integer.parseInt(unit[0]), Integer.parseInt(unit[1]), args[++i]);
+                     devices.add(framebuffer);
+                  } 
+                     catch (RuntimeException e) { // NumberFormatException, IllegalArgumentException, bad geometry
+                        out.println("Invalid frame buffer base address or geometry: "+base+" "+geometry);
+                        argsOK = false;
+                     }
+               }
+               continue;
+            }
+            if (args[i].toLowerCase().indexOf("fbi")==0) {
+               String s = args[i].substring(3);
+               try {
+                  frameCaptureInterval = Long.decode(s).longValue();
+                  if (frameCaptureInterval > 0) {
+                     continue;
+                  }
+               } 
+                  catch (NumberFormatException nfe) {
+                  }
+               // Let it fall thru and get handled by catch-all
+            }
             if (args[i].toLowerCase().equals("mc")) {
                String configName = args[++i];
                MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(configName);
+               if (configName.startsWith(MemoryConfigurations.LARGE_CONFIGURATION_IDENTIFIER+":")) {
+                  // Large:<heap MB>[:<stack MB>]
+                  String[] sizes = configName.substring(configName.indexOf(':')+1).split(":");
+                  try {
+                     config = MemoryConfigurations.getLargeConfiguration(Integer.decode(sizes[0]).intValue(),
+                              (sizes.length > 1) ? Integer.decode(sizes[1]).intValue() : MemoryConfigurations.DEFAULT_LARGE_STACK_MEGABYTES);
+                  } 
+                     catch (NumberFormatException nfe) {
+                     }
+                     catch (IllegalArgumentException iae) {
+                        out.println(iae.getMessage());
+                     }
+               }
                if (config == null) {
                   out.println("Invalid memory configuration: "+configName);
                   argsOK = false;
@@ -403,6 +783,34 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                countInstructions = true;
                continue;
             }
+            if (args[i].toLowerCase().equals("heap")) {
+               reportHeap = true;
+               continue;
+            }
+         	// Use virtual time for Time and Sleep syscalls, optionally at given clock rate
+            if (args[i].toLowerCase().indexOf("vt")==0) {
+               String s = args[i].substring(2);
+               try {
+                  virtualClockRate = (s.length() == 0) ? SimulationClock.DEFAULT_CLOCK_RATE : Long.decode(s).longValue();
+                  if (virtualClockRate > 0) {
+                     continue;
+                  }
+               }
+                  catch (NumberFormatException nfe) {
+                   // Let it fall thru and get handled by catch-all
+                  }
+            }
+         	// Fix seed of random number syscall streams
+            if (args[i].toLowerCase().indexOf("rs")==0) {
+               String s = args[i].substring(2);
+               try {
+                  randomRunSeed = Long.decode(s);
+                  continue;
+               }
+                  catch (NumberFormatException nfe) {
+                   // Let it fall thru and get handled by catch-all
+                  }
+            }
          
          
             if (args[i].indexOf("$") == 0) {
@@ -451,6 +859,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             out.println("Invalid Command Argument: "+args[i]);
             argsOK = false;
          }
+         if (replayFilename != null && pipelineSpec != null) {
+            out.println("Pipeline command line argument cannot be used with replay; the program must be run.");
+            argsOK = false;
+         }
+         if (replayFilename != null && statisticsFilename != null) {
+            out.println("Statistics command line argument cannot be used with replay; the program must be run.");
+            argsOK = false;
+         }
+         if (loadTriples != null && filenameList.size() > 0) {
+            out.println("Load command line argument cannot be used with program files; the loaded image is the program.");
+            argsOK = false;
+         }
          return argsOK;
       }
       
@@ -461,63 +881,73 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	
       private boolean runCommand() {
          boolean programRan = false;
-         if (filenameList.size()==0) {
+         if (filenameList.size()==0 && loadTriples == null) {
             return programRan;
          }
          try {
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
-            File mainFile = new File((String) filenameList.get(0)).getAbsoluteFile();// First file is "main" file
-            ArrayList filesToAssemble;
-            if (assembleProject) { 
-               filesToAssemble = FilenameFinder.getFilenameList(mainFile.getParent(), Globals.fileExtensions);
-               if (filenameList.size() > 1) {
-                  // Using "p" project option PLUS listing more than one filename on command line.
-                  // Add the additional files, avoiding duplicates.
-                  filenameList.remove(0); // first one has already been processed
-                  ArrayList moreFilesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
-                  // Remove any duplicates then merge the two lists.
-                  for (int index2 = 0; index2<moreFilesToAssemble.size(); index2++) {
-                     for (int index1 = 0; index1<filesToAssemble.size(); index1++) {
-                        if (filesToAssemble.get(index1).equals(moreFilesToAssemble.get(index2))) {
-                           moreFilesToAssemble.remove(index2);
-                           index2--; // adjust for left shift in moreFilesToAssemble...
-                           break;    // break out of inner loop...
-                        }
-                     }
-                  }
-                  filesToAssemble.addAll(moreFilesToAssemble);
+            if (loadTriples != null) {
+               if (!loadSegments()) {
+                  Globals.exitCode = assembleErrorExitCode;
+                  out.println("Processing terminated due to errors.");
+                  return programRan;
                }
             } 
             else {
-               filesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
-            }
-            if (Globals.debug) {
-               out.println("--------  TOKENIZING BEGINS  -----------");
+               assembleProgram();
             }
-            ArrayList MIPSprogramsToAssemble = 
-                      code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);		
-            if (Globals.debug) {
-               out.println("--------  ASSEMBLY BEGINS  -----------");
-            }
-         	// Added logic to check for warnings and print if any. DPS 11/28/06
-            ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
-            if (warnings != null && warnings.warningsOccurred()) {
-               out.println(warnings.generateWarningReport());
+            if (Globals.memory.getOffHeapFailure() != null) {
+               out.println("Could not map data segment and stack onto files!  " + Globals.memory.getOffHeapFailure().getMessage());
+               out.println("Processing terminated due to errors.");
+               Globals.exitCode = 1;
+               return programRan;
             }
             RegisterFile.initializeProgramCounter(startAtMain); // DPS 3/9/09
             if (simulate) {
                // store program args (if any) in MIPS memory
                new ProgramArgumentList(programArgumentList).storeProgramArguments();
+               if (virtualClockRate > 0) {
+                  code.getClock().setVirtualTime(virtualClockRate);
+               }
+               else if (midiFilename != null) {
+                  code.getClock().setVirtualTime(SimulationClock.DEFAULT_CLOCK_RATE);
+               }
+               if (randomRunSeed != null) {
+                  code.getRandomStreams().setRunSeed(randomRunSeed.longValue());
+               }
+               if (framebuffer != null) {
+                  framebuffer.setCaptureInterval(frameCaptureInterval);
+               }
+               devices.attachAll(code);
+               MemoryAccessRecorder recorder = createAccessRecorder();
+               if (traceWriter != null) {
+                  recorder.addSink(traceWriter);
+               }
+               if (recorder.hasSinks()) {
+                  Globals.memory.setAccessRecorder(recorder);
+               }
+               ExecutionAnalytics.setActive(analytics);
             	// establish observer if specified  
                establishObserver();
                if (Globals.debug) {
                   out.println("--------  SIMULATION BEGINS  -----------");
                }
                programRan = true;
-               boolean done = code.simulate(maxSteps);
-               if (!done) {
-                  out.println("\nProgram terminated when maximum step limit "+maxSteps+" reached.");
+               try {
+                  boolean done = code.simulate(maxSteps);
+                  if (!done) {
+                     out.println("\nProgram terminated when maximum step limit "+maxSteps+" reached.");
+                  }
+               }
+               finally {
+                  devices.finishAll(out);
+                  ExecutionAnalytics.setActive(null);
+                  if (recorder.hasSinks()) {
+                     recorder.flush();
+                     Globals.memory.setAccessRecorder(null);
+                     finishAccessAnalysis();
+                  }
                }
             }
             if (Globals.debug) {
@@ -529,10 +959,183 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                out.println(e.errors().generateErrorAndWarningReport());
                out.println("Processing terminated due to errors.");
             } 
+            catch (AddressErrorException e) {
+               out.println("MMIO device address "+Binary.intToHexString(e.getAddress())+" is outside the memory mapped I/O segment.");
+            } 
          return programRan;
       }
    
    
+   	//////////////////////////////////////////////////////////////////////
+      // Tokenize and assemble the program files.
+   
+      private void assembleProgram() throws ProcessingException {
+         File mainFile = new File((String) filenameList.get(0)).getAbsoluteFile();// First file is "main" file
+         ArrayList filesToAssemble;
+         if (assembleProject) { 
+            filesToAssemble = FilenameFinder.getFilenameList(mainFile.getParent(), Globals.fileExtensions);
+            if (filenameList.size() > 1) {
+               // Using "p" project option PLUS listing more than one filename on command line.
+               // Add the additional files, avoiding duplicates.
+               filenameList.remove(0); // first one has already been processed
+               ArrayList moreFilesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
+               // Remove any duplicates then merge the two lists.
+               for (int index2 = 0; index2<moreFilesToAssemble.size(); index2++) {
+                  for (int index1 = 0; index1<filesToAssemble.size(); index1++) {
+                     if (filesToAssemble.get(index1).equals(moreFilesToAssemble.get(index2))) {
+                        moreFilesToAssemble.remove(index2);
+                        index2--; // adjust for left shift in moreFilesToAssemble...
+                        break;    // break out of inner loop...
+                     }
+                  }
+               }
+               filesToAssemble.addAll(moreFilesToAssemble);
+            }
+         } 
+         else {
+            filesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
+         }
+         if (Globals.debug) {
+            out.println("--------  TOKENIZING BEGINS  -----------");
+         }
+         ArrayList MIPSprogramsToAssemble = 
+                   code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);		
+         if (Globals.debug) {
+            out.println("--------  ASSEMBLY BEGINS  -----------");
+         }
+      	// Added logic to check for warnings and print if any. DPS 11/28/06
+         ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
+         if (warnings != null && warnings.warningsOccurred()) {
+            out.println(warnings.generateWarningReport());
+         }
+      }
+   
+   	//////////////////////////////////////////////////////////////////////
+      // Load the program from memory images instead of assembling it.  See "load"
+      // option.  Returns false after displaying a message if an image cannot be loaded.
+   
+      private boolean loadSegments() {
+         Globals.symbolTable.clear();
+         Globals.memory.clear();
+         DumpFormatLoader loader = new DumpFormatLoader();
+         ArrayList dumpFormats = loader.loadDumpFormats();
+         for (int i=0; i<loadTriples.size(); i++) {
+            String[] triple = (String[])loadTriples.get(i);
+            File file = new File(triple[2]);
+            int address;
+            Integer[] segInfo = MemoryDump.getSegmentBounds(triple[0]);
+            if (segInfo != null) {
+               address = segInfo[0].intValue();
+            } 
+            else {
+               try {
+                  address = Binary.stringToInt(triple[0]);
+               } 
+                  catch (NumberFormatException nfe) {
+                     out.println("Error while attempting to load image, segment/address " + triple[0] + " is invalid!");
+                     return false;
+                  }
+            }
+            DumpFormat format = DumpFormatLoader.findDumpFormatGivenCommandDescriptor(dumpFormats, triple[1]);
+            if (!(format instanceof LoadableDumpFormat)) {
+               out.println("Error while attempting to load image, format " + triple[1] + " cannot be loaded!");
+               return false;
+            }
+            try {
+               ((LoadableDumpFormat) format).loadMemoryRange(file, address);
+            } 
+               catch (FileNotFoundException e) {
+                  out.println("Error while attempting to load image, file " + file + " was not found!");
+                  return false;
+               } 
+               catch (AddressErrorException e) {
+                  out.println("Error while attempting to load image, file " + file + "!  Could not store at address: " 
+                              + Binary.intToHexString(e.getAddress()) + "!");
+                  return false;
+               } 
+               catch (IOException e) {
+                  out.println("Error while attempting to load image, file " + file + "!  " + e.getMessage());
+                  return false;
+               }
+         }
+         code.useLoadedImage();
+         return true;
+      }
+   
+   	//////////////////////////////////////////////////////////////////////
+      // Memory access analysis ("cache", "cachesweep", "bp", "bpsweep", "pipeline", "stats", "trace" and
+      // "replay" options).
+      // Returns a recorder feeding every requested analysis; it has no sinks if none
+      // were requested.
+   
+      private MemoryAccessRecorder createAccessRecorder() {
+         MemoryAccessRecorder recorder = new MemoryAccessRecorder();
+         if (!cacheHierarchies.isEmpty()) {
+            cacheSweep = new CacheSweep(cacheHierarchies);
+            recorder.addSink(cacheSweep);
+         }
+         if (!branchPredictors.isEmpty()) {
+            branchEvaluator = new BranchPredictorEvaluator(branchPredictors);
+            recorder.addSink(branchEvaluator);
+         }
+         if (pipelineSpec != null) {
+            pipeline = new PipelineTimingModel(pipelineSpec, delayedBranching);
+            recorder.addSink(pipeline);
+         }
+         if (statisticsFilename != null) {
+            analytics = new ExecutionAnalytics();
+            recorder.addSink(analytics);
+         }
+         return recorder;
+      }
+   
+      // Wait for analyses to complete and close the trace file, once the recorder is flushed.
+      private void finishAccessAnalysis() {
+         if (cacheSweep != null) {
+            cacheSweep.finish();
+         }
+         if (pipeline != null) {
+            pipeline.finish();
+         }
+         if (analytics != null) {
+            try {
+               analytics.save(new File(statisticsFilename));
+            } 
+               catch (IOException e) {
+                  out.println("Statistics file "+statisticsFilename+" could not be written: "+e.getMessage());
+               }
+         }
+         if (traceWriter != null) {
+            try {
+               traceWriter.close();
+            } 
+               catch (IOException e) {
+                  out.println("Trace file could not be written: "+e.getMessage());
+               }
+         }
+      }
+   
+      // Feed a trace recorded earlier with the "trace" option to the requested analyses
+      // instead of assembling and running a program.
+      private void replayTrace() {
+         MemoryAccessRecorder recorder = createAccessRecorder();
+         boolean replayed = false;
+         try {
+            long records = new TraceReader(new File(replayFilename)).replay(recorder.getSinks());
+            if (Globals.debug) {
+               out.println(records+" trace records replayed");
+            }
+            replayed = true;
+         } 
+            catch (IOException e) {
+               out.println("Trace file "+replayFilename+" could not be read: "+e.getMessage());
+            }
+         finishAccessAnalysis();
+         if (replayed) {
+            displayMiscellaneousPostMortem();
+         }
+      }
+   
    	//////////////////////////////////////////////////////////////////////
       // Check for memory address subrange.  Has to be two integers separated
       // by "-"; no embedded spaces.  e.g. 0x00400000-0x00400010
@@ -598,6 +1201,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (countInstructions) {
             out.println("\n"+instructionCount);
          }
+         if (cacheSweep != null) {
+            out.println();
+            cacheSweep.printReport(out);
+         }
+         if (branchEvaluator != null) {
+            out.println();
+            branchEvaluator.printReport(out);
+         }
+         if (pipeline != null) {
+            out.println();
+            pipeline.printReport(out);
+         }
+         if (reportHeap && replayFilename == null) {
+            out.println();
+            Globals.memory.getHeapAllocator().printReport(out);
+         }
       }
    
    	     		   	
@@ -792,31 +1411,96 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.");
          out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
          out.println("      b  -- brief - do not display register/memory address along with contents");
+         out.println("  bp <predictor> -- evaluate a branch predictor on the program's branches and display");
+         out.println("            mispredictions in total and per branch at end of run.  <predictor> is one of");
+         out.println("            bimodal:<entries>[:<bits>], gshare:<entries>:<history>,");
+         out.println("            tournament:<entries>:<history>, btb:<entries> or ras:<depth>.");
+         out.println("            Option may be repeated; all predictors are evaluated in the same run.");
+         out.println("  bpsweep <file> -- as bp, for each predictor in <file>, one per line (# comments).");
+         out.println("  cache <hierarchy> -- simulate caches fed by the program's memory accesses and display");
+         out.println("            miss rates at end of run.  <hierarchy> is l1=<level> for a unified first level,");
+         out.println("            or i=<level>,d=<level> for split instruction/data caches, optionally followed");
+         out.println("            by ,l2=<level>.  <level> is <size>/<block>/<ways>[/lru|fifo|random|plru][/wb|wt],");
+         out.println("            e.g. 16K/32/4/plru/wb; <ways> may be full.  Option may be repeated.");
+         out.println("  cachesweep <file> -- as cache, for each hierarchy in <file>, one per line (# comments).");
+         out.println("            All hierarchies are simulated in parallel during a single run.");
          out.println("      d  -- display MARS debugging statements");
          out.println("     db  -- MIPS delayed branching is enabled");
          out.println("    dec  -- display memory or register contents in decimal.");
+         out.println("   display <file> -- headless MMIO display: bytes the program stores to the transmitter");
+         out.println("            data register (0xffff000c) are written to <file>, or to standard output if");
+         out.println("            <file> is -.  The transmitter control register (0xffff0008) works as in the");
+         out.println("            Keyboard and Display MMIO Simulator tool, including interrupts.");
          out.println("   dump <segment> <format> <file> -- memory dump of specified memory segment");
          out.println("            in specified format to specified file.  Option may be repeated."); 
          out.println("            Dump occurs at the end of simulation unless 'a' option is used.");
          out.println("            Segment and format are case-sensitive and possible values are:");
          out.println("            <segment> = "+segments);
          out.println("            <format> = "+formats);
+         out.println("     fb <base> <width>x<height>[/<unitwidth>x<unitheight>] <output> -- headless Bitmap");
+         out.println("            Display.  Display is <width> by <height> pixels, each word (0x00RRGGBB) from");
+         out.println("            address <base> a unit of <unitwidth> by <unitheight> pixels (default 1x1).");
+         out.println("            <base> is an address or one of global, gp, static, heap, mmio as in the tool.");
+         out.println("            Each store to the frame register (0xffff0020), and the end of the run, capture");
+         out.println("            a frame: <output>0000.png, <output>0001.png, ..., or frames of an animated GIF");
+         out.println("            if <output> ends in .gif.  Perceptual hashes of the frames go to <output>.phash.");
+         out.println("  fbi<n> -- with fb, also capture a frame every <n> instructions.");
          out.println("      h  -- display this help.  Use by itself with no filename.");
+         out.println("   heap  -- display heap usage of the malloc, free and realloc syscalls (60-62) at end of");
+         out.println("            run: calls, bytes in use, fragmentation and blocks never freed (leaks).");
          out.println("    hex  -- display memory or register contents in hexadecimal (default)");
          out.println("     ic  -- display count of MIPS basic instructions 'executed'");
+         out.println("    kbd <file> -- headless MMIO keyboard: the bytes of <file> are typed one at a time into");
+         out.println("            the receiver data register (0xffff0004), with the ready bit in the receiver");
+         out.println("            control register (0xffff0000) as in the Keyboard and Display MMIO Simulator.");
+         out.println("   load <segment> <format> <file> -- instead of assembling a program, load memory from");
+         out.println("            <file>, written by dump in <format>, starting at <segment> or at an address;");
+         out.println("            then run it.  Option may be repeated, e.g. once for .text and once for .data.");
+         out.println("            Possible formats are Binary, HexText and HEX.  Machine code is decoded as it runs.");
+         out.println("  mapdata <file> -- keep the data segment in <file>, mapped into memory (implies offheap).");
+         out.println("            The file's contents are the initial data segment, from its base address on, as");
+         out.println("            words in the host's byte order; missing parts read as 0.  After the run the file");
+         out.println("            holds the final data segment.  Use with dump and no program to inspect it.");
          out.println("     mc <config>  -- set memory configuration.  Argument <config> is");
          out.println("            case-sensitive and possible values are: Default for the default");
          out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
-         out.println("            data segment at address 0, or CompactTextAtZero for a 32KB");
-         out.println("            memory with text segment at address 0.");
+         out.println("            data segment at address 0, CompactTextAtZero for a 32KB");
+         out.println("            memory with text segment at address 0, or Large for the default");
+         out.println("            address space with a "+MemoryConfigurations.DEFAULT_LARGE_HEAP_MEGABYTES+"MB heap and "
+                     +MemoryConfigurations.DEFAULT_LARGE_STACK_MEGABYTES+"MB stack, whose memory is");
+         out.println("            allocated only as it is used.  Large:<heap MB>:<stack MB> sets the");
+         out.println("            heap and stack sizes, e.g. Large:1536:128.");
          out.println("     me  -- display MARS messages to standard err instead of standard out. ");
          out.println("            Can separate messages from program output using redirection");
+         out.println("   midi <file> -- record MIDI syscall output to file instead of playing it.");
+         out.println("            A file name ending in .wav is rendered to audio, otherwise a");
+         out.println("            Standard MIDI File is written.  Implies vt unless vt<n> is given.");
          out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
          out.println("     np  -- use of pseudo instructions and formats not permitted");
+         out.println(" offheap -- keep the data segment and stack in memory-mapped scratch files instead of the");
+         out.println("            Java heap.  Useful with mc Large for programs with hundreds of MB of data.");
          out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
+         out.println("  pipeline <config> -- estimate the cycles of the run on a 5 stage pipeline; display CPI,");
+         out.println("            stall cycles by cause and stalls per instruction.  <config> is default, or");
+         out.println("            colon separated settings, each optional: forward=yes|no (forwarding, default");
+         out.println("            yes), branch=<n> (taken branch penalty, default 1), mul=<n> and div=<n>");
+         out.println("            (latencies, default 4 and 32), cache=<hierarchy> (as for cache; default none),");
+         out.println("            l2=<n> and memory=<n> (miss penalties, default 10 and 100).");
+         out.println(" replay <file> -- instead of assembling and running a program, feed the trace <file>");
+         out.println("            written by the trace option to the requested analyses, e.g. cache or bp.");
          out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
          out.println("     sm  -- start execution at statement with global label main, if defined");
          out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+         out.println("  stats <file> -- write execution statistics to <file>: executions per mnemonic, register");
+         out.println("            reads/writes, loads/stores and address range per segment, heap and stack");
+         out.println("            high-water marks, syscall counts.  JSON, or CSV if <file> ends in .csv.");
+         out.println("  trace <file> -- write every instruction fetch, load, store and branch outcome of the");
+         out.println("            run to <file> in a compact binary format, for later use with replay.");
+         out.println("  vt<n>  -- Virtual Time - Time and Sleep syscalls use simulated time derived from the");
+         out.println("            instruction count at nominal clock rate <n> Hz (default "+SimulationClock.DEFAULT_CLOCK_RATE+").");
+         out.println("            Sleep returns immediately.  Makes timed programs fast and repeatable.");
+         out.println("  rs<n>  -- Random Seed - random number syscall streams not seeded by the program");
+         out.println("            are seeded from <n>, so every run produces the same numbers.");
          out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
          out.println("            If 0, negative or not specified, there is no maximum.");
          out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ");
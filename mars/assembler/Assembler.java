@@ -3,6 +3,7 @@
    import java.util.ArrayList;
    import java.util.Collections;
    import java.util.Comparator;
+   import java.util.List;
 
    import mars.ErrorList;
    import mars.ErrorMessage;
@@ -356,7 +357,7 @@
                   // statement, add to list.
                      TokenList newTokenList = new Tokenizer().tokenizeLine(sourceLine,
                         instruction, errors,false);
-                     ArrayList instrMatches = this.matchInstruction(newTokenList.get(0));
+                     List instrMatches = this.matchInstruction(newTokenList.get(0));
                      Instruction instr = OperandFormat.bestOperandMatch(newTokenList,
                         instrMatches);
                   // Only first generated instruction is linked to original source
@@ -579,7 +580,7 @@
       // is not
       // yet implemented.
          if (!this.inDataSegment) {
-            ArrayList instrMatches = this.matchInstruction(token);
+            List instrMatches = this.matchInstruction(token);
             if (instrMatches == null)
                return ret;
          // OK, we've got an operator match, let's check the operands.
@@ -940,7 +941,7 @@
    // //////////////////////////////////////////////////////////////////////////////////
    // Given token, find the corresponding Instruction object. If token was not
    // recognized as OPERATOR, there is a problem.
-      private ArrayList matchInstruction(Token token) { 
+      private List matchInstruction(Token token) { 
          if (token.getType() != TokenTypes.OPERATOR) {
             if (token.getSourceMIPSprogram().getLocalMacroPool()
             	.matchesAnyMacroName(token.getValue()))
@@ -953,7 +954,7 @@
                   + "\" is not a recognized operator"));
             return null;
          }
-         ArrayList inst = Globals.instructionSet.matchOperator(token.getValue());
+         List inst = Globals.instructionSet.matchOperator(token.getValue());
          if (inst == null) { // This should NEVER happen...
             this.errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(),
                token.getStartPos(), "Internal Assembler error: \"" + token.getValue()
@@ -69,7 +69,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     * first such Instruction that has an exact operand match.  If none match, 
     * return the first Instruction and let client deal with operand mismatches.  
     */
-       static Instruction bestOperandMatch(TokenList tokenList, ArrayList instrMatches) {
+       static Instruction bestOperandMatch(TokenList tokenList, List instrMatches) {
          if (instrMatches == null)
             return null;
          if (instrMatches.size() == 1)
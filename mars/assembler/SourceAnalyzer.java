@@ -0,0 +1,465 @@
+   package mars.assembler;
+
+   import mars.*;
+   import mars.mips.instructions.*;
+   import mars.util.*;
+   import java.util.*;
+
+/**
+ * Quick check of a single source file as it is being edited, without assembling it.
+ * The Assembler cannot be used for this: it writes into the simulated memory and the
+ * global symbol table, and it stops at the first file with errors.  This class looks at
+ * the text only, and reports the kind of errors a typist makes: invalid language
+ * elements, unknown operators, operands that do not fit the instruction
+ * (as determined by OperandFormat), bad directive operands, labels defined twice and
+ * labels that are used but never defined.
+ * <p>
+ * Results of looking at one line are kept, keyed by the text of the line, so when
+ * a file is analyzed again after an edit only the lines that changed are tokenized
+ * and matched again.  The file-level checks (symbol definitions and references) are
+ * redone each time but are cheap.  An instance is meant to be used by one thread at
+ * a time, normally a background worker: analyze() gives up and returns null as soon
+ * as that thread is interrupted.
+ * <p>
+ * Macro bodies are not checked, since their lines only make sense once expanded, nor
+ * are macro calls.  Lines that use an .eqv symbol are checked after substitution.
+ * If the file has an .include directive, undefined labels are not reported because
+ * they may be defined in the included file.
+ */
+
+    public class SourceAnalyzer {
+
+      private HashMap lineCache = new HashMap(); // key is line text, value is LineResult
+      private HashMap previousCache = new HashMap();
+      private Tokenizer tokenizer = new Tokenizer();
+      private int instructionSetGeneration = -1;
+      private boolean extendedAssemblerEnabled;
+
+   /**
+    * Analyze the given source text.
+    * @param source the complete source text of the file
+    * @param program source file to put in the messages, may be null
+    * @param otherFilesAssembled true if the file will be assembled together with the
+    * other files in its directory, in which case an undefined label is only a warning
+    * @return list of ErrorMessage, in order of line, or null if the current thread was
+    * interrupted before the analysis was complete
+    */
+       public synchronized ArrayList analyze(CharSequence source, MIPSprogram program, boolean otherFilesAssembled) {
+         if (Globals.instructionSet.getGeneration() != instructionSetGeneration ||
+             Globals.getSettings().getBooleanSetting(Settings.EXTENDED_ASSEMBLER_ENABLED) != extendedAssemblerEnabled) {
+            instructionSetGeneration = Globals.instructionSet.getGeneration();
+            extendedAssemblerEnabled = Globals.getSettings().getBooleanSetting(Settings.EXTENDED_ASSEMBLER_ENABLED);
+            lineCache.clear();
+            previousCache.clear();
+         }
+         // Lines not seen in this run are dropped from the cache afterwards.
+         HashMap oldCache = lineCache;
+         lineCache = previousCache;
+         previousCache = oldCache;
+         lineCache.clear();
+
+         ArrayList results = new ArrayList();
+         HashSet labels = new HashSet();      // labels and .extern symbols defined
+         HashMap equivalents = new HashMap(); // key is .eqv symbol, value is substitute text
+         HashSet macroNames = new HashSet();
+         ArrayList messages = new ArrayList();
+         boolean inMacro = false;
+         boolean included = false;
+         Directives dataDirective = null;     // for directive continuation lines
+         int lineNumber = 0;
+         int start = 0;
+         int length = source.length();
+         while (start <= length) {
+            if (Thread.currentThread().isInterrupted()) {
+               return null;
+            }
+            int end = start;
+            while (end < length && source.charAt(end) != '\n') {
+               end++;
+            }
+            lineNumber++;
+            String text = source.subSequence(start, (end > start && source.charAt(end-1) == '\r') ? end-1 : end).toString();
+            start = end + 1;
+            LineResult line = lookup(text);
+            if (!equivalents.isEmpty() && line.usesAny(equivalents)) {
+               line = lookup(line.substitute(text, equivalents));
+            }
+            line.lineNumber = lineNumber;
+            if (inMacro) {
+               if (line.directive == Directives.END_MACRO) {
+                  inMacro = false;
+               }
+               continue;
+            }
+            if (line.directive == Directives.MACRO) {
+               if (line.name != null) {
+                  macroNames.add(line.name);
+               }
+               inMacro = true;
+            }
+            if (line.label != null) {
+               if (labels.contains(line.label)) {
+                  messages.add(new ErrorMessage(program, lineNumber, line.labelPosition,
+                     "label \"" + line.label + "\" already defined"));
+               }
+               else {
+                  labels.add(line.label);
+               }
+            }
+            if (line.directive == Directives.EQV && line.name != null) {
+               equivalents.put(line.name, line.value);
+            }
+            else if (line.directive == Directives.EXTERN && line.name != null && !labels.contains(line.name)) {
+               labels.add(line.name);
+            }
+            else if (line.directive == Directives.INCLUDE) {
+               included = true;
+            }
+            if (line.directive != null) {
+               dataDirective = (line.isDataDirective()) ? line.directive : null;
+            }
+            else if (line.operator != null) {
+               dataDirective = null;
+            }
+            else if (line.continuation && dataDirective != null) {
+               // Check it as if the directive were repeated at the start of the line.
+               String prefix = dataDirective.getName() + " ";
+               line = lookup(prefix + text);
+               line.lineNumber = lineNumber;
+               line.shift = prefix.length();
+            }
+            results.add(line);
+         }
+
+         for (int i = 0; i < results.size(); i++) {
+            LineResult line = (LineResult) results.get(i);
+            if (line.problems.isEmpty() && line.references.isEmpty() && line.unknownHead == null) {
+               continue;
+            }
+            boolean macroCall = line.head != null && macroNames.contains(line.head);
+            if (!macroCall) {
+               for (int p = 0; p < line.problems.size(); p++) {
+                  Problem problem = (Problem) line.problems.get(p);
+                  messages.add(new ErrorMessage(ErrorMessage.ERROR, program, line.lineNumber,
+                     line.column(problem.position), problem.message));
+               }
+               if (line.unknownHead != null) {
+                  messages.add(new ErrorMessage(program, line.lineNumber, line.column(line.headPosition),
+                     "\"" + line.unknownHead + "\" is not a recognized operator"));
+               }
+            }
+            if (included) {
+               continue;
+            }
+            for (int r = 0; r < line.references.size(); r++) {
+               Problem reference = (Problem) line.references.get(r);
+               if (labels.contains(reference.message) || macroNames.contains(reference.message)) {
+                  continue;
+               }
+               if (line.directive == Directives.GLOBL) {
+                  messages.add(new ErrorMessage(otherFilesAssembled, program, line.lineNumber, line.column(reference.position),
+                     "\"" + reference.message + "\" declared global label but not defined."));
+               }
+               else {
+                  messages.add(new ErrorMessage(otherFilesAssembled, program, line.lineNumber, line.column(reference.position),
+                     "Symbol \"" + reference.message + "\" not found in symbol table."));
+               }
+            }
+         }
+         Collections.sort(messages,
+               new Comparator() {
+                   public int compare(Object a, Object b) {
+                     return ((ErrorMessage) a).getLine() - ((ErrorMessage) b).getLine();
+                  }
+               });
+         return messages;
+      }
+
+      // Get the analysis of one line, from the cache if possible.  The same text may
+      // appear on several lines, so the caller gets a copy it can set line number on.
+       private LineResult lookup(String text) {
+         LineResult line = (LineResult) lineCache.get(text);
+         if (line == null) {
+            line = (LineResult) previousCache.get(text);
+            if (line == null) {
+               line = analyzeLine(text);
+            }
+            lineCache.put(text, line);
+         }
+         return line.copy();
+      }
+
+      // Look at one line in isolation.
+       private LineResult analyzeLine(String text) {
+         LineResult result = new LineResult();
+         ErrorList lexicalErrors = new ErrorList();
+         TokenList tokens = tokenizer.tokenizeLine(0, text, lexicalErrors, false);
+         if (tokens.size() > 0 && tokens.get(tokens.size()-1).getType() == TokenTypes.COMMENT) {
+            tokens.remove(tokens.size()-1);
+         }
+         if (tokens.size() >= 2 && tokens.get(1).getType() == TokenTypes.COLON &&
+             (tokens.get(0).getType() == TokenTypes.IDENTIFIER || tokens.get(0).getType() == TokenTypes.OPERATOR)) {
+            result.label = tokens.get(0).getValue();
+            result.labelPosition = tokens.get(0).getStartPos();
+            tokens.remove(0);
+            tokens.remove(0);
+         }
+         if (lexicalErrors.errorsOccurred()) {
+            ArrayList list = lexicalErrors.getErrorMessages();
+            for (int i = 0; i < list.size(); i++) {
+               ErrorMessage message = (ErrorMessage) list.get(i);
+               String description = message.getMessage();
+               result.addProblem(message.getPosition(), description.substring(description.lastIndexOf('\n') + 1));
+            }
+            return result;
+         }
+         for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.get(i).getType() == TokenTypes.IDENTIFIER) {
+               result.identifiers.add(tokens.get(i));
+            }
+         }
+         if (tokens.isEmpty()) {
+            return result;
+         }
+         Token head = tokens.get(0);
+         result.head = head.getValue();
+         result.headPosition = head.getStartPos();
+         if (head.getType() == TokenTypes.DIRECTIVE) {
+            analyzeDirective(tokens, result);
+         }
+         else if (head.getType() == TokenTypes.OPERATOR) {
+            analyzeInstruction(tokens, result);
+         }
+         else {
+            // Macro call, or continuation of a data directive on the previous line.
+            // Which one cannot be told from this line alone.
+            result.continuation = true;
+            result.unknownHead = head.getValue();
+            for (int i = 1; i < tokens.size(); i++) {
+               result.addReference(tokens.get(i));
+            }
+         }
+         return result;
+      }
+
+      // Match the operands against the instruction formats, as the Assembler does.
+       private void analyzeInstruction(TokenList tokens, LineResult result) {
+         Token head = tokens.get(0);
+         result.operator = head.getValue();
+         List matches = Globals.instructionSet.matchOperator(head.getValue());
+         Instruction instruction = OperandFormat.bestOperandMatch(tokens, matches);
+         if (instruction == null) {
+            return;
+         }
+         ErrorList errors = new ErrorList();
+         if (!OperandFormat.tokenOperandMatch(tokens, instruction, errors)) {
+            ArrayList list = errors.getErrorMessages();
+            for (int i = 0; i < list.size(); i++) {
+               ErrorMessage message = (ErrorMessage) list.get(i);
+               result.addProblem(message.getPosition(), message.getMessage());
+            }
+            return;
+         }
+         if (instruction instanceof ExtendedInstruction && !Globals.getSettings().getBooleanSetting(Settings.EXTENDED_ASSEMBLER_ENABLED)) {
+            result.addProblem(head.getStartPos(), "Extended (pseudo) instruction or format not permitted.  See Settings.");
+         }
+         for (int i = 1; i < tokens.size(); i++) {
+            if (tokens.get(i).getType() == TokenTypes.IDENTIFIER) {
+               result.addReference(tokens.get(i));
+            }
+         }
+      }
+
+      // Check the operands of a directive, for those directives whose operands are
+      // checked by the Assembler regardless of the rest of the program.
+       private void analyzeDirective(TokenList tokens, LineResult result) {
+         Token head = tokens.get(0);
+         Directives direct = Directives.matchDirective(head.getValue());
+         result.directive = direct;
+         if (direct == null) {
+            result.addProblem(head.getStartPos(), "\"" + head.getValue()
+               + "\" directive is invalid or not implemented in MARS");
+            return;
+         }
+         int operands = tokens.size() - 1;
+         if (direct == Directives.MACRO) {
+            if (operands >= 1 && tokens.get(1).getType() == TokenTypes.IDENTIFIER) {
+               result.name = tokens.get(1).getValue();
+            }
+         }
+         else if (direct == Directives.EQV) {
+            if (operands >= 2 && tokens.get(1).getType() == TokenTypes.IDENTIFIER) {
+               result.name = tokens.get(1).getValue();
+               StringBuffer value = new StringBuffer();
+               for (int i = 2; i < tokens.size(); i++) {
+                  value.append(tokens.get(i).getValue()).append(' ');
+               }
+               result.value = value.toString().trim();
+            }
+            else {
+               result.addProblem(head.getStartPos(), "Too few operands for " + Directives.EQV.getName() + " directive");
+            }
+            result.identifiers.clear();
+         }
+         else if (direct == Directives.EXTERN) {
+            if (operands != 2) {
+               result.addProblem(head.getStartPos(), "\"" + head.getValue()
+                  + "\" directive requires two operands (label and size).");
+            }
+            else {
+               result.name = tokens.get(1).getValue();
+               if (!TokenTypes.isIntegerTokenType(tokens.get(2).getType()) || Binary.stringToInt(tokens.get(2).getValue()) < 0) {
+                  result.addProblem(tokens.get(2).getStartPos(), "\"" + head.getValue()
+                     + "\" requires a non-negative integer size");
+               }
+            }
+         }
+         else if (direct == Directives.ALIGN || direct == Directives.SPACE) {
+            if (operands != 1) {
+               result.addProblem(head.getStartPos(), "\"" + head.getValue() + "\" requires one operand");
+            }
+            else if (!TokenTypes.isIntegerTokenType(tokens.get(1).getType()) || Binary.stringToInt(tokens.get(1).getValue()) < 0) {
+               result.addProblem(head.getStartPos(), "\"" + head.getValue() + "\" requires a non-negative integer");
+            }
+         }
+         else if (direct == Directives.GLOBL) {
+            if (operands == 0) {
+               result.addProblem(head.getStartPos(), "\"" + head.getValue()
+                  + "\" directive requires at least one argument.");
+            }
+            for (int i = 1; i < tokens.size(); i++) {
+               result.addReference(tokens.get(i));
+            }
+         }
+         else if (result.isDataDirective()) {
+            if (operands == 0) {
+               result.addProblem(head.getStartPos(), "\"" + head.getValue()
+                  + "\" directive requires at least one argument.");
+            }
+            else if (direct == Directives.ASCII || direct == Directives.ASCIIZ) {
+               for (int i = 1; i < tokens.size(); i++) {
+                  if (tokens.get(i).getType() != TokenTypes.QUOTED_STRING) {
+                     result.addProblem(tokens.get(i).getStartPos(), "\"" + tokens.get(i).getValue()
+                        + "\" is not a valid character string");
+                  }
+               }
+            }
+            else if (tokens.size() == 4 && tokens.get(2).getType() == TokenTypes.COLON) {
+               if (!TokenTypes.isIntegerTokenType(tokens.get(3).getType()) ||
+                   !(TokenTypes.isIntegerTokenType(tokens.get(1).getType()) ||
+                     Directives.isFloatingDirective(direct) && TokenTypes.isFloatingTokenType(tokens.get(1).getType()))) {
+                  result.addProblem(tokens.get(1).getStartPos(), "malformed expression");
+               }
+            }
+            else {
+               for (int i = 1; i < tokens.size(); i++) {
+                  checkNumeric(direct, tokens.get(i), result);
+               }
+            }
+         }
+      }
+
+       private void checkNumeric(Directives direct, Token token, LineResult result) {
+         TokenTypes type = token.getType();
+         if (Directives.isIntegerDirective(direct)) {
+            if (type == TokenTypes.IDENTIFIER) {
+               result.addReference(token);
+            }
+            else if (!TokenTypes.isIntegerTokenType(type)) {
+               result.addProblem(token.getStartPos(), "\"" + token.getValue()
+                  + "\" is not a valid integer constant or label");
+            }
+         }
+         else if (!TokenTypes.isIntegerTokenType(type) && !TokenTypes.isFloatingTokenType(type)) {
+            result.addProblem(token.getStartPos(), "\"" + token.getValue()
+               + "\" is not a valid floating point constant");
+         }
+      }
+
+      // A message, or for references the symbol name, with its position in the line.
+       private static class Problem {
+         int position;
+         String message;
+
+          Problem(int position, String message) {
+            this.position = position;
+            this.message = message;
+         }
+      }
+
+      // What is known about one source line.  Everything except lineNumber and
+      // shift depends only on the text of the line.
+       private static class LineResult implements Cloneable {
+         int lineNumber;
+         int shift;               // length of directive put in front of a continuation line
+         boolean continuation;    // could be a data directive continuation
+         String label;
+         int labelPosition;
+         String head;             // first token after the label
+         int headPosition;
+         String unknownHead;      // head that is not an operator or directive; may be a macro
+         String operator;
+         Directives directive;
+         String name;             // symbol defined by .macro, .eqv or .extern
+         String value;            // substitute text for .eqv
+         ArrayList problems = new ArrayList();
+         ArrayList references = new ArrayList();
+         ArrayList identifiers = new ArrayList(); // identifier tokens, for .eqv substitution
+
+          void addProblem(int position, String message) {
+            problems.add(new Problem(position, message));
+         }
+
+          void addReference(Token token) {
+            if (token.getType() == TokenTypes.IDENTIFIER) {
+               references.add(new Problem(token.getStartPos(), token.getValue()));
+            }
+         }
+
+          boolean isDataDirective() {
+            return directive == Directives.WORD || directive == Directives.HALF || directive == Directives.BYTE ||
+                   directive == Directives.FLOAT || directive == Directives.DOUBLE ||
+                   directive == Directives.ASCII || directive == Directives.ASCIIZ;
+         }
+
+          boolean usesAny(HashMap equivalents) {
+            for (int i = 0; i < identifiers.size(); i++) {
+               if (equivalents.containsKey(((Token) identifiers.get(i)).getValue())) {
+                  return true;
+               }
+            }
+            return false;
+         }
+
+         // Replace each .eqv symbol in the line by its substitute text.
+          String substitute(String text, HashMap equivalents) {
+            StringBuffer result = new StringBuffer(text);
+            for (int i = identifiers.size() - 1; i >= 0; i--) {
+               Token token = (Token) identifiers.get(i);
+               String value = (String) equivalents.get(token.getValue());
+               if (value != null) {
+                  int start = token.getStartPos() - 1;
+                  result.replace(start, start + token.getValue().length(), value);
+               }
+            }
+            return result.toString();
+         }
+
+         // Position in the source line of a position in the analyzed text.
+          int column(int position) {
+            return Math.max(1, position - shift);
+         }
+
+          LineResult copy() {
+            try {
+               LineResult result = (LineResult) clone();
+               result.lineNumber = 0;
+               result.shift = 0;
+               return result;
+            }
+                catch (CloneNotSupportedException e) {
+                  throw new InternalError();
+               }
+         }
+      }
+   }
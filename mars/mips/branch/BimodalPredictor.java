@@ -0,0 +1,40 @@
+   package mars.mips.branch;
+
+/**
+ * Predicts conditional branches with a table of saturating counters indexed by
+ * branch address, like the branch history table of the BHT Simulator tool.  With
+ * 1 bit counters a branch is predicted to do what it did last time; 2 bit counters
+ * must be wrong twice in a row before the prediction changes.  Counters start
+ * out predicting not taken.
+ */
+
+    public class BimodalPredictor extends BranchPredictor {
+
+      private byte[] counters;
+      private int mask;
+      private int max;
+      private int threshold;
+
+   /**
+    * @param entries number of counters, a power of two
+    * @param bits bits per counter, 1 or 2
+    */
+       public BimodalPredictor(int entries, int bits) {
+         super("bimodal:"+entries+":"+bits);
+         counters = new byte[entries];
+         mask = entries - 1;
+         max = (1 << bits) - 1;
+         threshold = 1 << (bits - 1);
+      }
+
+       public int resolve(int pc, int flags, int target) {
+         if (!isConditional(flags)) {
+            return NOT_PREDICTED;
+         }
+         int i = (pc >>> 2) & mask;
+         boolean taken = isTaken(flags);
+         boolean predictTaken = counters[i] >= threshold;
+         counters[i] = count(counters[i], taken, max);
+         return (predictTaken == taken) ? CORRECT : MISPREDICTED;
+      }
+   }
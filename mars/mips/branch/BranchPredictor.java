@@ -0,0 +1,142 @@
+   package mars.mips.branch;
+
+   import mars.mips.hardware.MemoryAccessRecorder;
+
+/**
+ * Base class of the branch predictors evaluated by BranchPredictorEvaluator.  A
+ * predictor is shown every executed branch and jump in program order, together
+ * with its outcome, and says whether it would have predicted it correctly before
+ * updating its state.  Predictors keep their state in primitive arrays.
+ * <p>
+ * A predictor is written as <code>name:parameters</code>:
+ * <ul>
+ * <li><code>bimodal:&lt;entries&gt;[:&lt;bits&gt;]</code> -- table of 1 or 2 (default) bit counters indexed by address</li>
+ * <li><code>gshare:&lt;entries&gt;:&lt;history&gt;</code> -- 2 bit counters indexed by address xor global history</li>
+ * <li><code>tournament:&lt;entries&gt;:&lt;history&gt;</code> -- bimodal and gshare with a chooser table</li>
+ * <li><code>btb:&lt;entries&gt;</code> -- direct mapped branch target buffer</li>
+ * <li><code>ras:&lt;depth&gt;</code> -- return address stack</li>
+ * </ul>
+ * Entries must be a power of two.
+ *
+ * @see BranchPredictorEvaluator
+ */
+
+    public abstract class BranchPredictor {
+
+      /** Result of resolve(): the predictor does not predict this kind of branch. */
+      public static final int NOT_PREDICTED = 0;
+      /** Result of resolve(): the prediction was right. */
+      public static final int CORRECT = 1;
+      /** Result of resolve(): the prediction was wrong. */
+      public static final int MISPREDICTED = 2;
+
+      private String description;
+
+   /**
+    * @param description the predictor as written in a specification
+    */
+       protected BranchPredictor(String description) {
+         this.description = description;
+      }
+
+   /**
+    * Predict an executed branch or jump, then learn its outcome.
+    * @param pc address of the branch instruction
+    * @param flags MemoryAccessRecorder BRANCH_ flags giving kind and outcome
+    * @param target address of the next instruction if taken
+    * @return NOT_PREDICTED, CORRECT or MISPREDICTED
+    */
+       public abstract int resolve(int pc, int flags, int target);
+
+   /**
+    * @return the predictor as written in a specification
+    */
+       public String toString() {
+         return description;
+      }
+
+   /**
+    * Create a predictor from its specification; see the class comment.
+    * @param spec the specification
+    * @return a new predictor in its initial state
+    * @throws IllegalArgumentException if spec is not valid
+    */
+       public static BranchPredictor parse(String spec) {
+         String[] parts = spec.trim().toLowerCase().split(":");
+         int[] values = new int[parts.length - 1];
+         for (int i = 1; i < parts.length; i++) {
+            try {
+               values[i - 1] = Integer.parseInt(parts[i]);
+            }
+                catch (NumberFormatException e) {
+                  throw new IllegalArgumentException("branch predictor \""+spec+"\": invalid number \""+parts[i]+"\"");
+               }
+         }
+         String name = parts[0];
+         if (name.equals("bimodal") && (values.length == 1 || values.length == 2)) {
+            int bits = (values.length == 2) ? values[1] : 2;
+            if (bits != 1 && bits != 2) {
+               throw new IllegalArgumentException("branch predictor \""+spec+"\": counters must have 1 or 2 bits");
+            }
+            return new BimodalPredictor(checkEntries(values[0], spec), bits);
+         }
+         if (name.equals("gshare") && values.length == 2) {
+            return new GsharePredictor(checkEntries(values[0], spec), checkHistory(values[1], spec));
+         }
+         if (name.equals("tournament") && values.length == 2) {
+            return new TournamentPredictor(checkEntries(values[0], spec), checkHistory(values[1], spec));
+         }
+         if (name.equals("btb") && values.length == 1) {
+            return new BranchTargetBuffer(checkEntries(values[0], spec));
+         }
+         if (name.equals("ras") && values.length == 1 && values[0] > 0) {
+            return new ReturnAddressStack(values[0]);
+         }
+         throw new IllegalArgumentException("branch predictor \""+spec+"\" is not bimodal:<entries>[:<bits>], "
+            + "gshare:<entries>:<history>, tournament:<entries>:<history>, btb:<entries> or ras:<depth>");
+      }
+
+       private static int checkEntries(int entries, String spec) {
+         if (entries <= 0 || (entries & (entries - 1)) != 0) {
+            throw new IllegalArgumentException("branch predictor \""+spec+"\": entries must be a power of two");
+         }
+         return entries;
+      }
+
+       private static int checkHistory(int history, String spec) {
+         if (history < 0 || history > 30) {
+            throw new IllegalArgumentException("branch predictor \""+spec+"\": history must be 0 to 30 bits");
+         }
+         return history;
+      }
+
+   /**
+    * @param flags MemoryAccessRecorder BRANCH_ flags
+    * @return true if the flags are those of a conditional branch
+    */
+       protected static boolean isConditional(int flags) {
+         return (flags & MemoryAccessRecorder.BRANCH_CONDITIONAL) != 0;
+      }
+
+   /**
+    * @param flags MemoryAccessRecorder BRANCH_ flags
+    * @return true if the branch was taken
+    */
+       protected static boolean isTaken(int flags) {
+         return (flags & MemoryAccessRecorder.BRANCH_TAKEN) != 0;
+      }
+
+   /**
+    * Next value of a saturating counter.
+    * @param counter current value
+    * @param taken outcome: count up if taken, down if not
+    * @param max largest value
+    * @return new value
+    */
+       protected static byte count(byte counter, boolean taken, int max) {
+         if (taken) {
+            return (counter < max) ? (byte) (counter + 1) : counter;
+         }
+         return (counter > 0) ? (byte) (counter - 1) : counter;
+      }
+   }
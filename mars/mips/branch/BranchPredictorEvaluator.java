@@ -0,0 +1,211 @@
+   package mars.mips.branch;
+
+   import mars.mips.hardware.MemoryAccessRecorder;
+   import mars.util.AddressIndex;
+   import mars.util.Binary;
+   import java.io.*;
+   import java.util.*;
+
+/**
+ * Runs any number of branch predictors side by side over the branch outcomes
+ * recorded by a MemoryAccessRecorder (live or replayed from a trace), and keeps
+ * totals and per-branch counts of their mispredictions.  Counts are kept in
+ * primitive arrays indexed by branch, numbered by an AddressIndex, so nothing is
+ * allocated per branch executed.
+ *
+ * @see BranchPredictor
+ */
+
+    public class BranchPredictorEvaluator implements MemoryAccessRecorder.Sink {
+
+      private static final int INITIAL_BRANCHES = 256;
+
+      private BranchPredictor[] predictors;
+      private int currentPc;
+
+      // per branch, in order of first execution
+      private AddressIndex branches;
+      private int[] branchFlags;       // BRANCH_ flags seen, other than BRANCH_TAKEN
+      private long[] executed;
+      private long[] taken;
+      private long[] mispredicted;     // [branch * predictors.length + predictor]
+
+      // per predictor
+      private long[] predicted;
+      private long[] totalMispredicted;
+
+   /**
+    * Create an evaluator for the given predictors.
+    * @param predictors list of BranchPredictor
+    */
+       public BranchPredictorEvaluator(List predictors) {
+         this.predictors = (BranchPredictor[]) predictors.toArray(new BranchPredictor[predictors.size()]);
+         branches = new AddressIndex(INITIAL_BRANCHES);
+         branchFlags = new int[INITIAL_BRANCHES];
+         executed = new long[INITIAL_BRANCHES];
+         taken = new long[INITIAL_BRANCHES];
+         mispredicted = new long[INITIAL_BRANCHES * this.predictors.length];
+         predicted = new long[this.predictors.length];
+         totalMispredicted = new long[this.predictors.length];
+      }
+
+   /**
+    * Read predictor specifications from a file, one per line.  Blank lines and
+    * anything following # are ignored.
+    * @param file the file
+    * @return list of BranchPredictor
+    * @throws IOException if the file cannot be read
+    * @throws IllegalArgumentException if a specification is not valid
+    */
+       public static ArrayList readPredictors(File file) throws IOException {
+         ArrayList list = new ArrayList();
+         BufferedReader in = new BufferedReader(new FileReader(file));
+         try {
+            String line;
+            while ((line = in.readLine()) != null) {
+               int comment = line.indexOf('#');
+               if (comment >= 0) {
+                  line = line.substring(0, comment);
+               }
+               if (line.trim().length() > 0) {
+                  list.add(BranchPredictor.parse(line));
+               }
+            }
+         }
+         finally {
+            in.close();
+         }
+         return list;
+      }
+
+   /**
+    * Show each branch in the batch to every predictor.  Other accesses are
+    * ignored, except instruction fetches which give the address of the branch.
+    */
+       public void accessBatch(int[] addresses, byte[] types, int count) {
+         int n = predictors.length;
+         for (int i = 0; i < count; i++) {
+            int kind = MemoryAccessRecorder.getKind(types[i]);
+            if (kind == MemoryAccessRecorder.INSTRUCTION_FETCH) {
+               currentPc = addresses[i];
+            }
+            else if (kind == MemoryAccessRecorder.BRANCH) {
+               int flags = MemoryAccessRecorder.getBranchFlags(types[i]);
+               int branch = findBranch(currentPc);
+               executed[branch]++;
+               if ((flags & MemoryAccessRecorder.BRANCH_TAKEN) != 0) {
+                  taken[branch]++;
+               }
+               branchFlags[branch] |= flags & ~MemoryAccessRecorder.BRANCH_TAKEN;
+               for (int p = 0; p < n; p++) {
+                  int result = predictors[p].resolve(currentPc, flags, addresses[i]);
+                  if (result != BranchPredictor.NOT_PREDICTED) {
+                     predicted[p]++;
+                     if (result == BranchPredictor.MISPREDICTED) {
+                        totalMispredicted[p]++;
+                        mispredicted[branch * n + p]++;
+                     }
+                  }
+               }
+            }
+         }
+      }
+
+      // Number of the branch at the given address, making room for it if new.
+       private int findBranch(int address) {
+         int branch = branches.indexOf(address);
+         if (branch == executed.length) {
+            int capacity = 2 * branch;
+            branchFlags = copyOf(branchFlags, capacity);
+            executed = copyOf(executed, capacity);
+            taken = copyOf(taken, capacity);
+            mispredicted = copyOf(mispredicted, capacity * predictors.length);
+         }
+         return branch;
+      }
+
+       private static int[] copyOf(int[] array, int length) {
+         int[] copy = new int[length];
+         System.arraycopy(array, 0, copy, 0, array.length);
+         return copy;
+      }
+
+       private static long[] copyOf(long[] array, int length) {
+         long[] copy = new long[length];
+         System.arraycopy(array, 0, copy, 0, array.length);
+         return copy;
+      }
+
+   /**
+    * @return the predictors, in the order given
+    */
+       public BranchPredictor[] getPredictors() {
+         return predictors;
+      }
+
+   /**
+    * @param predictor index of a predictor
+    * @return number of branches it predicted
+    */
+       public long getPredicted(int predictor) {
+         return predicted[predictor];
+      }
+
+   /**
+    * @param predictor index of a predictor
+    * @return number of branches it mispredicted
+    */
+       public long getMispredicted(int predictor) {
+         return totalMispredicted[predictor];
+      }
+
+   /**
+    * Print one summary line per predictor, then one line per branch address
+    * (in address order) with its kind, execution and taken counts and the number
+    * of mispredictions by each predictor.
+    * @param out where to print
+    */
+       public void printReport(PrintStream out) {
+         for (int p = 0; p < predictors.length; p++) {
+            out.println(predictors[p]+"  mispredicted "+totalMispredicted[p]+" of "+predicted[p]
+               +" ("+percent(totalMispredicted[p], predicted[p])+")");
+         }
+         out.println();
+         StringBuffer heading = new StringBuffer("address\tkind\texecuted\ttaken");
+         for (int p = 0; p < predictors.length; p++) {
+            heading.append('\t').append(predictors[p]);
+         }
+         out.println(heading);
+         int[] order = branches.getIndexesInAddressOrder();
+         for (int i = 0; i < order.length; i++) {
+            int branch = order[i];
+            StringBuffer line = new StringBuffer(Binary.intToHexString(branches.getAddress(branch)));
+            line.append('\t').append(kindName(branchFlags[branch]));
+            line.append('\t').append(executed[branch]).append('\t').append(taken[branch]);
+            for (int p = 0; p < predictors.length; p++) {
+               line.append('\t').append(mispredicted[branch * predictors.length + p]);
+            }
+            out.println(line);
+         }
+      }
+
+       private static String kindName(int flags) {
+         if ((flags & MemoryAccessRecorder.BRANCH_RETURN) != 0) {
+            return "return";
+         }
+         if ((flags & MemoryAccessRecorder.BRANCH_CALL) != 0) {
+            return ((flags & MemoryAccessRecorder.BRANCH_CONDITIONAL) != 0) ? "branch-call" : "call";
+         }
+         return ((flags & MemoryAccessRecorder.BRANCH_CONDITIONAL) != 0) ? "branch" : "jump";
+      }
+
+      // Percentage with three decimals.
+       private static String percent(long part, long whole) {
+         long thousandths = (whole == 0) ? 0 : Math.round(part * 100000.0 / whole);
+         String fraction = String.valueOf(thousandths % 1000);
+         while (fraction.length() < 3) {
+            fraction = "0" + fraction;
+         }
+         return (thousandths / 1000)+"."+fraction+"%";
+      }
+   }
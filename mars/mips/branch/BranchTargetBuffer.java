@@ -0,0 +1,43 @@
+   package mars.mips.branch;
+
+/**
+ * Direct mapped branch target buffer.  Every branch and jump looks up its address;
+ * a hit predicts that it is taken to the stored target, a miss that it falls
+ * through.  Taken branches store their target.  The prediction is correct when
+ * both direction and target are right.
+ */
+
+    public class BranchTargetBuffer extends BranchPredictor {
+
+      private static final int EMPTY = 1; // never the address of an instruction
+
+      private int[] tags;
+      private int[] targets;
+      private int mask;
+
+   /**
+    * @param entries number of entries, a power of two
+    */
+       public BranchTargetBuffer(int entries) {
+         super("btb:"+entries);
+         tags = new int[entries];
+         targets = new int[entries];
+         mask = entries - 1;
+         java.util.Arrays.fill(tags, EMPTY);
+      }
+
+       public int resolve(int pc, int flags, int target) {
+         int i = (pc >>> 2) & mask;
+         boolean hit = tags[i] == pc;
+         boolean correct;
+         if (isTaken(flags)) {
+            correct = hit && targets[i] == target;
+            tags[i] = pc;
+            targets[i] = target;
+         }
+         else {
+            correct = !hit;
+         }
+         return correct ? CORRECT : MISPREDICTED;
+      }
+   }
@@ -0,0 +1,39 @@
+   package mars.mips.branch;
+
+/**
+ * Predicts conditional branches with 2 bit saturating counters indexed by the
+ * branch address exclusive-ored with the global history of recent branch
+ * outcomes, so that branches correlated with the branches before them are
+ * learned.
+ */
+
+    public class GsharePredictor extends BranchPredictor {
+
+      private byte[] counters;
+      private int mask;
+      private int historyMask;
+      private int history;
+
+   /**
+    * @param entries number of counters, a power of two
+    * @param historyBits number of recent outcomes kept in the global history
+    */
+       public GsharePredictor(int entries, int historyBits) {
+         super("gshare:"+entries+":"+historyBits);
+         counters = new byte[entries];
+         mask = entries - 1;
+         historyMask = (1 << historyBits) - 1;
+      }
+
+       public int resolve(int pc, int flags, int target) {
+         if (!isConditional(flags)) {
+            return NOT_PREDICTED;
+         }
+         int i = ((pc >>> 2) ^ history) & mask;
+         boolean taken = isTaken(flags);
+         boolean predictTaken = counters[i] >= 2;
+         counters[i] = count(counters[i], taken, 3);
+         history = ((history << 1) | (taken ? 1 : 0)) & historyMask;
+         return (predictTaken == taken) ? CORRECT : MISPREDICTED;
+      }
+   }
@@ -0,0 +1,44 @@
+   package mars.mips.branch;
+
+   import mars.mips.hardware.MemoryAccessRecorder;
+
+/**
+ * Predicts the targets of procedure returns.  Each call pushes its own address on
+ * a circular stack of fixed depth, overwriting the oldest entry when full, and
+ * each return pops it.  A return is predicted correctly if it goes to the
+ * instruction after the call, or after the call's delay slot when delayed
+ * branching is on.  Other branches are not predicted.
+ */
+
+    public class ReturnAddressStack extends BranchPredictor {
+
+      private int[] stack;
+      private int top;   // index of next free slot, modulo depth
+      private int size;  // number of valid entries
+
+   /**
+    * @param depth number of entries
+    */
+       public ReturnAddressStack(int depth) {
+         super("ras:"+depth);
+         stack = new int[depth];
+      }
+
+       public int resolve(int pc, int flags, int target) {
+         if ((flags & MemoryAccessRecorder.BRANCH_RETURN) != 0) {
+            if (size == 0) {
+               return MISPREDICTED;
+            }
+            top = (top + stack.length - 1) % stack.length;
+            size--;
+            int offset = target - stack[top];
+            return (offset == 4 || offset == 8) ? CORRECT : MISPREDICTED;
+         }
+         if ((flags & MemoryAccessRecorder.BRANCH_CALL) != 0 && isTaken(flags)) {
+            stack[top] = pc;
+            top = (top + 1) % stack.length;
+            size = Math.min(size + 1, stack.length);
+         }
+         return NOT_PREDICTED;
+      }
+   }
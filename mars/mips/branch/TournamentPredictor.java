@@ -0,0 +1,49 @@
+   package mars.mips.branch;
+
+/**
+ * Combines a bimodal and a gshare predictor, both with 2 bit counters.  A third
+ * table of 2 bit counters, indexed by branch address, learns for each branch
+ * which of the two has been predicting it better.
+ */
+
+    public class TournamentPredictor extends BranchPredictor {
+
+      private byte[] local;
+      private byte[] global;
+      private byte[] chooser; // 2 or more: use global
+      private int mask;
+      private int historyMask;
+      private int history;
+
+   /**
+    * @param entries number of counters in each table, a power of two
+    * @param historyBits number of recent outcomes kept in the global history
+    */
+       public TournamentPredictor(int entries, int historyBits) {
+         super("tournament:"+entries+":"+historyBits);
+         local = new byte[entries];
+         global = new byte[entries];
+         chooser = new byte[entries];
+         mask = entries - 1;
+         historyMask = (1 << historyBits) - 1;
+      }
+
+       public int resolve(int pc, int flags, int target) {
+         if (!isConditional(flags)) {
+            return NOT_PREDICTED;
+         }
+         int l = (pc >>> 2) & mask;
+         int g = ((pc >>> 2) ^ history) & mask;
+         boolean taken = isTaken(flags);
+         boolean localTaken = local[l] >= 2;
+         boolean globalTaken = global[g] >= 2;
+         boolean predictTaken = (chooser[l] >= 2) ? globalTaken : localTaken;
+         if (localTaken != globalTaken) {
+            chooser[l] = count(chooser[l], globalTaken == taken, 3);
+         }
+         local[l] = count(local[l], taken, 3);
+         global[g] = count(global[g], taken, 3);
+         history = ((history << 1) | (taken ? 1 : 0)) & historyMask;
+         return (predictTaken == taken) ? CORRECT : MISPREDICTED;
+      }
+   }
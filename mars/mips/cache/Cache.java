@@ -0,0 +1,258 @@
+   package mars.mips.cache;
+
+/**
+ * One level of a simulated cache.  Only tags are modelled, not data: the cache
+ * decides hit or miss for each access and counts the traffic it sends to the
+ * next level, which is another Cache or, if there is none, main memory.
+ * <p>
+ * All state is kept in primitive arrays indexed by set*ways+way, so a cache of
+ * any size is a handful of objects and an access allocates nothing.  A block is
+ * tagged with its block number (address divided by block size); an invalid
+ * block has tag -1, which no block number can be since the block size is at
+ * least 4.
+ *
+ * @see CacheConfiguration
+ * @see CacheHierarchy
+ */
+
+    public class Cache {
+
+      private static final int INVALID = -1;
+
+      private CacheConfiguration configuration;
+      private Cache next;
+      private int ways;
+      private int blockShift;
+      private int setMask;
+      private int replacement;
+      private boolean writeBack;
+      private int plruLevels;
+
+      private int[] tags;
+      private boolean[] dirty;
+      private long[] lastUse;        // LRU: time of last access to each block
+      private int[] fillPointer;     // FIFO: next way to replace in each set
+      private boolean[] plruBits;    // PLRU: tree node bits, nodes 1..ways-1 of each set
+      private long useCounter;
+      private int randomState;
+
+      private long reads;
+      private long writes;
+      private long readMisses;
+      private long writeMisses;
+      private long writebacks;
+      private boolean lastAccessHit;
+
+   /**
+    * Create an empty cache.
+    * @param configuration geometry and policies
+    * @param next the next level, or null if misses go to main memory
+    */
+       public Cache(CacheConfiguration configuration, Cache next) {
+         this.configuration = configuration;
+         this.next = next;
+         ways = configuration.getWays();
+         blockShift = Integer.numberOfTrailingZeros(configuration.getBlockSize());
+         setMask = configuration.getSets() - 1;
+         replacement = configuration.getReplacement();
+         writeBack = configuration.isWriteBack();
+         plruLevels = Integer.numberOfTrailingZeros(ways);
+         int blocks = configuration.getSets() * ways;
+         tags = new int[blocks];
+         dirty = new boolean[blocks];
+         if (replacement == CacheConfiguration.LRU) {
+            lastUse = new long[blocks];
+         }
+         else if (replacement == CacheConfiguration.FIFO) {
+            fillPointer = new int[configuration.getSets()];
+         }
+         else if (replacement == CacheConfiguration.PLRU) {
+            plruBits = new boolean[blocks];
+         }
+         reset();
+      }
+
+   /**
+    * Invalidate all blocks and clear the statistics.
+    */
+       public void reset() {
+         java.util.Arrays.fill(tags, INVALID);
+         java.util.Arrays.fill(dirty, false);
+         if (lastUse != null) java.util.Arrays.fill(lastUse, 0);
+         if (fillPointer != null) java.util.Arrays.fill(fillPointer, 0);
+         if (plruBits != null) java.util.Arrays.fill(plruBits, false);
+         useCounter = 0;
+         randomState = 0x2545F491;
+         reads = writes = readMisses = writeMisses = writebacks = 0;
+      }
+
+   /**
+    * Simulate one access.  Accesses never span blocks since MIPS accesses are
+    * aligned and blocks are at least a word.
+    * @param address byte address
+    * @param write true for a store, false for a load or instruction fetch
+    * @return true if the access hit
+    */
+       public boolean access(int address, boolean write) {
+         int block = address >>> blockShift;
+         int base = (block & setMask) * ways;
+         if (write) {
+            writes++;
+         }
+         else {
+            reads++;
+         }
+         for (int i = base; i < base + ways; i++) {
+            if (tags[i] == block) {
+               touch(base, i - base);
+               lastAccessHit = true;
+               if (write) {
+                  if (writeBack) {
+                     dirty[i] = true;
+                  }
+                  else if (next != null) {
+                     next.access(address, true);
+                  }
+               }
+               return true;
+            }
+         }
+         lastAccessHit = false;
+         if (write) {
+            writeMisses++;
+            if (!writeBack) {
+               // no-write-allocate: the store goes straight to the next level
+               if (next != null) {
+                  next.access(address, true);
+               }
+               return false;
+            }
+         }
+         else {
+            readMisses++;
+         }
+         int way = chooseVictim(base);
+         int i = base + way;
+         if (tags[i] != INVALID && dirty[i]) {
+            writebacks++;
+            if (next != null) {
+               next.access(tags[i] << blockShift, true);
+            }
+         }
+         if (next != null) {
+            next.access(address, false);
+         }
+         tags[i] = block;
+         dirty[i] = write;
+         if (replacement == CacheConfiguration.FIFO) {
+            fillPointer[base / ways] = (way + 1) & (ways - 1);
+         }
+         touch(base, way);
+         return false;
+      }
+
+      // Replacement state update for an access to the given way of the set starting at base.
+       private void touch(int base, int way) {
+         if (replacement == CacheConfiguration.LRU) {
+            lastUse[base + way] = ++useCounter;
+         }
+         else if (replacement == CacheConfiguration.PLRU) {
+            // point every node on the path away from this way
+            int node = 1;
+            for (int level = plruLevels - 1; level >= 0; level--) {
+               int bit = (way >> level) & 1;
+               plruBits[base + node] = (bit == 0);
+               node = 2 * node + bit;
+            }
+         }
+      }
+
+      // Way to fill on a miss: an invalid block if there is one, else per policy.
+       private int chooseVictim(int base) {
+         for (int way = 0; way < ways; way++) {
+            if (tags[base + way] == INVALID) {
+               return way;
+            }
+         }
+         switch (replacement) {
+            case CacheConfiguration.LRU:
+               int oldest = 0;
+               for (int way = 1; way < ways; way++) {
+                  if (lastUse[base + way] < lastUse[base + oldest]) {
+                     oldest = way;
+                  }
+               }
+               return oldest;
+            case CacheConfiguration.FIFO:
+               return fillPointer[base / ways];
+            case CacheConfiguration.RANDOM:
+               // xorshift, so that runs are repeatable
+               randomState ^= randomState << 13;
+               randomState ^= randomState >>> 17;
+               randomState ^= randomState << 5;
+               return randomState & (ways - 1);
+            default:
+               int node = 1;
+               for (int level = 0; level < plruLevels; level++) {
+                  node = 2 * node + (plruBits[base + node] ? 1 : 0);
+               }
+               return node - ways;
+         }
+      }
+
+   /** @return true if the most recent access hit */
+       public boolean wasLastAccessHit() {
+         return lastAccessHit;
+      }
+
+   /** @return the configuration of this cache */
+       public CacheConfiguration getConfiguration() {
+         return configuration;
+      }
+
+   /** @return the next level, or null if this is the last level */
+       public Cache getNext() {
+         return next;
+      }
+
+   /** @return number of loads and instruction fetches */
+       public long getReads() {
+         return reads;
+      }
+
+   /** @return number of stores */
+       public long getWrites() {
+         return writes;
+      }
+
+   /** @return number of accesses */
+       public long getAccesses() {
+         return reads + writes;
+      }
+
+   /** @return number of loads and instruction fetches that missed */
+       public long getReadMisses() {
+         return readMisses;
+      }
+
+   /** @return number of stores that missed */
+       public long getWriteMisses() {
+         return writeMisses;
+      }
+
+   /** @return number of accesses that missed */
+       public long getMisses() {
+         return readMisses + writeMisses;
+      }
+
+   /** @return fraction of accesses that missed, 0 if there were none */
+       public double getMissRate() {
+         long accesses = getAccesses();
+         return (accesses == 0) ? 0 : (double) getMisses() / accesses;
+      }
+
+   /** @return number of dirty blocks written back on replacement */
+       public long getWritebacks() {
+         return writebacks;
+      }
+   }
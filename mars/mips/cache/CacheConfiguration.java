@@ -0,0 +1,174 @@
+   package mars.mips.cache;
+
+/**
+ * Geometry and policies of one simulated cache.  A configuration is written as
+ * <code>size/block/ways[/replacement][/write]</code>, for instance
+ * <code>16K/32/4/lru/wb</code>:
+ * <ul>
+ * <li>size: total data capacity in bytes, optionally with suffix K or M</li>
+ * <li>block: block (line) size in bytes, at least 4</li>
+ * <li>ways: associativity; 1 for direct mapped, or "full" for fully associative</li>
+ * <li>replacement: lru (default), fifo, random or plru</li>
+ * <li>write: wb for write-back with write-allocate (default), or wt for
+ * write-through with no-write-allocate</li>
+ * </ul>
+ * Size, block and ways must be powers of two.
+ */
+
+    public class CacheConfiguration {
+
+      /** Replace the least recently used block of the set. */
+      public static final int LRU = 0;
+      /** Replace the block of the set that was filled first. */
+      public static final int FIFO = 1;
+      /** Replace a pseudo-randomly chosen block of the set. */
+      public static final int RANDOM = 2;
+      /** Replace the block chosen by a binary tree of bits (tree pseudo-LRU). */
+      public static final int PLRU = 3;
+
+      private static final String[] REPLACEMENT_NAMES = {"lru", "fifo", "random", "plru"};
+
+      private int size;
+      private int blockSize;
+      private int ways;
+      private int replacement;
+      private boolean writeBack;
+
+   /**
+    * Create a configuration.
+    * @param size capacity in bytes
+    * @param blockSize block size in bytes
+    * @param ways associativity, equal to size/blockSize for fully associative
+    * @param replacement LRU, FIFO, RANDOM or PLRU
+    * @param writeBack true for write-back/write-allocate, false for write-through/no-write-allocate
+    * @throws IllegalArgumentException if the geometry is not valid
+    */
+       public CacheConfiguration(int size, int blockSize, int ways, int replacement, boolean writeBack) {
+         if (!isPowerOfTwo(size) || !isPowerOfTwo(blockSize) || !isPowerOfTwo(ways)) {
+            throw new IllegalArgumentException("cache size, block size and ways must be powers of two");
+         }
+         if (blockSize < 4) {
+            throw new IllegalArgumentException("cache block size must be at least 4 bytes");
+         }
+         if (ways > size / blockSize) {
+            throw new IllegalArgumentException("cache has fewer than "+ways+" blocks");
+         }
+         if (replacement < LRU || replacement > PLRU) {
+            throw new IllegalArgumentException("invalid replacement policy "+replacement);
+         }
+         this.size = size;
+         this.blockSize = blockSize;
+         this.ways = ways;
+         this.replacement = replacement;
+         this.writeBack = writeBack;
+      }
+
+   /**
+    * Parse a configuration written as <code>size/block/ways[/replacement][/write]</code>.
+    * @param spec the configuration
+    * @return the configuration
+    * @throws IllegalArgumentException if spec is not valid
+    */
+       public static CacheConfiguration parse(String spec) {
+         String[] parts = spec.trim().toLowerCase().split("/");
+         if (parts.length < 3 || parts.length > 5) {
+            throw new IllegalArgumentException("cache \""+spec+"\" is not size/block/ways[/replacement][/write]");
+         }
+         int size = parseSize(parts[0], spec);
+         int blockSize = parseSize(parts[1], spec);
+         int ways = parts[2].equals("full") ? size / Math.max(1, blockSize) : parseSize(parts[2], spec);
+         int replacement = LRU;
+         boolean writeBack = true;
+         for (int i = 3; i < parts.length; i++) {
+            if (parts[i].equals("wb")) {
+               writeBack = true;
+            }
+            else if (parts[i].equals("wt")) {
+               writeBack = false;
+            }
+            else {
+               replacement = -1;
+               for (int r = 0; r < REPLACEMENT_NAMES.length; r++) {
+                  if (parts[i].equals(REPLACEMENT_NAMES[r])) {
+                     replacement = r;
+                  }
+               }
+               if (replacement < 0) {
+                  throw new IllegalArgumentException("cache \""+spec+"\": unknown policy \""+parts[i]+"\"");
+               }
+            }
+         }
+         return new CacheConfiguration(size, blockSize, ways, replacement, writeBack);
+      }
+
+       private static int parseSize(String s, String spec) {
+         int multiplier = 1;
+         if (s.endsWith("k")) {
+            multiplier = 1024;
+            s = s.substring(0, s.length() - 1);
+         }
+         else if (s.endsWith("m")) {
+            multiplier = 1024 * 1024;
+            s = s.substring(0, s.length() - 1);
+         }
+         try {
+            return Integer.parseInt(s) * multiplier;
+         }
+             catch (NumberFormatException e) {
+               throw new IllegalArgumentException("cache \""+spec+"\": invalid number \""+s+"\"");
+            }
+      }
+
+       private static boolean isPowerOfTwo(int n) {
+         return n > 0 && (n & (n - 1)) == 0;
+      }
+
+   /** @return capacity in bytes */
+       public int getSize() {
+         return size;
+      }
+
+   /** @return block size in bytes */
+       public int getBlockSize() {
+         return blockSize;
+      }
+
+   /** @return associativity */
+       public int getWays() {
+         return ways;
+      }
+
+   /** @return number of sets */
+       public int getSets() {
+         return size / blockSize / ways;
+      }
+
+   /** @return replacement policy: LRU, FIFO, RANDOM or PLRU */
+       public int getReplacement() {
+         return replacement;
+      }
+
+   /** @return true for write-back/write-allocate, false for write-through/no-write-allocate */
+       public boolean isWriteBack() {
+         return writeBack;
+      }
+
+   /**
+    * @return the configuration in the form accepted by parse()
+    */
+       public String toString() {
+         String waysText = (getSets() == 1 && ways > 1) ? "full" : String.valueOf(ways);
+         return sizeText(size)+"/"+blockSize+"/"+waysText+"/"+REPLACEMENT_NAMES[replacement]
+            +(writeBack ? "/wb" : "/wt");
+      }
+
+       private static String sizeText(int n) {
+         if (n % (1024 * 1024) == 0) {
+            return (n / (1024 * 1024))+"M";
+         }
+         if (n % 1024 == 0) {
+            return (n / 1024)+"K";
+         }
+         return String.valueOf(n);
+      }
+   }
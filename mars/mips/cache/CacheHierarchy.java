@@ -0,0 +1,198 @@
+   package mars.mips.cache;
+
+   import mars.mips.hardware.MemoryAccessRecorder;
+
+/**
+ * A first level cache, unified or split into instruction and data caches, with
+ * an optional unified second level, fed from the memory accesses recorded by a
+ * MemoryAccessRecorder.  A hierarchy is written as comma separated levels:
+ * <ul>
+ * <li><code>l1=16K/32/4</code> -- unified first level</li>
+ * <li><code>i=8K/32/2,d=8K/32/4/plru</code> -- split first level</li>
+ * <li><code>...,l2=256K/64/8</code> -- unified second level</li>
+ * </ul>
+ * A level is described as in CacheConfiguration.  A bare configuration with no
+ * level name is taken as a unified first level.
+ *
+ * @see CacheConfiguration
+ */
+
+    public class CacheHierarchy implements MemoryAccessRecorder.Sink {
+
+      /** Result of access(): served by the first level cache. */
+      public static final int FIRST_LEVEL = 1;
+      /** Result of access(): missed in the first level, served by the second. */
+      public static final int SECOND_LEVEL = 2;
+      /** Result of access(): served by main memory. */
+      public static final int MEMORY = 3;
+
+      private String description;
+      private Cache instructionCache;
+      private Cache dataCache;
+      private Cache secondLevel;
+
+   /**
+    * Create a hierarchy.
+    * @param instructionCache first level for instruction fetches
+    * @param dataCache first level for loads and stores; same as instructionCache if unified
+    * @param secondLevel second level, or null if none.  Must be the next level of both first level caches.
+    * @param description name used in reports
+    */
+       public CacheHierarchy(Cache instructionCache, Cache dataCache, Cache secondLevel, String description) {
+         this.instructionCache = instructionCache;
+         this.dataCache = dataCache;
+         this.secondLevel = secondLevel;
+         this.description = description;
+      }
+
+   /**
+    * Parse a hierarchy description; see the class comment.
+    * @param spec the description
+    * @return an empty hierarchy
+    * @throws IllegalArgumentException if spec is not valid
+    */
+       public static CacheHierarchy parse(String spec) {
+         CacheConfiguration unified = null, instruction = null, data = null, second = null;
+         String[] levels = spec.trim().split(",");
+         for (int i = 0; i < levels.length; i++) {
+            String level = levels[i].trim();
+            int equals = level.indexOf('=');
+            String name = (equals < 0) ? "l1" : level.substring(0, equals).trim().toLowerCase();
+            CacheConfiguration configuration = CacheConfiguration.parse(level.substring(equals + 1));
+            if (name.equals("l1")) {
+               unified = configuration;
+            }
+            else if (name.equals("i") || name.equals("l1i")) {
+               instruction = configuration;
+            }
+            else if (name.equals("d") || name.equals("l1d")) {
+               data = configuration;
+            }
+            else if (name.equals("l2")) {
+               second = configuration;
+            }
+            else {
+               throw new IllegalArgumentException("cache hierarchy \""+spec+"\": unknown level \""+name+"\"");
+            }
+         }
+         if (unified != null && (instruction != null || data != null)) {
+            throw new IllegalArgumentException("cache hierarchy \""+spec+"\" has both unified and split first level");
+         }
+         if (unified == null && (instruction == null || data == null)) {
+            throw new IllegalArgumentException("cache hierarchy \""+spec+"\" needs l1, or both i and d");
+         }
+         Cache secondLevel = (second == null) ? null : new Cache(second, null);
+         Cache instructionCache, dataCache;
+         if (unified != null) {
+            instructionCache = dataCache = new Cache(unified, secondLevel);
+         }
+         else {
+            instructionCache = new Cache(instruction, secondLevel);
+            dataCache = new Cache(data, secondLevel);
+         }
+         return new CacheHierarchy(instructionCache, dataCache, secondLevel, spec.trim());
+      }
+
+   /**
+    * Run a batch of recorded accesses through the caches.  Branch records are ignored.
+    * @param addresses byte address of each access
+    * @param types type byte of each access, see MemoryAccessRecorder
+    * @param count number of accesses
+    */
+       public void accessBatch(int[] addresses, byte[] types, int count) {
+         Cache instruction = instructionCache;
+         Cache data = dataCache;
+         for (int i = 0; i < count; i++) {
+            int kind = MemoryAccessRecorder.getKind(types[i]);
+            if (kind == MemoryAccessRecorder.INSTRUCTION_FETCH) {
+               instruction.access(addresses[i], false);
+            }
+            else if (kind != MemoryAccessRecorder.BRANCH) {
+               data.access(addresses[i], kind == MemoryAccessRecorder.WRITE);
+            }
+         }
+      }
+
+   /**
+    * Simulate one access and tell which level served it, e.g. to charge stall
+    * cycles.  A store that a write-through cache does not allocate is taken to go
+    * through a write buffer and counts as served by the first level.
+    * @param kind MemoryAccessRecorder INSTRUCTION_FETCH, READ or WRITE
+    * @param address byte address
+    * @return FIRST_LEVEL, SECOND_LEVEL or MEMORY
+    */
+       public int access(int kind, int address) {
+         Cache first = (kind == MemoryAccessRecorder.INSTRUCTION_FETCH) ? instructionCache : dataCache;
+         boolean write = (kind == MemoryAccessRecorder.WRITE);
+         if (first.access(address, write) || (write && !first.getConfiguration().isWriteBack())) {
+            return FIRST_LEVEL;
+         }
+         if (secondLevel == null || !secondLevel.wasLastAccessHit()) {
+            return MEMORY;
+         }
+         return SECOND_LEVEL;
+      }
+
+   /** @return true if instructions and data share one first level cache */
+       public boolean isUnified() {
+         return instructionCache == dataCache;
+      }
+
+   /** @return first level cache for instruction fetches */
+       public Cache getInstructionCache() {
+         return instructionCache;
+      }
+
+   /** @return first level cache for loads and stores */
+       public Cache getDataCache() {
+         return dataCache;
+      }
+
+   /** @return second level cache, or null if none */
+       public Cache getSecondLevel() {
+         return secondLevel;
+      }
+
+   /** @return the description given when created */
+       public String getDescription() {
+         return description;
+      }
+
+   /**
+    * @return one line summary of the statistics: miss rate of each cache (accesses in
+    * parentheses) and the number of blocks written back to memory
+    */
+       public String getReport() {
+         StringBuffer report = new StringBuffer();
+         if (isUnified()) {
+            report.append("L1 ").append(missRate(dataCache));
+         }
+         else {
+            report.append("L1I ").append(missRate(instructionCache));
+            report.append("  L1D ").append(missRate(dataCache));
+         }
+         if (secondLevel != null) {
+            report.append("  L2 ").append(missRate(secondLevel));
+         }
+         report.append("  writebacks ").append(writebacksToMemory());
+         return report.toString();
+      }
+
+       private long writebacksToMemory() {
+         if (secondLevel != null) {
+            return secondLevel.getWritebacks();
+         }
+         return isUnified() ? dataCache.getWritebacks()
+            : instructionCache.getWritebacks() + dataCache.getWritebacks();
+      }
+
+      // Miss rate as a percentage with three decimals.
+       private static String missRate(Cache cache) {
+         long thousandths = Math.round(cache.getMissRate() * 100000);
+         String fraction = String.valueOf(thousandths % 1000);
+         while (fraction.length() < 3) {
+            fraction = "0" + fraction;
+         }
+         return (thousandths / 1000)+"."+fraction+"% ("+cache.getAccesses()+")";
+      }
+   }
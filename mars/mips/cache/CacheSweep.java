@@ -0,0 +1,141 @@
+   package mars.mips.cache;
+
+   import mars.mips.hardware.MemoryAccessRecorder;
+   import java.io.*;
+   import java.util.*;
+   import java.util.concurrent.*;
+
+/**
+ * Runs one memory access stream through any number of cache hierarchies at once,
+ * e.g. to compare hundreds of cache configurations in a single run of the program.
+ * The hierarchies are shared out among one worker thread per processor.  Each
+ * batch from the MemoryAccessRecorder is copied and handed to the workers, so the
+ * simulation goes on producing the next batch while the caches process this one.
+ *
+ * @see CacheHierarchy
+ */
+
+    public class CacheSweep implements MemoryAccessRecorder.Sink {
+
+      private CacheHierarchy[] hierarchies;
+      private ExecutorService workers;
+      private int workerCount;
+      private Future[] pending;
+      private int[] addresses;
+      private byte[] types;
+
+   /**
+    * Create a sweep over the given hierarchies.
+    * @param hierarchies list of CacheHierarchy
+    */
+       public CacheSweep(List hierarchies) {
+         this.hierarchies = (CacheHierarchy[]) hierarchies.toArray(new CacheHierarchy[hierarchies.size()]);
+         workerCount = Math.max(1, Math.min(this.hierarchies.length, Runtime.getRuntime().availableProcessors()));
+         workers = Executors.newFixedThreadPool(workerCount);
+         pending = new Future[0];
+         addresses = new int[0];
+         types = new byte[0];
+      }
+
+   /**
+    * Read hierarchy descriptions from a file, one per line.  Blank lines and
+    * anything following # are ignored.
+    * @param file the file
+    * @return list of CacheHierarchy
+    * @throws IOException if the file cannot be read
+    * @throws IllegalArgumentException if a description is not valid
+    */
+       public static ArrayList readHierarchies(File file) throws IOException {
+         ArrayList list = new ArrayList();
+         BufferedReader in = new BufferedReader(new FileReader(file));
+         try {
+            String line;
+            while ((line = in.readLine()) != null) {
+               int comment = line.indexOf('#');
+               if (comment >= 0) {
+                  line = line.substring(0, comment);
+               }
+               if (line.trim().length() > 0) {
+                  list.add(CacheHierarchy.parse(line));
+               }
+            }
+         }
+         finally {
+            in.close();
+         }
+         return list;
+      }
+
+   /**
+    * Hand a batch of accesses to the workers.  Waits for the previous batch to be
+    * finished first, so every hierarchy sees the accesses in order.
+    */
+       public void accessBatch(int[] addresses, byte[] types, int count) {
+         waitForPending();
+         if (this.addresses.length < count) {
+            this.addresses = new int[addresses.length];
+            this.types = new byte[types.length];
+         }
+         System.arraycopy(addresses, 0, this.addresses, 0, count);
+         System.arraycopy(types, 0, this.types, 0, count);
+         final int batchSize = count;
+         pending = new Future[workerCount];
+         for (int w = 0; w < workerCount; w++) {
+            final int first = w;
+            pending[w] = workers.submit(
+                   new Runnable() {
+                      public void run() {
+                        for (int h = first; h < hierarchies.length; h += workerCount) {
+                           hierarchies[h].accessBatch(CacheSweep.this.addresses, CacheSweep.this.types, batchSize);
+                        }
+                     }
+                  });
+         }
+      }
+
+   /**
+    * Wait for the last batch to be processed and stop the worker threads.  Call
+    * after the MemoryAccessRecorder has been flushed.
+    */
+       public void finish() {
+         try {
+            waitForPending();
+         }
+         finally {
+            workers.shutdown();
+         }
+      }
+
+       private void waitForPending() {
+         for (int w = 0; w < pending.length; w++) {
+            try {
+               pending[w].get();
+            }
+                catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                  throw new RuntimeException("cache simulation interrupted");
+               }
+                catch (ExecutionException e) {
+                  throw new RuntimeException("cache simulation failed: "+e.getCause());
+               }
+         }
+         pending = new Future[0];
+      }
+
+   /**
+    * @return the hierarchies, in the order given
+    */
+       public CacheHierarchy[] getHierarchies() {
+         return hierarchies;
+      }
+
+   /**
+    * Print one line per hierarchy: its description followed by its report.
+    * @param out where to print
+    */
+       public void printReport(PrintStream out) {
+         for (int h = 0; h < hierarchies.length; h++) {
+            out.println(hierarchies[h].getDescription()+"  "+hierarchies[h].getReport());
+         }
+      }
+   }
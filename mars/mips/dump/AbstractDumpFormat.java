@@ -1,5 +1,6 @@
    package mars.mips.dump;
 
+   import mars.Globals;
    import mars.mips.hardware.*;
    import java.io.*;
 /*
@@ -42,6 +43,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     public abstract class AbstractDumpFormat implements DumpFormat {
    
       private String name, commandDescriptor, description,  extension;
+      private static final int WORDS_PER_READ = 4096; // words dumpWords() gets from memory at a time
    	
    	/**
    	 *  Typical constructor.  Note you cannot creates objects from this
@@ -115,4 +117,65 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public abstract void dumpMemoryRange(File file, int firstAddress, int lastAddress)
 		    throws AddressErrorException, IOException;
    
+   /**
+    *  Write MIPS memory contents word by word, for formats that can implement
+    *  dumpMemoryRange() by calling this.  Each word is passed to writeWord(), and
+    *  writeTrailer() is called at the end.  Like the dump of any format, it stops
+    *  at the first word not yet used by the program.  Memory is read many words at a
+    *  time and the file is written through a DumpWriter, so even a dump of the full
+    *  data segment is quick.
+    *
+    *  @param  file  File in which to store MIPS memory contents.  
+    *  @param firstAddress first (lowest) memory address to dump.  In bytes but
+    *  must be on word boundary.
+    *  @param lastAddress last (highest) memory address to dump.  In bytes but
+    *  must be on word boundary.  Will dump the word that starts at this address.
+    *  @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
+    *  @throws IOException if error occurs during file output.
+    */
+       protected void dumpWords(File file, int firstAddress, int lastAddress)
+          throws AddressErrorException, IOException {
+         DumpWriter out = new DumpWriter(file);
+         try {
+            int[] words = new int[WORDS_PER_READ];
+            long remaining = ((long) lastAddress - firstAddress) / Memory.WORD_LENGTH_BYTES + 1;
+            int address = firstAddress;
+            while (remaining > 0) {
+               int wanted = (int) Math.min(remaining, WORDS_PER_READ);
+               int count = Globals.memory.getRawWords(address, words, 0, wanted);
+               for (int i = 0; i < count; i++) {
+                  writeWord(out, address - firstAddress + i * Memory.WORD_LENGTH_BYTES, words[i]);
+               }
+               if (count < wanted) 
+                  break;
+               address += wanted * Memory.WORD_LENGTH_BYTES;
+               remaining -= wanted;
+            }
+            writeTrailer(out);
+         } 
+         finally { 
+            out.close(); 
+         }
+      }
+   
+   /**
+    *  Write one word for dumpWords().  Does nothing unless overridden.
+    *
+    *  @param out where to write
+    *  @param offset byte address of the word relative to the first address dumped
+    *  @param word the word
+    *  @throws IOException if error occurs during file output.
+    */
+       protected void writeWord(DumpWriter out, int offset, int word) throws IOException {
+      }
+   
+   /**
+    *  Write whatever follows the last word for dumpWords().  Does nothing unless overridden.
+    *
+    *  @param out where to write
+    *  @throws IOException if error occurs during file output.
+    */
+       protected void writeTrailer(DumpWriter out) throws IOException {
+      }
+   
    }
\ No newline at end of file
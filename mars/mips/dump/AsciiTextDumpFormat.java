@@ -1,6 +1,5 @@
    package mars.mips.dump;
 
-   import mars.util.Binary;
    import mars.Globals;
    import mars.mips.hardware.*;
    import java.io.*;
@@ -61,7 +60,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 	*  followed by single-character code, e.g. \t for tab, \0 for null.
 	*  Non-printing character (control code,
 	*  values above 127) is rendered as a period (.).  Written
-	*  using PrintStream's println() method.
+	*  using dumpWords().
    *  Adapted by Pete Sanderson from code written by Greg Gibeling.
    *
    *  @param  file  File in which to store MIPS memory contents.  
@@ -74,19 +73,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void dumpMemoryRange(File file, int firstAddress, int lastAddress) 
         throws AddressErrorException, IOException {
-         PrintStream out = new PrintStream(new FileOutputStream(file));
-         String string = null;
-         try {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-               Integer temp = Globals.memory.getRawWordOrNull(address);
-               if (temp == null) 
-                  break;
-               out.println(Binary.intToAscii(temp.intValue()));
+         dumpWords(file, firstAddress, lastAddress);
+      }
+   
+      // Bytes of the text for each byte value, as in Binary.intToAscii().
+      private static byte[][] glyphs;
+   
+       protected void writeWord(DumpWriter out, int offset, int word) throws IOException {
+         if (glyphs == null) {
+            glyphs = new byte[256][];
+            for (int i = 0; i < glyphs.length; i++) {
+               glyphs[i] = ((i < Globals.ASCII_TABLE.length) ? Globals.ASCII_TABLE[i] : Globals.ASCII_NON_PRINT).getBytes();
             }
-         } 
-         finally { 
-            out.close(); 
          }
+         for (int shift = 24; shift >= 0; shift -= 8) {
+            out.write(glyphs[(word >>> shift) & 0xFF]);
+         }
+         out.newLine();
       }
    
    }
\ No newline at end of file
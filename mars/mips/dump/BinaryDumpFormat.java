@@ -1,8 +1,11 @@
    package mars.mips.dump;
 
-   import mars.Globals;
+   import mars.*;
    import mars.mips.hardware.*;
+   import mars.util.*;
    import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
 
@@ -40,7 +43,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
 
-    public class BinaryDumpFormat extends AbstractDumpFormat {
+    public class BinaryDumpFormat extends AbstractDumpFormat implements LoadableDumpFormat {
    
    /**
    *  Constructor.  There is no standard file extension for this format.
@@ -51,9 +54,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
    
    /**
-   *  Write MIPS memory contents in pure binary format.  One byte at a time
-	*  using PrintStream's write() method.  Adapted by Pete Sanderson from
-	*  code written by Greg Gibeling.
+   *  Write MIPS memory contents in pure binary format.  Each word is written
+	*  as four bytes, least significant first, using dumpWords().  Adapted by
+	*  Pete Sanderson from code written by Greg Gibeling.
 	*
    *  @param  file  File in which to store MIPS memory contents.  
    *  @param firstAddress first (lowest) memory address to dump.  In bytes but
@@ -65,19 +68,46 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void dumpMemoryRange(File file, int firstAddress, int lastAddress) 
         throws AddressErrorException, IOException {
-         PrintStream out = new PrintStream(new FileOutputStream(file));
+         dumpWords(file, firstAddress, lastAddress);
+      }
+   
+       protected void writeWord(DumpWriter out, int offset, int word) throws IOException {
+         out.writeLittleEndian(word);
+      }
+   
+   /**
+   *  Read MIPS memory contents in pure binary format, four bytes to a word, least
+   *  significant first.  The file is mapped into memory and its words copied out
+   *  in one go.
+   *
+   *  @param  file  File holding MIPS memory contents.
+   *  @param firstAddress address of first word in file.  In bytes but must be on word
+   *  boundary.
+   *  @return number of words loaded.
+   *  @throws AddressErrorException if the words do not fit in memory there.
+   *  @throws IOException if error occurs during file input or the file length is not
+   *  a multiple of 4.
+   */
+       public int loadMemoryRange(File file, int firstAddress)
+          throws AddressErrorException, IOException {
+         FileInputStream in = new FileInputStream(file);
          try {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-               Integer temp = Globals.memory.getRawWordOrNull(address);
-               if (temp == null) 
-                  break;
-               int word = temp.intValue();
-               for (int i = 0; i < 4; i++) 
-                  out.write((word >>> (i << 3)) & 0xFF);
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+            if (length % 4 != 0) {
+               throw new IOException(file.getName() + ": length is not a whole number of words");
             }
-         } 
-         finally { 
-            out.close(); 
+            if (length / 4 > Memory.wordsToEndOfSegment(firstAddress)) {
+               throw new IOException(file.getName() + ": longer than the segment of " + Binary.intToHexString(firstAddress));
+            }
+            int[] words = new int[(int) (length / 4)];
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, length)
+                   .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(words);
+            Globals.memory.loadImage(firstAddress, words, words.length);
+            return words.length;
+         }
+         finally {
+            in.close();
          }
       }
    
@@ -1,6 +1,5 @@
    package mars.mips.dump;
 
-   import mars.Globals;
    import mars.mips.hardware.*;
    import java.io.*;
 /*
@@ -53,7 +52,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    /**
    *  Write MIPS memory contents in binary text format.  Each line of
    *  text contains one memory word written as 32 '0' and '1' characters.  Written
-   *  using PrintStream's println() method.
+   *  using dumpWords().
    *  Adapted by Pete Sanderson from code written by Greg Gibeling.
    *
    *  @param  file  File in which to store MIPS memory contents.  
@@ -66,23 +65,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void dumpMemoryRange(File file, int firstAddress, int lastAddress) 
         throws AddressErrorException, IOException {
-         PrintStream out = new PrintStream(new FileOutputStream(file));
-         String string = null;
-         try {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-               Integer temp = Globals.memory.getRawWordOrNull(address);
-               if (temp == null) 
-                  break;
-               string = Integer.toBinaryString(temp.intValue());
-               while (string.length() < 32) {
-                  string = '0' + string;
-               }
-               out.println(string);
-            }
-         } 
-         finally { 
-            out.close(); 
-         }
+         dumpWords(file, firstAddress, lastAddress);
+      }
+   
+       protected void writeWord(DumpWriter out, int offset, int word) throws IOException {
+         out.writeBinary(word);
+         out.newLine();
       }
    
    }
\ No newline at end of file
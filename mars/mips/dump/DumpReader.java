@@ -0,0 +1,144 @@
+   package mars.mips.dump;
+
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.util.*;
+   import java.io.*;
+
+/**
+ * Buffered file input for the text dump formats, the counterpart of DumpWriter.  Lines
+ * are read one at a time and hexadecimal fields parsed from them in place.  The words
+ * parsed are collected in an array indexed by their offset from the first word, which
+ * grows as needed, up to the end of the segment the image is for, and is stored in
+ * memory in one go by load().
+ */
+
+    public class DumpReader {
+   
+      private static final int INITIAL_WORDS = 4096;
+   
+      private BufferedReader reader;
+      private File file;
+      private int firstAddress;
+      private int maximumWords; // words from firstAddress to end of its segment
+      private int lineNumber = 0;
+      private int[] words = new int[INITIAL_WORDS];
+      private int count = 0;  // one past highest index of word set
+   
+   /**
+    * Open the file.
+    * @param file file to read
+    * @param firstAddress address the image is to be loaded at
+    * @throws FileNotFoundException if the file cannot be opened
+    */
+       public DumpReader(File file, int firstAddress) throws FileNotFoundException {
+         this.file = file;
+         this.firstAddress = firstAddress;
+         maximumWords = Memory.wordsToEndOfSegment(firstAddress);
+         reader = new BufferedReader(new FileReader(file), 64 * 1024);
+      }
+   
+   /**
+    * Read the next line.
+    * @return the line, without its line separator, or null at end of file
+    * @throws IOException if the file cannot be read
+    */
+       public String readLine() throws IOException {
+         String line = reader.readLine();
+         if (line != null) {
+            lineNumber++;
+         }
+         return line;
+      }
+   
+   /**
+    * Parse a field of hexadecimal digits in a line.
+    * @param line the line
+    * @param start index of first digit
+    * @param digits number of digits, up to 8
+    * @return value of the field
+    * @throws IOException if the line is too short or the field holds other than hex digits
+    */
+       public int parseHex(String line, int start, int digits) throws IOException {
+         if (start + digits > line.length()) {
+            throw error("line is too short");
+         }
+         int value = 0;
+         for (int i = start; i < start + digits; i++) {
+            int digit = Character.digit(line.charAt(i), 16);
+            if (digit < 0) {
+               throw error("'" + line.charAt(i) + "' is not a hexadecimal digit");
+            }
+            value = (value << 4) | digit;
+         }
+         return value;
+      }
+   
+   /**
+    * An exception describing a problem with the current line.
+    * @param message what is wrong
+    * @return the exception, to be thrown
+    */
+       public IOException error(String message) {
+         return new IOException(file.getName() + " line " + lineNumber + ": " + message);
+      }
+   
+   /**
+    * Set a word of the image.
+    * @param index offset of the word from the first word
+    * @param word the word
+    * @throws IOException if the word would lie beyond the end of the segment
+    */
+       public void setWord(int index, int word) throws IOException {
+         if (index < 0 || index >= maximumWords) {
+            throw error("word at offset " + Binary.intToHexString(index * Memory.WORD_LENGTH_BYTES) 
+                        + " is outside the segment of " + Binary.intToHexString(firstAddress));
+         }
+         if (index >= words.length) {
+            int[] grown = new int[Math.max(index + 1, words.length * 2)];
+            System.arraycopy(words, 0, grown, 0, count);
+            words = grown;
+         }
+         words[index] = word;
+         if (index >= count) {
+            count = index + 1;
+         }
+      }
+   
+   /**
+    * Get a word of the image.
+    * @param index offset of the word from the first word
+    * @return the word, or 0 if not set
+    */
+       public int getWord(int index) {
+         return (index < count) ? words[index] : 0;
+      }
+   
+   /**
+    * Add a word after the highest one set.
+    * @param word the word
+    * @throws IOException if the word would lie beyond the end of the segment
+    */
+       public void addWord(int word) throws IOException {
+         setWord(count, word);
+      }
+   
+   /**
+    * Store the words of the image in memory, from the address given when the file was
+    * opened.  Words never set within it are 0.
+    * @return number of words stored
+    * @throws AddressErrorException if the words do not fit in memory there
+    */
+       public int load() throws AddressErrorException {
+         Globals.memory.loadImage(firstAddress, words, count);
+         return count;
+      }
+   
+   /**
+    * Close the file.
+    * @throws IOException if the file cannot be closed
+    */
+       public void close() throws IOException {
+         reader.close();
+      }
+   }
@@ -0,0 +1,167 @@
+   package mars.mips.dump;
+
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+/**
+ * Buffered file output for memory dump formats.  Text and bytes are collected in a
+ * reusable buffer that is written to the file's channel whenever it fills.  Numbers are
+ * formatted straight into the buffer from digit tables, so dumping a word creates no
+ * Strings.  Text is encoded in the platform's default charset, as by a PrintStream;
+ * ASCII, which is all the dump formats themselves write, is copied a byte per character.
+ */
+
+    public class DumpWriter {
+
+      private static final int BUFFER_LENGTH = 64 * 1024;
+      private static final byte[] HEX_DIGITS = {
+         '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+      private static final byte[] UPPER_CASE_HEX_DIGITS = {
+         '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+      private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator", "\n").getBytes();
+
+      private FileOutputStream stream;
+      private FileChannel channel;
+      private byte[] bytes = new byte[BUFFER_LENGTH];
+      private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      private int length;   // number of bytes in buffer
+
+   /**
+    * Create the file, replacing any file of that name.
+    * @param file file to write
+    * @throws FileNotFoundException if the file cannot be created
+    */
+       public DumpWriter(File file) throws FileNotFoundException {
+         stream = new FileOutputStream(file);
+         channel = stream.getChannel();
+      }
+
+   /**
+    * Write a byte.
+    * @param b the byte, in the low 8 bits
+    * @throws IOException if the file cannot be written
+    */
+       public void write(int b) throws IOException {
+         if (length == BUFFER_LENGTH) {
+            flush();
+         }
+         bytes[length++] = (byte) b;
+      }
+
+   /**
+    * Write a String, encoded in the platform's default charset.
+    * @param text the text
+    * @throws IOException if the file cannot be written
+    */
+       public void write(String text) throws IOException {
+         for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+               write(text.substring(i).getBytes());
+               return;
+            }
+            write(c);
+         }
+      }
+
+   /**
+    * Write bytes.
+    * @param b the bytes
+    * @throws IOException if the file cannot be written
+    */
+       public void write(byte[] b) throws IOException {
+         for (int i = 0; i < b.length; i++) {
+            write(b[i]);
+         }
+      }
+
+   /**
+    * Write a number in lower case hexadecimal, padded with leading zeroes.
+    * @param value the number
+    * @param digits number of digits, up to 8.  Higher digits of value are not written.
+    * @throws IOException if the file cannot be written
+    */
+       public void writeHex(int value, int digits) throws IOException {
+         writeDigits(value, digits, HEX_DIGITS);
+      }
+
+   /**
+    * Write a number in upper case hexadecimal, padded with leading zeroes.
+    * @param value the number
+    * @param digits number of digits, up to 8.  Higher digits of value are not written.
+    * @throws IOException if the file cannot be written
+    */
+       public void writeUpperCaseHex(int value, int digits) throws IOException {
+         writeDigits(value, digits, UPPER_CASE_HEX_DIGITS);
+      }
+
+   /**
+    * Write a word as 32 '0' and '1' characters, most significant bit first.
+    * @param value the word
+    * @throws IOException if the file cannot be written
+    */
+       public void writeBinary(int value) throws IOException {
+         ensure(32);
+         for (int shift = 31; shift >= 0; shift--) {
+            bytes[length++] = (byte) ('0' + ((value >>> shift) & 1));
+         }
+      }
+
+   /**
+    * Write the four bytes of a word, least significant byte first.
+    * @param value the word
+    * @throws IOException if the file cannot be written
+    */
+       public void writeLittleEndian(int value) throws IOException {
+         ensure(4);
+         bytes[length++] = (byte) value;
+         bytes[length++] = (byte) (value >>> 8);
+         bytes[length++] = (byte) (value >>> 16);
+         bytes[length++] = (byte) (value >>> 24);
+      }
+
+   /**
+    * End a line, with the line separator of the host.
+    * @throws IOException if the file cannot be written
+    */
+       public void newLine() throws IOException {
+         write(LINE_SEPARATOR);
+      }
+
+   /**
+    * Write out what is buffered and close the file.
+    * @throws IOException if the file cannot be written
+    */
+       public void close() throws IOException {
+         try {
+            flush();
+         }
+         finally {
+            stream.close();
+         }
+      }
+
+       private void writeDigits(int value, int digits, byte[] table) throws IOException {
+         ensure(digits);
+         for (int shift = (digits - 1) << 2; shift >= 0; shift -= 4) {
+            bytes[length++] = table[(value >>> shift) & 0xF];
+         }
+      }
+
+      // Make room for the given number of bytes.
+       private void ensure(int count) throws IOException {
+         if (length + count > BUFFER_LENGTH) {
+            flush();
+         }
+      }
+
+       private void flush() throws IOException {
+         buffer.clear();
+         buffer.limit(length);
+         while (buffer.hasRemaining()) {
+            channel.write(buffer);
+         }
+         length = 0;
+      }
+   }
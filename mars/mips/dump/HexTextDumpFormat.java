@@ -1,6 +1,5 @@
    package mars.mips.dump;
 
-   import mars.Globals;
    import mars.mips.hardware.*;
    import java.io.*;
 /*
@@ -40,7 +39,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
 
-    public class HexTextDumpFormat extends AbstractDumpFormat {
+    public class HexTextDumpFormat extends AbstractDumpFormat implements LoadableDumpFormat {
    
    /**
    *  Constructor.  There is no standard file extension for this format.
@@ -53,7 +52,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    /**
    *  Write MIPS memory contents in hexadecimal text format.  Each line of
    *  text contains one memory word written in hexadecimal characters.  Written
-	*  using PrintStream's println() method.
+	*  using dumpWords().
    *  Adapted by Pete Sanderson from code written by Greg Gibeling.
    *
    *  @param  file  File in which to store MIPS memory contents.  
@@ -66,22 +65,44 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void dumpMemoryRange(File file, int firstAddress, int lastAddress) 
         throws AddressErrorException, IOException {
-         PrintStream out = new PrintStream(new FileOutputStream(file));
-         String string = null;
+         dumpWords(file, firstAddress, lastAddress);
+      }
+   
+       protected void writeWord(DumpWriter out, int offset, int word) throws IOException {
+         out.writeHex(word, 8);
+         out.newLine();
+      }
+   
+   /**
+   *  Read MIPS memory contents in hexadecimal text format, one word per line.
+   *  Blank lines are skipped.
+   *
+   *  @param  file  File holding MIPS memory contents.
+   *  @param firstAddress address of first word in file.  In bytes but must be on word
+   *  boundary.
+   *  @return number of words loaded.
+   *  @throws AddressErrorException if the words do not fit in memory there.
+   *  @throws IOException if error occurs during file input or a line is not a word.
+   */
+       public int loadMemoryRange(File file, int firstAddress)
+          throws AddressErrorException, IOException {
+         DumpReader in = new DumpReader(file, firstAddress);
          try {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-               Integer temp = Globals.memory.getRawWordOrNull(address);
-               if (temp == null) 
-                  break;
-               string = Integer.toHexString(temp.intValue());
-               while (string.length() < 8) {
-                  string = '0' + string;
+            String line;
+            while ((line = in.readLine()) != null) {
+               line = line.trim();
+               if (line.length() == 0) {
+                  continue;
                }
-               out.println(string);
+               if (line.length() > 8) {
+                  throw in.error("more than 8 hexadecimal digits");
+               }
+               in.addWord(in.parseHex(line, 0, line.length()));
             }
-         } 
-         finally { 
-            out.close(); 
+            return in.load();
+         }
+         finally {
+            in.close();
          }
       }
    
@@ -1,6 +1,5 @@
    package mars.mips.dump;
 
-   import mars.Globals;
    import mars.mips.hardware.*;
    import java.io.*;
 
@@ -10,7 +9,7 @@
  * @version July 2011
  */
 
-    public class IntelHexDumpFormat extends AbstractDumpFormat {
+    public class IntelHexDumpFormat extends AbstractDumpFormat implements LoadableDumpFormat {
    
    /**
    * Constructor.  File extention is "hex".
@@ -20,8 +19,10 @@
       }
    
    /**
-   *  Write MIPS memory contents according to the Memory Initialization File
-   *  (MIF) specification. 
+   *  Write MIPS memory contents according to the Intel Hex specification.  Each
+   *  word is a data record of four bytes, addressed relative to the first address
+   *  dumped.  Where that address exceeds 16 bits, an extended linear address record
+   *  gives the upper 16 bits.  Written using dumpWords().
    *
    *  @param  file  File in which to store MIPS memory contents.  
    *  @param firstAddress first (lowest) memory address to dump.  In bytes but
@@ -33,42 +34,94 @@
    */
        public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
           throws AddressErrorException, IOException {
-            PrintStream out = new PrintStream(new FileOutputStream(file));
-            String string = null;
-            try {
-               for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                  Integer temp = Globals.memory.getRawWordOrNull(address);
-                  if (temp == null) 
-                     break;
-                  string = Integer.toHexString(temp.intValue());
-                  while (string.length() < 8) {
-                     string = '0' + string;
-                  }
-                  String addr = Integer.toHexString(address-firstAddress);
-                  while (addr.length() < 4) {
-                     addr = '0' + addr;
+         upperOffset = 0;
+         dumpWords(file, firstAddress, lastAddress);
+      }
+   
+      private int upperOffset; // upper 16 bits of offset, as of last extended linear address record
+   
+       protected void writeWord(DumpWriter out, int offset, int word) throws IOException {
+         if ((offset >>> 16) != upperOffset) {
+            upperOffset = offset >>> 16;
+            out.write(":02000004");
+            out.writeUpperCaseHex(upperOffset, 4);
+            out.writeUpperCaseHex(-(2 + 4 + (upperOffset >>> 8) + (upperOffset & 0xFF)), 2);
+            out.newLine();
+         }
+         int checksum = 4 + (0xFF & offset) + (0xFF & (offset >> 8))
+                        + (0xFF & word) + (0xFF & (word >> 8)) + (0xFF & (word >> 16)) + (0xFF & (word >> 24));
+         out.write(":04");
+         out.writeUpperCaseHex(offset, 4);
+         out.write("00");
+         out.writeUpperCaseHex(word, 8);
+         out.writeUpperCaseHex(-checksum, 2);
+         out.newLine();
+      }
+   
+       protected void writeTrailer(DumpWriter out) throws IOException {
+         out.write(":00000001FF");
+         out.newLine();
+      }
+   
+   /**
+   *  Read MIPS memory contents in Intel Hex format.  Data records may hold any
+   *  number of bytes, placed at their offset from the first address, with each
+   *  word's bytes most significant first as written by dumpMemoryRange().
+   *  Extended linear address records give the upper 16 bits of the offsets that
+   *  follow.  Reading stops at the end of file record.
+   *
+   *  @param  file  File holding MIPS memory contents.
+   *  @param firstAddress address of offset 0.  In bytes but must be on word boundary.
+   *  @return number of words loaded.
+   *  @throws AddressErrorException if the words do not fit in memory there.
+   *  @throws IOException if error occurs during file input or a record is not valid.
+   */
+       public int loadMemoryRange(File file, int firstAddress)
+          throws AddressErrorException, IOException {
+         DumpReader in = new DumpReader(file, firstAddress);
+         try {
+            int upper = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+               line = line.trim();
+               if (line.length() == 0) {
+                  continue;
+               }
+               if (line.charAt(0) != ':') {
+                  throw in.error("record does not start with ':'");
+               }
+               int length = in.parseHex(line, 1, 2);
+               int offset = in.parseHex(line, 3, 4);
+               int type = in.parseHex(line, 7, 2);
+               int checksum = length + (offset >>> 8) + (offset & 0xFF) + type;
+               for (int i = 0; i <= length; i++) {
+                  checksum += in.parseHex(line, 9 + 2 * i, 2);
+               }
+               if ((checksum & 0xFF) != 0) {
+                  throw in.error("checksum is wrong");
+               }
+               if (type == 0) {
+                  int address = (upper << 16) + offset;
+                  for (int i = 0; i < length; i++, address++) {
+                     int shift = (3 - (address & 3)) << 3;
+                     int word = in.getWord(address >>> 2) & ~(0xFF << shift);
+                     in.setWord(address >>> 2, word | (in.parseHex(line, 9 + 2 * i, 2) << shift));
                   }
-                  String chksum;
-                  int tmp_chksum = 0;
-                  tmp_chksum += 4;
-                  tmp_chksum += 0xFF & (address-firstAddress);
-                  tmp_chksum += 0xFF & ((address-firstAddress)>>8);
-                  tmp_chksum += 0xFF & temp.intValue();
-                  tmp_chksum += 0xFF & (temp.intValue()>>8);
-                  tmp_chksum += 0xFF & (temp.intValue()>>16);
-                  tmp_chksum += 0xFF & (temp.intValue()>>24);
-                  tmp_chksum = tmp_chksum % 256;
-                  tmp_chksum = ~tmp_chksum + 1;
-                  chksum = Integer.toHexString(0xFF & tmp_chksum);
-                  if(chksum.length()==1) chksum = '0' + chksum;
-                  String finalstr = ":04"+addr+"00"+string+chksum;
-                  out.println(finalstr.toUpperCase());
+               } 
+               else if (type == 1) {
+                  break;
+               } 
+               else if (type == 4 && length == 2) {
+                  upper = in.parseHex(line, 9, 4);
+               } 
+               else {
+                  throw in.error("unsupported record type " + type);
                }
-               out.println(":00000001FF");
-            } 
-            finally { 
-               out.close(); 
             }
-            
+            return in.load();
+         }
+         finally {
+            in.close();
+         }
       }
    }
@@ -0,0 +1,30 @@
+   package mars.mips.dump;
+
+   import mars.mips.hardware.*;
+   import java.io.*;
+
+/**
+ * A memory dump format whose files can be read back into memory.  Loading the text and
+ * data segments dumped from an assembled program gives a program that can be run
+ * without assembling it again.
+ */
+
+    public interface LoadableDumpFormat extends DumpFormat {
+   
+   /**
+   *  Read MIPS memory contents written in this format into memory, as by
+   *  Memory.loadImage().  The first word in the file is stored at the given address
+   *  and the rest follow it.
+   *
+   *  @param  file  File holding MIPS memory contents.
+   *  @param firstAddress address of first word in file.  In bytes but must be on word
+   *  boundary.
+   *  @return number of words loaded.
+   *  @throws AddressErrorException if firstAddress is not on a word boundary or
+   *  the words do not fit in memory there.
+   *  @throws IOException if error occurs during file input or the file is not in
+   *  this format.
+   */
+       public int loadMemoryRange(File file, int firstAddress)
+		    throws AddressErrorException, IOException;
+   }
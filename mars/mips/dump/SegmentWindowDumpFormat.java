@@ -38,7 +38,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * Dump MIPS memory contents in Segment Window format.  Each line of
  * text output resembles the Text Segment Window or Data Segment Window
  * depending on which segment is selected for the dump.  Written
- * using PrintStream's println() method.  Each line of Text Segment
+ * using a DumpWriter.  Each line of Text Segment
  * Window represents one word of text segment memory.  The line
  * includes (1) address, (2) machine code in hex, (3) basic instruction,
  * (4) source line.  Each line of Data Segment Window represents 8
@@ -67,7 +67,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    *  Write MIPS memory contents in Segment Window format.  Each line of
 	*  text output resembles the Text Segment Window or Data Segment Window
 	*  depending on which segment is selected for the dump.  Written
-   *  using PrintStream's println() method.
+   *  using a DumpWriter.
    *
    *  @param  file  File in which to store MIPS memory contents.  
    *  @param firstAddress first (lowest) memory address to dump.  In bytes but
@@ -80,7 +80,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void dumpMemoryRange(File file, int firstAddress, int lastAddress) 
         throws AddressErrorException, IOException {
       
-         PrintStream out = new PrintStream(new FileOutputStream(file));
+         DumpWriter out = new DumpWriter(file);
       
          boolean hexAddresses = Globals.getSettings().getDisplayAddressesInHex();
       	
@@ -103,7 +103,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      		  : ("           "+temp).substring(temp.toString().length()) 
                      		 ) + " ";
                   if (offset % 8 == 0) {
-                     out.println(string);
+                     out.write(string);
+                     out.newLine();
                      string = "";
                   }
                }
@@ -115,13 +116,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
       	
          if (!Memory.inTextSegment(firstAddress)) {
+            out.close();
             return;
          }
       	// If address in text segment, print in same format as Text Segment Window
-         out.println(" Address    Code        Basic                     Source");
+         out.write(" Address    Code        Basic                     Source");
+         out.newLine();
       	//           12345678901234567890123456789012345678901234567890
       	//                    1         2         3         4         5
-         out.println();
+         out.newLine();
          String string = null;
          try {
             for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
@@ -138,7 +141,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                } 
                    catch (AddressErrorException aee) {
                   }
-               out.println(string);
+               out.write(string);
+               out.newLine();
             }
          } 
          finally { 
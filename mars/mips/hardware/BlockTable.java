@@ -0,0 +1,333 @@
+   package mars.mips.hardware;
+
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+   import java.util.*;
+
+/**
+ * The words that hold one segment of simulated memory, addressed relative to the
+ * segment.  Words are kept in blocks, which are allocated the first time a word in
+ * them is written; a word in a block that has never been written reads as 0.
+ * <p>
+ * A dense table is an array of blocks indexed by block number, which is what the
+ * Memory class has always used.  It suits the few megabytes that a segment spans in
+ * the standard memory configurations.  A sparse table finds blocks through an
+ * open-addressing hash table instead, so a segment may span most of the 32-bit address
+ * space while only the blocks actually written take up any memory.  A mapped table
+ * keeps the whole segment outside the Java heap, in a memory-mapped file, so even a
+ * segment of hundreds of MB adds nothing for the garbage collector to trace.
+ */
+
+    abstract class BlockTable {
+
+      protected final int blockLength;
+
+       protected BlockTable(int blockLength) {
+         this.blockLength = blockLength;
+      }
+
+   /**
+    * Create a dense table.
+    * @param tableLength maximum number of blocks
+    * @param blockLength number of words in each block
+    * @return the table
+    */
+       static BlockTable dense(int tableLength, int blockLength) {
+         return new Dense(tableLength, blockLength);
+      }
+
+   /**
+    * Create a sparse table, which can hold any number of blocks.
+    * @param blockLength number of words in each block
+    * @return the table
+    */
+       static BlockTable sparse(int blockLength) {
+         return new Sparse(blockLength);
+      }
+
+   /**
+    * Create a table kept in a file mapped into memory.  Words already in the file are
+    * the initial contents of the segment, the first word of the file being the word at
+    * relative address 0.  Each word is stored in the native byte order of the host.
+    * The file is extended as needed to hold the whole segment.
+    * @param file the file, which is created if it does not exist
+    * @param words number of words in the segment
+    * @param blockLength number of words in each block
+    * @return the table
+    * @throws IOException if the file cannot be opened or mapped
+    */
+       static BlockTable mapped(File file, int words, int blockLength) throws IOException {
+         return new Mapped(file, words, blockLength);
+      }
+
+   /**
+    * Get a word.
+    * @param relative word address relative to start of segment
+    * @return the word, or 0 if never written
+    */
+       abstract int getWord(int relative);
+
+   /**
+    * Set a word, allocating its block if needed.
+    * @param relative word address relative to start of segment
+    * @param value new value of the word
+    * @return previous value of the word
+    */
+       abstract int setWord(int relative, int value);
+
+   /**
+    * Whether the block holding a word has been allocated.
+    * @param relative word address relative to start of segment
+    * @return true if the word's block exists
+    */
+       abstract boolean isAllocated(int relative);
+   
+   /**
+    * Copy consecutive words, stopping at the first whose block has not been allocated.
+    * @param relative word address relative to start of segment of first word
+    * @param destination array to receive the words
+    * @param offset index in destination of first word
+    * @param count number of words to copy
+    * @return number of words copied
+    */
+       int getWords(int relative, int[] destination, int offset, int count) {
+         int copied = 0;
+         while (copied < count && isAllocated(relative + copied)) {
+            int start = relative + copied;
+            int run = Math.min(count - copied, blockLength - start % blockLength);
+            copyWords(start, destination, offset + copied, run);
+            copied += run;
+         }
+         return copied;
+      }
+   
+      // Copy words that all lie within one allocated block.
+       abstract void copyWords(int relative, int[] destination, int offset, int count);
+   
+   /**
+    * Set consecutive words, allocating their blocks if needed.
+    * @param relative word address relative to start of segment of first word
+    * @param source array holding the words
+    * @param offset index in source of first word
+    * @param count number of words to set
+    */
+       void setWords(int relative, int[] source, int offset, int count) {
+         int stored = 0;
+         while (stored < count) {
+            int start = relative + stored;
+            int run = Math.min(count - stored, blockLength - start % blockLength);
+            storeWords(start, source, offset + stored, run);
+            stored += run;
+         }
+      }
+   
+      // Store words that all lie within one block, allocating it if needed.
+       abstract void storeWords(int relative, int[] source, int offset, int count);
+
+   /**
+    * Write any contents held outside the Java heap to their file and release it.  The
+    * table must not be used afterwards.  Does nothing for tables on the Java heap.
+    * @throws IOException if the file cannot be written
+    */
+       void close() throws IOException {
+      }
+
+   ////////////////////////////////////////////////////////////////////////////////
+   // Tables whose blocks are int arrays on the Java heap.
+
+       private static abstract class Blocks extends BlockTable {
+
+          Blocks(int blockLength) {
+            super(blockLength);
+         }
+
+         // The block with the given number, allocated if requested, or null.
+          abstract int[] getBlock(int block, boolean allocate);
+
+          int getWord(int relative) {
+            int[] words = getBlock(relative / blockLength, false);
+            return (words == null) ? 0 : words[relative % blockLength];
+         }
+
+          int setWord(int relative, int value) {
+            int[] words = getBlock(relative / blockLength, true);
+            int offset = relative % blockLength;
+            int oldValue = words[offset];
+            words[offset] = value;
+            return oldValue;
+         }
+
+          boolean isAllocated(int relative) {
+            return getBlock(relative / blockLength, false) != null;
+         }
+      
+          void copyWords(int relative, int[] destination, int offset, int count) {
+            System.arraycopy(getBlock(relative / blockLength, false), relative % blockLength, destination, offset, count);
+         }
+      
+          void storeWords(int relative, int[] source, int offset, int count) {
+            System.arraycopy(source, offset, getBlock(relative / blockLength, true), relative % blockLength, count);
+         }
+      }
+
+       private static final class Dense extends Blocks {
+         private final int[][] blocks;
+
+          Dense(int tableLength, int blockLength) {
+            super(blockLength);
+            blocks = new int[tableLength][];
+         }
+
+          int[] getBlock(int block, boolean allocate) {
+            int[] words = blocks[block];
+            if (words == null && allocate) {
+               words = blocks[block] = new int[blockLength];
+            }
+            return words;
+         }
+      }
+
+      // Blocks in an open-addressing hash table with linear probing, keyed by block number.
+       private static final class Sparse extends Blocks {
+         private static final int INITIAL_SLOTS = 64;  // power of 2
+         private static final int EMPTY = -1;          // key of unused slot; block numbers are not negative
+         private int[][] blocks;   // block in each slot
+         private int[] keys;       // block number in each slot, or EMPTY
+         private int count;        // number of blocks allocated
+         private int lastKey = EMPTY;
+         private int[] lastBlock;
+
+          Sparse(int blockLength) {
+            super(blockLength);
+            blocks = new int[INITIAL_SLOTS][];
+            keys = new int[INITIAL_SLOTS];
+            Arrays.fill(keys, EMPTY);
+         }
+
+          int[] getBlock(int block, boolean allocate) {
+            if (block == lastKey) {
+               return lastBlock;
+            }
+            int mask = keys.length - 1;
+            int slot = hash(block) & mask;
+            while (keys[slot] != EMPTY) {
+               if (keys[slot] == block) {
+                  lastKey = block;
+                  return lastBlock = blocks[slot];
+               }
+               slot = (slot + 1) & mask;
+            }
+            if (!allocate) {
+               return null;
+            }
+            if (2 * (count + 1) > keys.length) {
+               grow();
+               return getBlock(block, true);
+            }
+            keys[slot] = block;
+            blocks[slot] = new int[blockLength];
+            count++;
+            lastKey = block;
+            return lastBlock = blocks[slot];
+         }
+
+         // Double the number of slots, keeping the load factor at or below one half.
+          private void grow() {
+            int[] oldKeys = keys;
+            int[][] oldBlocks = blocks;
+            keys = new int[oldKeys.length * 2];
+            blocks = new int[keys.length][];
+            Arrays.fill(keys, EMPTY);
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+               if (oldKeys[i] != EMPTY) {
+                  int slot = hash(oldKeys[i]) & mask;
+                  while (keys[slot] != EMPTY) {
+                     slot = (slot + 1) & mask;
+                  }
+                  keys[slot] = oldKeys[i];
+                  blocks[slot] = oldBlocks[i];
+               }
+            }
+         }
+
+         // Consecutive block numbers are the common case; spread them over the slots.
+          private static int hash(int block) {
+            int h = block * 0x9E3779B9;
+            return h ^ (h >>> 16);
+         }
+      }
+
+      // The segment in a memory-mapped file.  The operating system supplies pages as they
+      // are touched, so a large segment costs only what is used.  The blocks of the
+      // original file contents count as allocated, as do blocks written since; on close,
+      // the file is cut back to the end of the last of them, so that when it is mapped
+      // again only those blocks are allocated.
+       private static final class Mapped extends BlockTable {
+         private RandomAccessFile file;
+         private MappedByteBuffer buffer;
+         private IntBuffer words;
+         private BitSet written = new BitSet();
+         private long loadedBytes; // length of original contents
+         private int loadedWords;  // words of segment in original contents
+
+          Mapped(File path, int length, int blockLength) throws IOException {
+            super(blockLength);
+            file = new RandomAccessFile(path, "rw");
+            loadedBytes = file.length();
+            loadedWords = (int) Math.min(loadedBytes / 4, length);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) length * 4);
+            words = buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
+         }
+
+          int getWord(int relative) {
+            return words.get(relative);
+         }
+
+          int setWord(int relative, int value) {
+            int oldValue = words.get(relative);
+            words.put(relative, value);
+            written.set(relative / blockLength);
+            return oldValue;
+         }
+
+          boolean isAllocated(int relative) {
+            return relative < loadedWords || written.get(relative / blockLength);
+         }
+      
+          void copyWords(int relative, int[] destination, int offset, int count) {
+            IntBuffer view = words.duplicate();
+            view.position(relative);
+            view.get(destination, offset, count);
+         }
+      
+          void storeWords(int relative, int[] source, int offset, int count) {
+            IntBuffer view = words.duplicate();
+            view.position(relative);
+            view.put(source, offset, count);
+            written.set(relative / blockLength);
+         }
+
+          void close() throws IOException {
+            if (file == null) {
+               return;
+            }
+            buffer.force();
+            long used = Math.max(loadedBytes, (long) written.length() * blockLength * 4);
+            buffer = null;
+            words = null;
+            try {
+               if (used < file.length()) {
+                  file.setLength(used);
+               }
+            }
+               catch (IOException e) {
+                  // Some systems do not allow truncating a file while it is mapped.  Then
+                  // it keeps its full length, and all of it counts as allocated next time.
+               }
+            file.close();
+            file = null;
+         }
+      }
+   }
@@ -0,0 +1,116 @@
+   package mars.mips.hardware;
+
+   import mars.Globals;
+   import mars.MIPSprogram;
+   import mars.simulator.Exceptions;
+   import mars.simulator.SimulationClock;
+   import java.io.*;
+
+/**
+ * Headless stand-in for the display half of the Keyboard and Display MMIO
+ * Simulator.  The transmitter control register (Memory.memoryMapBaseAddress+8)
+ * starts out ready.  When the program stores to the transmitter data register
+ * (base+12) while the device is ready, the low order byte is written to an
+ * output stream and the ready bit is cleared for a fixed number of instructions.
+ * When it is set again a display interrupt is raised if the program has set the
+ * interrupt enable bit.  Control characters, including the form feed and bell
+ * used by the GUI tool for clear screen and cursor positioning, are written
+ * unchanged.
+ */
+
+    public class DisplaySink extends HeadlessDevice implements SimulationClock.Alarm {
+
+      /** Default number of instructions the display takes to process a character. */
+      public static final int DEFAULT_TRANSMIT_DELAY = 5;
+
+      private OutputStream out;
+      private boolean closeWhenFinished;
+      private int transmitDelay;
+      private SimulationClock clock;
+      private int transmitterControl, transmitterData;
+      private long charactersWritten;
+
+   /**
+    * Create a display that writes to the given stream.
+    * @param out stream receiving transmitted bytes
+    * @param closeWhenFinished true to close the stream after the run, false to only flush it
+    * @param transmitDelay number of instructions the display stays busy after each character
+    */
+       public DisplaySink(OutputStream out, boolean closeWhenFinished, int transmitDelay) {
+         this.out = out;
+         this.closeWhenFinished = closeWhenFinished;
+         this.transmitDelay = transmitDelay;
+      }
+
+   /**
+    * Create a display that writes to the given file.
+    * @param file the file to write
+    * @throws IOException if the file cannot be created
+    */
+       public DisplaySink(File file) throws IOException {
+         this(new BufferedOutputStream(new FileOutputStream(file)), true, DEFAULT_TRANSMIT_DELAY);
+      }
+
+       public void attach(MIPSprogram program) throws AddressErrorException {
+         transmitterControl = Memory.memoryMapBaseAddress + 8;
+         transmitterData = Memory.memoryMapBaseAddress + 12;
+         Globals.memory.addMemoryMappedDevice(this, transmitterData, transmitterData);
+         clock = program.getClock();
+         setRegister(transmitterControl, getRegister(transmitterControl) | 1);
+      }
+
+       public void detach() {
+         super.detach();
+         if (clock != null) {
+            clock.cancelAlarm(this);
+         }
+      }
+
+   /**
+    * The program stored to the transmitter data register.  Ignored unless ready.
+    */
+       public void deviceRegisterWritten(int address, int length, int value) {
+         int control = getRegister(transmitterControl);
+         if (address != transmitterData || (control & 1) == 0) {
+            return;
+         }
+         try {
+            out.write(value & 0xff);
+            charactersWritten++;
+         } 
+             catch (IOException e) {
+               // Output lost; the program keeps running just as it would with no display.
+            }
+         setRegister(transmitterControl, control & 2);
+         clock.setAlarm(this, transmitDelay);
+      }
+
+   /**
+    * The display has finished with the character and is ready again.
+    */
+       public void ring() {
+         int control = getRegister(transmitterControl) | 1;
+         setRegister(transmitterControl, control);
+         interruptIfEnabled(control, Exceptions.EXTERNAL_INTERRUPT_DISPLAY);
+      }
+
+       public void finish() throws IOException {
+         if (closeWhenFinished) {
+            out.close();
+         } 
+         else {
+            out.flush();
+         }
+      }
+
+   /**
+    * @return number of characters written to the stream
+    */
+       public long getCharactersWritten() {
+         return charactersWritten;
+      }
+
+       public String toString() {
+         return "display";
+      }
+   }
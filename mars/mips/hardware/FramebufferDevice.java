@@ -0,0 +1,400 @@
+   package mars.mips.hardware;
+
+   import mars.Globals;
+   import mars.MIPSprogram;
+   import mars.simulator.SimulationClock;
+   import mars.util.Binary;
+   import java.awt.image.BufferedImage;
+   import java.awt.image.DataBufferInt;
+   import java.io.*;
+   import java.util.Iterator;
+   import javax.imageio.*;
+   import javax.imageio.metadata.*;
+   import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Headless counterpart of the Bitmap Display tool.  A rectangle of memory words
+ * starting at a base address is taken as a frame buffer, one word per display
+ * unit in row-major order, holding colors as 0x00RRGGBB.  The geometry is given
+ * the way the tool's combo boxes give it: display width and height in pixels,
+ * unit width and height in pixels, and a base address, which may be one of the
+ * tool's choices (see getDisplayBaseAddresses).  Unwritten memory is black.
+ * <p>
+ * Frames are captured
+ * <ul>
+ * <li>each time the program stores to the frame register
+ * (Memory.memoryMapBaseAddress + FRAME_REGISTER_OFFSET), the explicit sync,</li>
+ * <li>every so many instructions if a capture interval is set, and</li>
+ * <li>once more after the program terminates, so programs that know nothing of
+ * the frame register still produce their final picture.</li>
+ * </ul>
+ * If the output name ends in ".gif" the frames go to one animated GIF, each
+ * shown for the simulated time until the next one; otherwise each frame is
+ * written as outputNNNN.png.  For every frame a 64-bit perceptual hash (DCT
+ * based, see perceptualHash) is written, one line per frame, to a text file named
+ * after the output with extension ".phash".  Frames of similar pictures have hashes
+ * that differ in few bits, which makes them suitable for automated comparison.
+ * <p>
+ * Only java.awt.image and javax.imageio are used; nothing here requires a display.
+ */
+
+    public class FramebufferDevice extends HeadlessDevice implements SimulationClock.Alarm {
+
+      /** Offset of the frame register from the start of the MMIO segment. */
+      public static final int FRAME_REGISTER_OFFSET = 0x20;
+      /** Names accepted for the base addresses offered by the Bitmap Display tool, in its order. */
+      public static final String[] DISPLAY_BASE_NAMES = {"global", "gp", "static", "heap", "mmio"};
+
+      private static final int HASH_SAMPLE_SIZE = 32; // image is reduced to 32x32 before the DCT
+      private static final int HASH_SIZE = 8;         // 8x8 low frequency coefficients make 64 bits
+      private static final int GIF_LAST_FRAME_DELAY = 100; // hundredths of a second
+      private static double[][] cosines;
+
+      private String baseSpecification;
+      private int baseAddress;
+      private int columns, rows, unitWidth, unitHeight;
+      private String output;
+      private boolean animated;
+      private long captureInterval;
+      private int frameRegister;
+      private SimulationClock clock;
+      private int framesWritten;
+      private BufferedImage image;
+      private int[] imagePixels;
+      private int[] units;
+      private PrintWriter hashWriter;
+      private ImageWriter gifWriter;
+      private ImageOutputStream gifStream;
+      private BufferedImage pendingGifFrame;   // written once the time until the next frame is known
+      private long pendingGifFrameTime;
+
+   /**
+    * Return the base addresses offered by the Bitmap Display tool for the current memory
+    * configuration: global data, $gp, static data, heap and memory map, in that order.
+    * DISPLAY_BASE_NAMES gives the corresponding names.
+    * @return array of base addresses
+    */
+       public static int[] getDisplayBaseAddresses() {
+         return new int[] {Memory.dataSegmentBaseAddress, Memory.globalPointer, Memory.dataBaseAddress,
+                           Memory.heapBaseAddress, Memory.memoryMapBaseAddress };
+      }
+
+   /**
+    * Create a frame buffer device.
+    * @param base base address (upper left display unit), either a number or one of
+    *  DISPLAY_BASE_NAMES.  A name is resolved when the device is attached, so it follows
+    *  the memory configuration.
+    * @param displayWidth display width in pixels
+    * @param displayHeight display height in pixels
+    * @param unitWidth width in pixels of each display unit (memory word)
+    * @param unitHeight height in pixels of each display unit (memory word)
+    * @param output file name prefix for PNG files, or name of GIF file if it ends with ".gif"
+    * @throws IllegalArgumentException if a dimension is not positive or less than the unit
+    *  size, or the base address is not word aligned
+    * @throws NumberFormatException if base is neither a number nor a known name
+    */
+       public FramebufferDevice(String base, int displayWidth, int displayHeight, int unitWidth, int unitHeight, String output) {
+         if (unitWidth <= 0 || unitHeight <= 0 || displayWidth < unitWidth || displayHeight < unitHeight) {
+            throw new IllegalArgumentException("frame buffer dimensions must be positive and at least the unit size");
+         }
+         this.baseSpecification = base;
+         if (!Memory.wordAligned(resolveBaseAddress(base))) {
+            throw new IllegalArgumentException("frame buffer base address must be word aligned");
+         }
+         this.columns = displayWidth / unitWidth;
+         this.rows = displayHeight / unitHeight;
+         this.unitWidth = unitWidth;
+         this.unitHeight = unitHeight;
+         this.output = output;
+         this.animated = output.toLowerCase().endsWith(".gif");
+         this.captureInterval = 0;
+         this.units = new int[columns * rows];
+      }
+
+   /**
+    * Capture a frame every given number of instructions, in addition to the explicit
+    * syncs through the frame register.
+    * @param instructions capture interval; 0 (the default) for no periodic capture
+    */
+       public void setCaptureInterval(long instructions) {
+         captureInterval = Math.max(0, instructions);
+      }
+
+       public void attach(MIPSprogram program) throws AddressErrorException {
+         baseAddress = resolveBaseAddress(baseSpecification);
+         frameRegister = Memory.memoryMapBaseAddress + FRAME_REGISTER_OFFSET;
+         Globals.memory.addMemoryMappedDevice(this, frameRegister, frameRegister);
+         framesWritten = 0;
+         image = new BufferedImage(columns * unitWidth, rows * unitHeight, BufferedImage.TYPE_INT_RGB);
+         imagePixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+         clock = program.getClock();
+         if (captureInterval > 0) {
+            clock.setAlarm(this, captureInterval);
+         }
+      }
+
+       public void detach() {
+         super.detach();
+         if (clock != null) {
+            clock.cancelAlarm(this);
+         }
+      }
+
+   /**
+    * The program stored to the frame register: capture a frame.
+    */
+       public void deviceRegisterWritten(int address, int length, int value) {
+         captureQuietly();
+      }
+
+   /**
+    * The capture interval has passed: capture a frame.
+    */
+       public void ring() {
+         captureQuietly();
+         clock.setAlarm(this, captureInterval);
+      }
+
+   /**
+    * Capture the final frame and close the output files.
+    */
+       public void finish() throws IOException {
+         try {
+            captureFrame();
+            if (animated && pendingGifFrame != null) {
+               writeGifFrame(pendingGifFrame, GIF_LAST_FRAME_DELAY);
+               pendingGifFrame = null;
+            }
+         }
+         finally {
+            if (gifWriter != null) {
+               gifWriter.endWriteSequence();
+               gifWriter.dispose();
+               gifStream.close();
+               gifWriter = null;
+            }
+            if (hashWriter != null) {
+               hashWriter.close();
+               hashWriter = null;
+            }
+         }
+      }
+
+   /**
+    * Read the frame buffer from memory and write it out, along with its hash.
+    * @throws IOException if the frame or hash cannot be written
+    */
+       public void captureFrame() throws IOException {
+         readUnits();
+         long hash = perceptualHash(units, columns, rows);
+         int frame = framesWritten++;
+         if (hashWriter == null) {
+            String hashFile = (animated ? output.substring(0, output.length() - 4) : output) + ".phash";
+            hashWriter = new PrintWriter(new BufferedWriter(new FileWriter(hashFile)));
+         }
+         hashWriter.println(frame + " " + clock.getInstructionCount() + " " + Binary.longToHexString(hash));
+         int imageWidth = columns * unitWidth;
+         for (int row = 0; row < rows; row++) {
+            // scale the row horizontally into its first pixel line, then copy that line down
+            int line = row * unitHeight * imageWidth;
+            for (int col = 0; col < columns; col++) {
+               java.util.Arrays.fill(imagePixels, line + col * unitWidth, line + (col + 1) * unitWidth, units[row * columns + col]);
+            }
+            for (int y = 1; y < unitHeight; y++) {
+               System.arraycopy(imagePixels, line, imagePixels, line + y * imageWidth, imageWidth);
+            }
+         }
+         if (animated) {
+            long now = clock.currentTimeMillis();
+            if (pendingGifFrame != null) {
+               writeGifFrame(pendingGifFrame, (int) Math.max(1, (now - pendingGifFrameTime) / 10));
+            }
+            if (pendingGifFrame == null) {
+               pendingGifFrame = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            }
+            pendingGifFrame.setData(image.getRaster());
+            pendingGifFrameTime = now;
+         }
+         else {
+            File file = new File(output + new java.text.DecimalFormat("0000").format(frame) + ".png");
+            if (!ImageIO.write(image, "png", file)) {
+               throw new IOException("no PNG writer available");
+            }
+         }
+      }
+
+   /**
+    * @return number of frames captured so far
+    */
+       public int getFramesWritten() {
+         return framesWritten;
+      }
+
+       public String toString() {
+         return "frame buffer";
+      }
+
+   /**
+    * Compute a 64-bit perceptual hash of an image given as 0x00RRGGBB pixels.  The
+    * luminance is reduced to 32x32 by box averaging, transformed with a 2-D DCT, and
+    * each of the 8x8 lowest frequency coefficients sets its bit if it is above their
+    * median.  Similar images have hashes with a small Hamming distance, see hashDistance.
+    * @param pixels pixels in row-major order
+    * @param width image width
+    * @param height image height
+    * @return the hash
+    */
+       public static long perceptualHash(int[] pixels, int width, int height) {
+         double[][] luminance = new double[HASH_SAMPLE_SIZE][HASH_SAMPLE_SIZE];
+         for (int sy = 0; sy < HASH_SAMPLE_SIZE; sy++) {
+            int y0 = sy * height / HASH_SAMPLE_SIZE;
+            int y1 = Math.max(y0 + 1, (sy + 1) * height / HASH_SAMPLE_SIZE);
+            for (int sx = 0; sx < HASH_SAMPLE_SIZE; sx++) {
+               int x0 = sx * width / HASH_SAMPLE_SIZE;
+               int x1 = Math.max(x0 + 1, (sx + 1) * width / HASH_SAMPLE_SIZE);
+               double sum = 0;
+               for (int y = y0; y < y1; y++) {
+                  for (int x = x0; x < x1; x++) {
+                     int rgb = pixels[y * width + x];
+                     sum += 0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff) + 0.114 * (rgb & 0xff);
+                  }
+               }
+               luminance[sy][sx] = sum / ((y1 - y0) * (x1 - x0));
+            }
+         }
+         double[][] cos = getCosines();
+         double[] coefficients = new double[HASH_SIZE * HASH_SIZE];
+         for (int v = 0; v < HASH_SIZE; v++) {
+            for (int u = 0; u < HASH_SIZE; u++) {
+               double sum = 0;
+               for (int y = 0; y < HASH_SAMPLE_SIZE; y++) {
+                  double rowSum = 0;
+                  for (int x = 0; x < HASH_SAMPLE_SIZE; x++) {
+                     rowSum += luminance[y][x] * cos[u][x];
+                  }
+                  sum += rowSum * cos[v][y];
+               }
+               coefficients[v * HASH_SIZE + u] = sum;
+            }
+         }
+         // Median of the coefficients other than the DC term (which only gives overall brightness).
+         double[] sorted = new double[coefficients.length - 1];
+         System.arraycopy(coefficients, 1, sorted, 0, sorted.length);
+         java.util.Arrays.sort(sorted);
+         double median = (sorted.length % 2 == 1) ? sorted[sorted.length / 2]
+                         : (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+         long hash = 0;
+         for (int i = 0; i < coefficients.length; i++) {
+            if (coefficients[i] > median) {
+               hash |= 1L << i;
+            }
+         }
+         return hash;
+      }
+
+   /**
+    * @param hash1 a perceptual hash
+    * @param hash2 another perceptual hash
+    * @return number of differing bits, 0 for (nearly) identical images, up to 64
+    */
+       public static int hashDistance(long hash1, long hash2) {
+         return Long.bitCount(hash1 ^ hash2);
+      }
+
+   ////////////////////////////////////////////////////////////////////////////
+   // Private helpers
+
+      // Resolve a base address given as a number or as one of DISPLAY_BASE_NAMES.
+       private static int resolveBaseAddress(String base) {
+         for (int i = 0; i < DISPLAY_BASE_NAMES.length; i++) {
+            if (DISPLAY_BASE_NAMES[i].equalsIgnoreCase(base)) {
+               return getDisplayBaseAddresses()[i];
+            }
+         }
+         return Binary.stringToInt(base);
+      }
+
+      // Copy the frame buffer words from memory in bulk.  Words never written, or outside
+      // simulated memory, are black; the bulk read resumes after each of them.
+       private void readUnits() {
+         int i = 0;
+         while (i < units.length) {
+            int read = 0;
+            try {
+               read = Globals.memory.getRawWords(baseAddress + i * Memory.WORD_LENGTH_BYTES, units, i, units.length - i);
+            }
+                catch (AddressErrorException aee) {
+                  // outside simulated memory: leave black
+               }
+            for (int end = i + read; i < end; i++) {
+               units[i] &= 0xffffff;
+            }
+            if (i < units.length) {
+               units[i++] = 0;
+            }
+         }
+      }
+
+      // Capture from a callback, where there is no one to report an I/O error to.
+      // A lost frame is left out; finish() reports persistent problems.
+       private void captureQuietly() {
+         try {
+            captureFrame();
+         }
+             catch (IOException e) {
+               // frame lost; keep running
+            }
+      }
+
+      // Append a frame to the animated GIF, opening it first if needed.
+       private void writeGifFrame(BufferedImage frame, int delayHundredths) throws IOException {
+         boolean firstFrame = (gifWriter == null);
+         if (firstFrame) {
+            Iterator writers = ImageIO.getImageWritersByFormatName("gif");
+            if (!writers.hasNext()) {
+               throw new IOException("no GIF writer available");
+            }
+            gifWriter = (ImageWriter) writers.next();
+            File file = new File(output);
+            file.delete();
+            gifStream = ImageIO.createImageOutputStream(file);
+            gifWriter.setOutput(gifStream);
+            gifWriter.prepareWriteSequence(null);
+         }
+         ImageWriteParam param = gifWriter.getDefaultWriteParam();
+         IIOMetadata metadata = gifWriter.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(frame), param);
+         String format = metadata.getNativeMetadataFormatName();
+         IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+         IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+         control.setAttribute("disposalMethod", "none");
+         control.setAttribute("userInputFlag", "FALSE");
+         control.setAttribute("transparentColorFlag", "FALSE");
+         control.setAttribute("delayTime", Integer.toString(delayHundredths));
+         control.setAttribute("transparentColorIndex", "0");
+         root.appendChild(control);
+         if (firstFrame) { // make the animation loop forever
+            IIOMetadataNode applications = new IIOMetadataNode("ApplicationExtensions");
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[] {1, 0, 0});
+            applications.appendChild(loop);
+            root.appendChild(applications);
+         }
+         metadata.setFromTree(format, root);
+         gifWriter.writeToSequence(new IIOImage(frame, null, metadata), param);
+      }
+
+      // Cosine table for the 8 lowest frequencies of a 32 point DCT.
+       private static synchronized double[][] getCosines() {
+         if (cosines == null) {
+            cosines = new double[HASH_SIZE][HASH_SAMPLE_SIZE];
+            for (int u = 0; u < HASH_SIZE; u++) {
+               for (int x = 0; x < HASH_SAMPLE_SIZE; x++) {
+                  cosines[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * HASH_SAMPLE_SIZE));
+               }
+            }
+         }
+         return cosines;
+      }
+   }
@@ -0,0 +1,103 @@
+   package mars.mips.hardware;
+
+   import mars.Globals;
+   import mars.MIPSprogram;
+   import mars.simulator.Simulator;
+   import java.io.IOException;
+
+/**
+ * Base class for simulated memory mapped devices that run without a GUI, so
+ * that programs using MMIO can be run (and graded) from the command line.
+ * Devices are collected in a HeadlessDeviceRegistry, attached to memory after
+ * the program is assembled and finished after it has run.  Like the GUI tools
+ * they are called back through the MemoryMappedDevice interface, and they wait
+ * for instruction counts with SimulationClock alarms.
+ *
+ * @see HeadlessDeviceRegistry
+ */
+
+    public abstract class HeadlessDevice implements MemoryMappedDevice {
+
+   /**
+    * Attach to memory and set the initial register contents.  Called after the program
+    * has been assembled (assembly clears memory) and before it is simulated.
+    * @param program the program about to be simulated; its clock times the device
+    * @throws AddressErrorException if a device register is not in the MMIO segment
+    */
+       public abstract void attach(MIPSprogram program) throws AddressErrorException;
+
+   /**
+    * Detach from memory.  By default removes this device from every MMIO word.
+    */
+       public void detach() {
+         Globals.memory.deleteMemoryMappedDevice(this);
+      }
+
+   /**
+    * Write out any remaining results.  Called after the program has run.  Does nothing
+    * by default.
+    * @throws IOException if output cannot be written
+    */
+       public void finish() throws IOException {
+      }
+
+   /**
+    * Does nothing by default.
+    * @param address the byte address being read
+    * @param length number of bytes being read
+    */
+       public void deviceRegisterRead(int address, int length) {
+      }
+
+   /**
+    * Does nothing by default.
+    * @param address the byte address written
+    * @param length number of bytes written
+    * @param value the value written
+    */
+       public void deviceRegisterWritten(int address, int length, int value) {
+      }
+
+   /**
+    * Store a device register, see Memory.setMemoryMappedDeviceRegister().
+    * @param address word address within the MMIO segment
+    * @param value value to store
+    */
+       protected static void setRegister(int address, int value) {
+         try {
+            Globals.memory.setMemoryMappedDeviceRegister(address, value);
+         }
+             catch (AddressErrorException aee) {
+               throw new IllegalStateException("device register "+aee.getAddress()+" outside MMIO segment");
+            }
+      }
+
+   /**
+    * Read a device register without notifying observers or calling back devices.
+    * @param address word address within the MMIO segment
+    * @return the register contents
+    */
+       protected static int getRegister(int address) {
+         try {
+            return Globals.memory.getWordNoNotify(address);
+         }
+             catch (AddressErrorException aee) {
+               throw new IllegalStateException("device register "+aee.getAddress()+" outside MMIO segment");
+            }
+      }
+
+   /**
+    * Raise an external interrupt if the device's control register has its interrupt
+    * enable bit (bit 1) set, and the Coprocessor0 Status register has interrupts enabled
+    * and is not already at exception level.  Same rule as the Keyboard and Display tool.
+    * @param control current value of the device control register
+    * @param cause Exceptions.EXTERNAL_INTERRUPT_KEYBOARD or EXTERNAL_INTERRUPT_DISPLAY
+    */
+       protected static void interruptIfEnabled(int control, int cause) {
+         if ((control & 2) != 0
+             && (Coprocessor0.getValue(Coprocessor0.STATUS) & 2)==0
+             && (Coprocessor0.getValue(Coprocessor0.STATUS) & 1)==1) {
+            Simulator.externalInterruptingDevice = cause;
+         }
+      }
+   }
@@ -0,0 +1,62 @@
+   package mars.mips.hardware;
+
+   import mars.MIPSprogram;
+   import java.io.*;
+   import java.util.*;
+
+/**
+ * The set of headless devices configured for a command line run.  MarsLaunch
+ * adds the devices named by its options, attaches them once the program is
+ * assembled, and finishes them after the run.
+ *
+ * @see HeadlessDevice
+ */
+
+    public class HeadlessDeviceRegistry {
+
+      private ArrayList devices = new ArrayList();
+
+   /**
+    * Add a device.  Devices are attached in the order added; if two claim the same
+    * MMIO word, the one added last gets it.
+    * @param device the device
+    */
+       public void add(HeadlessDevice device) {
+         devices.add(device);
+      }
+
+   /**
+    * @return true if no devices have been added
+    */
+       public boolean isEmpty() {
+         return devices.isEmpty();
+      }
+
+   /**
+    * Attach all devices to memory.  Call after assembly, before simulation.
+    * @param program the program about to be simulated
+    * @throws AddressErrorException if a device register lies outside the MMIO segment
+    */
+       public void attachAll(MIPSprogram program) throws AddressErrorException {
+         for (int i = 0; i < devices.size(); i++) {
+            ((HeadlessDevice) devices.get(i)).attach(program);
+         }
+      }
+
+   /**
+    * Finish and detach all devices.  Every device is finished even if an earlier one fails.
+    * @param errors stream for reporting devices whose output could not be written
+    */
+       public void finishAll(PrintStream errors) {
+         for (int i = 0; i < devices.size(); i++) {
+            HeadlessDevice device = (HeadlessDevice) devices.get(i);
+            device.detach();
+            try {
+               device.finish();
+            } 
+                catch (IOException e) {
+                  errors.println("Error while finishing device "+device+": "+e.getMessage());
+               }
+         }
+      }
+   }
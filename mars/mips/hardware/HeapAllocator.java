@@ -0,0 +1,343 @@
+   package mars.mips.hardware;
+
+   import mars.util.*;
+   import java.io.*;
+   import java.util.*;
+
+/**
+ * Heap manager behind the malloc, free and realloc syscalls.  It takes heap
+ * storage from the same bump pointer as sbrk (Memory.allocateBytesFromHeap) but,
+ * unlike sbrk, storage given back with free is used again.
+ * <p>
+ * Requests up to LARGEST_SMALL_BLOCK bytes are rounded up to one of a few size
+ * classes.  Each size class carves its blocks from spans of about SPAN_BYTES, taken
+ * like a large block (so freed large blocks are used again for them), or a single
+ * block at a time once the heap is too full for a span; it keeps a stack of its
+ * freed blocks.  Larger requests are
+ * rounded up to a multiple of ALIGNMENT and served best-fit from the free large
+ * blocks, which are merged with their free neighbours; if none is big enough the
+ * heap is extended.  Every block is ALIGNMENT-aligned.
+ * <p>
+ * All bookkeeping is kept here rather than in simulated memory, so a program that
+ * writes past the end of a block corrupts its own data but never the heap itself,
+ * and the heap contents seen in the Data Segment window are only the program's.
+ * Usage statistics, including blocks never freed, can be printed at end of run.
+ * Memory owns the instance and replaces it whenever memory is cleared.
+ */
+
+    public class HeapAllocator {
+
+      /** Alignment, in bytes, of every block. */
+      public static final int ALIGNMENT = 8;
+      /** Largest request served from a size class. */
+      public static final int LARGEST_SMALL_BLOCK = 2048;
+      /** Approximate number of bytes taken from the heap at a time for a size class. */
+      public static final int SPAN_BYTES = 16384;
+      private static final int[] SIZE_CLASSES = {8, 16, 24, 32, 48, 64, 96, 128, 192, 256, 384,
+                                                 512, 768, 1024, 1536, LARGEST_SMALL_BLOCK};
+      private static final int MAX_LEAKS_LISTED = 10;
+
+      private Memory memory;
+      private int[][] freeBlocks = new int[SIZE_CLASSES.length][];  // stack of free blocks per class
+      private int[] freeCounts = new int[SIZE_CLASSES.length];
+      private int[] spanNext = new int[SIZE_CLASSES.length];       // next uncarved block in current span
+      private int[] spanEnd = new int[SIZE_CLASSES.length];
+      private TreeMap freeLargeByAddress = new TreeMap(); // Integer address -> Integer size
+      private TreeSet freeLargeBySize = new TreeSet();    // Long (size << 32 | address)
+      private HashMap liveBlocks = new HashMap();         // Integer address -> Block
+
+      // statistics
+      private long mallocs, frees, reallocs, failures;
+      private long requestedBytes;   // requested size of live blocks
+      private long blockBytes;       // size of live blocks, after rounding
+      private long peakRequestedBytes;
+      private int peakLiveBlocks;
+      private long heapBytes;        // taken from the heap with allocateBytesFromHeap
+
+   /**
+    * Create an empty heap manager for the given memory.
+    * @param memory memory whose heap is managed
+    */
+       public HeapAllocator(Memory memory) {
+         this.memory = memory;
+      }
+
+   /**
+    * Allocate a block.
+    * @param size number of bytes requested; 0 gives a block of minimum size
+    * @return address of the block, or 0 if heap storage is exhausted
+    * @throws IllegalArgumentException if size is negative
+    */
+       public int malloc(int size) throws IllegalArgumentException {
+         if (size < 0) {
+            throw new IllegalArgumentException("request ("+size+") is negative heap amount");
+         }
+         mallocs++;
+         return allocate(size);
+      }
+
+   /**
+    * Give a block back.  Freeing address 0 does nothing.
+    * @param address address of a block returned by malloc or realloc
+    * @throws IllegalArgumentException if address is not that of a live block, for
+    * instance because it was already freed
+    */
+       public void free(int address) throws IllegalArgumentException {
+         if (address == 0) {
+            return;
+         }
+         release(address, "free");
+         frees++;
+      }
+
+   /**
+    * Change the size of a block, moving it if needed.  The contents are kept up to the
+    * smaller of the old and new sizes.  As in C, an address of 0 allocates a new
+    * block and a size of 0 frees the block.
+    * @param address address of a live block, or 0
+    * @param size new size in bytes
+    * @return address of the block, 0 if the block was freed, or 0 if heap storage is
+    * exhausted, in which case the old block is left as it was
+    * @throws IllegalArgumentException if size is negative or address is not that of
+    * a live block
+    * @throws AddressErrorException if the contents cannot be copied
+    */
+       public int realloc(int address, int size) throws IllegalArgumentException, AddressErrorException {
+         if (size < 0) {
+            throw new IllegalArgumentException("request ("+size+") is negative heap amount");
+         }
+         if (address == 0) {
+            mallocs++;
+            return allocate(size);
+         }
+         Block block = (Block) liveBlocks.get(Integer.valueOf(address));
+         if (block == null) {
+            throw new IllegalArgumentException(invalidAddress("realloc", address));
+         }
+         reallocs++;
+         if (size == 0) {
+            release(address, "realloc");
+            return 0;
+         }
+         if (blockSize(size) == block.size) {
+            requestedBytes += size - block.requested;
+            block.requested = size;
+            peakRequestedBytes = Math.max(peakRequestedBytes, requestedBytes);
+            return address;
+         }
+         int newAddress = allocate(size);
+         if (newAddress == 0) {
+            return 0;
+         }
+         int bytes = Math.min(block.requested, size);
+         for (int offset = 0; offset < bytes; offset += Memory.WORD_LENGTH_BYTES) {
+            memory.setRawWord(newAddress + offset, memory.getRawWord(address + offset));
+         }
+         release(address, "realloc");
+         return newAddress;
+      }
+
+   /**
+    * @return number of blocks allocated and not yet freed
+    */
+       public int getLiveBlockCount() {
+         return liveBlocks.size();
+      }
+
+   /**
+    * @return total requested size of the blocks allocated and not yet freed
+    */
+       public long getLiveBytes() {
+         return requestedBytes;
+      }
+
+   /**
+    * @return true if malloc or realloc has been called since memory was cleared
+    */
+       public boolean isUsed() {
+         return mallocs > 0 || reallocs > 0;
+      }
+
+   /**
+    * Print call counts, heap usage and fragmentation, then the blocks not freed
+    * (leaks), at most MAX_LEAKS_LISTED of them in address order.
+    * @param out where to print
+    */
+       public void printReport(PrintStream out) {
+         long uncarvedBytes = 0; // rest of the current span of each size class
+         for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            uncarvedBytes += spanEnd[i] - spanNext[i];
+         }
+         long freeBytes = heapBytes - blockBytes - uncarvedBytes;
+         out.println("heap: malloc "+mallocs+"  free "+frees+"  realloc "+reallocs+"  failed "+failures);
+         out.println("heap bytes "+heapBytes+"  in use "+blockBytes+" ("+requestedBytes+" requested)  peak requested "
+            +peakRequestedBytes+"  peak blocks "+peakLiveBlocks);
+         out.println("fragmentation: internal "+percent(blockBytes - requestedBytes, blockBytes)
+            +"  external "+percent(freeBytes, heapBytes - uncarvedBytes)+" ("+freeBytes+" bytes free in heap, "
+            +uncarvedBytes+" in spans not yet carved)");
+         out.println("not freed: "+liveBlocks.size()+" blocks, "+requestedBytes+" bytes");
+         if (liveBlocks.isEmpty()) {
+            return;
+         }
+         TreeMap leaks = new TreeMap(liveBlocks);
+         int listed = 0;
+         for (Iterator it = leaks.entrySet().iterator(); it.hasNext() && listed < MAX_LEAKS_LISTED; listed++) {
+            Map.Entry entry = (Map.Entry) it.next();
+            out.println(Binary.intToHexString(((Integer) entry.getKey()).intValue())+"\t"+((Block) entry.getValue()).requested);
+         }
+         if (leaks.size() > listed) {
+            out.println("... "+(leaks.size() - listed)+" more");
+         }
+      }
+
+       private int allocate(int size) {
+         long blockSize = blockSize(size);
+         if (blockSize > (Memory.dataSegmentLimitAddress & 0xffffffffL) - (Memory.heapBaseAddress & 0xffffffffL)) {
+            // Larger than the whole heap, and perhaps than an int.
+            failures++;
+            return 0;
+         }
+         int rounded = (int) blockSize;
+         int address;
+         try {
+            address = (rounded <= LARGEST_SMALL_BLOCK) ? allocateSmall(sizeClass(rounded)) : allocateLarge(rounded);
+         }
+             catch (IllegalArgumentException e) {
+               failures++;
+               return 0;
+            }
+         liveBlocks.put(Integer.valueOf(address), new Block(size, rounded));
+         requestedBytes += size;
+         blockBytes += rounded;
+         peakRequestedBytes = Math.max(peakRequestedBytes, requestedBytes);
+         peakLiveBlocks = Math.max(peakLiveBlocks, liveBlocks.size());
+         return address;
+      }
+
+       private void release(int address, String operation) {
+         Block block = (Block) liveBlocks.remove(Integer.valueOf(address));
+         if (block == null) {
+            throw new IllegalArgumentException(invalidAddress(operation, address));
+         }
+         requestedBytes -= block.requested;
+         blockBytes -= block.size;
+         if (block.size <= LARGEST_SMALL_BLOCK) {
+            int sizeClass = sizeClass(block.size);
+            if (freeBlocks[sizeClass] == null) {
+               freeBlocks[sizeClass] = new int[16];
+            }
+            else if (freeCounts[sizeClass] == freeBlocks[sizeClass].length) {
+               int[] newStack = new int[freeCounts[sizeClass] * 2];
+               System.arraycopy(freeBlocks[sizeClass], 0, newStack, 0, freeCounts[sizeClass]);
+               freeBlocks[sizeClass] = newStack;
+            }
+            freeBlocks[sizeClass][freeCounts[sizeClass]++] = address;
+         }
+         else {
+            freeLarge(address, block.size);
+         }
+      }
+
+       private int allocateSmall(int sizeClass) {
+         if (freeCounts[sizeClass] > 0) {
+            return freeBlocks[sizeClass][--freeCounts[sizeClass]];
+         }
+         int size = SIZE_CLASSES[sizeClass];
+         if (spanNext[sizeClass] == spanEnd[sizeClass]) {
+            int spanSize = (SPAN_BYTES / size) * size;
+            int span;
+            try {
+               span = allocateLarge(spanSize);
+            }
+                catch (IllegalArgumentException e) {
+                  spanSize = size;
+                  span = allocateLarge(spanSize);
+               }
+            spanNext[sizeClass] = span;
+            spanEnd[sizeClass] = span + spanSize;
+         }
+         int address = spanNext[sizeClass];
+         spanNext[sizeClass] += size;
+         return address;
+      }
+
+       private int allocateLarge(int size) {
+         Long fit = (Long) freeLargeBySize.ceiling(Long.valueOf((long) size << 32));
+         if (fit == null) {
+            return extendHeap(size);
+         }
+         int address = (int) fit.longValue();
+         int blockSize = (int) (fit.longValue() >>> 32);
+         removeFreeLarge(address, blockSize);
+         if (blockSize > size) {
+            addFreeLarge(address + size, blockSize - size);
+         }
+         return address;
+      }
+
+      // Free a large block, merging it with free large blocks on either side.
+       private void freeLarge(int address, int size) {
+         Map.Entry before = freeLargeByAddress.lowerEntry(Integer.valueOf(address));
+         if (before != null && ((Integer) before.getKey()).intValue() + ((Integer) before.getValue()).intValue() == address) {
+            address = ((Integer) before.getKey()).intValue();
+            removeFreeLarge(address, ((Integer) before.getValue()).intValue());
+            size += ((Integer) before.getValue()).intValue();
+         }
+         Integer after = (Integer) freeLargeByAddress.get(Integer.valueOf(address + size));
+         if (after != null) {
+            removeFreeLarge(address + size, after.intValue());
+            size += after.intValue();
+         }
+         addFreeLarge(address, size);
+      }
+
+       private void addFreeLarge(int address, int size) {
+         freeLargeByAddress.put(Integer.valueOf(address), Integer.valueOf(size));
+         freeLargeBySize.add(Long.valueOf((long) size << 32 | (address & 0xffffffffL)));
+      }
+
+       private void removeFreeLarge(int address, int size) {
+         freeLargeByAddress.remove(Integer.valueOf(address));
+         freeLargeBySize.remove(Long.valueOf((long) size << 32 | (address & 0xffffffffL)));
+      }
+
+      // Take size bytes from the heap, ALIGNMENT-aligned.  sbrk may have left the
+      // heap pointer on a word boundary only.
+       private int extendHeap(int size) throws IllegalArgumentException {
+         int padding = (ALIGNMENT - Memory.heapAddress % ALIGNMENT) % ALIGNMENT;
+         int address = memory.allocateBytesFromHeap(padding + size) + padding;
+         heapBytes += size;
+         return address;
+      }
+
+      // Size of the block that serves a request: that of its size class, or else the
+      // request rounded up to a multiple of ALIGNMENT.
+       // Computed in long, as rounding up the largest requests overflows an int.
+       private static long blockSize(int size) {
+         long rounded = (size == 0) ? ALIGNMENT : (size + (long) ALIGNMENT - 1) & -ALIGNMENT;
+         return (rounded <= LARGEST_SMALL_BLOCK) ? SIZE_CLASSES[sizeClass((int) rounded)] : rounded;
+      }
+
+       private static int sizeClass(int roundedSize) {
+         int index = Arrays.binarySearch(SIZE_CLASSES, roundedSize);
+         return (index >= 0) ? index : -index - 1;
+      }
+
+       private static String invalidAddress(String operation, int address) {
+         return operation+" of "+Binary.intToHexString(address)+", which is not an allocated block";
+      }
+
+       private static String percent(long part, long whole) {
+         return (whole == 0) ? "0%" : (part * 100 / whole)+"%";
+      }
+
+       private static class Block {
+         int requested;
+         int size;
+
+          Block(int requested, int size) {
+            this.requested = requested;
+            this.size = size;
+         }
+      }
+   }
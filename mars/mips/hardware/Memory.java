@@ -4,6 +4,7 @@
    import mars.simulator.*;
    import mars.mips.instructions.*;
    import java.util.*;
+   import java.io.*;
 	
 	/*
 Copyright (c) 2003-2009,  Pete Sanderson and Kenneth Vollmar
@@ -90,6 +91,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static boolean byteOrder = LITTLE_ENDIAN;
    	
       public static int heapAddress;
+      private HeapAllocator heapAllocator; // manages heap used by malloc/free/realloc syscalls
    
     // Memory will maintain a collection of observables.  Each one is associated
     // with a specific memory address or address range, and each will have at least
@@ -131,8 +133,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     
       private static final int BLOCK_LENGTH_WORDS = 1024;  // allocated blocksize 1024 ints == 4K bytes
       private static final int BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
-      private int[][] dataBlockTable;
-      private int[][] kernelDataBlockTable;
+      private BlockTable dataBlockTable;
+      private BlockTable kernelDataBlockTable;
     
     // The stack is modeled similarly to the data segment.  It cannot share the same
     // data structure because the stack base address is very large.  To store it in the
@@ -149,7 +151,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // Everything else works the same, so it shares some private helper methods with
     // data segment algorithms.
     
-      private int[][] stackBlockTable;
+      private BlockTable stackBlockTable;
+   
+    // Memory configurations that are marked sparse (see MemoryConfiguration.isSparse())
+    // give the data segment and stack a BlockTable that hashes block numbers instead of
+    // indexing an array of them.  Then the two segments are limited only by the addresses
+    // in the configuration, not by the 4MB the arrays can hold, and a program that uses
+    // hundreds of MB of them gets just the blocks it touches.
+   
+      private static boolean sparseSegments = false;
+   
+    // Alternatively the data segment and stack can be kept outside the Java heap, each in
+    // a file mapped into memory (see setOffHeap()).  Normally these are scratch files,
+    // fresh each time memory is cleared.  But the data segment may be mapped onto an
+    // image file instead: its contents are then the initial data segment, loaded only
+    // as the program touches it, and it holds the final data segment after the run.
+   
+      private boolean offHeap = false;
+      private File dataImage = null;
+      private IOException offHeapFailure = null; // why they could not be mapped on clearing memory
+   
+    // Machine code loaded from a binary image rather than assembled (see loadImage()) is
+    // kept as words, one array per image, until a statement is asked for.  Only then is
+    // its word decoded into a ProgramStatement, which is stored in the text block table
+    // like an assembled one.  Null if no text image has been loaded.
+   
+      private ArrayList textImages = null; // of int[] {address, words...}
    
     // Memory mapped I/O is simulated with a separate table using the same structure and
     // logic as data segment.  Memory is allocated in 4K byte blocks.  But since MMIO
@@ -162,7 +189,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // into a table offset, this is of no concern.
    
       private static final int MMIO_TABLE_LENGTH = 16; // Each entry of table points to a 4K block.
-      private int[][] memoryMapBlockTable;
+      private BlockTable memoryMapBlockTable;
+   
+    // Simulated devices (see MemoryMappedDevice) can claim individual MMIO words.  This
+    // table has one entry per MMIO word, indexed like memoryMapBlockTable, and is null
+    // where no device is attached.  Only the MMIO branches of the getters and setters
+    // consult it, so attaching a device costs nothing for any other access.  Devices
+    // stay attached when memory is cleared for a new assembly, just like observers.
+   
+      private MemoryMappedDevice[] memoryMapDevices = new MemoryMappedDevice[MMIO_TABLE_LENGTH * BLOCK_LENGTH_WORDS];
+   
+    // Optional recorder of program memory accesses, e.g. to drive a cache model.  Null when
+    // not recording.  See MemoryAccessRecorder.
+   
+      private MemoryAccessRecorder accessRecorder = null;
    	    
     // I use a similar scheme for storing instructions.  MIPS text segment ranges from
     // 0x00400000 all the way to data segment (0x10000000) a range of about 250 MB!  So
@@ -177,7 +217,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     
     // Set "top" address boundary to go with each "base" address.  This determines permissable
     // address range for user program.  Currently limit is 4MB, or 1024 * 1024 * 4 bytes based
-    // on the table structures described above (except memory mapped IO, limited to 64KB by range).
+    // on the table structures described above (except memory mapped IO, limited to 64KB by range,
+    // and the data segment and stack of sparse configurations, limited only by the configuration).
     
       public static int dataSegmentLimitAddress = dataSegmentBaseAddress + 
       														  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
@@ -245,7 +286,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          kernelDataBaseAddress = MemoryConfigurations.getCurrentConfiguration().getKernelDataBaseAddress(); //0x90000000;
          memoryMapBaseAddress = MemoryConfigurations.getCurrentConfiguration().getMemoryMapBaseAddress(); //0xffff0000;
          kernelHighAddress = MemoryConfigurations.getCurrentConfiguration().getKernelHighAddress(); //0xffffffff;		
-         dataSegmentLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress(),
+         sparseSegments = MemoryConfigurations.getCurrentConfiguration().isSparse();
+         dataSegmentLimitAddress = sparseSegments ? MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress()
+                                    : Math.min(MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress(),
                                       dataSegmentBaseAddress + 
             								  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
          textLimitAddress        = Math.min(MemoryConfigurations.getCurrentConfiguration().getTextLimitAddress(),
@@ -257,7 +300,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          kernelTextLimitAddress  = Math.min(MemoryConfigurations.getCurrentConfiguration().getKernelTextLimitAddress(),
                                       kernelTextBaseAddress + 
             								  TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);																  
-         stackLimitAddress       = Math.max(MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress(),
+         stackLimitAddress       = sparseSegments ? MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress()
+                                    : Math.max(MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress(),
                                       stackBaseAddress - 
             								  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
          memoryMapLimitAddress   = Math.min(MemoryConfigurations.getCurrentConfiguration().getMemoryMapLimitAddress(),
@@ -286,14 +330,135 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
        private void initialize() {
          heapAddress = heapBaseAddress;
+         textImages = null;
+         heapAllocator = new HeapAllocator(this);
          textBlockTable  = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-         dataBlockTable  = new int[BLOCK_TABLE_LENGTH][]; // array of null int[] references
          kernelTextBlockTable  = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-         kernelDataBlockTable  = new int[BLOCK_TABLE_LENGTH][];      
-         stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
-         memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
+         kernelDataBlockTable  = BlockTable.dense(BLOCK_TABLE_LENGTH, BLOCK_LENGTH_WORDS); // array of null int[] references      
+         memoryMapBlockTable = BlockTable.dense(MMIO_TABLE_LENGTH, BLOCK_LENGTH_WORDS);
+         if (offHeap) {
+            try {
+               mapDataAndStack();
+            } 
+               catch (IOException e) {
+                  // Files could not be mapped, e.g. for lack of disk space.  Carry on with
+                  // the segments on the Java heap, and keep the error for getOffHeapFailure().
+                  offHeap = false;
+                  dataImage = null;
+                  offHeapFailure = e;
+               }
+         }
+         if (!offHeap) {
+            dataBlockTable  = sparseSegments ? BlockTable.sparse(BLOCK_LENGTH_WORDS)  // hash of blocks
+                                             : BlockTable.dense(BLOCK_TABLE_LENGTH, BLOCK_LENGTH_WORDS);
+            stackBlockTable = sparseSegments ? BlockTable.sparse(BLOCK_LENGTH_WORDS)
+                                             : BlockTable.dense(BLOCK_TABLE_LENGTH, BLOCK_LENGTH_WORDS);
+         }
          System.gc(); // call garbage collector on any Table memory just deallocated. 	  
       }  
+   
+   /**
+    * Keep the data segment and stack outside the Java heap, in memory-mapped files, or
+    * bring them back.  This spares the garbage collector when they are very large
+    * (see MemoryConfigurations.getLargeConfiguration()).  Their contents are lost, except
+    * for those of a data image file.
+    * <p>
+    * A data image file holds the data segment, from the data segment base address on, as
+    * words in the native byte order of the host.  The data segment starts out with the
+    * contents of the file, even after memory is cleared for assembly, and these are read
+    * from disk only as they are used.  Changes are written back to the file, so that after
+    * the run it holds the final data segment.  The file is created if it does not exist,
+    * and is cut back to the end of the last block of it that was used when the data segment
+    * is brought back onto the Java heap; do this before exiting, or the file will keep the
+    * length of the whole data segment.
+    *
+    * @param offHeap true to keep the data segment and stack off the Java heap, false
+    * to keep them on it
+    * @param dataImage data image file to map the data segment onto, or null for scratch
+    * files.  Ignored if offHeap is false.
+    * @throws IOException if the files cannot be mapped, in which case the data segment and
+    * stack stay on the Java heap, or the data image file cannot be written back
+    */
+       public synchronized void setOffHeap(boolean offHeap, File dataImage) throws IOException {
+         offHeapFailure = null;
+         if (this.offHeap) {
+            this.offHeap = false;
+            closeDataAndStack();
+         }
+         this.offHeap = offHeap;
+         this.dataImage = offHeap ? dataImage : null;
+         if (offHeap) {
+            try {
+               mapDataAndStack();
+               return;
+            } 
+               catch (IOException e) {
+                  this.offHeap = false;
+                  this.dataImage = null;
+                  initialize();
+                  throw e;
+               }
+         }
+         initialize();
+      }
+   
+   /**
+    * Whether the data segment and stack are kept outside the Java heap.
+    * @return true if they are, false if not
+    * @see #setOffHeap(boolean, File)
+    */
+       public boolean isOffHeap() {
+         return offHeap;
+      }
+   
+   /**
+    * Why the data segment and stack could not be mapped when memory was cleared, in which
+    * case they were put back on the Java heap and any data image file is no longer used.
+    * Kept until the next call of setOffHeap().
+    * @return the error, or null if there was none
+    * @see #setOffHeap(boolean, File)
+    */
+       public IOException getOffHeapFailure() {
+         return offHeapFailure;
+      }
+   
+      // Map the data segment and stack onto their files, closing any mapped before.  The
+      // stack table has a spare word because the stack byte addressing fix in
+      // storeOrFetchBytesInTable() can reach one word past the stack limit.
+       private void mapDataAndStack() throws IOException {
+         closeDataAndStack();
+         int dataWords = (dataSegmentLimitAddress - dataSegmentBaseAddress) / WORD_LENGTH_BYTES;
+         if (dataImage == null) {
+            dataBlockTable = mapScratchFile(dataWords);
+         } 
+         else {
+            dataBlockTable = BlockTable.mapped(dataImage, dataWords, BLOCK_LENGTH_WORDS);
+         }
+         stackBlockTable = mapScratchFile((stackBaseAddress - stackLimitAddress) / WORD_LENGTH_BYTES + 1);
+      }
+   
+      // Map a segment that is not kept onto a temporary file.  The file is deleted right
+      // away where the system allows deleting a mapped file, otherwise when MARS exits.
+       private static BlockTable mapScratchFile(int words) throws IOException {
+         File file = File.createTempFile("mars", ".mem");
+         file.deleteOnExit();
+         BlockTable table = BlockTable.mapped(file, words, BLOCK_LENGTH_WORDS);
+         file.delete();
+         return table;
+      }
+   
+      // Write back and release the files of the data segment and stack, if mapped.
+       private void closeDataAndStack() throws IOException {
+         BlockTable data = dataBlockTable;
+         BlockTable stack = stackBlockTable;
+         dataBlockTable = stackBlockTable = null;
+         if (stack != null) {
+            stack.close();
+         }
+         if (data != null) {
+            data.close();
+         }
+      }
      
    	/**
    	 * Returns the next available word-aligned heap address.  There is no recycling and
@@ -319,6 +484,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return result;
       }
    
+   	/**
+   	 * Returns the heap manager used by the malloc, free and realloc syscalls.  Unlike
+   	 * allocateBytesFromHeap(), it recycles storage that is freed.  A new one is created
+   	 * whenever memory is cleared.
+   	 *
+   	 * @return the heap manager
+   	 */
+       public HeapAllocator getHeapAllocator() {
+         return heapAllocator;
+      }
+   
    
      /**
       * Set byte order to either LITTLE_ENDIAN or BIG_ENDIAN.  Default is LITTLE_ENDIAN.
@@ -391,6 +567,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
            // memory mapped I/O.
             relativeByteAddress = address - memoryMapBaseAddress;
             oldValue = storeBytesInTable(memoryMapBlockTable, relativeByteAddress, length, value);
+            MemoryMappedDevice device = getMemoryMappedDevice(relativeByteAddress);
+            if (device != null) {
+               device.deviceRegisterWritten(address, length, value);
+            }
          }
          else if (inKernelDataSegment(address)) {
            // in kernel data segment.  Will write one byte at a time, w/o regard to boundaries.
@@ -408,6 +588,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address out of range ",
                Exceptions.ADDRESS_EXCEPTION_STORE, address);
          }
+         if (accessRecorder != null) accessRecorder.record(MemoryAccessRecorder.WRITE, address, length);
          notifyAnyObservers(AccessNotice.WRITE, address, length, value);
          return oldValue;
       }
@@ -460,6 +641,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
            // memory mapped I/O.
             relative = (address - memoryMapBaseAddress) >> 2; // convert byte address to word
             oldValue = storeWordInTable(memoryMapBlockTable, relative, value);
+            MemoryMappedDevice device = getMemoryMappedDevice(address - memoryMapBaseAddress);
+            if (device != null) {
+               device.deviceRegisterWritten(address, WORD_LENGTH_BYTES, value);
+            }
          }
          else if (inKernelDataSegment(address)) {
            // in data segment
@@ -477,6 +662,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("store address out of range ",
                Exceptions.ADDRESS_EXCEPTION_STORE,	address);
          }
+         if (accessRecorder != null) accessRecorder.record(MemoryAccessRecorder.WRITE, address, WORD_LENGTH_BYTES);
          notifyAnyObservers(AccessNotice.WRITE, address, WORD_LENGTH_BYTES, value);
          if (Globals.getSettings().getBackSteppingEnabled()) {
             Globals.program.getBackStepper().addMemoryRestoreRawWord(address,oldValue);
@@ -621,6 +807,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
            // memory mapped I/O.
             relativeByteAddress = address - memoryMapBaseAddress;
+            MemoryMappedDevice device = notify ? getMemoryMappedDevice(relativeByteAddress) : null;
+            if (device != null) {
+               device.deviceRegisterRead(address, length);
+            }
             value = fetchBytesFromTable(memoryMapBlockTable, relativeByteAddress, length);
          }
          else if (inTextSegment(address)) {
@@ -652,7 +842,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address out of range ",
                Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
-         if (notify) notifyAnyObservers(AccessNotice.READ, address, length, value);
+         if (notify) {
+            if (accessRecorder != null) accessRecorder.record(MemoryAccessRecorder.READ, address, length);
+            notifyAnyObservers(AccessNotice.READ, address, length, value);
+         }
          return value;
       }
    
@@ -693,6 +886,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
            // memory mapped I/O.
             relative = (address - memoryMapBaseAddress) >> 2;
+            MemoryMappedDevice device = getMemoryMappedDevice(address - memoryMapBaseAddress);
+            if (device != null) {
+               device.deviceRegisterRead(address, WORD_LENGTH_BYTES);
+            }
             value = fetchWordFromTable(memoryMapBlockTable, relative);
          }
          else if (inTextSegment(address)) {
@@ -724,6 +921,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address out of range ", 
                Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
+         if (accessRecorder != null) accessRecorder.record(MemoryAccessRecorder.READ, address, WORD_LENGTH_BYTES);
          notifyAnyObservers(AccessNotice.READ, address, Memory.WORD_LENGTH_BYTES,value);
          return value;
       } 
@@ -779,6 +977,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
             value = fetchWordOrNullFromTable(kernelDataBlockTable, relative);
          } 
+         else if (inMemoryMapSegment(address)) {
+              // in memory mapped I/O segment; devices are not called
+            relative = (address - memoryMapBaseAddress) >> 2; // convert byte address to words
+            value = fetchWordOrNullFromTable(memoryMapBlockTable, relative);
+         } 
          else {
               // falls outside Mars addressing range
             throw new AddressErrorException("address out of range ", Exceptions.ADDRESS_EXCEPTION_LOAD, address);
@@ -788,6 +991,104 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return value;
       } 
    
+   /**
+    * Loads words from a binary image of memory, such as one written by a dump format,
+    * starting at the given address.  Machine code for the text segment is decoded into
+    * program statements only as they are executed or otherwise needed, so a program is
+    * ready to run without assembly.  Words for the data segment are copied in a block at
+    * a time.  Observers are not notified.
+    *
+    * @param address address of first word; must be on word boundary
+    * @param words the words, in order of address
+    * @param count number of words to load
+    * @throws AddressErrorException if address is not on word boundary or a word falls
+    * outside Mars addressing range or in the text segment partly
+    */
+       public synchronized void loadImage(int address, int[] words, int count) throws AddressErrorException {
+         if (address % WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("image address not aligned on word boundary ",
+                  Exceptions.ADDRESS_EXCEPTION_STORE, address);
+         }
+         if (count <= 0) {
+            return;
+         }
+         int lastAddress = address + (count - 1) * WORD_LENGTH_BYTES;
+         if (inTextSegment(address) || inKernelTextSegment(address)) {
+            if (!(inTextSegment(address) && inTextSegment(lastAddress) 
+                  || inKernelTextSegment(address) && inKernelTextSegment(lastAddress))) {
+               throw new AddressErrorException("image does not fit in text segment ",
+                     Exceptions.ADDRESS_EXCEPTION_STORE, lastAddress);
+            }
+            int[] image = new int[count + 1];
+            image[0] = address;
+            System.arraycopy(words, 0, image, 1, count);
+            if (textImages == null) {
+               textImages = new ArrayList();
+            }
+            textImages.add(0, image); // latest first, in case images overlap
+         } 
+         else if (inDataSegment(address) && inDataSegment(lastAddress)) {
+            dataBlockTable.setWords((address - dataSegmentBaseAddress) >> 2, words, 0, count);
+         } 
+         else if (inKernelDataSegment(address) && inKernelDataSegment(lastAddress)) {
+            kernelDataBlockTable.setWords((address - kernelDataBaseAddress) >> 2, words, 0, count);
+         } 
+         else {
+            for (int i = 0; i < count; i++) {
+               setRawWord(address + i * WORD_LENGTH_BYTES, words[i]);
+            }
+         }
+      }
+   
+      // Statement for a word of a text image, or null if no image holds the address.
+       private ProgramStatement decodeTextImage(int address) {
+         for (int i = 0; i < textImages.size(); i++) {
+            int[] image = (int[]) textImages.get(i);
+            long index = ((address & 0xFFFFFFFFL) - (image[0] & 0xFFFFFFFFL)) / WORD_LENGTH_BYTES;
+            if (index >= 0 && index < image.length - 1 && address % WORD_LENGTH_BYTES == 0) {
+               return new ProgramStatement(image[(int) index + 1], address);
+            }
+         }
+         return null;
+      }
+   
+   /**
+    * Reads consecutive words in one go, as if by getRawWordOrNull() for each, stopping
+    * at the first word for which it would return null.  Words of the data segment and
+    * kernel data segment are copied a block at a time, which is much faster than reading
+    * them one by one.  Like getRawWordOrNull(), does not notify observers.
+    *
+    * @param address address of first word
+    * @param words array to receive the words
+    * @param offset index in words of first word
+    * @param count number of words to read
+    * @return number of words read.  Less than count if a word is not in use.
+    * @throws AddressErrorException if address is not on word boundary or a word falls
+    * outside Mars addressing range
+    */
+       public synchronized int getRawWords(int address, int[] words, int offset, int count) throws AddressErrorException {
+         if (count > 0 && address % WORD_LENGTH_BYTES == 0) {
+            int lastAddress = address + (count - 1) * WORD_LENGTH_BYTES;
+            if (inDataSegment(address) && inDataSegment(lastAddress)) {
+               return dataBlockTable.getWords((address - dataSegmentBaseAddress) >> 2, words, offset, count);
+            }
+            if (inKernelDataSegment(address) && inKernelDataSegment(lastAddress)) {
+               return kernelDataBlockTable.getWords((address - kernelDataBaseAddress) >> 2, words, offset, count);
+            }
+            if (inMemoryMapSegment(address) && inMemoryMapSegment(lastAddress)) {
+               return memoryMapBlockTable.getWords((address - memoryMapBaseAddress) >> 2, words, offset, count);
+            }
+         }
+         for (int i = 0; i < count; i++) {
+            Integer value = getRawWordOrNull(address + i * WORD_LENGTH_BYTES);
+            if (value == null) {
+               return i;
+            }
+            words[offset + i] = value.intValue();
+         }
+         return count;
+      }
+   
      /**
       *  Look for first "null" memory value in an address range.  For text segment (binary code), this
    	*  represents a word that does not contain an instruction.  Normally use this to find the end of 
@@ -942,6 +1243,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                "fetch address for text segment out of range ",
                Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
+         if (notify && accessRecorder != null) 
+            accessRecorder.record(MemoryAccessRecorder.INSTRUCTION_FETCH, address, Instruction.INSTRUCTION_LENGTH);
          if (inTextSegment(address)) 
             return readProgramStatement(address, textBaseAddress, textBlockTable, notify);
          else if (inKernelTextSegment(address)) 
@@ -1048,6 +1351,39 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return  address >= memoryMapBaseAddress && address < kernelHighAddress;
       }   
    
+    /**
+    * Find out how many words there are from the given address to the end of the
+    * segment holding it, e.g. to check the size of an image before loading it there.
+    * @param address integer memory address
+    * @return number of words, counting the one at address, or 0 if the address is in
+    *  no MARS-defined segment.
+    */
+       public static int wordsToEndOfSegment(int address) {
+         long end; // address just past the segment
+         if (inTextSegment(address)) {
+            end = textLimitAddress;
+         } 
+         else if (inDataSegment(address)) {
+            end = dataSegmentLimitAddress;
+         } 
+         else if (address > stackLimitAddress && address <= stackBaseAddress) {
+            end = (long) stackBaseAddress + WORD_LENGTH_BYTES;
+         } 
+         else if (inKernelTextSegment(address)) {
+            end = kernelTextLimitAddress;
+         } 
+         else if (inKernelDataSegment(address)) {
+            end = kernelDataSegmentLimitAddress;
+         } 
+         else if (inMemoryMapSegment(address)) {
+            end = (long) kernelHighAddress + 1;
+         } 
+         else {
+            return 0;
+         }
+         return (int) ((end - address + WORD_LENGTH_BYTES - 1) / WORD_LENGTH_BYTES);
+      }
+   
    
    
    
@@ -1211,6 +1547,101 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
       
    
+   ///////////////////////////////////////////////////////////////////////////
+   //  ACCESS RECORDING.  See MemoryAccessRecorder.
+   
+   /**
+    *  Install a recorder that will receive every program memory access from now on:
+    *  instruction fetches, and loads and stores that notify observers.  There is no
+    *  thread filtering, so install it just before simulation and remove it afterwards.
+    *  @param recorder the recorder, or null to stop recording
+    */
+       public void setAccessRecorder(MemoryAccessRecorder recorder) {
+         accessRecorder = recorder;
+      }
+   
+   /**
+    *  @return the installed access recorder, or null if none
+    */
+       public MemoryAccessRecorder getAccessRecorder() {
+         return accessRecorder;
+      }
+   
+   ///////////////////////////////////////////////////////////////////////////
+   //  MEMORY MAPPED DEVICES.  A lighter alternative to observers for simulated
+   //  devices that own words of the MMIO segment.  See MemoryMappedDevice.
+   
+   /**
+    *  Attach a device to the specified range of MMIO words.  The device will be called back
+    *  directly when the MIPS program reads or writes any word in the range.  A word can have
+    *  only one device; attaching another device to it replaces the first.
+    *
+    *  @param device the device
+    *  @param startAddr the low end of the address range, must be on word boundary
+    *  @param endAddr the high end of the address range, must be on word boundary
+    *  @throws AddressErrorException if range is not aligned or not within the MMIO segment
+    */
+       public void addMemoryMappedDevice(MemoryMappedDevice device, int startAddr, int endAddr) throws AddressErrorException {
+         if (startAddr % WORD_LENGTH_BYTES != 0 || endAddr % WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("address not aligned on word boundary ",
+               Exceptions.ADDRESS_EXCEPTION_LOAD, startAddr);
+         }
+         if (startAddr < memoryMapBaseAddress || endAddr >= memoryMapLimitAddress || endAddr < startAddr) {
+            throw new AddressErrorException("device address range not within memory mapped I/O segment ",
+               Exceptions.ADDRESS_EXCEPTION_LOAD, startAddr);
+         }
+         for (int address = startAddr; address <= endAddr && address >= startAddr; address += WORD_LENGTH_BYTES) {
+            memoryMapDevices[(address - memoryMapBaseAddress) >> 2] = device;
+         }
+      }
+   
+   /**
+    *  Detach the specified device from all MMIO words it is attached to.
+    *  @param device the device to be removed
+    */
+       public void deleteMemoryMappedDevice(MemoryMappedDevice device) {
+         for (int i = 0; i < memoryMapDevices.length; i++) {
+            if (memoryMapDevices[i] == device) {
+               memoryMapDevices[i] = null;
+            }
+         }
+      }
+   
+   /**
+    *  Store a word into a device register in the MMIO segment on behalf of the device.
+    *  Observers are notified as for any other store, but no device is called back and the
+    *  store is not recorded for backstepping (the device, not the program, made it).
+    *
+    *  @param address the word address, must be within the MMIO segment
+    *  @param value the value to store
+    *  @throws AddressErrorException if address is not aligned or not within the MMIO segment
+    */
+       public void setMemoryMappedDeviceRegister(int address, int value) throws AddressErrorException {
+         if (address % WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("store address not aligned on word boundary ",
+               Exceptions.ADDRESS_EXCEPTION_STORE, address);
+         }
+         if (address < memoryMapBaseAddress || address >= memoryMapLimitAddress) {
+            throw new AddressErrorException("device register not within memory mapped I/O segment ",
+               Exceptions.ADDRESS_EXCEPTION_STORE, address);
+         }
+         storeWordInTable(memoryMapBlockTable, (address - memoryMapBaseAddress) >> 2, value);
+         notifyAnyObservers(AccessNotice.WRITE, address, WORD_LENGTH_BYTES, value);
+      }
+   
+    // Returns the device attached to the MMIO word containing the given byte offset into the
+    // MMIO segment, but only if the access comes from the executing MIPS program.  The thread
+    // test is the same one AccessNotice.accessIsFromMIPS() uses, and is only made when a
+    // device is actually attached.
+       private MemoryMappedDevice getMemoryMappedDevice(int relativeByteAddress) {
+         MemoryMappedDevice device = memoryMapDevices[relativeByteAddress >> 2];
+         if (device != null && Thread.currentThread().getName().startsWith("MIPS")) {
+            return device;
+         }
+         return null;
+      }
+   
+
    /*********************************  THE HELPERS  *************************************/
      
    
@@ -1244,7 +1675,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final boolean STORE = true;
       private static final boolean FETCH = false;
    	 
-       private int storeBytesInTable(int [][] blockTable, 
+       private int storeBytesInTable(BlockTable blockTable, 
                                    int relativeByteAddress, int length, int value) {
          return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, value, STORE);
       }
@@ -1257,7 +1688,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // and block size.
    //	
    
-       private int fetchBytesFromTable(int[][] blockTable, int relativeByteAddress, int length) {
+       private int fetchBytesFromTable(BlockTable blockTable, int relativeByteAddress, int length) {
          return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, 0, FETCH);
       }
    
@@ -1269,9 +1700,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // client using STORE or FETCH in last arg.
    // Modified 29 Dec 2005 to return old value of replaced bytes, for STORE.
    //
-       private synchronized int storeOrFetchBytesInTable(int [][] blockTable, 
+       private synchronized int storeOrFetchBytesInTable(BlockTable blockTable, 
                                    int relativeByteAddress, int length, int value, boolean op) {
-         int relativeWordAddress, block, offset, bytePositionInMemory, bytePositionInValue;
+         int relativeWordAddress, bytePositionInMemory, bytePositionInValue, word;
          int oldValue = 0; // for STORE, return old values of replaced bytes
          int loopStopper = 3-length;
       	// IF added DPS 22-Dec-2008. NOTE: has NOT been tested with Big-Endian.
@@ -1290,23 +1721,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          for (bytePositionInValue = 3; bytePositionInValue > loopStopper; bytePositionInValue--) {
             bytePositionInMemory = relativeByteAddress % 4;
             relativeWordAddress = relativeByteAddress >> 2;
-            block = relativeWordAddress / BLOCK_LENGTH_WORDS;  // Block number
-            offset = relativeWordAddress % BLOCK_LENGTH_WORDS; // Word within that block
-            if (blockTable[block] == null) {
-               if (op==STORE) 
-                  blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-               else 
-                  return 0;
+            if (op == FETCH && !blockTable.isAllocated(relativeWordAddress)) {
+               return 0;
             }
+            word = blockTable.getWord(relativeWordAddress);
             if (byteOrder == LITTLE_ENDIAN) bytePositionInMemory = 3 - bytePositionInMemory;
             if (op == STORE) {
-               oldValue = replaceByte(blockTable[block][offset], bytePositionInMemory,
+               oldValue = replaceByte(word, bytePositionInMemory,
                   								oldValue, bytePositionInValue);
-               blockTable[block][offset] = replaceByte(value, bytePositionInValue, 
-                                         blockTable[block][offset], bytePositionInMemory);
+               blockTable.setWord(relativeWordAddress, replaceByte(value, bytePositionInValue, 
+                                         word, bytePositionInMemory));
             } 
             else {// op == FETCH
-               value = replaceByte(blockTable[block][offset], bytePositionInMemory, 
+               value = replaceByte(word, bytePositionInMemory, 
                                                           value, bytePositionInValue);
             }
             relativeByteAddress++;
@@ -1322,17 +1749,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // and block size.  Assumes address is word aligned, no endian processing.
    // Modified 29 Dec 2005 to return overwritten value.
          
-       private synchronized int storeWordInTable(int[][] blockTable, int relative, int value) {
-         int  block, offset, oldValue;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
-               // First time writing to this block, so allocate the space.
-            blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-         }
-         oldValue = blockTable[block][offset];
-         blockTable[block][offset] = value;
-         return oldValue;
+       private synchronized int storeWordInTable(BlockTable blockTable, int relative, int value) {
+         // First time writing to a block allocates the space.
+         return blockTable.setWord(relative, value);
       }
       
    ////////////////////////////////////////////////////////////////////////////////
@@ -1343,19 +1762,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // and block size.  Assumes word alignment, no endian processing.
    //
    
-       private synchronized int fetchWordFromTable(int[][] blockTable, int relative) {
-         int value = 0;
-         int block, offset;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
-                   // first reference to an address in this block.  Assume initialized to 0.
-            value = 0;
-         } 
-         else {
-            value = blockTable[block][offset];
-         }
-         return value;
+       private synchronized int fetchWordFromTable(BlockTable blockTable, int relative) {
+         // A block not yet referenced is assumed initialized to 0.
+         return blockTable.getWord(relative);
       }     
        
        ////////////////////////////////////////////////////////////////////////////////
@@ -1370,19 +1779,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 // by Greg Gibeling of UC Berkeley, fall 2007.
        //
        
-       private synchronized Integer fetchWordOrNullFromTable(int[][] blockTable, int relative) {
-         int value = 0;
-         int block, offset;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
+       private synchronized Integer fetchWordOrNullFromTable(BlockTable blockTable, int relative) {
+         if (!blockTable.isAllocated(relative)) {
                        // first reference to an address in this block.  Assume initialized to 0.
             return null;
          } 
-         else {
-            value = blockTable[block][offset];
-         }
-         return new Integer(value);
+         return new Integer(blockTable.getWord(relative));
       }
    	   
    ////////////////////////////////////////////////////////////////////////////////////
@@ -1438,14 +1840,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          int block = relative / TEXT_BLOCK_LENGTH_WORDS;
          int offset = relative % TEXT_BLOCK_LENGTH_WORDS; 
          if (block < TEXT_BLOCK_TABLE_LENGTH) {
-            if (blockTable[block] == null || blockTable[block][offset] == null) {
+            ProgramStatement statement = (blockTable[block] == null) ? null : blockTable[block][offset];
+            if (statement == null && textImages != null) {
+               // Machine code loaded from an image is decoded when first needed.
+               statement = decodeTextImage(address);
+               if (statement != null) {
+                  storeProgramStatement(address, statement, baseAddress, blockTable);
+               }
+            }
+            if (statement == null) {
                // No instructions are stored in this block or offset.
                if (notify) notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH,0);
                return null;
             } 
             else {
-               if (notify) notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH, blockTable[block][offset].getBinaryStatement());
-               return blockTable[block][offset];
+               if (notify) notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH, statement.getBinaryStatement());
+               return statement;
             }
          }
          if (notify) notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH,0);
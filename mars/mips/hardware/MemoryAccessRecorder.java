@@ -0,0 +1,183 @@
+   package mars.mips.hardware;
+
+/**
+ * Records the memory accesses of the running MIPS program into primitive arrays
+ * and hands them in batches to one or more Sinks, such as a cache model or a
+ * trace file.  Install it with Memory.setAccessRecorder() just before simulating
+ * and remove it afterwards; while installed, every instruction fetch and every
+ * load and store that would notify memory observers is recorded, and so is the
+ * outcome of every branch and jump.  Nothing is allocated per access, and the
+ * cost when no recorder is installed is a null test.
+ * <p>
+ * Each access is an address plus a type byte that holds the kind of access
+ * (INSTRUCTION_FETCH, READ, WRITE or BRANCH) in its low two bits.  Above them
+ * is the access length in bytes (1, 2 or 4) for a memory access, see getLength(),
+ * or the BRANCH_ flags for a branch, see getBranchFlags().  The address of a
+ * branch is its target.  There is no separate program counter: the instruction
+ * responsible for a read, write or branch is the one fetched just before it.
+
+ * @see Memory#setAccessRecorder(MemoryAccessRecorder)
+ */
+
+    public class MemoryAccessRecorder {
+
+      /** Access kind: instruction fetched from text segment (or data, with self-modifying code). */
+      public static final int INSTRUCTION_FETCH = 0;
+      /** Access kind: load from memory. */
+      public static final int READ = 1;
+      /** Access kind: store to memory. */
+      public static final int WRITE = 2;
+      /** Access kind: branch or jump instruction executed; the address is the target. */
+      public static final int BRANCH = 3;
+      /** Branch flag: the branch was taken (always set for a jump). */
+      public static final int BRANCH_TAKEN = 1;
+      /** Branch flag: the branch is conditional; it is not set for jumps. */
+      public static final int BRANCH_CONDITIONAL = 2;
+      /** Branch flag: the branch or jump links, i.e. is a procedure call (jal, jalr, bgezal, ...). */
+      public static final int BRANCH_CALL = 4;
+      /** Branch flag: the jump is a procedure return (jr $ra). */
+      public static final int BRANCH_RETURN = 8;
+      /** Default number of accesses collected before a batch is passed on. */
+      public static final int DEFAULT_BATCH_SIZE = 1 << 16;
+
+      /**
+       * Receiver of batches of recorded accesses.  The arrays are reused for the
+       * next batch once accessBatch() returns, so a sink must not keep them.
+       */
+       public interface Sink {
+         /**
+          * Process a batch of accesses, in the order they were made.
+          * @param addresses byte address of each access
+          * @param types type byte of each access, see getKind() and getLength()
+          * @param count number of valid entries in the arrays
+          */
+          public void accessBatch(int[] addresses, byte[] types, int count);
+      }
+
+      private Sink[] sinks;
+      private int[] addresses;
+      private byte[] types;
+      private int count;
+      private long totalCount;
+
+   /**
+    * Create a recorder with no sinks that passes on batches of the default size.
+    */
+       public MemoryAccessRecorder() {
+         this(DEFAULT_BATCH_SIZE);
+      }
+
+   /**
+    * Create a recorder passing batches of the default size to the given sink.
+    * @param sink receiver of the batches
+    */
+       public MemoryAccessRecorder(Sink sink) {
+         this(DEFAULT_BATCH_SIZE);
+         addSink(sink);
+      }
+
+   /**
+    * Create a recorder with no sinks that passes on batches of the given size.
+    * @param batchSize number of accesses per batch
+    */
+       public MemoryAccessRecorder(int batchSize) {
+         this.sinks = new Sink[0];
+         this.addresses = new int[batchSize];
+         this.types = new byte[batchSize];
+         this.count = 0;
+      }
+
+   /**
+    * Add a receiver of the batches.  Every sink sees every batch, in the order the
+    * sinks were added.
+    * @param sink receiver of the batches
+    */
+       public void addSink(Sink sink) {
+         Sink[] newSinks = new Sink[sinks.length + 1];
+         System.arraycopy(sinks, 0, newSinks, 0, sinks.length);
+         newSinks[sinks.length] = sink;
+         sinks = newSinks;
+      }
+
+   /**
+    * @return true if at least one sink has been added
+    */
+       public boolean hasSinks() {
+         return sinks.length > 0;
+      }
+
+   /**
+    * Record one access.  Passes on the batch when it is full.
+    * @param kind INSTRUCTION_FETCH, READ or WRITE
+    * @param address byte address
+    * @param length number of bytes accessed (BRANCH_ flags for a BRANCH)
+    */
+       public void record(int kind, int address, int length) {
+         addresses[count] = address;
+         types[count] = (byte) (kind | (length << 2));
+         if (++count == addresses.length) {
+            flush();
+         }
+      }
+
+   /**
+    * Record the outcome of a branch or jump instruction, just after it has executed.
+    * @param flags BRANCH_ flags
+    * @param target byte address of the branch target; the fall through address if not taken
+    */
+       public void recordBranch(int flags, int target) {
+         record(BRANCH, target, flags);
+      }
+
+   /**
+    * Pass on any accesses recorded since the last batch.  Call after the simulation.
+    */
+       public void flush() {
+         if (count > 0) {
+            totalCount += count;
+            int n = count;
+            count = 0;
+            for (int i = 0; i < sinks.length; i++) {
+               sinks[i].accessBatch(addresses, types, n);
+            }
+         }
+      }
+
+   /**
+    * @return the sinks, in the order they were added
+    */
+       public Sink[] getSinks() {
+         return sinks.clone();
+      }
+
+   /**
+    * @return number of accesses recorded so far
+    */
+       public long getAccessCount() {
+         return totalCount + count;
+      }
+
+   /**
+    * @param type type byte of a recorded access
+    * @return its kind: INSTRUCTION_FETCH, READ, WRITE or BRANCH
+    */
+       public static int getKind(byte type) {
+         return type & 3;
+      }
+
+   /**
+    * @param type type byte of a recorded access
+    * @return its length in bytes, for a memory access
+    */
+       public static int getLength(byte type) {
+         return type >> 2;
+      }
+
+   /**
+    * @param type type byte of a recorded branch
+    * @return its BRANCH_ flags
+    */
+       public static int getBranchFlags(byte type) {
+         return type >> 2;
+      }
+   }
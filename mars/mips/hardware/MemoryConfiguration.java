@@ -45,13 +45,28 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private String configurationIdentifier, configurationName;
       private String[] configurationItemNames;
       private int[] configurationItemValues;
+      private boolean sparse;
    	
    
        public MemoryConfiguration(String ident, String name, String[] items, int[] values) {
+         this(ident, name, items, values, false);
+      }
+   
+   /**
+    * Create a memory configuration.
+    * @param ident identifier, used for saving the setting
+    * @param name name, used for display
+    * @param items names of the configuration items
+    * @param values addresses of the configuration items, parallel to the names
+    * @param sparse true if the data segment and stack are to be stored sparsely,
+    * allowing them to span hundreds of MB.  See isSparse().
+    */
+       public MemoryConfiguration(String ident, String name, String[] items, int[] values, boolean sparse) {
 		   this.configurationIdentifier = ident;
          this.configurationName = name;
          this.configurationItemNames = items;
          this.configurationItemValues = values;
+         this.sparse = sparse;
       }
    	
    	public String getConfigurationIdentifier() {
@@ -69,6 +84,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public String[] getConfigurationItemNames() {
          return configurationItemNames;
       }
+   
+   /**
+    * Whether the data segment and stack are stored sparsely.  Memory normally limits
+    * each of them to 4MB, the most its block tables can hold.  In a sparse configuration
+    * their blocks are found by hashing instead, so they may be as large as the limit
+    * addresses of the configuration allow, and only the blocks a program touches are
+    * allocated.
+    * @return true if data segment and stack are sparse
+    */
+       public boolean isSparse() {
+         return sparse;
+      }
    			
        public int getTextBaseAddress() {
          return configurationItemValues[0];
@@ -149,6 +149,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          0x00003000, // stack limit address
          0x00007fff  // memory map limit address
          };
+   
+      // Large is the default layout with a sparse data segment and stack, so both can be
+      // far bigger than the 4MB that Memory otherwise allows.  The data segment limit and
+      // the stack limit are set from the heap and stack sizes; see getLargeConfiguration().
+      public static final String LARGE_CONFIGURATION_IDENTIFIER = "Large";
+      public static final int DEFAULT_LARGE_HEAP_MEGABYTES = 1024;
+      public static final int DEFAULT_LARGE_STACK_MEGABYTES = 256;
          
    
    
@@ -163,6 +170,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             configurations.add(new MemoryConfiguration("Default", "Default", configurationItemNames, defaultConfigurationItemValues));
             configurations.add(new MemoryConfiguration("CompactDataAtZero", "Compact, Data at Address 0", configurationItemNames, dataBasedCompactConfigurationItemValues));
             configurations.add(new MemoryConfiguration("CompactTextAtZero", "Compact, Text at Address 0", configurationItemNames, textBasedCompactConfigurationItemValues));
+            configurations.add(getLargeConfiguration(DEFAULT_LARGE_HEAP_MEGABYTES, DEFAULT_LARGE_STACK_MEGABYTES));
             defaultConfiguration = (MemoryConfiguration) configurations.get(0);
             currentConfiguration = defaultConfiguration;
          	// Get current config from settings
@@ -178,6 +186,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
       }
    	
+   /**
+    * Create a Large configuration: the default layout with a sparse data segment and stack
+    * (see MemoryConfiguration.isSparse()) sized to hold the given amounts of heap and stack.
+    * The heap starts at the heap base address and grows up; the stack starts at the stack
+    * base address and grows down.  Both must fit in user space without overlapping.
+    *
+    * @param heapMegabytes heap size in MB (1024*1024 bytes)
+    * @param stackMegabytes stack size in MB (1024*1024 bytes)
+    * @return the configuration, identified as "Large"
+    * @throws IllegalArgumentException if a size is not positive or the two do not fit
+    */
+       public static MemoryConfiguration getLargeConfiguration(int heapMegabytes, int stackMegabytes) {
+         int[] values = defaultConfigurationItemValues.clone();
+         long heapLimit = (values[5] & 0xffffffffL) + ((long) heapMegabytes << 20);
+         long stackLimit = (values[7] & 0xffffffffL) - ((long) stackMegabytes << 20);
+         if (heapMegabytes <= 0 || stackMegabytes <= 0 || heapLimit > stackLimit) {
+            throw new IllegalArgumentException("heap of "+heapMegabytes+" MB and stack of "+stackMegabytes
+                                               +" MB do not fit in user space");
+         }
+         values[15] = (int) heapLimit;   // data segment limit address
+         values[19] = (int) stackLimit;  // stack limit address
+         return new MemoryConfiguration(LARGE_CONFIGURATION_IDENTIFIER,
+                       "Large, "+heapMegabytes+" MB Heap, "+stackMegabytes+" MB Stack",
+                       configurationItemNames, values, true);
+      }
+   	
        public static Iterator getConfigurationsIterator() {
          if (configurations == null) {
             buildConfigurationCollection();
@@ -0,0 +1,37 @@
+   package mars.mips.hardware;
+
+/**
+ * A simulated device that owns one or more words of the memory mapped I/O
+ * segment (starting at Memory.memoryMapBaseAddress).  A device is registered
+ * with Memory.addMemoryMappedDevice() for exactly the register words it needs to
+ * see, and is then called back directly when the executing MIPS program reads or
+ * writes one of them.  Unlike a memory Observer, no MemoryAccessNotice is created
+ * and no other addresses are affected, so a program that polls a device register
+ * in a tight loop pays only for a table lookup.
+ * <p>
+ * Callbacks are made on the MIPS simulation thread with the memory and register
+ * lock held.  Accesses from the GUI (e.g. the Data Segment window) do not call
+ * back.  A device updates its own registers with
+ * Memory.setMemoryMappedDeviceRegister(), which does not call back.
+ *
+ * @see Memory#addMemoryMappedDevice(MemoryMappedDevice, int, int)
+ */
+
+    public interface MemoryMappedDevice {
+
+   /**
+    * Called just before the MIPS program reads a word owned by this device.  The
+    * device may refresh the register contents; the read will see the new value.
+    * @param address the byte address being read
+    * @param length number of bytes being read (1, 2 or 4)
+    */
+       public void deviceRegisterRead(int address, int length);
+
+   /**
+    * Called just after the MIPS program has written a word owned by this device.
+    * @param address the byte address written
+    * @param length number of bytes written (1, 2 or 4)
+    * @param value the value written, in the low order bytes if length is less than 4
+    */
+       public void deviceRegisterWritten(int address, int length, int value);
+   }
@@ -69,8 +69,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static Register programCounter= new Register("pc", 32, Memory.textBaseAddress); 
       private static Register hi= new Register("hi", 33, 0);//this is an internal register with arbitrary number
       private static Register lo= new Register("lo", 34, 0);// this is an internal register with arbitrary number
+      private static long[] readCounts = null;  // reads and writes per register number, if counting
+      private static long[] writeCounts = null;
    		 
    
+   	/**
+   	  *  Start or stop counting register reads (getValue) and writes (updateRegister)
+   	  *  by register number, e.g. for ExecutionAnalytics.  Counting is off by default.
+   	  *   @param reads array of at least 35 counters, or null to stop counting
+   	  *   @param writes array of at least 35 counters, or null to stop counting
+   	  **/
+   	  
+       public static void setUsageCounters(long[] reads, long[] writes) {
+         readCounts = reads;
+         writeCounts = writes;
+      }
+   
    	/**
    	  *  Method for displaying the register values for debugging.
    	  **/	 
@@ -94,6 +108,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  
        public static int updateRegister(int num, int val){
          int old = 0;
+         if (writeCounts != null) {
+            writeCounts[num]++;
+         }
          if(num == 0){
             //System.out.println("You can not change the value of the zero register.");
          }
@@ -146,6 +163,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getValue(int num){
+         if (readCounts != null) {
+            readCounts[num]++;
+         }
          if(num==33){
             return hi.getValue();
          }
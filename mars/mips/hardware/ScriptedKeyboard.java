@@ -0,0 +1,120 @@
+   package mars.mips.hardware;
+
+   import mars.Globals;
+   import mars.MIPSprogram;
+   import mars.simulator.Exceptions;
+   import mars.simulator.SimulationClock;
+   import java.io.*;
+
+/**
+ * Headless stand-in for the keyboard half of the Keyboard and Display MMIO
+ * Simulator.  Bytes are taken from a script (typically a file) and presented
+ * one at a time in the receiver data register (Memory.memoryMapBaseAddress+4)
+ * with the ready bit set in the receiver control register (base address).
+ * Reading the data register clears the ready bit; the next byte "arrives"
+ * a fixed number of instructions later.  If the program has set the interrupt
+ * enable bit in the receiver control register, each arrival raises a keyboard
+ * interrupt.  After the last byte the ready bit stays clear.
+ */
+
+    public class ScriptedKeyboard extends HeadlessDevice implements SimulationClock.Alarm {
+
+      /** Default number of instructions between a key being read and the next one arriving. */
+      public static final int DEFAULT_KEY_DELAY = 100;
+
+      private byte[] script;
+      private int position;
+      private int keyDelay;
+      private boolean keyWaiting;
+      private SimulationClock clock;
+      private int receiverControl, receiverData;
+
+   /**
+    * Create a keyboard that types the contents of the given file.
+    * @param file the script
+    * @throws IOException if the file cannot be read
+    */
+       public ScriptedKeyboard(File file) throws IOException {
+         this(readFully(file), DEFAULT_KEY_DELAY);
+      }
+
+   /**
+    * Create a keyboard that types the given bytes.
+    * @param script bytes to type, in order
+    * @param keyDelay number of instructions between a key being read and the next one arriving
+    */
+       public ScriptedKeyboard(byte[] script, int keyDelay) {
+         this.script = script;
+         this.keyDelay = keyDelay;
+      }
+
+       public void attach(MIPSprogram program) throws AddressErrorException {
+         receiverControl = Memory.memoryMapBaseAddress;
+         receiverData = Memory.memoryMapBaseAddress + 4;
+         Globals.memory.addMemoryMappedDevice(this, receiverData, receiverData);
+         position = 0;
+         keyWaiting = false;
+         clock = program.getClock();
+         if (position < script.length) {
+            clock.setAlarm(this, keyDelay);
+         }
+      }
+
+       public void detach() {
+         super.detach();
+         if (clock != null) {
+            clock.cancelAlarm(this);
+         }
+      }
+
+   /**
+    * The program is reading the receiver data register; the waiting key (if any) is taken.
+    */
+       public void deviceRegisterRead(int address, int length) {
+         if (address == receiverData && keyWaiting) {
+            keyWaiting = false;
+            setRegister(receiverControl, getRegister(receiverControl) & 2);
+            if (position < script.length) {
+               clock.setAlarm(this, keyDelay);
+            }
+         }
+      }
+
+   /**
+    * The next key arrives.
+    */
+       public void ring() {
+         setRegister(receiverData, script[position++] & 0xff);
+         int control = getRegister(receiverControl) | 1;
+         setRegister(receiverControl, control);
+         keyWaiting = true;
+         interruptIfEnabled(control, Exceptions.EXTERNAL_INTERRUPT_KEYBOARD);
+      }
+
+   /**
+    * @return number of script bytes delivered so far
+    */
+       public int getKeysTyped() {
+         return position;
+      }
+
+       public String toString() {
+         return "scripted keyboard";
+      }
+
+       private static byte[] readFully(File file) throws IOException {
+         InputStream in = new BufferedInputStream(new FileInputStream(file));
+         try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+               bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+         } 
+         finally {
+            in.close();
+         }
+      }
+   }
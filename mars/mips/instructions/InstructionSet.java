@@ -47,7 +47,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    {
       private ArrayList instructionList;
 	  private ArrayList opcodeMatchMaps;
+      private MnemonicIndex mnemonicIndex;
+      private int generation; // incremented whenever mnemonicIndex is rebuilt
       private SyscallLoader syscallLoader;
+      // What the executing instruction did to the control flow, as MemoryAccessRecorder
+      // BRANCH_TAKEN/BRANCH_CALL flags, and where to.  Kept only while recording.
+      private int branchResolution;
+      private int branchTarget;
     /**
      * Creates a new InstructionSet object.
      */
@@ -132,6 +138,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 		 }
 		 Collections.sort(matchMaps);
 		 this.opcodeMatchMaps = matchMaps;
+         rebuildMnemonicIndex();
+      }
+   
+       private synchronized void rebuildMnemonicIndex() {
+         mnemonicIndex = new MnemonicIndex(instructionList);
+         generation++;
       }
 
 	public BasicInstruction findByBinaryCode(int binaryInstr) {
@@ -221,50 +233,54 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
     /**
      *  Given an operator mnemonic, will return the corresponding Instruction object(s)
-     *  from the instruction set.  Uses straight linear search technique.
+     *  from the instruction set.  Uses a hash index built by populate().  The list
+     *  returned is shared and must not be modified.
      *  @param name operator mnemonic (e.g. addi, sw,...)
      *  @return list of corresponding Instruction object(s), or null if not found.
      */
-       public ArrayList matchOperator(String name)
+       public List matchOperator(String name)
       {
-         ArrayList matchingInstructions = null;
-        // Linear search for now....
-         for (int i = 0; i < instructionList.size(); i++)
-         {
-            if (((Instruction) instructionList.get(i)).getName().equalsIgnoreCase(name))
-            {
-               if (matchingInstructions == null) 
-                  matchingInstructions = new ArrayList();
-               matchingInstructions.add(instructionList.get(i));
-            }
-         }
-         return matchingInstructions;
+         return getMnemonicIndex().match(name);
       }
    
    
     /**
      *  Given a string, will return the Instruction object(s) from the instruction
      *  set whose operator mnemonic prefix matches it.  Case-insensitive.  For example
-     *  "s" will match "sw", "sh", "sb", etc.  Uses straight linear search technique.
+     *  "s" will match "sw", "sh", "sb", etc.  Uses a prefix trie built by populate().
+     *  The list returned is shared and must not be modified.
      *  @param name a string
      *  @return list of matching Instruction object(s), or null if none match.
      */
-       public ArrayList prefixMatchOperator(String name)
+       public List prefixMatchOperator(String name)
       {
-         ArrayList matchingInstructions = null;
-        // Linear search for now....
-         if (name != null) {
-            for (int i = 0; i < instructionList.size(); i++)
-            {
-               if (((Instruction) instructionList.get(i)).getName().toLowerCase().startsWith(name.toLowerCase()))
-               {
-                  if (matchingInstructions == null) 
-                     matchingInstructions = new ArrayList();
-                  matchingInstructions.add(instructionList.get(i));
-               }
-            }
+         if (name == null) {
+            return null;
+         }
+         return getMnemonicIndex().prefixMatch(name);
+      }
+   
+      // The index is built by populate(); rebuild it if instructions were added since.
+      // Synchronized because the editor's background checker asks for it too.
+       private synchronized MnemonicIndex getMnemonicIndex() {
+         MnemonicIndex index = mnemonicIndex;
+         if (index == null || index.size() != instructionList.size()) {
+            index = new MnemonicIndex(instructionList);
+            mnemonicIndex = index;
+            generation++;
          }
-         return matchingInstructions;
+         return index;
+      }
+   
+    /**
+     *  Tells whether the instruction set has changed, e.g. because a different
+     *  language was selected.  Tables derived from the instruction list can be
+     *  kept as long as this value stays the same.
+     *  @return number that changes each time the instruction set changes
+     */
+       public synchronized int getGeneration() {
+         getMnemonicIndex();
+         return generation;
       }
    	
    	/*
@@ -276,6 +292,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void findAndSimulateSyscall(int number, ProgramStatement statement) 
                                                         throws ProcessingException {
          Syscall service = syscallLoader.findSyscall(number);
+         ExecutionAnalytics analytics = ExecutionAnalytics.getActive();
+         if (analytics != null) {
+            analytics.countSyscall(number);
+         }
          if (service != null) {
             service.simulate(statement);
             return;
@@ -302,6 +322,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 // the bottom (currently line 194, heavily commented).
    	 
        public void processBranch(int displacement) {
+         branchResolution |= MemoryAccessRecorder.BRANCH_TAKEN;
+         branchTarget = RegisterFile.getProgramCounter() + (displacement << 2);
          if (Globals.getSettings().getDelayedBranchingEnabled()) {
             // Register the branch target address (absolute byte address).
             DelayedBranch.register(RegisterFile.getProgramCounter() + (displacement << 2));
@@ -325,6 +347,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
    	 
        public void processJump(int targetAddress) {
+         branchResolution |= MemoryAccessRecorder.BRANCH_TAKEN;
+         branchTarget = targetAddress;
          if (Globals.getSettings().getDelayedBranchingEnabled()) {
             DelayedBranch.register(targetAddress);
          } 
@@ -346,11 +370,49 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
    	 
        public void processReturnAddress(int register) {
+         branchResolution |= MemoryAccessRecorder.BRANCH_CALL;
          RegisterFile.updateRegister(register, RegisterFile.getProgramCounter() +
                  ((Globals.getSettings().getDelayedBranchingEnabled()) ? 
             	  Instruction.INSTRUCTION_LENGTH : 0) );	 
       }
 
+   	/*
+   	 * Method to record, for analysis, the control flow outcome of the instruction
+   	 * just simulated: conditional branches taken or not, and jumps, calls and
+   	 * returns.  Called by the simulator after each instruction while a
+   	 * MemoryAccessRecorder is installed; processBranch(), processJump() and
+   	 * processReturnAddress() note what the instruction did.  A jump register through
+   	 * $ra that does not link is taken to be a procedure return.
+   	 */
+   	 
+       public void recordBranchResolution(BasicInstruction instruction, ProgramStatement statement,
+                                          MemoryAccessRecorder recorder) {
+         int flags = branchResolution;
+         branchResolution = 0;
+         if (instruction.getInstructionFormat() == BasicInstructionFormat.I_BRANCH_FORMAT) {
+            if ((flags & MemoryAccessRecorder.BRANCH_TAKEN) == 0) {
+               branchTarget = RegisterFile.getProgramCounter();
+            }
+            recorder.recordBranch(flags | MemoryAccessRecorder.BRANCH_CONDITIONAL, branchTarget);
+         }
+         else if ((flags & MemoryAccessRecorder.BRANCH_TAKEN) != 0) {
+            if ((flags & MemoryAccessRecorder.BRANCH_CALL) == 0
+                && instruction.getInstructionFormat() == BasicInstructionFormat.R_FORMAT
+                && statement.getOperands().length > 0 && statement.getOperands()[0] == 31) {
+               flags |= MemoryAccessRecorder.BRANCH_RETURN;
+            }
+            recorder.recordBranch(flags, branchTarget);
+         }
+      }
+
+   	/*
+   	 * Forget any control flow outcome noted before recording started.
+   	 */
+   	 
+       public void clearBranchResolution() {
+         branchResolution = 0;
+      }
+
 	  private static class MatchMap implements Comparable {
 	  	private int mask;
 		private int maskLength; // number of 1 bits in mask
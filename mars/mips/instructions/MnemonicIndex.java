@@ -0,0 +1,122 @@
+   package mars.mips.instructions;
+
+   import java.util.*;
+
+/**
+ * Lookup of instructions by operator mnemonic, for InstructionSet.matchOperator()
+ * and prefixMatchOperator().  Exact matches come from a hash map keyed by the
+ * lower case mnemonic; prefix matches from a trie over the lower case mnemonics in
+ * which every node holds the instructions whose mnemonic starts with the path to it.
+ * All match lists are built once, when the index is created, and are shared by every
+ * caller: they must not be modified, and attempts to do so throw
+ * UnsupportedOperationException.  A lookup allocates nothing as long as the name
+ * given is already in lower case, which is how mnemonics are normally written.
+ */
+
+    class MnemonicIndex {
+
+      private HashMap exactMatches; // key is lower case mnemonic, value is unmodifiable List
+      private TrieNode root;
+      private int size;
+
+   /**
+    * Index the given instructions.  Match lists keep the order of the instruction list.
+    * @param instructionList list of Instruction objects
+    */
+       MnemonicIndex(ArrayList instructionList) {
+         HashMap exact = new HashMap();
+         root = new TrieNode();
+         for (int i = 0; i < instructionList.size(); i++) {
+            Instruction instruction = (Instruction) instructionList.get(i);
+            String name = instruction.getName().toLowerCase();
+            ArrayList list = (ArrayList) exact.get(name);
+            if (list == null) {
+               list = new ArrayList();
+               exact.put(name, list);
+            }
+            list.add(instruction);
+            TrieNode node = root;
+            node.pending.add(instruction);
+            for (int c = 0; c < name.length(); c++) {
+               node = node.child(name.charAt(c), true);
+               node.pending.add(instruction);
+            }
+         }
+         exactMatches = new HashMap();
+         for (Iterator it = exact.entrySet().iterator(); it.hasNext();) {
+            Map.Entry entry = (Map.Entry) it.next();
+            exactMatches.put(entry.getKey(), shared((ArrayList) entry.getValue()));
+         }
+         root.freeze();
+         size = instructionList.size();
+      }
+
+   /**
+    * @return number of instructions indexed
+    */
+       int size() {
+         return size;
+      }
+
+   /**
+    * @param name operator mnemonic, any case
+    * @return the instructions with this mnemonic, or null if none
+    */
+       List match(String name) {
+         return (List) exactMatches.get(name.toLowerCase());
+      }
+
+   /**
+    * @param prefix start of an operator mnemonic, any case
+    * @return the instructions whose mnemonic starts with prefix, or null if none
+    */
+       List prefixMatch(String prefix) {
+         TrieNode node = root;
+         for (int c = 0; c < prefix.length() && node != null; c++) {
+            node = node.child(Character.toLowerCase(prefix.charAt(c)), false);
+         }
+         return (node == null) ? null : node.matches;
+      }
+
+      // Trie node.  Children are kept in a small array searched linearly; mnemonics
+      // are short and few share a prefix, so fan-out is low except near the root.
+       private static class TrieNode {
+         char[] labels = new char[0];
+         TrieNode[] children = new TrieNode[0];
+         ArrayList pending = new ArrayList(); // instructions below this node, while building
+         List matches;
+
+          TrieNode child(char label, boolean create) {
+            for (int i = 0; i < labels.length; i++) {
+               if (labels[i] == label) {
+                  return children[i];
+               }
+            }
+            if (!create) {
+               return null;
+            }
+            char[] newLabels = new char[labels.length + 1];
+            TrieNode[] newChildren = new TrieNode[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, labels.length);
+            System.arraycopy(children, 0, newChildren, 0, children.length);
+            newLabels[labels.length] = label;
+            newChildren[children.length] = new TrieNode();
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[children.length - 1];
+         }
+
+          void freeze() {
+            matches = (pending.isEmpty()) ? null : shared(pending);
+            pending = null;
+            for (int i = 0; i < children.length; i++) {
+               children[i].freeze();
+            }
+         }
+      }
+
+      // Unmodifiable view of a copy of the given instructions.
+       private static List shared(Collection instructions) {
+         return Collections.unmodifiableList(new ArrayList(instructions));
+      }
+   }
@@ -49,7 +49,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final String SYSCALL_ABSTRACT = "AbstractSyscall.class";
       private static final String CLASS_EXTENSION = "class";
       
+      // Service numbers below this go in the dispatch array, others in the overflow map.
+      private static final int DISPATCH_TABLE_LIMIT = 1024;
       private ArrayList syscallList;
+      private Syscall[] dispatchTable;  // index is service number
+      private HashMap overflowTable;    // key is Integer service number, for sparse numbers
    	
    /*
       *  Dynamically loads Syscalls into an ArrayList.  This method is adapted from
@@ -81,13 +85,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      continue;
                   }
                   Syscall syscall = (Syscall) clas.newInstance();
-                  if (findSyscall(syscall.getNumber()) == null) {
+                  Syscall registered = findSyscallInList(syscall.getNumber());
+                  if (registered == null) {
                      syscallList.add(syscall);
                   } 
                   else {
                      throw new Exception("Duplicate service number: "+syscall.getNumber()+
-                            " already registered to "+
-                            findSyscall(syscall.getNumber()).getName());
+                            " already registered to "+registered.getName());
                   }
                } 
                    catch (Exception e) {
@@ -97,8 +101,39 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
          }
          syscallList = processSyscallNumberOverrides(syscallList);
+         buildDispatchTable();
          return;
       }
+   
+   	/*
+   	 * Build the table used by findSyscall() from syscallList.  Service numbers are
+   	 * small and dense, so most go in an array indexed by number; anything negative or
+   	 * beyond DISPATCH_TABLE_LIMIT goes in a map.  Must be called again if syscallList
+   	 * changes, e.g. when syscalls are added.
+   	 */
+       void buildDispatchTable() {
+         int maxNumber = -1;
+         for (int i = 0; i < syscallList.size(); i++) {
+            int number = ((Syscall) syscallList.get(i)).getNumber();
+            if (number >= 0 && number < DISPATCH_TABLE_LIMIT) {
+               maxNumber = Math.max(maxNumber, number);
+            }
+         }
+         Syscall[] table = new Syscall[maxNumber + 1];
+         HashMap overflow = new HashMap();
+         for (int i = 0; i < syscallList.size(); i++) {
+            Syscall syscall = (Syscall) syscallList.get(i);
+            int number = syscall.getNumber();
+            if (number >= 0 && number < table.length) {
+               table[number] = syscall;
+            } 
+            else {
+               overflow.put(Integer.valueOf(number), syscall);
+            }
+         }
+         overflowTable = overflow;
+         dispatchTable = table;
+      }
          
        // Will get any syscall number override specifications from MARS config file and
        // process them.  This will alter syscallList entry for affected names.
@@ -153,17 +188,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 * Returns null if no associated object found.
    	 */
        Syscall findSyscall(int number) {
-         // linear search is OK since number of syscalls is small.
-         Syscall service, match = null;
-         if (syscallList==null) {
+         // Called for every syscall instruction executed, so use the dispatch table.
+         if (dispatchTable==null) {
             loadSyscalls();
          }
+         if (number >= 0 && number < dispatchTable.length) {
+            return dispatchTable[number];
+         }
+         return (Syscall) overflowTable.get(Integer.valueOf(number));
+      }
+   
+   	/*
+   	 * Linear search of syscallList, used while it is being built.
+   	 */
+       private Syscall findSyscallInList(int number) {
          for (int index=0; index < syscallList.size(); index++) {
-            service = (Syscall) syscallList.get(index);
+            Syscall service = (Syscall) syscallList.get(index);
             if (service.getNumber() == number) {
-               match = service;
+               return service;
             }
          }
-         return match;
+         return null;
       }
    }
@@ -0,0 +1,241 @@
+   package mars.mips.instructions.syscalls;
+
+   import javax.sound.midi.*;
+   import javax.sound.sampled.*;
+   import java.io.*;
+
+/**
+ * Offline alternative to playing MIDI tones through the sound card.  When a
+ * recorder is installed (see setRecorder), the MidiOut and MidiOutSync syscalls
+ * do not touch javax.sound at all; they just append the note to this recorder,
+ * time-stamped with the running program's SimulationClock.  MidiOutSync advances
+ * the clock by the note duration instead of waiting for the note to finish, so
+ * with a virtual clock a music-playing program runs at full simulation speed.
+ * <p>
+ * After the run the notes can be saved as a Standard MIDI File, or rendered
+ * into a WAV file.  Neither requires an audio device.  The WAV rendering uses a
+ * small built-in additive synthesizer (the JDK's software synthesizer cannot be
+ * driven offline through public API), so all instruments sound alike; the MIDI
+ * file keeps the instrument of every note.
+ *
+ * @see mars.simulator.SimulationClock
+ */
+
+    public class MidiRecorder {
+
+      // Sequence resolution and tempo chosen so that one tick is one millisecond.
+      private static final int TICKS_PER_QUARTER = 500;
+      private static final int MICROSECONDS_PER_QUARTER = 500000;
+      private static final int PERCUSSION_CHANNEL = 9;
+      private static final int WAVE_SAMPLE_RATE = 22050;
+      private static final int WAVE_MAX_MILLIS = 10 * 60 * 1000; // rendering is truncated at 10 minutes
+      private static final int INITIAL_CAPACITY = 256;
+
+      private static MidiRecorder recorder = null;
+
+      private long[] startTimes;
+      private int[] durations;
+      private byte[] pitches;
+      private byte[] instruments;
+      private byte[] volumes;
+      private int noteCount;
+
+   /**
+    * Install the recorder that receives MIDI syscall output.
+    * @param r the recorder, or null to play tones through the sound card (the default)
+    */
+       public static void setRecorder(MidiRecorder r) {
+         recorder = r;
+      }
+
+   /**
+    * @return the installed recorder, or null if tones are played through the sound card
+    */
+       public static MidiRecorder getRecorder() {
+         return recorder;
+      }
+
+   /**
+    * Create an empty recorder.
+    */
+       public MidiRecorder() {
+         startTimes = new long[INITIAL_CAPACITY];
+         durations = new int[INITIAL_CAPACITY];
+         pitches = new byte[INITIAL_CAPACITY];
+         instruments = new byte[INITIAL_CAPACITY];
+         volumes = new byte[INITIAL_CAPACITY];
+         noteCount = 0;
+      }
+
+   /**
+    * Record one note.  Parameters have already been range checked by the syscall.
+    * @param startTime time of note-on in milliseconds
+    * @param pitch pitch 0-127, 60 is middle C
+    * @param duration duration in milliseconds
+    * @param instrument general MIDI instrument (patch) 0-127
+    * @param volume MIDI velocity 0-127
+    */
+       public synchronized void record(long startTime, byte pitch, int duration, byte instrument, byte volume) {
+         if (noteCount == startTimes.length) {
+            int capacity = noteCount * 2;
+            long[] newStartTimes = new long[capacity];
+            int[] newDurations = new int[capacity];
+            byte[] newPitches = new byte[capacity];
+            byte[] newInstruments = new byte[capacity];
+            byte[] newVolumes = new byte[capacity];
+            System.arraycopy(startTimes, 0, newStartTimes, 0, noteCount);
+            System.arraycopy(durations, 0, newDurations, 0, noteCount);
+            System.arraycopy(pitches, 0, newPitches, 0, noteCount);
+            System.arraycopy(instruments, 0, newInstruments, 0, noteCount);
+            System.arraycopy(volumes, 0, newVolumes, 0, noteCount);
+            startTimes = newStartTimes;
+            durations = newDurations;
+            pitches = newPitches;
+            instruments = newInstruments;
+            volumes = newVolumes;
+         }
+         startTimes[noteCount] = startTime;
+         durations[noteCount] = duration;
+         pitches[noteCount] = pitch;
+         instruments[noteCount] = instrument;
+         volumes[noteCount] = volume;
+         noteCount++;
+      }
+
+   /**
+    * @return number of notes recorded
+    */
+       public synchronized int getNoteCount() {
+         return noteCount;
+      }
+
+   /**
+    * @return time in milliseconds at which the last recorded note ends, 0 if none.
+    */
+       public synchronized long getEndTime() {
+         long end = 0;
+         for (int i = 0; i < noteCount; i++) {
+            end = Math.max(end, startTimes[i] + durations[i]);
+         }
+         return end;
+      }
+
+   /**
+    * Save the recorded notes.  Files whose name ends in ".wav" are rendered to
+    * audio, anything else is written as a Standard MIDI File.
+    * @param file the file to write
+    * @throws IOException if the file cannot be written
+    */
+       public void save(File file) throws IOException {
+         if (file.getName().toLowerCase().endsWith(".wav")) {
+            writeWaveFile(file);
+         }
+         else {
+            writeMidiFile(file);
+         }
+      }
+
+   /**
+    * Write recorded notes as a type 1 Standard MIDI File.  Time stamps are
+    * relative to the first note.  Each instrument gets its own channel while
+    * channels last; percussion channel 10 is not used.
+    * @param file the file to write
+    * @throws IOException if the file cannot be written
+    */
+       public synchronized void writeMidiFile(File file) throws IOException {
+         try {
+            Sequence seq = new Sequence(Sequence.PPQ, TICKS_PER_QUARTER);
+            Track track = seq.createTrack();
+            byte[] tempo = { (byte) (MICROSECONDS_PER_QUARTER >> 16),
+                             (byte) (MICROSECONDS_PER_QUARTER >> 8),
+                             (byte) MICROSECONDS_PER_QUARTER };
+            MetaMessage tempoMessage = new MetaMessage();
+            tempoMessage.setMessage(0x51, tempo, tempo.length);
+            track.add(new MidiEvent(tempoMessage, 0));
+            int[] channelOfInstrument = new int[128];
+            java.util.Arrays.fill(channelOfInstrument, -1);
+            int[] programOfChannel = new int[16];
+            java.util.Arrays.fill(programOfChannel, -1);
+            int channelsUsed = 0;
+            long origin = (noteCount == 0) ? 0 : startTimes[0];
+            for (int i = 1; i < noteCount; i++) {
+               origin = Math.min(origin, startTimes[i]);
+            }
+            for (int i = 0; i < noteCount; i++) {
+               int instrument = instruments[i];
+               int channel = channelOfInstrument[instrument];
+               if (channel < 0) {
+                  channel = channelsUsed % 15;
+                  if (channel >= PERCUSSION_CHANNEL) {
+                     channel++;
+                  }
+                  channelsUsed++;
+                  if (channelsUsed <= 15) {
+                     channelOfInstrument[instrument] = channel;
+                  }
+               }
+               long tick = startTimes[i] - origin;
+               if (programOfChannel[channel] != instrument) {
+                  ShortMessage change = new ShortMessage();
+                  change.setMessage(ShortMessage.PROGRAM_CHANGE, channel, instrument, 0);
+                  track.add(new MidiEvent(change, tick));
+                  programOfChannel[channel] = instrument;
+               }
+               ShortMessage on = new ShortMessage();
+               on.setMessage(ShortMessage.NOTE_ON, channel, pitches[i], volumes[i]);
+               track.add(new MidiEvent(on, tick));
+               ShortMessage off = new ShortMessage();
+               off.setMessage(ShortMessage.NOTE_OFF, channel, pitches[i], volumes[i]);
+               track.add(new MidiEvent(off, tick + durations[i]));
+            }
+            MidiSystem.write(seq, 1, file);
+         }
+             catch (InvalidMidiDataException imde) {
+               throw new IOException("invalid MIDI data: " + imde.getMessage());
+            }
+      }
+
+   /**
+    * Render recorded notes into a 16-bit mono WAV file.  Time stamps are relative
+    * to the first note.  Each note is a decaying tone with one overtone.
+    * @param file the file to write
+    * @throws IOException if the file cannot be written
+    */
+       public synchronized void writeWaveFile(File file) throws IOException {
+         long origin = (noteCount == 0) ? 0 : startTimes[0];
+         long end = 0;
+         for (int i = 0; i < noteCount; i++) {
+            origin = Math.min(origin, startTimes[i]);
+            end = Math.max(end, startTimes[i] + durations[i]);
+         }
+         long millis = Math.min(end - origin, WAVE_MAX_MILLIS);
+         int samples = (int) (millis * WAVE_SAMPLE_RATE / 1000);
+         float[] mix = new float[samples];
+         for (int i = 0; i < noteCount; i++) {
+            int first = (int) ((startTimes[i] - origin) * WAVE_SAMPLE_RATE / 1000);
+            int last = (int) Math.min(samples, first + (long) durations[i] * WAVE_SAMPLE_RATE / 1000);
+            double step = 2 * Math.PI * 440.0 * Math.pow(2, (pitches[i] - 69) / 12.0) / WAVE_SAMPLE_RATE;
+            double decay = Math.exp(-3.0 / WAVE_SAMPLE_RATE);
+            int attack = WAVE_SAMPLE_RATE / 200;
+            double amplitude = 0.25 * volumes[i] / 127.0;
+            double envelope = amplitude;
+            for (int s = first; s < last; s++) {
+               int n = s - first;
+               double level = (n < attack) ? amplitude * n / attack : envelope;
+               mix[s] += (float) (level * (Math.sin(step * n) + 0.3 * Math.sin(2 * step * n)));
+               if (n >= attack) {
+                  envelope *= decay;
+               }
+            }
+         }
+         byte[] pcm = new byte[samples * 2];
+         for (int s = 0; s < samples; s++) {
+            int value = (int) (Math.max(-1f, Math.min(1f, mix[s])) * Short.MAX_VALUE);
+            pcm[2 * s] = (byte) value;
+            pcm[2 * s + 1] = (byte) (value >> 8);
+         }
+         AudioFormat format = new AudioFormat(WAVE_SAMPLE_RATE, 16, 1, true, false);
+         AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(pcm), format, samples);
+         AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file);
+      }
+   }
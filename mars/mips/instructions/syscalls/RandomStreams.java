@@ -1,5 +1,4 @@
    package mars.mips.instructions.syscalls;
-	import java.util.HashMap;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -31,13 +30,183 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 
 /** 
- * This small class serves only to hold a static HashMap for storing
- * random number generators for use by all the random number generator
- * syscalls.
+ * Pseudorandom number streams for use by all the random number generator
+ * syscalls (RandSeed, RandInt, RandIntRange, RandFloat, RandDouble).  Each
+ * MIPSprogram owns one RandomStreams object, which is reset when the program
+ * is assembled, so simultaneous or successive runs do not share generator state.
+ * <p>
+ * Streams are identified by the int index the MIPS program passes in $a0.  Each
+ * stream is a single 64-bit SplitMix64 state kept in a primitive open-addressed
+ * table, so a syscall costs a probe and a few arithmetic operations -- no boxing,
+ * no HashMap, no synchronization.
+ * <p>
+ * A stream that has not been explicitly seeded is seeded from the run seed and its
+ * index.  The run seed is chosen at random unless fixed with setRunSeed(), in which
+ * case every run of the program produces the same numbers.
  */
  
     public class RandomStreams {
-      /** Collection of pseudorandom number streams available for use in Rand-type syscalls.
-       * The streams are by default not seeded. */
-		 static final HashMap randomStreams = new HashMap();
-   }
\ No newline at end of file
+      private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+      private static final int INITIAL_CAPACITY = 16; // must be power of 2
+      
+      private boolean fixedSeed;
+      private long runSeed;
+      private int[] indexes;    // stream index per slot
+      private long[] states;    // SplitMix64 state per slot
+      private boolean[] used;   // whether slot is occupied
+      private int size;
+   	
+   /**
+    * Create an empty collection of streams with a randomly chosen run seed.
+    */
+       public RandomStreams() {
+         fixedSeed = false;
+         reset();
+      }
+   	
+   /**
+    * Fix the run seed.  Streams not explicitly seeded by the MIPS program will
+    * then produce the same sequences every run.  All existing streams are discarded.
+    * @param seed the run seed
+    */
+       public void setRunSeed(long seed) {
+         fixedSeed = true;
+         runSeed = seed;
+         reset();
+      }
+   	
+   /**
+    * Discard all streams.  If the run seed has not been fixed, a new one is chosen.
+    * Called when the program is (re)assembled.
+    */
+       public void reset() {
+         if (!fixedSeed) {
+            runSeed = mix(System.nanoTime() ^ System.identityHashCode(this));
+         }
+         indexes = new int[INITIAL_CAPACITY];
+         states = new long[INITIAL_CAPACITY];
+         used = new boolean[INITIAL_CAPACITY];
+         size = 0;
+      }
+   
+   /**
+    * Set the seed of the given stream, creating it if necessary.  The resulting sequence
+    * depends only on the seed, not on the run seed.
+    * @param index stream index
+    * @param seed seed value
+    */
+       public void setSeed(int index, long seed) {
+         states[slot(index)] = mix(seed);
+      }
+   	
+   /**
+    * @param index stream index
+    * @return next pseudorandom, uniformly distributed int value from the stream
+    */
+       public int nextInt(int index) {
+         return (int) (next(slot(index)) >>> 32);
+      }
+   
+   /**
+    * @param index stream index
+    * @param bound upper bound (exclusive), must be positive
+    * @return next pseudorandom, uniformly distributed int value between 0 (inclusive)
+    * and bound (exclusive) from the stream
+    * @throws IllegalArgumentException if bound is not positive
+    */
+       public int nextInt(int index, int bound) {
+         if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+         }
+         int slot = slot(index);
+         int r = (int) (next(slot) >>> 33);
+         int m = bound - 1;
+         if ((bound & m) == 0) { // power of 2
+            return (int) ((bound * (long) r) >> 31);
+         }
+         // reject values from the incomplete top range so the result is unbiased
+         for (int u = r; u - (r = u % bound) + m < 0; u = (int) (next(slot) >>> 33)) {
+         }
+         return r;
+      }
+   
+   /**
+    * @param index stream index
+    * @return next pseudorandom, uniformly distributed float value between 0.0 (inclusive)
+    * and 1.0 (exclusive) from the stream
+    */
+       public float nextFloat(int index) {
+         return (next(slot(index)) >>> 40) * 0x1.0p-24f;
+      }
+   
+   /**
+    * @param index stream index
+    * @return next pseudorandom, uniformly distributed double value between 0.0 (inclusive)
+    * and 1.0 (exclusive) from the stream
+    */
+       public double nextDouble(int index) {
+         return (next(slot(index)) >>> 11) * 0x1.0p-53;
+      }
+   
+      // Advance state in given slot and return next 64 random bits (SplitMix64).
+       private long next(int slot) {
+         long z = (states[slot] += GOLDEN_GAMMA);
+         return mix(z);
+      }
+   
+      // SplitMix64 output function; also used to scramble seeds.
+       private static long mix(long z) {
+         z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+         z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+         return z ^ (z >>> 31);
+      }
+   
+      // Find slot for given stream index, creating and seeding the stream if not present.
+       private int slot(int index) {
+         int mask = indexes.length - 1;
+         int i = hash(index, mask);
+         while (used[i]) {
+            if (indexes[i] == index) {
+               return i;
+            }
+            i = (i + 1) & mask;
+         }
+         if ((size + 1) * 2 > indexes.length) {
+            grow();
+            return slot(index);
+         }
+         used[i] = true;
+         indexes[i] = index;
+         states[i] = mix(runSeed + index * GOLDEN_GAMMA);
+         size++;
+         return i;
+      }
+   
+      // Starting slot for given stream index.
+       private static int hash(int index, int mask) {
+         int h = index * 0x9E3779B9;
+         return (h ^ (h >>> 16)) & mask;
+      }
+   
+      // Double the table capacity and rehash existing streams.
+       private void grow() {
+         int[] oldIndexes = indexes;
+         long[] oldStates = states;
+         boolean[] oldUsed = used;
+         indexes = new int[oldIndexes.length * 2];
+         states = new long[oldIndexes.length * 2];
+         used = new boolean[oldIndexes.length * 2];
+         int mask = indexes.length - 1;
+         for (int j = 0; j < oldIndexes.length; j++) {
+            if (oldUsed[j]) {
+               int i = hash(oldIndexes[j], mask);
+               while (used[i]) {
+                  i = (i + 1) & mask;
+               }
+               used[i] = true;
+               indexes[i] = oldIndexes[j];
+               states[i] = oldStates[j];
+            }
+         }
+      }
+   }
@@ -3,7 +3,6 @@
    import mars.mips.hardware.*;
    import mars.simulator.*;
    import mars.*;
-   import java.util.Random;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -56,14 +55,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
           // Input arguments: $a0 = index of pseudorandom number generator
           // Return: $f0 = the next pseudorandom, uniformly distributed double value between 0.0 and 1.0
           // from this random number generator's sequence.
-         Integer index = new Integer(RegisterFile.getValue(4));
-         Random stream = (Random) RandomStreams.randomStreams.get(index);
-         if (stream == null) {
-            stream = new Random(); // create a non-seeded stream
-            RandomStreams.randomStreams.put(index, stream);
-         } 
+         RandomStreams streams = Simulator.getInstance().getRandomStreams();
          try {
-            Coprocessor1.setRegisterPairToDouble(0, stream.nextDouble( ));
+            Coprocessor1.setRegisterPairToDouble(0, streams.nextDouble(RegisterFile.getValue(4)));
          }     
              catch (InvalidRegisterAccessException e) {   // register ID error in this method
                throw new ProcessingException(statement,
@@ -3,7 +3,6 @@
    import mars.mips.hardware.*;
    import mars.simulator.*;
    import mars.*;
-   import java.util.Random;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -58,14 +57,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
           //    $a1 = the upper bound of range of returned values.
           // Return: $a0 = the next pseudorandom, uniformly distributed int value from this
           // random number generator's sequence.
-         Integer index = new Integer(RegisterFile.getValue(4));
-         Random stream = (Random) RandomStreams.randomStreams.get(index);
-         if (stream == null) {
-            stream = new Random(); // create a non-seeded stream
-            RandomStreams.randomStreams.put(index, stream);
-         } 
+         RandomStreams streams = Simulator.getInstance().getRandomStreams();
          try {
-            RegisterFile.updateRegister(4, stream.nextInt( RegisterFile.getValue(5) ) );
+            RegisterFile.updateRegister(4, streams.nextInt(RegisterFile.getValue(4), RegisterFile.getValue(5)) );
          } 
              catch (IllegalArgumentException iae) {
                throw new ProcessingException(statement,
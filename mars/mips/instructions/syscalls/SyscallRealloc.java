@@ -0,0 +1,43 @@
+   package mars.mips.instructions.syscalls;
+   import mars.simulator.*;
+   import mars.mips.hardware.*;
+   import mars.*;
+
+/** 
+ * Service to change the size of the heap block whose address is in $a0 to the size in
+ * $a1, putting the (possibly new) address of the block into $v0.  Contents are kept up
+ * to the smaller of the two sizes.  As in C, an address of 0 allocates a new block and
+ * a size of 0 frees the block.  $v0 is 0 if the heap is exhausted, in which case the
+ * old block is unchanged.
+ *
+ * @see mars.mips.hardware.HeapAllocator
+ */
+ 
+    public class SyscallRealloc extends AbstractSyscall {
+   /**
+    * Build an instance of the Realloc syscall.  Default service number
+    * is 62 and name is "Realloc".
+    */
+       public SyscallRealloc() {
+         super(62, "Realloc");
+      }
+      
+   /**
+   * Performs syscall function to resize the heap block at $a0 to $a1 bytes, putting its address into $v0.
+   */
+       public void simulate(ProgramStatement statement) throws ProcessingException {
+         int address = 0;
+         try {
+            address = Globals.memory.getHeapAllocator().realloc(RegisterFile.getValue(4), RegisterFile.getValue(5));
+         } 
+             catch (IllegalArgumentException iae) {
+               throw new ProcessingException(statement,
+                                       iae.getMessage()+" (syscall "+this.getNumber()+")",
+                                       Exceptions.SYSCALL_EXCEPTION);
+            }
+             catch (AddressErrorException aee) {
+               throw new ProcessingException(statement, aee);
+            }
+         RegisterFile.updateRegister(2, address);
+      }
+   }
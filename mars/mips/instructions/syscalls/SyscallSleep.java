@@ -36,7 +36,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 /**
  * Service to cause the MARS Java thread to sleep for (at least) the specified number of milliseconds.
  * This timing will not be precise as the Java implementation will add some overhead.
+ * If the program's clock is in virtual time, the clock is advanced instead and no real time passes.
  *
+ * @see mars.simulator.SimulationClock
  */
 
     public class SyscallSleep extends AbstractSyscall {
@@ -53,15 +55,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
           // Input arguments: $a0 is the length of time to sleep in milliseconds.
-
-               try
-               {
-                  Thread.sleep(RegisterFile.getValue(4)); // units of milliseconds  1000 millisec = 1 sec.
-               }
-               catch (InterruptedException e)
-               {
-                   return; // no exception handling
-               }
+          Simulator.getInstance().getClock().sleep(RegisterFile.getValue(4)); // units of milliseconds  1000 millisec = 1 sec.
        }
 
    }
@@ -2,6 +2,7 @@
    import mars.*;
    import mars.util.*;
 	import mars.mips.hardware.*;
+   import mars.simulator.*;
 
 /*
 Copyright (c) 2003-2007,  Pete Sanderson and Kenneth Vollmar
@@ -48,10 +49,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
    /**
    * Performs syscall function to place current system time into $a0 (low order 32 bits)
-	* and $a1 (high order 32 bits).
+	* and $a1 (high order 32 bits).  If the program's clock is in virtual time, this is
+	* the simulated time in milliseconds since the program started.
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
-			long value = new java.util.Date().getTime();
+			long value = Simulator.getInstance().getClock().currentTimeMillis();
          RegisterFile.updateRegister(4, Binary.lowOrderLongToInt(value)); // $a0 
 			RegisterFile.updateRegister(5, Binary.highOrderLongToInt(value)); // $a1
       }
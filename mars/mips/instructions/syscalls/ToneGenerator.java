@@ -7,6 +7,7 @@
    import java.util.concurrent.locks.ReentrantLock;
    import java.util.concurrent.Executor;
    import java.util.concurrent.Executors;
+   import mars.simulator.*;
 
 /*
 Copyright (c) 2003-2007,  Pete Sanderson and Kenneth Vollmar
@@ -60,6 +61,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
   
    /*
     * Creates a Tone object and passes it to a thread to "play" it using MIDI.
+    * If a MidiRecorder is installed, the tone is recorded instead and no
+    * thread or sound device is used.
     */
     class ToneGenerator {
       
@@ -102,13 +105,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       */   
        public void generateTone(byte pitch, int duration,
 				byte instrument, byte volume) {
+         MidiRecorder recorder = MidiRecorder.getRecorder();
+         if (recorder != null) {
+            recorder.record(Simulator.getInstance().getClock().currentTimeMillis(),
+                            pitch, duration, instrument, volume);
+            return;
+         }
          Runnable tone = new Tone(pitch, duration, instrument, volume);
          threadPool.execute(tone);
       }
 
       /**
       * Produces a Tone with the specified pitch, duration, and instrument,
-      * and volume, waiting for it to finish playing.
+      * and volume, waiting for it to finish playing.  If a MidiRecorder is
+      * installed, the tone is recorded and the program's clock is advanced by
+      * its duration instead (instantly, if the clock is virtual).
       *
       * @param pitch the desired pitch in semitones - 0-127 where 60 is 
       * middle C.
@@ -123,6 +134,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       */   
        public void generateToneSynchronously(byte pitch, int duration,
 					     byte instrument, byte volume) {
+         MidiRecorder recorder = MidiRecorder.getRecorder();
+         if (recorder != null) {
+            SimulationClock clock = Simulator.getInstance().getClock();
+            recorder.record(clock.currentTimeMillis(), pitch, duration, instrument, volume);
+            clock.sleep(duration);
+            return;
+         }
          Runnable tone = new Tone(pitch, duration, instrument, volume);
          tone.run();
       }
@@ -0,0 +1,370 @@
+   package mars.mips.pipeline;
+
+   import mars.Globals;
+   import mars.ProgramStatement;
+   import mars.mips.cache.CacheHierarchy;
+   import mars.mips.hardware.AddressErrorException;
+   import mars.mips.hardware.MemoryAccessRecorder;
+   import mars.util.AddressIndex;
+   import mars.util.Binary;
+   import java.io.PrintStream;
+
+/**
+ * Estimates the cycles a program would take on the classic 5 stage MIPS pipeline
+ * (IF, ID, EX, MEM, WB), from the instruction fetches, loads, stores and branch
+ * outcomes recorded by a MemoryAccessRecorder during a run.  Instructions issue
+ * in order, one per cycle, and are held back by:
+ * <ul>
+ * <li>load-use and other data hazards; with forwarding an ALU result is available
+ * to the next instruction and a load result one cycle later, without forwarding
+ * results are available three cycles after the producer entered EX</li>
+ * <li>multiply and divide latency, for HI/LO and for mul</li>
+ * <li>taken branches and jumps, which cost the branch penalty (one cycle less with
+ * delayed branching, whose delay slot hides one)</li>
+ * <li>cache misses, if a cache hierarchy is given: each instruction fetch, load or
+ * store that misses in the first level stalls for the second level or memory
+ * penalty</li>
+ * </ul>
+ * Stall cycles are charged to the instruction that waits (or, for branches, to
+ * the branch) and reported per cause and per instruction address.  Register usage
+ * comes from decoding the machine code with RegisterUsage, read from the text
+ * segment the first time each address is executed, so the program must still be
+ * in memory: the model cannot be driven from a replayed trace.
+ * <p>
+ * A configuration is written as colon separated settings, each optional:
+ * <code>forward=yes|no:branch=&lt;n&gt;:mul=&lt;n&gt;:div=&lt;n&gt;:l2=&lt;n&gt;:memory=&lt;n&gt;:cache=&lt;hierarchy&gt;</code>,
+ * or just <code>default</code>.
+ *
+ * @see RegisterUsage
+ * @see mars.mips.cache.CacheHierarchy
+ */
+
+    public class PipelineTimingModel implements MemoryAccessRecorder.Sink {
+
+      /** Stall cause: instruction needs the result of the load just before it. */
+      public static final int LOAD_USE = 0;
+      /** Stall cause: instruction needs a result not yet available (no forwarding). */
+      public static final int DATA = 1;
+      /** Stall cause: instruction needs the result of a multiply or divide in progress. */
+      public static final int MULTIPLY_DIVIDE = 2;
+      /** Stall cause: taken branch or jump. */
+      public static final int BRANCH = 3;
+      /** Stall cause: instruction fetch missed in the first level cache. */
+      public static final int INSTRUCTION_CACHE = 4;
+      /** Stall cause: load or store missed in the first level cache. */
+      public static final int DATA_CACHE = 5;
+      private static final String[] CAUSE_NAMES = {"load-use", "data", "mul/div", "branch", "i-cache", "d-cache"};
+      private static final int CAUSES = CAUSE_NAMES.length;
+      private static final int INITIAL_INSTRUCTIONS = 1024;
+
+      private boolean forwarding = true;
+      private int branchPenalty = 1;
+      private int multiplyLatency = 4;
+      private int divideLatency = 32;
+      private int secondLevelPenalty = 10;
+      private int memoryPenalty = 100;
+      private CacheHierarchy caches;
+      private boolean delayedBranching;
+
+      // per instruction address
+      private AddressIndex instructions = new AddressIndex(INITIAL_INSTRUCTIONS);
+      private long[] usages = new long[INITIAL_INSTRUCTIONS];
+      private long[] executed = new long[INITIAL_INSTRUCTIONS];
+      private long[] stalls = new long[INITIAL_INSTRUCTIONS * CAUSES]; // [instruction * CAUSES + cause]
+
+      // per register
+      private long[] readyCycle = new long[RegisterUsage.REGISTER_COUNT];
+      private int[] readyCause = new int[RegisterUsage.REGISTER_COUNT];
+
+      private long cycle = 2;          // cycle in which the last retired instruction was in EX
+      private long instructionCount;
+      private long[] totalStalls = new long[CAUSES];
+      private int current = -1;        // instruction being collected, -1 if none
+      private int fetchPenalty;
+      private int dataPenalty;
+      private boolean branchTaken;
+      private int pendingBranch = -1;  // taken branch whose penalty delays the next instruction
+      private int pendingBranchPenalty;
+
+   /**
+    * Create a timing model.
+    * @param spec configuration; see the class comment
+    * @param delayedBranching true if the program runs with delayed branching
+    * @throws IllegalArgumentException if spec is not valid
+    */
+       public PipelineTimingModel(String spec, boolean delayedBranching) {
+         this.delayedBranching = delayedBranching;
+         if (spec.trim().toLowerCase().equals("default")) {
+            return;
+         }
+         String[] settings = spec.trim().split(":");
+         for (int i = 0; i < settings.length; i++) {
+            int equals = settings[i].indexOf('=');
+            if (equals < 0) {
+               throw new IllegalArgumentException("pipeline \""+spec+"\": setting \""+settings[i]+"\" has no value");
+            }
+            String name = settings[i].substring(0, equals).trim().toLowerCase();
+            String value = settings[i].substring(equals + 1).trim();
+            if (name.equals("forward")) {
+               forwarding = value.equalsIgnoreCase("yes");
+               if (!forwarding && !value.equalsIgnoreCase("no")) {
+                  throw new IllegalArgumentException("pipeline \""+spec+"\": forward must be yes or no");
+               }
+            }
+            else if (name.equals("cache")) {
+               caches = CacheHierarchy.parse(value);
+            }
+            else {
+               int cycles;
+               try {
+                  cycles = Integer.parseInt(value);
+               }
+                   catch (NumberFormatException e) {
+                     throw new IllegalArgumentException("pipeline \""+spec+"\": invalid number \""+value+"\"");
+                  }
+               if (cycles < 0) {
+                  throw new IllegalArgumentException("pipeline \""+spec+"\": "+name+" must not be negative");
+               }
+               if (name.equals("branch")) {
+                  branchPenalty = cycles;
+               }
+               else if (name.equals("mul")) {
+                  multiplyLatency = Math.max(1, cycles);
+               }
+               else if (name.equals("div")) {
+                  divideLatency = Math.max(1, cycles);
+               }
+               else if (name.equals("l2")) {
+                  secondLevelPenalty = cycles;
+               }
+               else if (name.equals("memory")) {
+                  memoryPenalty = cycles;
+               }
+               else {
+                  throw new IllegalArgumentException("pipeline \""+spec+"\": unknown setting \""+name+"\"");
+               }
+            }
+         }
+      }
+
+   /**
+    * Time a batch of recorded accesses.  An instruction is timed once the fetch
+    * of the next one is seen, so call finish() after the last batch.
+    */
+       public void accessBatch(int[] addresses, byte[] types, int count) {
+         for (int i = 0; i < count; i++) {
+            switch (MemoryAccessRecorder.getKind(types[i])) {
+               case MemoryAccessRecorder.INSTRUCTION_FETCH:
+                  if (current >= 0) {
+                     retire();
+                  }
+                  fetch(addresses[i]);
+                  break;
+               case MemoryAccessRecorder.BRANCH:
+                  branchTaken = (MemoryAccessRecorder.getBranchFlags(types[i]) & MemoryAccessRecorder.BRANCH_TAKEN) != 0;
+                  break;
+               default:
+                  if (caches != null) {
+                     dataPenalty += penalty(caches.access(MemoryAccessRecorder.getKind(types[i]), addresses[i]));
+                  }
+                  break;
+            }
+         }
+      }
+
+   /**
+    * Time the last instruction.  Call after the MemoryAccessRecorder has been flushed.
+    */
+       public void finish() {
+         if (current >= 0) {
+            retire();
+            current = -1;
+         }
+      }
+
+       private void fetch(int pc) {
+         int size = instructions.size();
+         current = instructions.indexOf(pc);
+         if (current == size) {
+            if (current == usages.length) {
+               int capacity = 2 * current;
+               usages = copyOf(usages, capacity);
+               executed = copyOf(executed, capacity);
+               stalls = copyOf(stalls, capacity * CAUSES);
+            }
+            usages[current] = RegisterUsage.decode(machineCode(pc));
+         }
+         fetchPenalty = (caches == null) ? 0 : penalty(caches.access(MemoryAccessRecorder.INSTRUCTION_FETCH, pc));
+         dataPenalty = 0;
+         branchTaken = false;
+      }
+
+       private void retire() {
+         long issue = cycle + 1;
+         if (pendingBranch >= 0) {
+            issue += pendingBranchPenalty;
+            stall(pendingBranch, BRANCH, pendingBranchPenalty);
+            pendingBranch = -1;
+         }
+         issue += fetchPenalty;
+         stall(current, INSTRUCTION_CACHE, fetchPenalty);
+         long usage = usages[current];
+         for (int n = 0; n < 3; n++) {
+            int source = RegisterUsage.getSource(usage, n);
+            if (source != 0 && readyCycle[source] > issue) {
+               stall(current, readyCause[source], readyCycle[source] - issue);
+               issue = readyCycle[source];
+            }
+         }
+         issue += dataPenalty;
+         stall(current, DATA_CACHE, dataPenalty);
+         int timingClass = RegisterUsage.getTimingClass(usage);
+         int latency, cause;
+         switch (timingClass) {
+            case RegisterUsage.LOAD:
+               latency = forwarding ? 2 : 3;
+               cause = forwarding ? LOAD_USE : DATA;
+               break;
+            case RegisterUsage.MULTIPLY:
+               latency = forwarding ? multiplyLatency : Math.max(3, multiplyLatency);
+               cause = MULTIPLY_DIVIDE;
+               break;
+            case RegisterUsage.DIVIDE:
+               latency = forwarding ? divideLatency : Math.max(3, divideLatency);
+               cause = MULTIPLY_DIVIDE;
+               break;
+            default:
+               latency = forwarding ? 1 : 3;
+               cause = DATA;
+               break;
+         }
+         for (int n = 0; n < 2; n++) {
+            int destination = RegisterUsage.getDestination(usage, n);
+            if (destination != 0) {
+               readyCycle[destination] = issue + latency;
+               readyCause[destination] = cause;
+            }
+         }
+         if (branchTaken && timingClass == RegisterUsage.BRANCH) {
+            pendingBranch = current;
+            pendingBranchPenalty = delayedBranching ? Math.max(0, branchPenalty - 1) : branchPenalty;
+         }
+         cycle = issue;
+         executed[current]++;
+         instructionCount++;
+      }
+
+       private void stall(int instruction, int cause, long cycles) {
+         if (cycles > 0) {
+            stalls[instruction * CAUSES + cause] += cycles;
+            totalStalls[cause] += cycles;
+         }
+      }
+
+       private int penalty(int level) {
+         if (level == CacheHierarchy.SECOND_LEVEL) {
+            return secondLevelPenalty;
+         }
+         return (level == CacheHierarchy.MEMORY) ? memoryPenalty : 0;
+      }
+
+       private static int machineCode(int pc) {
+         try {
+            ProgramStatement statement = Globals.memory.getStatementNoNotify(pc);
+            return (statement == null) ? 0 : statement.getBinaryStatement();
+         }
+             catch (AddressErrorException e) {
+               return 0;
+            }
+      }
+
+       private static long[] copyOf(long[] array, int length) {
+         long[] copy = new long[length];
+         System.arraycopy(array, 0, copy, 0, array.length);
+         return copy;
+      }
+
+   /**
+    * @return number of instructions timed
+    */
+       public long getInstructionCount() {
+         return instructionCount;
+      }
+
+   /**
+    * @return estimated number of cycles, including filling and draining the pipeline
+    */
+       public long getCycles() {
+         return (instructionCount == 0) ? 0 : cycle + 2;
+      }
+
+   /**
+    * @param cause LOAD_USE, DATA, MULTIPLY_DIVIDE, BRANCH, INSTRUCTION_CACHE or DATA_CACHE
+    * @return number of stall cycles of that cause
+    */
+       public long getStalls(int cause) {
+         return totalStalls[cause];
+      }
+
+   /**
+    * Print the configuration, instruction and cycle counts, CPI and stall cycles by
+    * cause, then one tab separated line per instruction address that stalled, in
+    * address order, with its execution count, stall cycles by cause and statement.
+    * @param out where to print
+    */
+       public void printReport(PrintStream out) {
+         out.println("pipeline "+(forwarding ? "with" : "without")+" forwarding, branch penalty "+branchPenalty
+            +(delayedBranching ? " (delayed branching)" : "")+", mul "+multiplyLatency+", div "+divideLatency
+            +((caches == null) ? "" : ", cache "+caches.getDescription()+", L2 "+secondLevelPenalty+", memory "+memoryPenalty));
+         long cycles = getCycles();
+         long thousandths = (instructionCount == 0) ? 0 : Math.round(cycles * 1000.0 / instructionCount);
+         String fraction = String.valueOf(thousandths % 1000);
+         while (fraction.length() < 3) {
+            fraction = "0" + fraction;
+         }
+         out.println("instructions "+instructionCount+"  cycles "+cycles+"  CPI "+(thousandths / 1000)+"."+fraction);
+         StringBuffer line = new StringBuffer("stall cycles:");
+         for (int cause = 0; cause < CAUSES; cause++) {
+            line.append("  ").append(CAUSE_NAMES[cause]).append(' ').append(totalStalls[cause]);
+         }
+         out.println(line);
+         if (caches != null) {
+            out.println(caches.getReport());
+         }
+         out.println();
+         line = new StringBuffer("address\texecuted");
+         for (int cause = 0; cause < CAUSES; cause++) {
+            line.append('\t').append(CAUSE_NAMES[cause]);
+         }
+         out.println(line.append("\tstatement"));
+         int[] order = instructions.getIndexesInAddressOrder();
+         for (int i = 0; i < order.length; i++) {
+            int instruction = order[i];
+            long total = 0;
+            for (int cause = 0; cause < CAUSES; cause++) {
+               total += stalls[instruction * CAUSES + cause];
+            }
+            if (total == 0) {
+               continue;
+            }
+            int address = instructions.getAddress(instruction);
+            line = new StringBuffer(Binary.intToHexString(address)).append('\t').append(executed[instruction]);
+            for (int cause = 0; cause < CAUSES; cause++) {
+               line.append('\t').append(stalls[instruction * CAUSES + cause]);
+            }
+            out.println(line.append('\t').append(statementText(address)));
+         }
+      }
+
+       private static String statementText(int address) {
+         try {
+            ProgramStatement statement = Globals.memory.getStatementNoNotify(address);
+            if (statement != null) {
+               return statement.getPrintableBasicAssemblyStatement().trim();
+            }
+         }
+             catch (AddressErrorException e) {
+            }
+         return "";
+      }
+   }
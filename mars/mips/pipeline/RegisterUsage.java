@@ -0,0 +1,205 @@
+   package mars.mips.pipeline;
+
+/**
+ * Decodes a MIPS32 machine instruction into the registers it reads and writes
+ * and its timing class, for the pipeline timing model.  The result is packed into
+ * a long (see the get methods) so that decoded instructions can be kept in a
+ * plain array.  Registers are numbered 1-31 for the general purpose registers,
+ * FPR_BASE+n for floating point register n, and HI, LO and FCC for the multiply
+ * registers and the floating point condition flags.  Register 0 means "none",
+ * which is fine since $zero never carries a dependence.
+ * <p>
+ * Instructions not recognized (e.g. from a custom instruction set) decode as ALU
+ * instructions using no registers.
+ */
+
+    public class RegisterUsage {
+
+      /** Number of floating point register 0 */
+      public static final int FPR_BASE = 32;
+      /** Number of the HI register */
+      public static final int HI = 64;
+      /** Number of the LO register */
+      public static final int LO = 65;
+      /** Number of the floating point condition flags */
+      public static final int FCC = 66;
+      /** Number of register numbers used */
+      public static final int REGISTER_COUNT = 67;
+
+      /** Timing class: result available after one cycle in EX. */
+      public static final int ALU = 0;
+      /** Timing class: load; result available after MEM. */
+      public static final int LOAD = 1;
+      /** Timing class: store. */
+      public static final int STORE = 2;
+      /** Timing class: multiply; result available after the multiply latency. */
+      public static final int MULTIPLY = 3;
+      /** Timing class: divide; result available after the divide latency. */
+      public static final int DIVIDE = 4;
+      /** Timing class: branch or jump. */
+      public static final int BRANCH = 5;
+      /** Timing class: system call, break or trap return. */
+      public static final int SYSTEM = 6;
+
+      private static final int RA = 31;
+      private static final int V0 = 2;
+      private static final int A0 = 4;
+
+   /**
+    * Decode a machine instruction.
+    * @param word the instruction
+    * @return packed sources, destinations and class
+    */
+       public static long decode(int word) {
+         int opcode = word >>> 26;
+         int rs = (word >>> 21) & 0x1F;
+         int rt = (word >>> 16) & 0x1F;
+         int rd = (word >>> 11) & 0x1F;
+         int shamt = (word >>> 6) & 0x1F;
+         int funct = word & 0x3F;
+         switch (opcode) {
+            case 0x00: // SPECIAL
+               switch (funct) {
+                  case 0x00: case 0x02: case 0x03: // sll, srl, sra
+                     return pack(rt, 0, 0, rd, 0, ALU);
+                  case 0x08: // jr
+                     return pack(rs, 0, 0, 0, 0, BRANCH);
+                  case 0x09: // jalr
+                     return pack(rs, 0, 0, rd, 0, BRANCH);
+                  case 0x0A: case 0x0B: // movz, movn
+                     return pack(rs, rt, rd, rd, 0, ALU);
+                  case 0x0C: case 0x0D: // syscall, break
+                     return pack(V0, A0, A0 + 1, V0, 0, SYSTEM);
+                  case 0x10: // mfhi
+                     return pack(HI, 0, 0, rd, 0, ALU);
+                  case 0x11: // mthi
+                     return pack(rs, 0, 0, HI, 0, ALU);
+                  case 0x12: // mflo
+                     return pack(LO, 0, 0, rd, 0, ALU);
+                  case 0x13: // mtlo
+                     return pack(rs, 0, 0, LO, 0, ALU);
+                  case 0x18: case 0x19: // mult, multu
+                     return pack(rs, rt, 0, HI, LO, MULTIPLY);
+                  case 0x1A: case 0x1B: // div, divu
+                     return pack(rs, rt, 0, HI, LO, DIVIDE);
+                  case 0x01: // movf, movt
+                     return pack(rs, FCC, rd, rd, 0, ALU);
+                  default:
+                     if (funct >= 0x30) { // traps
+                        return pack(rs, rt, 0, 0, 0, ALU);
+                     }
+                     return pack(rs, rt, 0, rd, 0, ALU); // shifts by register, arithmetic, logical, set
+               }
+            case 0x01: // REGIMM: bltz, bgez, bltzal, bgezal, trap immediate
+               if ((rt & 0x18) == 0x08) {
+                  return pack(rs, 0, 0, 0, 0, ALU);
+               }
+               return pack(rs, 0, 0, ((rt & 0x10) != 0) ? RA : 0, 0, BRANCH);
+            case 0x02: // j
+               return pack(0, 0, 0, 0, 0, BRANCH);
+            case 0x03: // jal
+               return pack(0, 0, 0, RA, 0, BRANCH);
+            case 0x04: case 0x05: // beq, bne
+               return pack(rs, rt, 0, 0, 0, BRANCH);
+            case 0x06: case 0x07: // blez, bgtz
+               return pack(rs, 0, 0, 0, 0, BRANCH);
+            case 0x0F: // lui
+               return pack(0, 0, 0, rt, 0, ALU);
+            case 0x10: // COP0: mfc0, mtc0, eret
+               if (rs == 0x00) {
+                  return pack(0, 0, 0, rt, 0, ALU);
+               }
+               if (rs == 0x04) {
+                  return pack(rt, 0, 0, 0, 0, ALU);
+               }
+               return pack(0, 0, 0, 0, 0, SYSTEM);
+            case 0x11: // COP1
+               return decodeFloatingPoint(rs, rt, rd, shamt, funct);
+            case 0x1C: // SPECIAL2
+               switch (funct) {
+                  case 0x02: // mul
+                     return pack(rs, rt, 0, rd, 0, MULTIPLY);
+                  case 0x00: case 0x01: case 0x04: case 0x05: // madd, maddu, msub, msubu
+                     return pack(rs, rt, HI, HI, LO, MULTIPLY);
+                  default: // clz, clo
+                     return pack(rs, 0, 0, rd, 0, ALU);
+               }
+            case 0x20: case 0x21: case 0x23: case 0x24: case 0x25: case 0x30: // lb, lh, lw, lbu, lhu, ll
+               return pack(rs, 0, 0, rt, 0, LOAD);
+            case 0x22: case 0x26: // lwl, lwr merge into rt
+               return pack(rs, rt, 0, rt, 0, LOAD);
+            case 0x28: case 0x29: case 0x2A: case 0x2B: case 0x2E: // sb, sh, swl, sw, swr
+               return pack(rs, rt, 0, 0, 0, STORE);
+            case 0x38: // sc
+               return pack(rs, rt, 0, rt, 0, STORE);
+            case 0x31: case 0x35: // lwc1, ldc1
+               return pack(rs, 0, 0, FPR_BASE + rt, 0, LOAD);
+            case 0x39: case 0x3D: // swc1, sdc1
+               return pack(rs, FPR_BASE + rt, 0, 0, 0, STORE);
+            default:
+               if (opcode >= 0x08 && opcode <= 0x0E) { // addi, addiu, slti, sltiu, andi, ori, xori
+                  return pack(rs, 0, 0, rt, 0, ALU);
+               }
+               return pack(0, 0, 0, 0, 0, ALU);
+         }
+      }
+
+       private static long decodeFloatingPoint(int format, int ft, int fs, int fd, int funct) {
+         switch (format) {
+            case 0x00: // mfc1
+               return pack(FPR_BASE + fs, 0, 0, ft, 0, ALU);
+            case 0x04: // mtc1
+               return pack(ft, 0, 0, FPR_BASE + fs, 0, ALU);
+            case 0x08: // bc1f, bc1t
+               return pack(FCC, 0, 0, 0, 0, BRANCH);
+            default: // operations on single, double or word format
+               if (funct >= 0x30) { // c.cond
+                  return pack(FPR_BASE + fs, FPR_BASE + ft, 0, FCC, 0, ALU);
+               }
+               if (funct == 0x02) { // mul
+                  return pack(FPR_BASE + fs, FPR_BASE + ft, 0, FPR_BASE + fd, 0, MULTIPLY);
+               }
+               if (funct == 0x03 || funct == 0x04) { // div, sqrt
+                  return pack(FPR_BASE + fs, FPR_BASE + ft, 0, FPR_BASE + fd, 0, DIVIDE);
+               }
+               if (funct == 0x11) { // movf, movt on condition flag
+                  return pack(FPR_BASE + fs, FCC, FPR_BASE + fd, FPR_BASE + fd, 0, ALU);
+               }
+               if (funct == 0x12 || funct == 0x13) { // movz, movn on general purpose register ft
+                  return pack(FPR_BASE + fs, ft, FPR_BASE + fd, FPR_BASE + fd, 0, ALU);
+               }
+               return pack(FPR_BASE + fs, FPR_BASE + ft, 0, FPR_BASE + fd, 0, ALU);
+         }
+      }
+
+       private static long pack(int source1, int source2, int source3, int destination1, int destination2, int timingClass) {
+         return source1 | (source2 << 8) | (source3 << 16) | ((long) destination1 << 24)
+            | ((long) destination2 << 32) | ((long) timingClass << 40);
+      }
+
+   /**
+    * @param usage decoded instruction
+    * @param n 0, 1 or 2
+    * @return number of the n'th register read, 0 if none
+    */
+       public static int getSource(long usage, int n) {
+         return (int) (usage >>> (8 * n)) & 0xFF;
+      }
+
+   /**
+    * @param usage decoded instruction
+    * @param n 0 or 1
+    * @return number of the n'th register written, 0 if none
+    */
+       public static int getDestination(long usage, int n) {
+         return (int) (usage >>> (24 + 8 * n)) & 0xFF;
+      }
+
+   /**
+    * @param usage decoded instruction
+    * @return timing class: ALU, LOAD, STORE, MULTIPLY, DIVIDE, BRANCH or SYSTEM
+    */
+       public static int getTimingClass(long usage) {
+         return (int) (usage >>> 40) & 0xFF;
+      }
+   }
@@ -0,0 +1,145 @@
+   package mars.mips.trace;
+
+   import mars.mips.hardware.MemoryAccessRecorder;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+/**
+ * Replays a trace file written by TraceWriter into one or more
+ * MemoryAccessRecorder.Sinks, in the same batches a live MemoryAccessRecorder
+ * would produce.  One recorded run can so drive any number of analyses (cache
+ * sweeps, branch predictors, ...) without simulating the program again.
+ *
+ * @see TraceWriter
+ */
+
+    public class TraceReader {
+
+      private static final int BUFFER_SIZE = 1 << 20;
+
+      private File file;
+
+   /**
+    * Create a reader for the given trace file.
+    * @param file the trace file
+    */
+       public TraceReader(File file) {
+         this.file = file;
+      }
+
+   /**
+    * Replay the whole trace into a sink.
+    * @param sink receiver of the batches
+    * @return number of records replayed
+    * @throws IOException if the file cannot be read or is not a valid trace
+    */
+       public long replay(MemoryAccessRecorder.Sink sink) throws IOException {
+         return replay(new MemoryAccessRecorder.Sink[] { sink });
+      }
+
+   /**
+    * Replay the whole trace into several sinks.  Each batch is given to every sink
+    * in turn.
+    * @param sinks receivers of the batches
+    * @return number of records replayed
+    * @throws IOException if the file cannot be read or is not a valid trace
+    */
+       public long replay(MemoryAccessRecorder.Sink[] sinks) throws IOException {
+         FileChannel channel = new FileInputStream(file).getChannel();
+         try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            boolean endOfFile = fill(channel, buffer);
+            if (buffer.remaining() < 8 || buffer.getInt() != TraceWriter.MAGIC) {
+               throw new IOException(file+" is not a MARS memory access trace");
+            }
+            int version = buffer.getInt();
+            if (version != TraceWriter.VERSION) {
+               throw new IOException(file+": unsupported trace version "+version);
+            }
+            int[] addresses = new int[MemoryAccessRecorder.DEFAULT_BATCH_SIZE];
+            byte[] types = new byte[MemoryAccessRecorder.DEFAULT_BATCH_SIZE];
+            int count = 0;
+            long total = 0;
+            int lastFetch = -4;
+            int lastData = 0;
+            while (true) {
+               if (buffer.remaining() < TraceWriter.MAX_RECORD_LENGTH && !endOfFile) {
+                  buffer.compact();
+                  endOfFile = fill(channel, buffer);
+               }
+               if (!buffer.hasRemaining()) {
+                  break;
+               }
+               byte type = buffer.get();
+               int delta = 0;
+               if ((type & TraceWriter.ZERO_DELTA) != 0) {
+                  type &= ~TraceWriter.ZERO_DELTA;
+               }
+               else {
+                  int zigzag = 0;
+                  int shift = 0;
+                  byte b;
+                  do {
+                     if (!buffer.hasRemaining()) {
+                        throw new IOException(file+": trace is truncated");
+                     }
+                     b = buffer.get();
+                     zigzag |= (b & 0x7F) << shift;
+                     shift += 7;
+                  } while ((b & 0x80) != 0);
+                  delta = (zigzag >>> 1) ^ -(zigzag & 1);
+               }
+               int address;
+               switch (MemoryAccessRecorder.getKind(type)) {
+                  case MemoryAccessRecorder.INSTRUCTION_FETCH:
+                     address = lastFetch + 4 + delta;
+                     lastFetch = address;
+                     break;
+                  case MemoryAccessRecorder.BRANCH:
+                     address = lastFetch + delta;
+                     break;
+                  default:
+                     address = lastData + delta;
+                     lastData = address;
+                     break;
+               }
+               addresses[count] = address;
+               types[count] = type;
+               if (++count == addresses.length) {
+                  deliver(sinks, addresses, types, count);
+                  total += count;
+                  count = 0;
+               }
+            }
+            if (count > 0) {
+               deliver(sinks, addresses, types, count);
+               total += count;
+            }
+            return total;
+         }
+         finally {
+            channel.close();
+         }
+      }
+
+       private static void deliver(MemoryAccessRecorder.Sink[] sinks, int[] addresses, byte[] types, int count) {
+         for (int i = 0; i < sinks.length; i++) {
+            sinks[i].accessBatch(addresses, types, count);
+         }
+      }
+
+      // Read until the buffer is full or the file ends, then flip it for reading.
+      // Returns true at end of file.
+       private static boolean fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+         boolean endOfFile = false;
+         while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+               endOfFile = true;
+               break;
+            }
+         }
+         buffer.flip();
+         return endOfFile;
+      }
+   }
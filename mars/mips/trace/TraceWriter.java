@@ -0,0 +1,143 @@
+   package mars.mips.trace;
+
+   import mars.mips.hardware.MemoryAccessRecorder;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+/**
+ * Writes the accesses recorded by a MemoryAccessRecorder to a compact binary trace
+ * file, which a TraceReader can later replay into any MemoryAccessRecorder.Sink at
+ * full speed, without simulating the program again.
+ * <p>
+ * The file starts with the 4 byte magic number "MTRC" and a 4 byte version number,
+ * both big-endian.  Then comes one record per access: the access type byte as
+ * recorded (see MemoryAccessRecorder), followed by the address as a zig-zag
+ * encoded variable length delta (7 bits per byte, low order first, high bit set
+ * on all but the last byte) relative to:
+ * <ul>
+ * <li>the previous instruction fetch address plus 4, for an instruction fetch</li>
+ * <li>the previous load or store address, for a load or store</li>
+ * <li>the previous instruction fetch address (the branch itself), for a branch target</li>
+ * </ul>
+ * If the delta is zero, bit 0x40 of the type byte is set and the delta is left
+ * out, so sequential instruction fetches take one byte each.
+ *
+ * @see TraceReader
+ */
+
+    public class TraceWriter implements MemoryAccessRecorder.Sink {
+
+      /** "MTRC", first 4 bytes of a trace file */
+      public static final int MAGIC = 0x4D545243;
+      /** Version of the format written */
+      public static final int VERSION = 1;
+      /** Bit of a record's type byte set when the address delta is zero and omitted */
+      static final int ZERO_DELTA = 0x40;
+      static final int MAX_RECORD_LENGTH = 6; // type byte + 5 byte delta
+      private static final int BUFFER_SIZE = 1 << 20;
+
+      private FileChannel channel;
+      private ByteBuffer buffer;
+      private int lastFetch;
+      private int lastData;
+      private long recordCount;
+      private IOException error;
+
+   /**
+    * Create the trace file and write its header.
+    * @param file the file to write
+    * @throws IOException if the file cannot be created
+    */
+       public TraceWriter(File file) throws IOException {
+         channel = new FileOutputStream(file).getChannel();
+         buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+         buffer.putInt(MAGIC);
+         buffer.putInt(VERSION);
+         lastFetch = -4;
+         lastData = 0;
+      }
+
+   /**
+    * Append a batch of accesses to the trace.  A write error is kept and reported
+    * by close(); nothing more is written after it.
+    */
+       public void accessBatch(int[] addresses, byte[] types, int count) {
+         if (error != null) {
+            return;
+         }
+         try {
+            for (int i = 0; i < count; i++) {
+               if (buffer.remaining() < MAX_RECORD_LENGTH) {
+                  writeBuffer();
+               }
+               byte type = types[i];
+               int address = addresses[i];
+               int delta;
+               switch (MemoryAccessRecorder.getKind(type)) {
+                  case MemoryAccessRecorder.INSTRUCTION_FETCH:
+                     delta = address - (lastFetch + 4);
+                     lastFetch = address;
+                     break;
+                  case MemoryAccessRecorder.BRANCH:
+                     delta = address - lastFetch;
+                     break;
+                  default:
+                     delta = address - lastData;
+                     lastData = address;
+                     break;
+               }
+               if (delta == 0) {
+                  buffer.put((byte) (type | ZERO_DELTA));
+               }
+               else {
+                  buffer.put(type);
+                  int zigzag = (delta << 1) ^ (delta >> 31);
+                  while ((zigzag & ~0x7F) != 0) {
+                     buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+                     zigzag >>>= 7;
+                  }
+                  buffer.put((byte) zigzag);
+               }
+            }
+            recordCount += count;
+         }
+             catch (IOException e) {
+               error = e;
+            }
+      }
+
+   /**
+    * Write out buffered records and close the file.  Call after the
+    * MemoryAccessRecorder has been flushed.
+    * @throws IOException if writing the trace failed at any point
+    */
+       public void close() throws IOException {
+         try {
+            if (error == null) {
+               writeBuffer();
+            }
+         }
+         finally {
+            channel.close();
+         }
+         if (error != null) {
+            throw error;
+         }
+      }
+
+   /**
+    * @return number of records written
+    */
+       public long getRecordCount() {
+         return recordCount;
+      }
+
+       private void writeBuffer() throws IOException {
+         buffer.flip();
+         while (buffer.hasRemaining()) {
+            channel.write(buffer);
+         }
+         buffer.clear();
+      }
+   }
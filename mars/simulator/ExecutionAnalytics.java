@@ -0,0 +1,324 @@
+   package mars.simulator;
+
+   import mars.Globals;
+   import mars.ProgramStatement;
+   import mars.mips.hardware.*;
+   import mars.util.AddressIndex;
+   import mars.util.Binary;
+   import java.io.*;
+   import java.util.*;
+
+/**
+ * Collects statistics about a run for a headless report: how often each
+ * instruction mnemonic was executed (custom language instructions included),
+ * how often each general purpose register and HI/LO was read and written, the
+ * loads and stores and address range touched in each memory segment, the heap
+ * high-water mark, the deepest stack reached and the number of calls to each
+ * syscall.
+ * <p>
+ * All counters are primitive.  Instruction executions are counted per address
+ * from the fetches recorded by a MemoryAccessRecorder (this is a Sink) and only
+ * attributed to mnemonics when the report is written.  Register reads and writes
+ * are counted by RegisterFile and syscalls by InstructionSet while this is the
+ * active analytics (see setActive); otherwise those hooks cost a null test.
+ * <p>
+ * The report is written as JSON or, for file names ending in .csv, as CSV with
+ * columns category,name,metric,value.
+ */
+
+    public class ExecutionAnalytics implements MemoryAccessRecorder.Sink {
+
+      private static final String[] SEGMENT_NAMES = {".text", ".data", "heap", "stack", ".ktext", ".kdata", "mmio", "other"};
+      private static final int TEXT = 0, DATA = 1, HEAP = 2, STACK = 3, KERNEL_TEXT = 4, KERNEL_DATA = 5, MMIO = 6, OTHER = 7;
+      private static final int SEGMENTS = SEGMENT_NAMES.length;
+      private static final int REGISTERS = 35; // $0-$31, (pc), hi and lo: RegisterFile numbering
+
+      private static ExecutionAnalytics active = null;
+
+      private AddressIndex instructions = new AddressIndex(1024);
+      private long[] executed = new long[1024];
+      private long instructionCount;
+      private long[] registerReads = new long[REGISTERS];
+      private long[] registerWrites = new long[REGISTERS];
+      private long[] segmentReads = new long[SEGMENTS];
+      private long[] segmentWrites = new long[SEGMENTS];
+      private int[] segmentLow = new int[SEGMENTS];
+      private int[] segmentHigh = new int[SEGMENTS];
+      private int[] syscallNumbers = new int[0];   // sorted
+      private long[] syscallCounts = new long[0];
+
+   /**
+    * Make the given analytics the one that counts register usage and syscalls.
+    * @param analytics the analytics, or null to stop counting
+    */
+       public static void setActive(ExecutionAnalytics analytics) {
+         active = analytics;
+         if (analytics == null) {
+            RegisterFile.setUsageCounters(null, null);
+         }
+         else {
+            RegisterFile.setUsageCounters(analytics.registerReads, analytics.registerWrites);
+         }
+      }
+
+   /**
+    * @return the active analytics, or null if none
+    */
+       public static ExecutionAnalytics getActive() {
+         return active;
+      }
+
+   /**
+    * Create analytics with all counters zero.
+    */
+       public ExecutionAnalytics() {
+         Arrays.fill(segmentLow, -1);
+      }
+
+   /**
+    * Count the instruction fetches and memory accesses in a batch.
+    */
+       public void accessBatch(int[] addresses, byte[] types, int count) {
+         for (int i = 0; i < count; i++) {
+            int kind = MemoryAccessRecorder.getKind(types[i]);
+            int address = addresses[i];
+            if (kind == MemoryAccessRecorder.INSTRUCTION_FETCH) {
+               int instruction = instructions.indexOf(address);
+               if (instruction == executed.length) {
+                  long[] newExecuted = new long[2 * instruction];
+                  System.arraycopy(executed, 0, newExecuted, 0, instruction);
+                  executed = newExecuted;
+               }
+               executed[instruction]++;
+               instructionCount++;
+            }
+            else if (kind != MemoryAccessRecorder.BRANCH) {
+               int segment = segmentOf(address);
+               if (kind == MemoryAccessRecorder.WRITE) {
+                  segmentWrites[segment]++;
+               }
+               else {
+                  segmentReads[segment]++;
+               }
+               if (segmentLow[segment] == -1 || unsignedLess(address, segmentLow[segment])) {
+                  segmentLow[segment] = address;
+               }
+               int last = address + MemoryAccessRecorder.getLength(types[i]) - 1;
+               if (unsignedLess(segmentHigh[segment], last)) {
+                  segmentHigh[segment] = last;
+               }
+            }
+         }
+      }
+
+   /**
+    * Count one call of a syscall.  Called by InstructionSet for the active analytics.
+    * @param number the service number in $v0
+    */
+       public void countSyscall(int number) {
+         int i = Arrays.binarySearch(syscallNumbers, number);
+         if (i < 0) {
+            i = -i - 1;
+            int[] newNumbers = new int[syscallNumbers.length + 1];
+            long[] newCounts = new long[syscallCounts.length + 1];
+            System.arraycopy(syscallNumbers, 0, newNumbers, 0, i);
+            System.arraycopy(syscallCounts, 0, newCounts, 0, i);
+            System.arraycopy(syscallNumbers, i, newNumbers, i + 1, syscallNumbers.length - i);
+            System.arraycopy(syscallCounts, i, newCounts, i + 1, syscallCounts.length - i);
+            newNumbers[i] = number;
+            syscallNumbers = newNumbers;
+            syscallCounts = newCounts;
+         }
+         syscallCounts[i]++;
+      }
+
+       private static int segmentOf(int address) {
+         if (Memory.inTextSegment(address)) {
+            return TEXT;
+         }
+         if (address >= Memory.stackLimitAddress && address <= Memory.stackBaseAddress + 3) {
+            return STACK;
+         }
+         if (Memory.inDataSegment(address)) {
+            return (address >= Memory.heapBaseAddress) ? HEAP : DATA;
+         }
+         if (Memory.inKernelTextSegment(address)) {
+            return KERNEL_TEXT;
+         }
+         if (Memory.inKernelDataSegment(address)) {
+            return KERNEL_DATA;
+         }
+         if (Memory.inMemoryMapSegment(address)) {
+            return MMIO;
+         }
+         return OTHER;
+      }
+
+       private static boolean unsignedLess(int a, int b) {
+         return (a ^ 0x80000000) < (b ^ 0x80000000);
+      }
+
+      // Executions per mnemonic, sorted by name.  Addresses whose statement cannot be
+      // found (e.g. code since overwritten) count as "?".
+       private TreeMap mnemonicCounts() {
+         TreeMap counts = new TreeMap();
+         for (int instruction = 0; instruction < instructions.size(); instruction++) {
+            String name = "?";
+            try {
+               ProgramStatement statement = Globals.memory.getStatementNoNotify(instructions.getAddress(instruction));
+               if (statement != null && statement.getInstruction() != null) {
+                  name = statement.getInstruction().getName();
+               }
+            }
+                catch (AddressErrorException e) {
+               }
+            long[] count = (long[]) counts.get(name);
+            if (count == null) {
+               counts.put(name, new long[] { executed[instruction] });
+            }
+            else {
+               count[0] += executed[instruction];
+            }
+         }
+         return counts;
+      }
+
+   /**
+    * @return bytes allocated by sbrk so far (Memory.heapAddress above its base)
+    */
+       public int getHeapHighWater() {
+         return Memory.heapAddress - Memory.heapBaseAddress;
+      }
+
+   /**
+    * @return bytes between the initial stack pointer and the lowest stack address accessed
+    */
+       public int getStackDepth() {
+         return (segmentLow[STACK] == -1) ? 0 : Math.max(0, Memory.stackPointer + 4 - segmentLow[STACK]);
+      }
+
+   /**
+    * Write the report, as CSV if the file name ends in .csv and as JSON otherwise.
+    * Call after the MemoryAccessRecorder has been flushed, while the program is
+    * still in memory.
+    * @param file the file to write
+    * @throws IOException if the file cannot be written
+    */
+       public void save(File file) throws IOException {
+         PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)));
+         try {
+            if (file.getName().toLowerCase().endsWith(".csv")) {
+               writeCsv(out);
+            }
+            else {
+               writeJson(out);
+            }
+         }
+         finally {
+            out.close();
+         }
+         if (out.checkError()) {
+            throw new IOException("error writing "+file);
+         }
+      }
+
+   /**
+    * Write the report as JSON.
+    * @param out where to write
+    */
+       public void writeJson(PrintStream out) {
+         out.println("{");
+         out.println("  \"instructions\": "+instructionCount+",");
+         out.println("  \"mnemonics\": {");
+         Iterator it = mnemonicCounts().entrySet().iterator();
+         while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            out.println("    "+quote((String) entry.getKey())+": "+((long[]) entry.getValue())[0]+(it.hasNext() ? "," : ""));
+         }
+         out.println("  },");
+         out.println("  \"registers\": {");
+         for (int r = 0; r < REGISTERS; r++) {
+            String name = registerName(r);
+            if (name != null) {
+               out.println("    "+quote(name)+": {\"reads\": "+registerReads[r]+", \"writes\": "+registerWrites[r]+"}"
+                  +((r < REGISTERS - 1) ? "," : ""));
+            }
+         }
+         out.println("  },");
+         out.println("  \"segments\": {");
+         for (int s = 0; s < SEGMENTS; s++) {
+            out.print("    "+quote(SEGMENT_NAMES[s])+": {\"reads\": "+segmentReads[s]+", \"writes\": "+segmentWrites[s]);
+            if (segmentLow[s] != -1) {
+               out.print(", \"low\": "+quote(Binary.intToHexString(segmentLow[s]))
+                  +", \"high\": "+quote(Binary.intToHexString(segmentHigh[s])));
+            }
+            out.println("}"+((s < SEGMENTS - 1) ? "," : ""));
+         }
+         out.println("  },");
+         out.println("  \"heap\": {\"base\": "+quote(Binary.intToHexString(Memory.heapBaseAddress))
+            +", \"top\": "+quote(Binary.intToHexString(Memory.heapAddress))+", \"bytes\": "+getHeapHighWater()+"},");
+         out.println("  \"stack\": {\"base\": "+quote(Binary.intToHexString(Memory.stackPointer))
+            +", \"maxDepth\": "+getStackDepth()+"},");
+         out.println("  \"syscalls\": {");
+         for (int i = 0; i < syscallNumbers.length; i++) {
+            out.println("    "+quote(String.valueOf(syscallNumbers[i]))+": "+syscallCounts[i]
+               +((i < syscallNumbers.length - 1) ? "," : ""));
+         }
+         out.println("  }");
+         out.println("}");
+      }
+
+   /**
+    * Write the report as CSV with columns category,name,metric,value.
+    * @param out where to write
+    */
+       public void writeCsv(PrintStream out) {
+         out.println("category,name,metric,value");
+         out.println("summary,instructions,executed,"+instructionCount);
+         Iterator it = mnemonicCounts().entrySet().iterator();
+         while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            out.println("instruction,"+entry.getKey()+",executed,"+((long[]) entry.getValue())[0]);
+         }
+         for (int r = 0; r < REGISTERS; r++) {
+            String name = registerName(r);
+            if (name != null) {
+               out.println("register,"+name+",reads,"+registerReads[r]);
+               out.println("register,"+name+",writes,"+registerWrites[r]);
+            }
+         }
+         for (int s = 0; s < SEGMENTS; s++) {
+            out.println("segment,"+SEGMENT_NAMES[s]+",reads,"+segmentReads[s]);
+            out.println("segment,"+SEGMENT_NAMES[s]+",writes,"+segmentWrites[s]);
+            if (segmentLow[s] != -1) {
+               out.println("segment,"+SEGMENT_NAMES[s]+",low,"+Binary.intToHexString(segmentLow[s]));
+               out.println("segment,"+SEGMENT_NAMES[s]+",high,"+Binary.intToHexString(segmentHigh[s]));
+            }
+         }
+         out.println("memory,heap,bytes,"+getHeapHighWater());
+         out.println("memory,stack,maxDepth,"+getStackDepth());
+         for (int i = 0; i < syscallNumbers.length; i++) {
+            out.println("syscall,"+syscallNumbers[i]+",calls,"+syscallCounts[i]);
+         }
+      }
+
+      // Name of register with RegisterFile number r, null for the unused number 32.
+       private static String registerName(int r) {
+         if (r < 32) {
+            return RegisterFile.getRegisters()[r].getName();
+         }
+         return (r == 33) ? "hi" : (r == 34) ? "lo" : null;
+      }
+
+       private static String quote(String s) {
+         StringBuffer quoted = new StringBuffer("\"");
+         for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+               quoted.append('\\');
+            }
+            quoted.append(c);
+         }
+         return quoted.append('"').toString();
+      }
+   }
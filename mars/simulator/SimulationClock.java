@@ -0,0 +1,245 @@
+   package mars.simulator;
+
+/**
+ * Time source used by the time-related syscalls (Time, Sleep).  Each MIPSprogram
+ * owns one clock, which is reset whenever the program is assembled.
+ * <p>
+ * In REAL_TIME mode (the default, and what the IDE uses) the clock simply reports
+ * the host's wall-clock time and Sleep really suspends the simulator thread.
+ * <p>
+ * In VIRTUAL_TIME mode the time is derived from the number of MIPS instructions
+ * executed so far at a nominal clock rate (one instruction per cycle), starting
+ * from time 0.  Sleep then becomes an instant jump forward in time.  Runs are
+ * deterministic and do not depend on host speed, which is what you want when
+ * running animation-style programs from the command line.
+ * <p>
+ * Simulated devices can also ask to be called back after a given number of
+ * instructions (see setAlarm).  This replaces observing every instruction fetch
+ * just to count instructions; the per-instruction cost is a single compare.
+ *
+ * @see mars.mips.instructions.syscalls.SyscallTime
+ * @see mars.mips.instructions.syscalls.SyscallSleep
+ */
+
+    public class SimulationClock {
+
+      /** Clock reports host wall-clock time; Sleep really sleeps. */
+      public static final int REAL_TIME = 0;
+      /** Clock is derived from instruction count; Sleep advances the clock instantly. */
+      public static final int VIRTUAL_TIME = 1;
+      /** Nominal clock rate used for virtual time if none is specified: 1 MHz */
+      public static final long DEFAULT_CLOCK_RATE = 1000000;
+
+      private int mode;
+      private long clockRate;        // instructions per second, for virtual time
+      private long instructionCount; // MIPS instructions executed since reset
+      private long sleptMillis;      // virtual milliseconds added by Sleep
+      private Alarm[] alarms = new Alarm[4];
+      private long[] alarmTimes = new long[4]; // instruction count at which each alarm goes off
+      private int alarmCount;
+      private volatile long nextAlarmTime = Long.MAX_VALUE;
+
+      /**
+       * Create a real-time clock.  Use setVirtualTime() to switch it to virtual time.
+       */
+       public SimulationClock() {
+         mode = REAL_TIME;
+         clockRate = DEFAULT_CLOCK_RATE;
+         reset();
+      }
+
+      /**
+       * Clear the instruction count and any accumulated sleep time.  The mode and
+       * clock rate are retained.  Called when the program is (re)assembled.  Pending
+       * alarms keep the number of instructions they still have to wait.
+       */
+       public synchronized void reset() {
+         for (int i = 0; i < alarmCount; i++) {
+            alarmTimes[i] = Math.max(0, alarmTimes[i] - instructionCount);
+         }
+         instructionCount = 0;
+         sleptMillis = 0;
+         findNextAlarm();
+      }
+
+      /**
+       * Switch to virtual time at the given nominal clock rate.
+       * @param instructionsPerSecond nominal clock rate in Hz; must be positive
+       * @throws IllegalArgumentException if clock rate is not positive
+       */
+       public void setVirtualTime(long instructionsPerSecond) {
+         if (instructionsPerSecond <= 0) {
+            throw new IllegalArgumentException("clock rate ("+instructionsPerSecond+") must be positive");
+         }
+         mode = VIRTUAL_TIME;
+         clockRate = instructionsPerSecond;
+      }
+
+      /**
+       * Switch to real (host wall-clock) time.
+       */
+       public void setRealTime() {
+         mode = REAL_TIME;
+      }
+
+      /**
+       * @return true if this clock uses virtual time, false if real time
+       */
+       public boolean isVirtual() {
+         return mode == VIRTUAL_TIME;
+      }
+
+      /**
+       * @return nominal clock rate in Hz used for virtual time
+       */
+       public long getClockRate() {
+         return clockRate;
+      }
+
+      /**
+       * Count one executed MIPS instruction.  Called by the simulator once per
+       * instruction cycle, so it must stay trivial.
+       */
+       void tick() {
+         if (++instructionCount >= nextAlarmTime) {
+            ringAlarms();
+         }
+      }
+
+      /**
+       * @return number of MIPS instructions executed since last reset
+       */
+       public long getInstructionCount() {
+         return instructionCount;
+      }
+
+      /**
+       * Ask to be called back once the given number of further instructions have been
+       * executed.  The callback is made on the simulation thread just before the
+       * instruction that reaches the count is executed.  An alarm can be pending only
+       * once; setting it again replaces the earlier request.
+       * @param alarm the callback
+       * @param instructions number of instructions to wait; must not be negative
+       * @throws IllegalArgumentException if instructions is negative
+       */
+       public synchronized void setAlarm(Alarm alarm, long instructions) {
+         if (instructions < 0) {
+            throw new IllegalArgumentException("alarm delay ("+instructions+") must not be negative");
+         }
+         int i = findAlarm(alarm);
+         if (i < 0) {
+            if (alarmCount == alarms.length) {
+               Alarm[] newAlarms = new Alarm[alarmCount * 2];
+               long[] newAlarmTimes = new long[alarmCount * 2];
+               System.arraycopy(alarms, 0, newAlarms, 0, alarmCount);
+               System.arraycopy(alarmTimes, 0, newAlarmTimes, 0, alarmCount);
+               alarms = newAlarms;
+               alarmTimes = newAlarmTimes;
+            }
+            i = alarmCount++;
+            alarms[i] = alarm;
+         }
+         alarmTimes[i] = instructionCount + instructions;
+         findNextAlarm();
+      }
+   
+      /**
+       * Cancel a pending alarm.  Does nothing if the alarm is not pending.
+       * @param alarm the callback given to setAlarm
+       */
+       public synchronized void cancelAlarm(Alarm alarm) {
+         int i = findAlarm(alarm);
+         if (i >= 0) {
+            removeAlarm(i);
+            findNextAlarm();
+         }
+      }
+   
+      /**
+       * Current time in milliseconds.  For real time this is the host time since
+       * 1 Jan 1970; for virtual time it is elapsed simulated time since reset.
+       * @return current time in milliseconds
+       */
+       public long currentTimeMillis() {
+         if (mode == REAL_TIME) {
+            return System.currentTimeMillis();
+         }
+         return instructionCount * 1000 / clockRate + sleptMillis;
+      }
+
+      /**
+       * Let the given number of milliseconds pass.  For real time the calling
+       * thread sleeps; for virtual time the clock is advanced immediately.
+       * @param millis number of milliseconds; zero or negative does nothing
+       */
+       public void sleep(int millis) {
+         if (millis <= 0) {
+            return;
+         }
+         if (mode == VIRTUAL_TIME) {
+            sleptMillis += millis;
+            return;
+         }
+         try {
+            Thread.sleep(millis);
+         }
+             catch (InterruptedException e) {
+               // no exception handling
+            }
+      }
+   
+      // Call back, and remove, every alarm that is due.  The callbacks are made
+      // outside the lock so that they may set new alarms.
+       private void ringAlarms() {
+         Alarm[] due;
+         int dueCount = 0;
+         synchronized (this) {
+            due = new Alarm[alarmCount];
+            for (int i = alarmCount - 1; i >= 0; i--) {
+               if (alarmTimes[i] <= instructionCount) {
+                  due[dueCount++] = alarms[i];
+                  removeAlarm(i);
+               }
+            }
+            findNextAlarm();
+         }
+         for (int i = 0; i < dueCount; i++) {
+            due[i].ring();
+         }
+      }
+   
+       private int findAlarm(Alarm alarm) {
+         for (int i = 0; i < alarmCount; i++) {
+            if (alarms[i] == alarm) {
+               return i;
+            }
+         }
+         return -1;
+      }
+   
+       private void removeAlarm(int i) {
+         alarmCount--;
+         alarms[i] = alarms[alarmCount];
+         alarmTimes[i] = alarmTimes[alarmCount];
+         alarms[alarmCount] = null;
+      }
+   
+       private void findNextAlarm() {
+         long next = Long.MAX_VALUE;
+         for (int i = 0; i < alarmCount; i++) {
+            next = Math.min(next, alarmTimes[i]);
+         }
+         nextAlarmTime = next;
+      }
+   
+      /**
+       * Callback interface for simulated devices that need to act after a number of
+       * instructions have executed.
+       */
+       public interface Alarm {
+         /**
+          * The requested number of instructions has been executed.
+          */
+          public void ring();
+      }
+   }
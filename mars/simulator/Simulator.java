@@ -3,6 +3,7 @@
    import mars.venus.*;
    import mars.util.*;
    import mars.mips.hardware.*;
+   import mars.mips.instructions.syscalls.*;
    import mars.mips.instructions.*;
    import java.util.*;
    import javax.swing.*;
@@ -44,8 +45,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
     public class Simulator extends Observable {
       private SimThread simulatorThread;
+      private MIPSprogram program; // most recently simulated program, owner of per-run state
+      private static final SimulationClock defaultClock = new SimulationClock(); // real time
+      private static final RandomStreams defaultRandomStreams = new RandomStreams();
       private static Simulator simulator = null;  // Singleton object
-      private static Runnable interactiveGUIUpdater = null;
+      private static UpdateGUI interactiveGUIUpdater = null;
       // Others can set this true to indicate external interrupt.  Initially used
    	// to simulate keyboard and display interrupts.  The device is identified
    	// by the address of its MMIO control register.  keyboard 0xFFFF0000 and
@@ -99,6 +103,38 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return DelayedBranch.isTriggered();
       }	
    
+   /**
+    *  Returns the MIPSprogram most recently given to simulate().  Syscalls use
+    *  it to reach state owned by the running program, such as its clock.
+    *
+    *  @return the MIPSprogram being (or last) simulated, null if none yet.
+    */
+   
+       public MIPSprogram getProgram() {
+         return program;
+      }
+   
+   /**
+    *  Returns the clock of the MIPSprogram being simulated.  If nothing has been
+    *  simulated yet, returns a real-time clock.
+    *
+    *  @return SimulationClock of the current program
+    */
+   
+       public SimulationClock getClock() {
+         return (program == null) ? defaultClock : program.getClock();
+      }
+   
+   /**
+    *  Returns the pseudorandom number streams of the MIPSprogram being simulated.
+    *
+    *  @return RandomStreams of the current program
+    */
+   
+       public RandomStreams getRandomStreams() {
+         return (program == null) ? defaultRandomStreams : program.getRandomStreams();
+      }
+   
    
    /**
     * Simulate execution of given MIPS program.  It must have already been assembled.
@@ -112,6 +148,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
     
        public boolean simulate(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction actor) throws ProcessingException {
+         program = p;
+         if (interactiveGUIUpdater != null) {
+            interactiveGUIUpdater.reset();
+         }
          simulatorThread = new SimThread(p,pc,maxSteps,breakPoints,actor);
          simulatorThread.start();
       	
@@ -321,10 +361,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	// *********************************************************************
          	
             int pc = 0;  // added: 7/26/06 (explanation above)
+            SimulationClock clock = p.getClock();
+            MemoryAccessRecorder recorder = Globals.memory.getAccessRecorder();
+            if (recorder != null) {
+               Globals.instructionSet.clearBranchResolution();
+            }
          
             while (statement != null) {
                pc = RegisterFile.getProgramCounter(); // added: 7/26/06 (explanation above)
-               RegisterFile.incrementPC();           	
+               RegisterFile.incrementPC();
+               clock.tick();           	
             	// Perform the MIPS instruction in synchronized block.  If external threads agree
             	// to access MIPS memory and registers only through synchronized blocks on same 
             	// lock variable, then full (albeit heavy-handed) protection of MIPS memory and 
@@ -344,6 +390,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      }
                      // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
                      instruction.getSimulationCode().simulate(statement);
+                     if (recorder != null) {
+                        Globals.instructionSet.recordBranchResolution(instruction, statement, recorder);
+                     }
                   	
                   	// IF statement added 7/26/06 (explanation above)
                      if (Globals.getSettings().getBackSteppingEnabled()) {
@@ -426,7 +475,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                //if (Globals.getGui() != null && maxSteps != 1 &&             
                if (interactiveGUIUpdater != null && maxSteps != 1 && 
                           RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
-                  SwingUtilities.invokeLater(interactiveGUIUpdater);
+                  interactiveGUIUpdater.schedule();
                }
                if (Globals.getGui() != null || Globals.runSpeedPanelExists) { // OR added by DPS 24 July 2008 to enable speed control by stand-alone tool
                   if (maxSteps != 1 && 
@@ -518,8 +567,58 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          
       }
    	
+   	/*
+   	 * Refreshes the register, data segment and text segment displays while a program
+   	 * runs in timed mode.  The simulator thread calls schedule() after every instruction;
+   	 * requests are coalesced so that at most one refresh is waiting in the event queue
+   	 * and refreshes are no more frequent than one per FRAME_MILLIS.  A request made
+   	 * sooner arms a one-shot timer for the rest of the frame instead, so the displays
+   	 * catch up even if the program then blocks, e.g. on a read syscall.  Further requests
+   	 * made while a refresh is waiting are dropped rather than queued: that refresh shows
+   	 * the state as it is then, and the windows only repaint the cells whose values
+   	 * changed since the previous refresh.  The final state is shown by the Run actions
+   	 * when execution stops.
+   	 */
        private class UpdateGUI implements Runnable {
+         private static final long FRAME_MILLIS = 1000 / 60;
+         private volatile boolean pending = false;
+         private volatile long lastRefreshed = 0;
+         private int lastHighlighted = -1;
+         private final javax.swing.Timer trailingRefresh = new javax.swing.Timer(0, 
+                new ActionListener() {
+                   public void actionPerformed(ActionEvent e) {
+                     UpdateGUI.this.run();
+                  }
+               });
+      
+          UpdateGUI() {
+            trailingRefresh.setRepeats(false);
+         }
+      
+         // Called before each run; the highlighted row may have been changed in between.
+          void reset() {
+            lastHighlighted = -1;
+         }
+      
+         // Called on the simulator thread.
+          void schedule() {
+            if (pending) {
+               return;
+            }
+            long wait = FRAME_MILLIS - (System.currentTimeMillis() - lastRefreshed);
+            pending = true;
+            if (wait > 0) {
+               trailingRefresh.setInitialDelay((int) wait);
+               trailingRefresh.restart();
+            } 
+            else {
+               SwingUtilities.invokeLater(this);
+            }
+         }
+      
           public void run() {
+            pending = false;
+            lastRefreshed = System.currentTimeMillis();
             if (Globals.getGui().getRegistersPane().getSelectedComponent() == 
                                                      Globals.getGui().getMainPane().getExecutePane().getRegistersWindow()) {
                Globals.getGui().getMainPane().getExecutePane().getRegistersWindow().updateRegisters();
@@ -529,7 +628,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }
             Globals.getGui().getMainPane().getExecutePane().getDataSegmentWindow().updateValues();
             Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow().setCodeHighlighting(true);
-            Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow().highlightStepAtPC();   
+            int pc = RegisterFile.getProgramCounter();
+            if (pc != lastHighlighted) {
+               Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow().highlightStepAtAddress(pc);
+               lastHighlighted = pc;
+            }
          }
       }
    
@@ -4,6 +4,7 @@
    import javax.swing.event.*;
    import java.awt.*;
    import java.awt.event.*;
+   import java.awt.image.*;
    import java.util.*;
    import mars.tools.*;
    import mars.mips.hardware.*;
@@ -41,10 +42,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 	 * access to the mars package, or through MARS as an item in its Tools menu.  It makes
 	 * maximum use of methods inherited from its abstract superclass AbstractMarsToolAndApplication.
 	 * Pete Sanderson, verison 1.0, 23 December 2010.
+	 * Version 1.1 keeps the display in an image raster.  Memory writes only update the raster and
+	 * the dirty region, and the display repaints the dirty region at most FRAMES_PER_SECOND times
+	 * per second with a single (scaled) image draw.
 	 */
     public class BitmapDisplay extends AbstractMarsToolAndApplication {
    
-      private static String version = "Version 1.0";
+      private static String version = "Version 1.1";
       private static String heading =  "Bitmap Display";
    	
    	// Major GUI components
@@ -85,6 +89,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private int baseAddress;
    	
       private Grid theGrid;
+   
+   	// Repaints are coalesced: the first write after a repaint starts this one-shot timer,
+   	// and when it fires the region written since the last repaint is repainted.
+      private static final int FRAMES_PER_SECOND = 60;
+      private volatile boolean repaintScheduled = false;
+      private javax.swing.Timer repaintTimer;
    	         	
    	/**
    	 * Simple constructor, likely used to run a stand-alone bitmap display tool.
@@ -218,7 +228,30 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  is running in timed mode.  Overrides inherited method that does nothing.
    	 */
        protected void updateDisplay() {
-         canvas.repaint();
+         if (repaintScheduled) {
+            return;
+         }
+         repaintScheduled = true;
+         if (repaintTimer == null) {
+            repaintTimer = new javax.swing.Timer(1000 / FRAMES_PER_SECOND,
+                   new ActionListener() {
+                      public void actionPerformed(ActionEvent e) {
+                        repaintDirtyRegion();
+                     }
+                  });
+            repaintTimer.setRepeats(false);
+         }
+         repaintTimer.restart();
+      }
+   
+   	// Called on the event dispatch thread when the repaint timer fires.
+       private void repaintDirtyRegion() {
+         repaintScheduled = false;
+         Rectangle dirty = theGrid.takeDirtyRegion();
+         if (dirty != null) {
+            canvas.repaint(dirty.x * unitPixelWidth, dirty.y * unitPixelHeight,
+                           dirty.width * unitPixelWidth, dirty.height * unitPixelHeight);
+         }
       }
    
        
@@ -399,9 +432,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       // building the GUI.  Here are current values from Memory.java:
       //dataSegmentBaseAddress=0x10000000, globalPointer=0x10008000
       //dataBaseAddress=0x10010000, heapBaseAddress=0x10040000, memoryMapBaseAddress=0xffff0000	
+      // The same choices are offered by the headless FramebufferDevice (MarsLaunch "fb" option).
        private void initializeDisplayBaseChoices() {
-         int[] displayBaseAddressArray = {Memory.dataSegmentBaseAddress, Memory.globalPointer, Memory.dataBaseAddress,
-                                          Memory.heapBaseAddress, Memory.memoryMapBaseAddress };
+         int[] displayBaseAddressArray = FramebufferDevice.getDisplayBaseAddresses();
       	// Must agree with above in number and order...
          String[] descriptions =         { " (global data)", " ($gp)", " (static data)", " (heap)", " (memory map)" };
          displayBaseAddresses = displayBaseAddressArray;
@@ -467,12 +500,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          int address = notice.getAddress();
          int value   = notice.getValue();
          int offset = (address - baseAddress)/Memory.WORD_LENGTH_BYTES;
-         try {
+         // If address is out of range for display, do nothing.  
+         if (address >= baseAddress && offset < theGrid.getRows() * theGrid.getColumns()) {
             theGrid.setElement(offset / theGrid.getColumns(), offset % theGrid.getColumns(), value);
-         } 
-             catch (IndexOutOfBoundsException e) {
-                 // If address is out of range for display, do nothing.  
-            }
+         }
       }
    	  
    	  
@@ -487,39 +518,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        private class GraphicsPanel extends JPanel {
       	
           // override default paint method to assure display updated correctly every time
-      	 // the panel is repainted.
+      	 // the panel is repainted.  The clip limits the work to the repainted region.
           public void paint(Graphics g) {
-               paintGrid(g, theGrid);
-         }
-      
-      	// Paint the color codes.
-          private void paintGrid(Graphics g, Grid grid) {
-            int upperLeftX = 0, upperLeftY = 0;
-            for (int i=0; i<grid.getRows(); i++) {
-               for (int j=0; j<grid.getColumns(); j++) {
-                  g.setColor(grid.getElementFast(i,j));
-                  g.fillRect(upperLeftX, upperLeftY, unitPixelWidth, unitPixelHeight); 
-                  upperLeftX += unitPixelWidth;   // faster than multiplying
-               }
-            	// get ready for next row...
-               upperLeftX = 0;
-               upperLeftY += unitPixelHeight;     // faster than multiplying
-            }
+            theGrid.paint(g, unitPixelWidth, unitPixelHeight);
          }
       }
    
    	
       ////////////////////////////////////////////////////////////////////////
-   	// Represents grid of colors
+   	// Represents grid of colors.  The colors (0x00RRGGBB) are kept in the raster of
+   	// an image with one pixel per grid element, which is scaled when painted.  Writes
+   	// grow a dirty rectangle, which the repaint timer takes and clears.
        private class Grid {
       
-         Color[][] grid;
+         BufferedImage image;
+         int[] raster;
          int rows, columns;
+         int dirtyMinRow, dirtyMaxRow, dirtyMinColumn, dirtyMaxColumn; // empty when min > max
       	 		  
           private Grid(int rows, int columns) {
-            grid = new Color[rows][columns];
             this.rows = rows;
             this.columns = columns;
+            image = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_RGB);
+            raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
             reset();
          }
        
@@ -530,36 +551,43 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
           private int getColumns() {
             return columns;
          }
-      
-      	// Returns value in given grid element; null if row or column is out of range.			
-          private Color getElement(int row, int column) {
-            return (row>=0 && row<=rows && column>=0 && column<=columns) ? grid[row][column] : null;			
+      	      	
+      	// Set the grid element.  Row and column must be in range.
+          private synchronized void setElement(int row, int column, int color) {
+            raster[row * columns + column] = color & 0xffffff;
+            if (row < dirtyMinRow) dirtyMinRow = row;
+            if (row > dirtyMaxRow) dirtyMaxRow = row;
+            if (column < dirtyMinColumn) dirtyMinColumn = column;
+            if (column > dirtyMaxColumn) dirtyMaxColumn = column;
          }
       
-      	// Returns value in given grid element without doing any row/column index checking.
-      	// Is faster than getElement but will throw array index out of bounds exception if
-      	// parameter values are outside the bounds of the grid.			
-          private Color getElementFast(int row, int column) {
-            return grid[row][column];			
+      	// Return the region (in grid elements) written since the last call, or null if none.
+          private synchronized Rectangle takeDirtyRegion() {
+            if (dirtyMinRow > dirtyMaxRow) {
+               return null;
+            }
+            Rectangle dirty = new Rectangle(dirtyMinColumn, dirtyMinRow,
+                                  dirtyMaxColumn - dirtyMinColumn + 1, dirtyMaxRow - dirtyMinRow + 1);
+            clearDirtyRegion();
+            return dirty;
          }
-      	      	
-      	// Set the grid element.
-          private void setElement(int row, int column, int color) {
-            grid[row][column] = new Color(color);
+      
+          private void clearDirtyRegion() {
+            dirtyMinRow = dirtyMinColumn = Integer.MAX_VALUE;
+            dirtyMaxRow = dirtyMaxColumn = -1;
          }
-      	
-      	// Set the grid element.
-          private void setElement(int row, int column, Color color) {
-            grid[row][column] = color;
+      
+      	// Draw the whole grid, scaled to the unit size, in one operation.
+          private synchronized void paint(Graphics g, int unitWidth, int unitHeight) {
+            g.drawImage(image, 0, 0, columns * unitWidth, rows * unitHeight, null);
          }
       
-      	// Just set all grid elements to black.
-          private void reset() {
-            for (int i=0; i<rows; i++) {
-               for (int j=0; j<columns; j++) {
-                  grid[i][j] = Color.BLACK;
-               }
-            }
+      	// Just set all grid elements to black, and mark all of them dirty.
+          private synchronized void reset() {
+            Arrays.fill(raster, 0);
+            dirtyMinRow = dirtyMinColumn = 0;
+            dirtyMaxRow = rows - 1;
+            dirtyMaxColumn = columns - 1;
          }
       }  	
    
@@ -11,6 +11,8 @@
    import mars.venus.RunSpeedPanel;
    import mars.mips.hardware.*;
    import mars.simulator.Exceptions;
+   import mars.simulator.SimulationClock;
+   import mars.simulator.Simulator;
    import javax.swing.text.DefaultCaret;
 
 
@@ -64,11 +66,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     *    transmitted will clear the Display window.  (2) ASCII control character 7 (bell) when
     *    transmitted with properly coded (X,Y) values will reposition the cursor to the specified
     *    position of a virtual text-based terminal.  X represents column, Y represents row.
+	 *
+	 * Version 1.5, attaches to the receiver and transmitter data registers as a MemoryMappedDevice
+	 *    instead of observing memory, and counts the transmitter delay with a SimulationClock alarm
+	 *    instead of observing every instruction fetch.  Transmitted characters are queued and
+	 *    shown in batches on the event dispatch thread.
 	 */
     
-   public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication {
+   public class KeyboardAndDisplaySimulator extends AbstractMarsToolAndApplication implements MemoryMappedDevice {
    
-      private static String version = "Version 1.4";
+      private static String version = "Version 1.5";
       private static String heading =  "Keyboard and Display MMIO Simulator";
       private static String displayPanelTitle, keyboardPanelTitle;
       private static char VT_FILL = ' ';  // fill character for virtual terminal (random access mode)
@@ -87,11 +94,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static int RECEIVER_DATA;       // keyboard character in low-order byte
       public static int TRANSMITTER_CONTROL; // display Ready in low-order bit
       public static int TRANSMITTER_DATA;    // display character in low-order byte
-   	// These are used to track instruction counts to simulate driver delay of Transmitter Data
+   	// These are used to track instruction counts to simulate driver delay of Transmitter Data.
+   	// The counting itself is done by the clock of the running program; we set an alarm on it.
       private boolean countingInstructions;
-      private int instructionCount;
       private int transmitDelayInstructionCountLimit;
-      private int currentDelayInstructionLimit;
+      private SimulationClock transmitClock;
+      private final SimulationClock.Alarm transmitDelayAlarm = 
+             new SimulationClock.Alarm() {
+                public void ring() {
+                  transmitDelayEnded();
+               }
+            };
+   
+   	// Characters transmitted by the MIPS program are queued here, and a single Runnable on
+   	// the event dispatch thread shows everything queued so far.  A program printing a long
+   	// string thus causes a few display updates rather than one per character.
+      private final Object displayQueueLock = new Object();
+      private int[] displayQueue = new int[64];
+      private int displayQueueLength = 0;
+      private boolean displayFlushScheduled = false;
+      private boolean dataSegmentWindowStale = false;
+      private final Runnable displayFlusher = 
+             new Runnable() {
+                public void run() {
+                  flushDisplayQueue();
+               }
+            };
    
    	// Should the transmitted character be displayed before the transmitter delay period?
    	// If not, hold onto it and print at the end of delay period.
@@ -186,16 +214,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       protected void addAsObserver() {
        	// Set transmitter Control ready bit to 1, means we're ready to accept display character.
          updateMMIOControl(TRANSMITTER_CONTROL, readyBitSet(TRANSMITTER_CONTROL));
-          // We want to be an observer only of MIPS reads from RECEIVER_DATA and writes to TRANSMITTER_DATA.
-          // Use the Globals.memory.addObserver() methods instead of inherited method to achieve this.
-         addAsObserver(RECEIVER_DATA,RECEIVER_DATA);
-         addAsObserver(TRANSMITTER_DATA, TRANSMITTER_DATA);
-      	// We want to be notified of each instruction execution, because instruction count is the
-      	// basis for delay in re-setting (literally) the TRANSMITTER_CONTROL register.  SPIM does
-      	// this too.  This simulates the time required for the display unit to process the
-      	// TRANSMITTER_DATA.
-         addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
-         addAsObserver(Memory.kernelTextBaseAddress, Memory.kernelTextLimitAddress);
+          // We want to know only of MIPS reads from RECEIVER_DATA and writes to TRANSMITTER_DATA.
+          // Attach as a device to just those two words; polling the control registers costs nothing.
+      	 // Instruction count is the basis for delay in re-setting (literally) the TRANSMITTER_CONTROL
+      	 // register.  SPIM does this too.  The clock alarm set in deviceRegisterWritten() takes care
+      	 // of the counting, so there is no need to observe instruction fetches from the text segments.
+         try {
+            Globals.memory.addMemoryMappedDevice(this, RECEIVER_DATA, RECEIVER_DATA);
+            Globals.memory.addMemoryMappedDevice(this, TRANSMITTER_DATA, TRANSMITTER_DATA);
+         } 
+             catch (AddressErrorException aee) {
+               System.out.println("Tool author specified incorrect MMIO address!"+aee);
+               System.exit(0);
+            }
+      }
+   
+   
+   	/**
+   	 *  Override the inherited method to detach from the MMIO registers and stop any
+   	 *  transmitter delay in progress.
+   	 */
+      protected void deleteAsObserver() {
+         Globals.memory.deleteMemoryMappedDevice(this);
+         if (transmitClock != null) {
+            transmitClock.cancelAlarm(transmitDelayAlarm);
+         }
+         super.deleteAsObserver();
       }
    
    
@@ -229,55 +273,117 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       //////////////////////////////////////////////////////////////////////////////////////
    
       /**
-   	 * Update display when connected MIPS program accesses (data) memory.
-   	 * @param memory the attached memory
-   	 * @param accessNotice information provided by memory in MemoryAccessNotice object
+   	 * Called by memory just before the connected MIPS program reads (loads) the receiver
+   	 * (keyboard) data register.  Clear the Ready bit to indicate there is no longer a
+   	 * keystroke available.  If Ready bit was initially clear, they'll get the old keystroke --
+   	 * serves 'em right for not checking!
+   	 * @param address the address being read
+   	 * @param length number of bytes being read
    	 */
-      protected void processMIPSUpdate(Observable memory, AccessNotice accessNotice) {
-         MemoryAccessNotice notice = (MemoryAccessNotice) accessNotice;
-      	// If MIPS program has just read (loaded) the receiver (keyboard) data register,
-      	// then clear the Ready bit to indicate there is no longer a keystroke available.
-      	// If Ready bit was initially clear, they'll get the old keystroke -- serves 'em right
-      	// for not checking!
-         if (notice.getAddress()==RECEIVER_DATA && notice.getAccessType()==AccessNotice.READ) {
+      public void deviceRegisterRead(int address, int length) {
+         if (address==RECEIVER_DATA) {
             updateMMIOControl(RECEIVER_CONTROL, readyBitCleared(RECEIVER_CONTROL));
          }
-      	// MIPS program has just written (stored) the transmitter (display) data register.  If transmitter
-      	// Ready bit is clear, device is not ready yet so ignore this event -- serves 'em right for not checking!
-      	// If transmitter Ready bit is set, then clear it to indicate the display device is processing the character.
-      	// Also start an intruction counter that will simulate the delay of the slower
-      	// display device processing the character.
-         if (isReadyBitSet(TRANSMITTER_CONTROL) && notice.getAddress()==TRANSMITTER_DATA && notice.getAccessType()==AccessNotice.WRITE) {
+      }
+   
+      /**
+   	 * Called by memory when the connected MIPS program has just written (stored) the transmitter
+   	 * (display) data register.  If transmitter Ready bit is clear, device is not ready yet so ignore
+   	 * this event -- serves 'em right for not checking!  If transmitter Ready bit is set, then clear it
+   	 * to indicate the display device is processing the character.  Also start an instruction count
+   	 * that will simulate the delay of the slower display device processing the character.
+   	 * @param address the address written
+   	 * @param length number of bytes written
+   	 * @param value the value written
+   	 */
+      public void deviceRegisterWritten(int address, int length, int value) {
+         if (address==TRANSMITTER_DATA && isReadyBitSet(TRANSMITTER_CONTROL)) {
             updateMMIOControl(TRANSMITTER_CONTROL, readyBitCleared(TRANSMITTER_CONTROL));
-            intWithCharacterToDisplay = notice.getValue();
-            if (!displayAfterDelay) displayCharacter(intWithCharacterToDisplay); 
+            intWithCharacterToDisplay = value;
+            if (!displayAfterDelay) queueCharacterForDisplay(intWithCharacterToDisplay); 
             this.countingInstructions = true;
-            this.instructionCount = 0;
             this.transmitDelayInstructionCountLimit = generateDelay();
+            transmitClock = Simulator.getInstance().getClock();
+            transmitClock.setAlarm(transmitDelayAlarm, transmitDelayInstructionCountLimit);
+         }
+      }
+   
+   	// The transmit delay period is over (called by the clock alarm on the MIPS thread).
+   	// Set the transmitter Ready flag to indicate the MIPS program
+   	// can write another character to the transmitter data register.  If the Interrupt-Enabled
+   	// bit had been set by the MIPS program, generate an interrupt!
+      private void transmitDelayEnded() {
+         if (!this.countingInstructions) {
+            return;
+         }
+         if (displayAfterDelay) queueCharacterForDisplay(intWithCharacterToDisplay);
+         this.countingInstructions = false;
+         int updatedTransmitterControl =  readyBitSet(TRANSMITTER_CONTROL);
+         updateMMIOControl(TRANSMITTER_CONTROL, updatedTransmitterControl);
+         if (updatedTransmitterControl != 1
+             && (Coprocessor0.getValue(Coprocessor0.STATUS) & 2)==0  // Added by Carl Hauser Nov 2008
+             && (Coprocessor0.getValue(Coprocessor0.STATUS) & 1)==1) {
+         // interrupt-enabled bit is set in both Tranmitter Control and in
+         // Coprocessor0 Status register, and Interrupt Level Bit is 0, so trigger external interrupt.
+            mars.simulator.Simulator.externalInterruptingDevice = Exceptions.EXTERNAL_INTERRUPT_DISPLAY;
          }
-      	// We have been notified of a MIPS instruction execution.
-      	// If we are in transmit delay period, increment instruction count and if limit
-      	// has been reached, set the transmitter Ready flag to indicate the MIPS program
-      	// can write another character to the transmitter data register.  If the Interrupt-Enabled
-      	// bit had been set by the MIPS program, generate an interrupt!
-         if (   this.countingInstructions &&
-                notice.getAccessType()==AccessNotice.READ &&
-                (Memory.inTextSegment(notice.getAddress()) || Memory.inKernelTextSegment(notice.getAddress()))) {
-            this.instructionCount++;
-            if (this.instructionCount >= this.transmitDelayInstructionCountLimit) {
-               if (displayAfterDelay) displayCharacter(intWithCharacterToDisplay);
-               this.countingInstructions = false;
-               int updatedTransmitterControl =  readyBitSet(TRANSMITTER_CONTROL);
-               updateMMIOControl(TRANSMITTER_CONTROL, updatedTransmitterControl);
-               if (updatedTransmitterControl != 1
-                   && (Coprocessor0.getValue(Coprocessor0.STATUS) & 2)==0  // Added by Carl Hauser Nov 2008
-                   && (Coprocessor0.getValue(Coprocessor0.STATUS) & 1)==1) {
-               // interrupt-enabled bit is set in both Tranmitter Control and in
-               // Coprocessor0 Status register, and Interrupt Level Bit is 0, so trigger external interrupt.
-                  mars.simulator.Simulator.externalInterruptingDevice = Exceptions.EXTERNAL_INTERRUPT_DISPLAY;
+      }
+   
+   // Queue a transmitted character (the whole transmitter word, see displayCharacter) for
+   // display and make sure a flush is scheduled on the event dispatch thread.
+      private void queueCharacterForDisplay(int intWithCharacterToDisplay) {
+         synchronized (displayQueueLock) {
+            if (displayQueueLength == displayQueue.length) {
+               int[] newQueue = new int[2 * displayQueueLength];
+               System.arraycopy(displayQueue, 0, newQueue, 0, displayQueueLength);
+               displayQueue = newQueue;
+            }
+            displayQueue[displayQueueLength++] = intWithCharacterToDisplay;
+            scheduleDisplayFlush();
+         }
+      }
+   
+   // Caller must hold displayQueueLock.
+      private void scheduleDisplayFlush() {
+         if (!displayFlushScheduled) {
+            displayFlushScheduled = true;
+            SwingUtilities.invokeLater(displayFlusher);
+         }
+      }
+   
+   // Runs on the event dispatch thread.  Show everything queued so far.  Runs of ordinary
+   // characters in sequential display mode are appended to the display in one operation.
+      private void flushDisplayQueue() {
+         int[] queued;
+         boolean updateDataSegment;
+         synchronized (displayQueueLock) {
+            queued = new int[displayQueueLength];
+            System.arraycopy(displayQueue, 0, queued, 0, displayQueueLength);
+            displayQueueLength = 0;
+            displayFlushScheduled = false;
+            updateDataSegment = dataSegmentWindowStale;
+            dataSegmentWindowStale = false;
+         }
+         StringBuffer run = new StringBuffer();
+         for (int i=0; i<queued.length; i++) {
+            char characterToDisplay = (char) (queued[i] & 0x000000FF);
+            if (!displayRandomAccessMode && characterToDisplay != CLEAR_SCREEN && characterToDisplay != SET_CURSOR_X_Y) {
+               run.append(characterToDisplay);
+            } 
+            else {
+               if (run.length() > 0) {
+                  display.append(run.toString());
+                  run.setLength(0);
                }
+               displayCharacter(queued[i]);
             }
          }
+         if (run.length() > 0) {
+            display.append(run.toString());
+         }
+         if (updateDataSegment) {
+            updateDataSegmentWindow();
+         }
       }
    
       private static final char CLEAR_SCREEN  = 12; // ASCII Form Feed
@@ -362,6 +468,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  Overrides inherited method that does nothing.
    	 */
       protected void reset() {
+         synchronized (displayQueueLock) {
+            displayQueueLength = 0;
+         }
          displayRandomAccessMode = false;
          initializeTransmitDelaySimulator();
          initializeDisplay(displayRandomAccessMode);
@@ -701,12 +810,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 /////////////////////////////////////////////////////////////////////////////////////////////////////
        // This one does the work: update the MMIO Control and optionally the Data register as well
    	 // NOTE: last argument TRUE means update only the MMIO Control register; FALSE means update both Control and Data.
-      private synchronized void updateMMIOControlAndData(int controlAddr, int controlValue, int dataAddr, int dataValue, boolean controlOnly) {
+   	 // Not synchronized on this: the memory and registers lock is enough, and the MIPS thread
+   	 // already holds it when calling back, so taking a second lock here risks deadlock.
+      private void updateMMIOControlAndData(int controlAddr, int controlValue, int dataAddr, int dataValue, boolean controlOnly) {
          if (!this.isBeingUsedAsAMarsTool || (this.isBeingUsedAsAMarsTool && connectButton.isConnected())) {
             synchronized (Globals.memoryAndRegistersLock) {
                try {
-                  Globals.memory.setRawWord(controlAddr, controlValue);
-                  if (!controlOnly) Globals.memory.setRawWord(dataAddr, dataValue);
+                  Globals.memory.setMemoryMappedDeviceRegister(controlAddr, controlValue);
+                  if (!controlOnly) Globals.memory.setMemoryMappedDeviceRegister(dataAddr, dataValue);
                }
                   catch (AddressErrorException aee) {
                      System.out.println("Tool author specified incorrect MMIO address!"+aee);
@@ -716,13 +827,25 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	// HERE'S A HACK!!  Want to immediately display the updated memory value in MARS
          	// but that code was not written for event-driven update (e.g. Observer) --
          	// it was written to poll the memory cells for their values.  So we force it to do so.
-         
-            if (Globals.getGui() != null && Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow().getCodeHighlighting() ) {
-               Globals.getGui().getMainPane().getExecutePane().getDataSegmentWindow().updateValues();
+         	// When called from the MIPS thread this is batched with the display update.
+            if (SwingUtilities.isEventDispatchThread()) {
+               updateDataSegmentWindow();
+            } 
+            else {
+               synchronized (displayQueueLock) {
+                  dataSegmentWindowStale = true;
+                  scheduleDisplayFlush();
+               }
             }
          }
       }
    
+      private void updateDataSegmentWindow() {
+         if (Globals.getGui() != null && Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow().getCodeHighlighting() ) {
+            Globals.getGui().getMainPane().getExecutePane().getDataSegmentWindow().updateValues();
+         }
+      }
+   
    
    
      /////////////////////////////////////////////////////////////////////
@@ -730,7 +853,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      // Have to preserve the value of Interrupt Enable bit (bit 1)
       private static boolean isReadyBitSet(int mmioControlRegister) {
          try {
-            return (Globals.memory.get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) & 1) == 1;
+            return (Globals.memory.getWordNoNotify(mmioControlRegister) & 1) == 1;
          }
             catch (AddressErrorException aee) {
                System.out.println("Tool author specified incorrect MMIO address!"+aee);
@@ -745,7 +868,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      // Have to preserve the value of Interrupt Enable bit (bit 1)
       private static int readyBitSet(int mmioControlRegister) {
          try {
-            return Globals.memory.get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) | 1;
+            return Globals.memory.getWordNoNotify(mmioControlRegister) | 1;
          }
             catch (AddressErrorException aee) {
                System.out.println("Tool author specified incorrect MMIO address!"+aee);
@@ -759,7 +882,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      // Have to preserve the value of Interrupt Enable bit (bit 1). Bits 2 and higher don't matter.
       private static int readyBitCleared(int mmioControlRegister) {
          try {
-            return Globals.memory.get(mmioControlRegister, Memory.WORD_LENGTH_BYTES) & 2;
+            return Globals.memory.getWordNoNotify(mmioControlRegister) & 2;
          }
             catch (AddressErrorException aee) {
                System.out.println("Tool author specified incorrect MMIO address!"+aee);
@@ -774,7 +897,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// Here we simly initialize (or reset) the variables.
       private void initializeTransmitDelaySimulator() {
          this.countingInstructions = false;
-         this.instructionCount = 0;
+         if (transmitClock != null) {
+            transmitClock.cancelAlarm(transmitDelayAlarm);
+         }
          this.transmitDelayInstructionCountLimit = this.generateDelay();
       }
    
@@ -0,0 +1,139 @@
+   package mars.util;
+
+/**
+ * Numbers instruction addresses densely (0, 1, 2, ... in order of first sight) so
+ * that per-address statistics can be kept in plain arrays.  Lookup is through an
+ * open addressing hash table of ints; nothing is allocated except when the table
+ * grows.  Addresses must be word aligned.
+ */
+
+    public class AddressIndex {
+
+      private static final int EMPTY = 1; // never a word aligned address
+
+      private int[] slotAddresses;
+      private int[] slotIndexes;
+      private int[] addresses;
+      private int size;
+
+   /**
+    * Create an empty index.
+    * @param capacity number of addresses expected; the index grows as needed
+    */
+       public AddressIndex(int capacity) {
+         int slots = 2;
+         while (slots < 2 * capacity) {
+            slots *= 2;
+         }
+         slotAddresses = new int[slots];
+         slotIndexes = new int[slots];
+         java.util.Arrays.fill(slotAddresses, EMPTY);
+         addresses = new int[Math.max(1, capacity)];
+      }
+
+   /**
+    * Number of the given address, adding it if new.  Compare size() before and
+    * after to tell whether it was added.
+    * @param address a word aligned address
+    * @return its number
+    */
+       public int indexOf(int address) {
+         int mask = slotAddresses.length - 1;
+         int slot = hash(address) & mask;
+         while (slotAddresses[slot] != address) {
+            if (slotAddresses[slot] == EMPTY) {
+               return add(address, slot);
+            }
+            slot = (slot + 1) & mask;
+         }
+         return slotIndexes[slot];
+      }
+
+   /**
+    * Number of the given address, without adding it.
+    * @param address an address
+    * @return its number, or -1 if it is not in the index
+    */
+       public int find(int address) {
+         if ((address & 3) != 0) {
+            return -1;
+         }
+         int mask = slotAddresses.length - 1;
+         int slot = hash(address) & mask;
+         while (slotAddresses[slot] != address) {
+            if (slotAddresses[slot] == EMPTY) {
+               return -1;
+            }
+            slot = (slot + 1) & mask;
+         }
+         return slotIndexes[slot];
+      }
+
+   /**
+    * @return number of addresses in the index
+    */
+       public int size() {
+         return size;
+      }
+
+   /**
+    * @param index number of an address
+    * @return the address
+    */
+       public int getAddress(int index) {
+         return addresses[index];
+      }
+
+   /**
+    * @return numbers of all addresses, in increasing (unsigned) address order
+    */
+       public int[] getIndexesInAddressOrder() {
+         long[] keys = new long[size];
+         for (int i = 0; i < size; i++) {
+            // flipping the sign bit makes the signed sort put the addresses in unsigned order
+            keys[i] = (((addresses[i] & 0xFFFFFFFFL) << 32) | i) ^ Long.MIN_VALUE;
+         }
+         java.util.Arrays.sort(keys);
+         int[] order = new int[size];
+         for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+         }
+         return order;
+      }
+
+       private int add(int address, int slot) {
+         if (size == addresses.length) {
+            int[] newAddresses = new int[2 * size];
+            System.arraycopy(addresses, 0, newAddresses, 0, size);
+            addresses = newAddresses;
+         }
+         int index = size++;
+         addresses[index] = address;
+         slotAddresses[slot] = address;
+         slotIndexes[slot] = index;
+         if (2 * size > slotAddresses.length) {
+            rehash();
+         }
+         return index;
+      }
+
+       private void rehash() {
+         slotAddresses = new int[2 * slotAddresses.length];
+         slotIndexes = new int[slotAddresses.length];
+         java.util.Arrays.fill(slotAddresses, EMPTY);
+         int mask = slotAddresses.length - 1;
+         for (int index = 0; index < size; index++) {
+            int slot = hash(addresses[index]) & mask;
+            while (slotAddresses[slot] != EMPTY) {
+               slot = (slot + 1) & mask;
+            }
+            slotAddresses[slot] = addresses[index];
+            slotIndexes[slot] = index;
+         }
+      }
+
+       private static int hash(int address) {
+         int h = (address >>> 2) * 0x9E3779B1;
+         return h ^ (h >>> 16);
+      }
+   }
@@ -47,6 +47,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static JTable table;
       private static Register [] registers;
       private Object[][] tableData;
+      private PaintedValues painted;
       private boolean highlighting;
       private int highlightRow;
       private ExecutePane executePane;
@@ -65,6 +66,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 			settings = Globals.getSettings();
          this.highlighting = false;
          table = new MyTippedJTable(new RegTableModel(setupWindow()));
+         painted = new PaintedValues(tableData.length);
          table.getColumnModel().getColumn(NAME_COLUMN).setPreferredWidth(50);
          table.getColumnModel().getColumn(NUMBER_COLUMN).setPreferredWidth(25);
          table.getColumnModel().getColumn(VALUE_COLUMN).setPreferredWidth(60);
@@ -150,8 +152,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 **/
    	 
        public void updateRegisterValue(int number, int val, int base){
-         ((RegTableModel)table.getModel()).setDisplayAndModelValueAt(
-               NumberDisplayBaseChooser.formatNumber(val,base), rowGivenRegNumber[number], 2);
+         int row = rowGivenRegNumber[number];
+         if (painted.changed(row, val, base)) {
+            ((RegTableModel)table.getModel()).setDisplayAndModelValueAt(
+                  NumberDisplayBaseChooser.formatNumber(val,base), row, 2);
+         }
       }
    
    
@@ -303,6 +308,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	* value is valid, MIPS register is updated.
          */
           public void setValueAt(Object value, int row, int col) {
+            painted.forget(row);
             int val=0;
             try {
                val = Binary.stringToInt((String) value);
@@ -47,6 +47,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static JTable table;
       private static Register [] registers;
       private Object[][] tableData;
+      private PaintedValues paintedFloats, paintedDoubles;
       private boolean highlighting;
       private int highlightRow;
       private ExecutePane executePane;
@@ -66,6 +67,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          // Display registers in table contained in scroll pane.
          this.setLayout(new BorderLayout()); // table display will occupy entire width if widened
          table = new MyTippedJTable(new RegTableModel(setupWindow()));
+         paintedFloats = new PaintedValues(tableData.length);
+         paintedDoubles = new PaintedValues(tableData.length);
          table.getColumnModel().getColumn(NAME_COLUMN).setPreferredWidth(20);
          table.getColumnModel().getColumn(FLOAT_COLUMN).setPreferredWidth(70);
          table.getColumnModel().getColumn(DOUBLE_COLUMN).setPreferredWidth(130);
@@ -214,8 +217,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 **/
    	 
        public void updateFloatRegisterValue(int number,int val, int base){
-         ((RegTableModel)table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatFloatNumber(val,base), number, FLOAT_COLUMN);
-      
+         if (paintedFloats.changed(number, val, base)) {
+            ((RegTableModel)table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatFloatNumber(val,base), number, FLOAT_COLUMN);
+         }
       }
    
    
@@ -230,7 +234,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             val = Coprocessor1.getLongFromRegisterPair(registers[number].getName());
          } 
              catch (InvalidRegisterAccessException e) {} // happens only if number is not even
-         ((RegTableModel)table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatDoubleNumber(val,base), number, DOUBLE_COLUMN);
+         if (paintedDoubles.changed(number, val, base)) {
+            ((RegTableModel)table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatDoubleNumber(val,base), number, DOUBLE_COLUMN);
+         }
       }   
    
     	/** Required by Observer interface.  Called when notified by an Observable that we are registered with.
@@ -399,6 +405,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             float fVal;
             double dVal;
             String sVal = (String) value;
+            // The edit changes what the cells of this register pair show.
+            int pair = row - (row % 2);
+            paintedFloats.forget(pair);
+            paintedFloats.forget(pair + 1);
+            paintedDoubles.forget(pair);
             try {
                if (col == FLOAT_COLUMN) {
                   if (Binary.isHex(sVal)) {
@@ -47,9 +47,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    public class DataSegmentWindow extends JInternalFrame implements Observer {
    
       private static final String [] dataSegmentNames={"Data", "Stack", "Kernel"};
-      private static  Object[][] dataData;
    
       private static JTable dataTable;
+      private DataTableModel dataModel;
       private JScrollPane dataTableScroller;
       private Container contentPane;
       private JPanel tablePanel;
@@ -57,7 +57,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private JCheckBox asciiDisplayCheckBox;
    	
       static final int VALUES_PER_ROW = 8;
-      static final int NUMBER_OF_ROWS = 16;  // with 8 value columns, this shows 512 bytes;  
+      static final int NUMBER_OF_ROWS = 16;  // with 8 value columns, one "page" is 512 bytes;  
       static final int NUMBER_OF_COLUMNS = VALUES_PER_ROW + 1;// 1 for address and 8 for values
       static final int BYTES_PER_VALUE = 4;
       static final int BYTES_PER_ROW = VALUES_PER_ROW * BYTES_PER_VALUE;
@@ -67,6 +67,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// MEMORY_CHUNK_SIZE means scroll a full table's worth.  Scrolls through memory faster.  DPS 26-Jan-09
       static final int PREV_NEXT_CHUNK_SIZE = MEMORY_CHUNK_SIZE/2;
       static final int ADDRESS_COLUMN = 0;
+      // The table holds every row of the memory segment being viewed, but cells are formatted only
+   	// when painted.  Addresses outside any segment are shown in windows of this many bytes.
+      static final int SEGMENT_WINDOW_SIZE = 4 * 1024 * 1024;
+      static final int FORMAT_CACHE_SIZE = 4096; // formatted strings kept per cache, must be power of 2
       static final boolean USER_MODE = false;
       static final boolean KERNEL_MODE = true;
    
@@ -220,16 +224,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (rowColumn==null || rowColumn.x < 0 || rowColumn.y < 0) {
             return;
          }
+         int previousRowFirstAddress = this.addressRowFirstAddress;
+         int previousColumn = this.addressColumn;
          this.addressRow = rowColumn.x;
          this.addressColumn = rowColumn.y; 
-         this.addressRowFirstAddress = Binary.stringToInt(dataTable.getValueAt(this.addressRow,ADDRESS_COLUMN).toString());
-      //System.out.println("Address "+Binary.intToHexString(address)+" becomes row "+ addressRow + " column "+addressColumn+
-      //" starting addr "+dataTable.getValueAt(this.addressRow,ADDRESS_COLUMN));
-         // Tell the system that table contents have changed.  This will trigger re-rendering 
-      	// during which cell renderers are obtained.  The cell of interest (identified by 
-      	// instance variables this.addressRow and this.addressColumn) will get a renderer
-      	// with highlight background color and all others get renderer with default background. 
-         dataTable.tableChanged(new TableModelEvent(dataTable.getModel(),0,dataData.length-1));
+         this.addressRowFirstAddress = dataModel.getAddressForRow(this.addressRow);
+         // Repaint the previously highlighted cell and the new one.  During re-rendering the cell
+      	// of interest (identified by instance variables this.addressRowFirstAddress and
+      	// this.addressColumn) will get a renderer with highlight background color and all others
+      	// get renderer with default background. 
+         if (previousColumn > 0 && dataModel.contains(previousRowFirstAddress)) {
+            dataModel.fireTableCellUpdated(dataModel.getRowForAddress(previousRowFirstAddress), previousColumn);
+         }
+         dataModel.fireTableCellUpdated(this.addressRow, this.addressColumn);
       }
    	 
    	 // Given address, will compute table cell location, adjusting table if necessary to
@@ -253,50 +260,31 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             // It is not a data segment address so good bye!
             return null;
          }
-         // STEP 2:  Set the combo box appropriately.  This will also display the 
-      	// first chunk of addresses from that segment.
-         baseAddressSelector.setSelectedIndex(desiredComboBoxIndex);
-         ((CustomComboBoxModel) baseAddressSelector.getModel()).forceComboBoxUpdate(desiredComboBoxIndex);
-         baseAddressButtons[desiredComboBoxIndex].getActionListeners()[0].actionPerformed(null);
-      	// STEP 3:  Display memory chunk containing this address, which may be 
-      	// different than the one just displayed.
-         int baseAddress = displayBaseAddressArray[desiredComboBoxIndex];
-         if (baseAddress == -1) {
-            if (desiredComboBoxIndex == GLOBAL_POINTER_ADDRESS_INDEX) {
-               baseAddress = RegisterFile.getValue(RegisterFile.GLOBAL_POINTER_REGISTER) 
-                             - (RegisterFile.getValue(RegisterFile.GLOBAL_POINTER_REGISTER) % BYTES_PER_ROW);
-            } 
-            else if (desiredComboBoxIndex == STACK_POINTER_BASE_ADDRESS_INDEX) {
-               baseAddress = RegisterFile.getValue(RegisterFile.STACK_POINTER_REGISTER) 
-                             - (RegisterFile.getValue(RegisterFile.STACK_POINTER_REGISTER) % BYTES_PER_ROW);            } 
-            else {
-               return null;// shouldn't happen since these are the only two
-            }
+         // STEP 2:  If the table does not already hold this address, set the combo box
+      	// appropriately.  This will also display the segment containing the address.
+         if (!dataModel.contains(address)) {
+            baseAddressSelector.setSelectedIndex(desiredComboBoxIndex);
+            ((CustomComboBoxModel) baseAddressSelector.getModel()).forceComboBoxUpdate(desiredComboBoxIndex);
+            baseAddressButtons[desiredComboBoxIndex].getActionListeners()[0].actionPerformed(null);
+         }
+      	// STEP 3:  The combo box item may select a segment (e.g. $gp or $sp) not containing
+      	// this address; if so display the segment that does.
+         if (!dataModel.contains(address)) {
+            setAddressRange(address);
          }
-         int byteOffset  = address - baseAddress;
-         int chunkOffset = byteOffset / MEMORY_CHUNK_SIZE; 
-         int byteOffsetIntoChunk = byteOffset % MEMORY_CHUNK_SIZE;
-      	// Subtract 1 from chunkOffset because we're gonna call the "next" action
-      	// listener to get the correct chunk loaded and displayed, and the first
-      	// thing it does is increment firstAddress by MEMORY_CHUNK_SIZE.  Here
-      	// we do an offsetting decrement in advance because we don't want the
-      	// increment but we want the other actions that method provides.
-         firstAddress = firstAddress + chunkOffset * MEMORY_CHUNK_SIZE - PREV_NEXT_CHUNK_SIZE;
-         nextButton.getActionListeners()[0].actionPerformed(null);
       	// STEP 4:  Find cell containing this address.  Add 1 to column calculation
       	// because table column 0 displays address, not memory contents.  The 
       	// "convertColumnIndexToView()" is not necessary because the columns cannot be
       	// reordered, but I included it as a precautionary measure in case that changes.
-         int addrRow    = byteOffsetIntoChunk / BYTES_PER_ROW;
-         int addrColumn = byteOffsetIntoChunk % BYTES_PER_ROW / BYTES_PER_VALUE + 1;
+         int addrRow    = dataModel.getRowForAddress(address);
+         int addrColumn = (address - dataModel.getAddressForRow(addrRow)) / BYTES_PER_VALUE + 1;
          addrColumn = dataTable.convertColumnIndexToView(addrColumn); 
-         Rectangle addressCell = dataTable.getCellRect(addrRow, addrColumn, true);
-      	// STEP 5:  Center the row containing the cell of interest, to the extent possible.
-         double cellHeight = addressCell.getHeight();
-         double viewHeight = dataTableScroller.getViewport().getExtentSize().getHeight();
-         int numberOfVisibleRows = (int) (viewHeight / cellHeight);
-         int newViewPositionY = Math.max((int)((addrRow-(numberOfVisibleRows/2))*cellHeight), 0);
-         dataTableScroller.getViewport().setViewPosition(new Point(0, newViewPositionY));
+      	// STEP 5:  If the row is not in view, center it to the extent possible.
+         int[] visible = getVisibleRows();
+         if (addrRow < visible[0] || addrRow > visible[1]) {
+            int numberOfVisibleRows = visible[1] - visible[0] + 1;
+            scrollToRow(Math.max(addrRow-(numberOfVisibleRows/2), 0));
+         }
          return new Point(addrRow, addrColumn); 
       }
    
@@ -407,27 +395,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	//  Generates the Address/Data part of the Data Segment window.
    	//   Returns the JScrollPane for the Address/Data part of the Data Segment window.
       private JScrollPane generateDataPanel(){
-         dataData = new Object[NUMBER_OF_ROWS][NUMBER_OF_COLUMNS];
-         int valueBase = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
          int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-         int address = this.homeAddress;
-         for(int row=0; row<NUMBER_OF_ROWS; row++){
-            dataData[row][ADDRESS_COLUMN] = NumberDisplayBaseChooser.formatUnsignedInteger(address, addressBase);
-            for (int column=1; column<NUMBER_OF_COLUMNS; column++) {
-               try {
-                  dataData[row][column] = NumberDisplayBaseChooser.formatNumber(Globals.memory.getRawWord(address), valueBase);
-               } 
-                  catch (AddressErrorException aee) {
-                     dataData[row][column] = NumberDisplayBaseChooser.formatNumber(0, valueBase);
-                  }
-               address += BYTES_PER_VALUE;
-            }
-         }
          String [] names = new String[NUMBER_OF_COLUMNS];
          for (int i=0; i<NUMBER_OF_COLUMNS; i++) {
             names[i] = getHeaderStringForColumn(i, addressBase);
          }
-         dataTable= new MyTippedJTable(new DataTableModel(dataData, names));
+         dataModel = new DataTableModel(names);
+         dataModel.setAddressRange(this.homeAddress);
+         dataTable= new MyTippedJTable(dataModel);
       	// Do not allow user to re-order columns; column order corresponds to MIPS memory order
          dataTable.getTableHeader().setReorderingAllowed(false);
          dataTable.setRowSelectionAllowed(false);
@@ -443,9 +418,49 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
          dataTableScroller = new JScrollPane(dataTable,ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS, 
                                 ScrollPaneConstants.HORIZONTAL_SCROLLBAR_ALWAYS);
+         dataTableScroller.getVerticalScrollBar().setUnitIncrement(dataTable.getRowHeight());
+      	// Keep firstAddress and the Prev/Next buttons in step with scrolling.
+         dataTableScroller.getViewport().addChangeListener(
+               new ChangeListener() {
+                  public void stateChanged(ChangeEvent e) {
+                     firstAddress = dataModel.getAddressForRow(getVisibleRows()[0]);
+                     if (baseAddressSelector.isEnabled()) {
+                        setFirstAddressAndPrevNextButtonEnableStatus(firstAddress);
+                     }
+                  }
+               });
          return dataTableScroller;
       }
       
+   	// Rows of the table currently (at least partly) in view: {first, last}.
+      private int[] getVisibleRows() {
+         Rectangle view = dataTableScroller.getViewport().getViewRect();
+         int first = dataTable.rowAtPoint(new Point(0, view.y));
+         int last = dataTable.rowAtPoint(new Point(0, view.y + Math.max(view.height - 1, 0)));
+         if (first < 0) {
+            first = 0;
+         }
+         if (last < 0) {
+            last = Math.min(first + NUMBER_OF_ROWS, dataModel.getRowCount()) - 1;
+         }
+         return new int[] {first, last};
+      }
+   
+   	// Scroll the table so the given row is at the top of the view, or as near as possible.
+      private void scrollToRow(int row) {
+         JViewport viewport = dataTableScroller.getViewport();
+         int maxY = Math.max(dataTable.getHeight() - viewport.getExtentSize().height, 0);
+         int y = Math.min(row * dataTable.getRowHeight(), maxY);
+         viewport.setViewPosition(new Point(viewport.getViewPosition().x, y));
+      }
+   
+   	// Make the table hold the memory segment containing the given address.
+      private void setAddressRange(int address) {
+         dataModel.setAddressRange(address);
+         // The table height is not updated until the next layout, which scrolling needs.
+         dataTable.setSize(dataTable.getWidth(), dataModel.getRowCount() * dataTable.getRowHeight());
+      }
+      
    	// Little helper.  Is called when headers set up and each time number base changes.
       private String getHeaderStringForColumn(int i, int base) {
          return (i==ADDRESS_COLUMN)? "Address" : "Value (+"+Integer.toString((i-1)*BYTES_PER_VALUE, base)+")";
@@ -460,6 +475,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          tablePanel.add(generateDataPanel()); 
          contentPane.add(tablePanel);
          enableAllButtons();
+         updateModelForMemoryRange(homeAddress);
       }
       
    	/**
@@ -475,7 +491,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
       public void clearHighlighting() {
          addressHighlighting=false;
-         dataTable.tableChanged(new TableModelEvent(dataTable.getModel(),0,dataData.length-1));
+         if (addressColumn > 0 && dataModel.contains(addressRowFirstAddress)) {
+            dataModel.fireTableCellUpdated(dataModel.getRowForAddress(addressRowFirstAddress), addressColumn);
+         }
       	// The below addresses situation in which addressRow and addressColum hold their
       	// values across assemble operations.  Whereupon at the first step of the next
       	// run the last cells from the previous run are highlighted!  This method is called
@@ -492,71 +510,51 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    	
    	/**
-   	 * Update table model with contents of new memory "chunk".  Mars supports megabytes of
-   	 * data segment space so we only plug a "chunk" at a time into the table.
-   	 * @param firstAddr the first address in the memory range to be placed in the model.
+   	 * Display memory starting at the given address.  The table holds the whole memory segment
+   	 * containing the address; it is scrolled so that the row for the address is at the top.
+   	 * Cell values are read from memory when they are painted, so this is cheap.
+   	 * @param firstAddr the first address in the memory range to be displayed.
    	 */
    	 
       public void updateModelForMemoryRange(int firstAddr) {
          if (tablePanel.getComponentCount() == 0) 
             return; // ignore if no content to change
-         int valueBase = getValueDisplayFormat();
-         int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-         int address = firstAddr;
-         TableModel dataModel = dataTable.getModel();
-         for (int row=0; row<NUMBER_OF_ROWS; row++) {
-            ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatUnsignedInteger(address, addressBase),row,ADDRESS_COLUMN);
-            for (int column=1; column<NUMBER_OF_COLUMNS; column++) {
-               try {
-                  ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(Globals.memory.getWordNoNotify(address), valueBase),row,column);
-               } 
-                  catch (AddressErrorException aee) {
-                     // Bit of a hack here.  Memory will throw an exception if you try to read directly from text segment when the
-                  	// self-modifying code setting is disabled.  This is a good thing if it is the executing MIPS program trying to
-                  	// read.  But not a good thing if it is the DataSegmentDisplay trying to read.  I'll trick Memory by 
-                  	// temporarily enabling the setting as "non persistent" so it won't write through to the registry.
-                     if (Memory.inTextSegment(address)) {
-                        int displayValue = 0;
-                        if (!Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
-                           Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, true);
-                           try {
-                              displayValue = Globals.memory.getWordNoNotify(address);
-                           } 
-                              catch (AddressErrorException e) { 
-                              // Still got an exception?  Doesn't seem possible but if we drop through it will write default value 0.
-                              }
-                           Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, false);
-                        }
-                        ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(displayValue, valueBase),row,column);
-                     } 
-							// Bug Fix: the following line of code disappeared during the release 4.4 mods, but is essential to
-							// display values of 0 for valid MIPS addresses that are outside the MARS simulated address space.  Such
-							// addresses cause an AddressErrorException.  Prior to 4.4, they performed this line of code unconditionally.  
-							// With 4.4, I added the above IF statement to work with the text segment but inadvertently removed this line!
-							// Now it becomes the "else" part, executed when not in text segment.  DPS 8-July-2014.
-                     else {
-                        ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(0, valueBase),row,column);
-                     }
-                  }
-               address += BYTES_PER_VALUE;
-            }
+         dataModel.setCleared(false);
+         if (!dataModel.contains(firstAddr)) {
+            setAddressRange(firstAddr);
          }
+         scrollToRow(dataModel.getRowForAddress(firstAddr));
+         updateValues();
       }
    	 
+      // Value to display for the word at the given address.  Text segment words are read as
+      // statements, since Memory refuses direct reads from the text segment unless the
+      // self-modifying code setting is enabled.
+      private int getWordForDisplay(int address) {
+         try {
+            if (Memory.inTextSegment(address) || Memory.inKernelTextSegment(address)) {
+               ProgramStatement statement = Globals.memory.getStatementNoNotify(address);
+               return (statement == null) ? 0 : statement.getBinaryStatement();
+            }
+            return Globals.memory.getWordNoNotify(address);
+         } 
+            catch (AddressErrorException aee) {
+            	// Valid MIPS addresses that are outside the MARS simulated address space display as 0.
+               return 0;
+            }
+      }
+   
    	/**
    	 * Update data display to show this value (I'm not sure it is being called).
    	 */
    	
       public void updateCell(int address, int value) {
-         int offset = address-this.firstAddress;
-         if (offset<0 || offset>=MEMORY_CHUNK_SIZE) { // out of range
+         if (tablePanel.getComponentCount() == 0 || !dataModel.contains(address)) { // out of range
             return;
          }
-         int row = offset/BYTES_PER_ROW;
-         int column = (offset % BYTES_PER_ROW)/BYTES_PER_VALUE + 1; // column 0 reserved for address
-         int valueBase = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
-         ((DataTableModel)dataTable.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(value, valueBase),
-                    row,column);
+         int row = dataModel.getRowForAddress(address);
+         int column = (address - dataModel.getAddressForRow(row))/BYTES_PER_VALUE + 1; // column 0 reserved for address
+         dataModel.fireTableCellUpdated(row, column);
       }
    	
    	/**
@@ -567,13 +565,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (tablePanel.getComponentCount() == 0) 
             return; // ignore if no content to change
          int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-         int address = this.firstAddress;
-         String formattedAddress;
-         for(int i=0; i<NUMBER_OF_ROWS; i++) {
-            formattedAddress = NumberDisplayBaseChooser.formatUnsignedInteger(address, addressBase);
-            ((DataTableModel)dataTable.getModel()).setDisplayAndModelValueAt(formattedAddress, i, 0);
-            address += BYTES_PER_ROW;
-         }
+         int[] visible = getVisibleRows();
+         dataModel.fireTableRowsUpdated(visible[0], visible[1]);
       	// column headers include address offsets, so translate them too
          for (int i=1; i<NUMBER_OF_COLUMNS; i++) {
             dataTable.getColumnModel().getColumn(i).setHeaderValue(getHeaderStringForColumn(i, addressBase));
@@ -582,11 +575,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    	
       /**
-   	 * Update data display to show all values
+   	 * Update data display to show all values.  Only cells in view whose value or display
+   	 * format has changed since they were last painted are repainted.
    	 */
    	 
       public void updateValues(){
-         updateModelForMemoryRange(this.firstAddress);
+         if (tablePanel.getComponentCount() == 0) 
+            return; // ignore if no content to change
+         int[] visible = getVisibleRows();
+         dataModel.updateRows(visible[0], visible[1]);
       }
    
       /**
@@ -602,13 +599,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */   
    	
       public void resetValues(){
-         int valueBase = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
-         TableModel dataModel = dataTable.getModel();
-         for (int row=0; row<NUMBER_OF_ROWS; row++) {
-            for (int column=1; column<NUMBER_OF_COLUMNS; column++) {
-               ((DataTableModel)dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(0, valueBase),row,column);
-            }
-         }
+         dataModel.setCleared(true);
          disableAllButtons();
       }
    
@@ -877,23 +868,117 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
    	
    	////////////////////////////////////////////////////////////////////////
-   	// Class representing memory data table data
+   	// Class representing memory data table data.  The model spans a whole memory
+   	// segment (about 128K rows for the 4MB segments) but holds no cell data of its own:
+   	// values are read from memory when a cell is painted, and the formatted strings
+   	// are cached so that repainting an unchanged cell does not reformat it.
    	
       class DataTableModel extends AbstractTableModel {
          String[] columnNames;
-         Object[][] data;         
+         int lowAddress;   // address shown in row 0
+         int rowCount;
+         boolean cleared;  // display all values as 0 (see resetValues)
+         FormattedValueCache addressStrings = new FormattedValueCache(true);
+         FormattedValueCache valueStrings = new FormattedValueCache(false);
       	
-         public DataTableModel(Object[][] d, String [] n){
-            data=d;
+         public DataTableModel(String [] n){
             columnNames= n;
          }
       
+        /*
+         * Make the model span the memory segment containing the given address: text,
+         * kernel text, kernel data, MMIO, stack or data segment.  An address in none of
+         * them gets a window of SEGMENT_WINDOW_SIZE bytes.
+         */
+         void setAddressRange(int address) {
+            long low, high;
+            if (Memory.inTextSegment(address)) {
+               low = Memory.textBaseAddress;
+               high = Memory.textLimitAddress;
+            } 
+            else if (Memory.inKernelTextSegment(address)) {
+               low = Memory.kernelTextBaseAddress;
+               high = Memory.kernelTextLimitAddress;
+            } 
+            else if (Memory.inKernelDataSegment(address)) {
+               low = Memory.kernelDataBaseAddress;
+               high = Memory.kernelDataSegmentLimitAddress;
+            } 
+            else if (Memory.inMemoryMapSegment(address)) {
+               low = Memory.memoryMapBaseAddress;
+               high = Memory.memoryMapLimitAddress;
+            } 
+            else if (address >= Memory.stackLimitAddress && address <= Memory.stackBaseAddress) {
+               low = Memory.stackLimitAddress;
+               high = Memory.stackBaseAddress + Memory.WORD_LENGTH_BYTES;
+            } 
+            else if (Memory.inDataSegment(address)) {
+               low = Memory.dataSegmentBaseAddress;
+               high = Memory.dataSegmentLimitAddress;
+            } 
+            else {
+               low = address & -SEGMENT_WINDOW_SIZE;
+               high = low + SEGMENT_WINDOW_SIZE;
+            }
+            // Work with unsigned addresses; a limit may wrap around to 0 at the top of memory.
+            low &= 0xffffffffL;
+            high &= 0xffffffffL;
+            if (high <= low) {
+               high += 0x100000000L;
+            }
+            low -= low % BYTES_PER_ROW;
+            high += (BYTES_PER_ROW - high % BYTES_PER_ROW) % BYTES_PER_ROW;
+            lowAddress = (int) low;
+            rowCount = (int) ((high - low) / BYTES_PER_ROW);
+            fireTableDataChanged();
+         }
+      
+         boolean contains(int address) {
+            return ((address - lowAddress) & 0xffffffffL) < (long) rowCount * BYTES_PER_ROW;
+         }
+      
+         int getRowForAddress(int address) {
+            return (int) (((address - lowAddress) & 0xffffffffL) / BYTES_PER_ROW);
+         }
+      
+         int getAddressForRow(int row) {
+            return lowAddress + row * BYTES_PER_ROW;
+         }
+      
+         void setCleared(boolean clear) {
+            if (cleared != clear) {
+               cleared = clear;
+               fireTableRowsUpdated(0, rowCount - 1);
+            }
+         }
+      
+        /*
+         * Repaint those cells in the given rows whose value or display base differs from
+         * what was painted last.
+         */
+         void updateRows(int firstRow, int lastRow) {
+            if (cleared) {
+               setCleared(false);
+               return;
+            }
+            int valueBase = getValueDisplayFormat();
+            for (int row = firstRow; row <= lastRow && row < rowCount; row++) {
+               int address = getAddressForRow(row);
+               for (int column=1; column<NUMBER_OF_COLUMNS; column++) {
+                  if (!valueStrings.isCurrent(address, getWordForDisplay(address), valueBase)) {
+                     fireTableCellUpdated(row, column);
+                  }
+                  address += BYTES_PER_VALUE;
+               }
+            }
+         }
+      
          public int getColumnCount() {
             return columnNames.length;
          }
         
          public int getRowCount() {
-            return data.length;
+            return rowCount;
          }
       
          public String getColumnName(int col) {
@@ -901,7 +986,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
       
          public Object getValueAt(int row, int col) {
-            return data[row][col];
+            int address = getAddressForRow(row);
+            if (col == ADDRESS_COLUMN) {
+               return addressStrings.get(address, address,
+                  Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase());
+            }
+            address += (col-1)*BYTES_PER_VALUE;
+            return valueStrings.get(address, (cleared) ? 0 : getWordForDisplay(address), getValueDisplayFormat());
          }
       
         /*
@@ -930,7 +1021,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          * editor for each cell.  
          */
          public Class getColumnClass(int c) {
-            return getValueAt(0, c).getClass();
+            return String.class;
          }
       
       
@@ -941,24 +1032,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          */
          public void setValueAt(Object value, int row, int col) {
             int val=0;
-            int address=0;
+            int address = getAddressForRow(row) + (col-1)*BYTES_PER_VALUE;
             try {
                val = Binary.stringToInt((String) value);
             }
                catch (NumberFormatException nfe) {
-                  data[row][col] = "INVALID";
+                  // Shown until the value or display base changes.
+                  valueStrings.put(address, getWordForDisplay(address), getValueDisplayFormat(), "INVALID");
                   fireTableCellUpdated(row, col);
                   return;
                }
-         
-               // calculate address from row and column
-            try {
-               address = Binary.stringToInt((String)data[row][ADDRESS_COLUMN]) + (col-1)*BYTES_PER_VALUE;  // KENV 1/6/05
-            }
-               catch (NumberFormatException nfe) {
-                  //  can't really happen since memory addresses are completely under
-                  // the control of my software.
-               }
          	//  Assures that if changed during MIPS program execution, the update will
          	//  occur only between MIPS instructions.
             synchronized (Globals.memoryAndRegistersLock) {
@@ -971,37 +1054,54 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      return;
                   }
             }// end synchronized block
-            int valueBase = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
-            data[row][col] = NumberDisplayBaseChooser.formatNumber(val, valueBase); 
             fireTableCellUpdated(row, col);
             return;
          }
+      }  
       
+   	////////////////////////////////////////////////////////////////////////
+   	// Direct-mapped cache of formatted numbers, keyed by (address, value, base).
+   	// Formatting is the main cost of painting a cell; with the cache, scrolling
+   	// back over cells or repainting ones whose value has not changed is cheap.
+   	
+      private static class FormattedValueCache {
+         private boolean unsigned;
+         private int[] addresses = new int[FORMAT_CACHE_SIZE];
+         private int[] values = new int[FORMAT_CACHE_SIZE];
+         private int[] bases = new int[FORMAT_CACHE_SIZE];
+         private String[] strings = new String[FORMAT_CACHE_SIZE];
       
-        /*
-         * Update cell contents in table model.  Does not affect MIPS memory.
-         */
-         private void setDisplayAndModelValueAt(Object value, int row, int col) {
-            data[row][col] = value;
-            fireTableCellUpdated(row, col);
+         FormattedValueCache(boolean unsigned) {
+            this.unsigned = unsigned;
          }
       
-         private void printDebugData() {
-            int numRows = getRowCount();
-            int numCols = getColumnCount();
-         
-            for (int i=0; i < numRows; i++) {
-               System.out.print("    row " + i + ":");
-               for (int j=0; j < numCols; j++) {
-                  System.out.print("  " + data[i][j]);
-               }
-               System.out.println();
+         private int slot(int address) {
+            return (address >>> 2) & (FORMAT_CACHE_SIZE - 1);
+         }
+      
+         boolean isCurrent(int address, int value, int base) {
+            int i = slot(address);
+            return strings[i] != null && addresses[i] == address && values[i] == value && bases[i] == base;
+         }
+      
+         String get(int address, int value, int base) {
+            int i = slot(address);
+            if (!isCurrent(address, value, base)) {
+               put(address, value, base, (unsigned) ? NumberDisplayBaseChooser.formatUnsignedInteger(value, base)
+                                                    : NumberDisplayBaseChooser.formatNumber(value, base));
             }
-            System.out.println("--------------------------");
+            return strings[i];
          }
-      }  
       
-   	
+         void put(int address, int value, int base, String string) {
+            int i = slot(address);
+            addresses[i] = address;
+            values[i] = value;
+            bases[i] = base;
+            strings[i] = string;
+         }
+      }
+      
    	// Special renderer capable of highlighting cells by changing background color.
    	// Will set background to highlight color if certain conditions met.
    	
@@ -1013,7 +1113,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                                     isSelected, hasFocus, row, column);
          	
             cell.setHorizontalAlignment(SwingConstants.RIGHT);
-            int rowFirstAddress = Binary.stringToInt(table.getValueAt(row,ADDRESS_COLUMN).toString());
+            int rowFirstAddress = dataModel.getAddressForRow(row);
             if (settings.getDataSegmentHighlighting() && addressHighlighting  && rowFirstAddress==addressRowFirstAddress && column==addressColumn) {
                cell.setBackground( settings.getColorSettingByPosition(Settings.DATASEGMENT_HIGHLIGHT_BACKGROUND) );
                cell.setForeground( settings.getColorSettingByPosition(Settings.DATASEGMENT_HIGHLIGHT_FOREGROUND) );
@@ -1105,7 +1205,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
       	// This one will respond when either timer goes off or button lifted.
          public void actionPerformed(ActionEvent ae) {
-            firstAddress += PREV_NEXT_CHUNK_SIZE;
+            if (getVisibleRows()[1] >= dataModel.getRowCount() - 1) {
+               // End of the segment is in view, continue with whatever follows it.
+               firstAddress = dataModel.getAddressForRow(dataModel.getRowCount());
+            } 
+            else {
+               firstAddress += PREV_NEXT_CHUNK_SIZE;
+            }
             firstAddress = setFirstAddressAndPrevNextButtonEnableStatus(firstAddress);
             updateModelForMemoryRange(firstAddress);
          }
@@ -97,7 +97,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                         setFileStatus(FileStatus.NOT_EDITED); 
                         FileStatus.set(FileStatus.NOT_EDITED);
                         if (showingLineNumbers()) {
-                           lineNumbers.setText(getLineNumbersList(sourceCode.getDocument()));
+                           updateLineNumbers();
                         }
                         return;
                      } 
@@ -129,7 +129,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      Globals.getGui().getMainPane().getExecutePane().clearPane(); // DPS 9-Aug-2011
                   	
                      if (showingLineNumbers()) {
-                        lineNumbers.setText(getLineNumbersList(sourceCode.getDocument()));
+                        updateLineNumbers();
                      }
                   }
                   public void removeUpdate(DocumentEvent evt) {
@@ -158,11 +158,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                new ItemListener() {
                   public void itemStateChanged(ItemEvent e) {
                      if (showLineNumbers.isSelected()) {
-                        lineNumbers.setText(getLineNumbersList(sourceCode.getDocument()));
+                        updateLineNumbers();
                         lineNumbers.setVisible(true);
                      } 
                      else {
                         lineNumbers.setText("");
+                        lineNumbersListCount = -1;
                         lineNumbers.setVisible(false);
                      }
                      sourceCode.revalidate(); // added 16 Jan 2012 to assure label redrawn.
@@ -205,6 +206,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          sourceCode.discardAllUndoableEdits();
       }
    
+      private int lineNumbersListCount = -1; // number of lines in lineNumbers, -1 if none
+   
+   	// The list depends only on the number of lines, so most edits leave it alone.
+       private void updateLineNumbers() {
+         int lineCount = sourceCode.getDocument().getDefaultRootElement().getElementCount();
+         if (lineCount != lineNumbersListCount) {
+            lineNumbers.setText(getLineNumbersList(sourceCode.getDocument()));
+            lineNumbersListCount = lineCount;
+         }
+      }
+   
    	/** Form string with source code line numbers.
    	 * Resulting string is HTML, for which JLabel will happily honor <br> to do
    	 * multiline label (it ignores '\n').  The line number list is a JLabel with
@@ -0,0 +1,43 @@
+   package mars.venus;
+
+/**
+ * Remembers, for each row of a register table column, the raw value and number base
+ * last painted there.  The register windows ask it before formatting a value, so a
+ * refresh formats and repaints only the registers that changed since the last one.
+ */
+
+    class PaintedValues {
+      private long[] values;
+      private int[] bases;  // 0 where the row has to be painted regardless
+
+       PaintedValues(int rows) {
+         values = new long[rows];
+         bases = new int[rows];
+      }
+
+     /**
+      * Records that the row is about to show this value in this base.
+      *
+      * @param row table row
+      * @param value raw register value
+      * @param base number base for display (10 or 16)
+      * @return true if the row showed something else, so the value has to be
+      * formatted and painted; false if it already shows this value.
+      */
+       boolean changed(int row, long value, int base) {
+         if (bases[row] == base && values[row] == value) {
+            return false;
+         }
+         values[row] = value;
+         bases[row] = base;
+         return true;
+      }
+
+     /**
+      * Forgets what the row shows, for instance after the user edited the cell, so
+      * that the next update paints it.
+      */
+       void forget(int row) {
+         bases[row] = 0;
+      }
+   }
@@ -47,6 +47,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static JTable table;
       private static Register [] registers;
       private Object[][] tableData;
+      private PaintedValues painted;
       private boolean highlighting;
       private int highlightRow;
       private ExecutePane executePane;
@@ -63,6 +64,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 			settings = Globals.getSettings();
          this.highlighting = false;
          table = new MyTippedJTable(new RegTableModel(setupWindow()));
+         painted = new PaintedValues(tableData.length);
          table.getColumnModel().getColumn(NAME_COLUMN).setPreferredWidth(25);
          table.getColumnModel().getColumn(NUMBER_COLUMN).setPreferredWidth(25);
          table.getColumnModel().getColumn(VALUE_COLUMN).setPreferredWidth(60);
@@ -161,12 +163,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 **/
    	 
        public void updateRegisterValue(int number,int val, int base){
-         ((RegTableModel)table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(val,base), number, 2);
+         if (painted.changed(number, val, base)) {
+            ((RegTableModel)table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(val,base), number, 2);
+         }
       }
    
    	 
        private void updateRegisterUnsignedValue(int number,int val, int base){
-         ((RegTableModel)table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatUnsignedInteger(val,base), number, 2);
+         if (painted.changed(number, val, base)) {
+            ((RegTableModel)table.getModel()).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatUnsignedInteger(val,base), number, 2);
+         }
       }   
    	
     	/** Required by Observer interface.  Called when notified by an Observable that we are registered with.
@@ -318,6 +324,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	* value is valid, MIPS register is updated.
          */
           public void setValueAt(Object value, int row, int col) {
+            painted.forget(row);
             int val=0;
             try {
                val = Binary.stringToInt((String) value);
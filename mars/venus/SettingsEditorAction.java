@@ -92,6 +92,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final String BLINK_SAMPLE_TOOL_TIP_TEXT = "Displays current blinking rate";
       private static final String CURRENT_LINE_HIGHLIGHT_TOOL_TIP_TEXT = "Check, to highlight line currently being edited";
       private static final String AUTO_INDENT_TOOL_TIP_TEXT = "Check, to enable auto-indent to previous line when Enter key is pressed";
+      private static final String ERROR_CHECKING_TOOL_TIP_TEXT = "Check, to underline errors in the source while it is being edited";
       private static final String[] POPUP_GUIDANCE_TOOL_TIP_TEXT = { "Turns off instruction and directive guide popup while typing",
                                                                      "Generates instruction guide popup after first letter of potential instruction is typed",
          																				"Generates instruction guide popup after second letter of potential instruction is typed"
@@ -113,7 +114,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	
          private JSlider tabSizeSelector;
          private JSpinner tabSizeSpinSelector, blinkRateSpinSelector, popupPrefixLengthSpinSelector;
-         private JCheckBox lineHighlightCheck, genericEditorCheck, autoIndentCheck;
+         private JCheckBox lineHighlightCheck, genericEditorCheck, autoIndentCheck, errorCheckingCheck;
          private Caret blinkCaret;
          private JTextField blinkSample;
          private ButtonGroup popupGuidanceButtons;
@@ -123,7 +124,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          private boolean syntaxStylesAction = false; 
          
          private int initialEditorTabSize, initialCaretBlinkRate, initialPopupGuidance;
-         private boolean initialLineHighlighting, initialGenericTextEditor, initialAutoIndent;
+         private boolean initialLineHighlighting, initialGenericTextEditor, initialAutoIndent, initialErrorChecking;
       	  
           public EditorFontDialog(Frame owner, String title, boolean modality, Font font) {
             super(owner, title, modality, font);
@@ -224,6 +225,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             Globals.getSettings().setBooleanSetting(Settings.GENERIC_TEXT_EDITOR, genericEditorCheck.isSelected());
             Globals.getSettings().setBooleanSetting(Settings.EDITOR_CURRENT_LINE_HIGHLIGHTING, lineHighlightCheck.isSelected());
             Globals.getSettings().setBooleanSetting(Settings.AUTO_INDENT, autoIndentCheck.isSelected());
+            Globals.getSettings().setBooleanSetting(Settings.EDITOR_ERROR_CHECKING, errorCheckingCheck.isSelected());
             Globals.getSettings().setCaretBlinkRate(((Integer)blinkRateSpinSelector.getValue()).intValue());
             Globals.getSettings().setEditorTabSize(tabSizeSelector.getValue());
             if (syntaxStylesAction) { 
@@ -265,6 +267,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             tabSizeSpinSelector.setValue(new Integer(initialEditorTabSize));
             lineHighlightCheck.setSelected(initialLineHighlighting);
 				autoIndentCheck.setSelected(initialAutoIndent); 
+            errorCheckingCheck.setSelected(initialErrorChecking);
             blinkRateSpinSelector.setValue(new Integer(initialCaretBlinkRate));
             blinkCaret.setBlinkRate(initialCaretBlinkRate);
             popupGuidanceOptions[initialPopupGuidance].setSelected(true);				
@@ -307,6 +310,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             autoIndentCheck = new JCheckBox("Auto-Indent");
             autoIndentCheck.setSelected(initialAutoIndent); 
             autoIndentCheck.setToolTipText(AUTO_INDENT_TOOL_TIP_TEXT);
+         
+         	// error checking while editing
+            initialErrorChecking = Globals.getSettings().getBooleanSetting(Settings.EDITOR_ERROR_CHECKING);
+            errorCheckingCheck = new JCheckBox("Check for errors while editing");
+            errorCheckingCheck.setSelected(initialErrorChecking); 
+            errorCheckingCheck.setToolTipText(ERROR_CHECKING_TOOL_TIP_TEXT);
                  
             // cursor blink rate selector
             initialCaretBlinkRate = Globals.getSettings().getCaretBlinkRate();
@@ -341,11 +350,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             blinkPanel.add(blinkSample);
          	
             otherSettingsPanel.setLayout(new GridLayout(1,2));
-            JPanel leftColumnSettingsPanel = new JPanel(new GridLayout(4,1));				
+            JPanel leftColumnSettingsPanel = new JPanel(new GridLayout(5,1));				
             leftColumnSettingsPanel.add(tabPanel);
             leftColumnSettingsPanel.add(blinkPanel);
             leftColumnSettingsPanel.add(lineHighlightCheck);
 				leftColumnSettingsPanel.add(autoIndentCheck);
+            leftColumnSettingsPanel.add(errorCheckingCheck);
          	
          	// Combine instruction guide off/on and instruction prefix length into radio buttons
             JPanel rightColumnSettingsPanel = new JPanel(new GridLayout(4,1));				
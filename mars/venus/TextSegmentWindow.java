@@ -4,6 +4,7 @@
    import mars.simulator.*;
    import mars.mips.hardware.*;
    import mars.mips.instructions.*;
+   import mars.util.AddressIndex;
    import javax.swing.*;
    import java.awt.*;
    import java.awt.event.*;
@@ -50,23 +51,31 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final int PROGRAM_ARGUMENT_TEXTFIELD_COLUMNS = 40;
       private  JTable table;
       private  JScrollPane tableScroller;
-      private  Object[][] data;
-   	/* Maintain an int array of code addresses in parallel with ADDRESS_COLUMN,
-   	 * to speed model-row -> text-address mapping.  Maintain a Hashtable of
-   	 * (text-address, model-row) pairs to speed text-address -> model-row mapping.
-   	 * The former is used for breakpoints and changing display base (e.g. base 10 
-   	 * to 16); the latter is used for highlighting.  Both structures will remain
-   	 * consistent once set up, since address column is not editable.
+   	/* The table model does not hold the cell strings.  Rows are formatted from the
+   	 * program's machine list when painted, and kept in a small row cache.  Maintain an
+   	 * int array of code addresses in parallel with ADDRESS_COLUMN, to speed model-row ->
+   	 * text-address mapping.  Maintain an AddressIndex of text addresses to speed
+   	 * text-address -> model-row mapping.  The former is used for breakpoints and
+   	 * highlighting; the latter is used to find the row to highlight for the PC.  Both
+   	 * structures will remain consistent once set up, since address column is not editable.
    	 */
+      private  ArrayList statements;    // index is table model row, value is ProgramStatement
       private  int[] intAddresses;      // index is table model row, value is text address
-      private  Hashtable addressRows;   // key is text address, value is table model row
-      private  Hashtable<Integer, ModifiedCode> executeMods;   // key is table model row, value is original code, basic, source.
+      private  AddressIndex addressIndex; // numbers the text addresses
+      private  int[] indexRows;         // index is address number, value is table model row
+      private  BitSet breakpoints;      // bit is set for each table model row having a breakpoint
+      private  int sourceLineDigits;    // width of the line numbers in SOURCE_COLUMN
+      private  int[] cachedRows;        // row cache: table model row held in each slot, or -1
+      private  String[][] cachedRowStrings; // row cache: address, code, basic and source strings
+      private  int cachedAddressBase;   // address display base of the cached strings
+      private  Hashtable<Integer, ModifiedCode> executeMods;   // key is table model row, value is code written at runtime.
       private  Container contentPane;
       private  TextTableModel tableModel;
       private Font tableCellFont = new Font("Monospaced",Font.PLAIN,12);
       private  boolean codeHighlighting;
       private boolean breakpointsEnabled;  // Added 31 Dec 2009
       private int highlightAddress;
+      private int highlightRow = -1;
       private TableModelListener tableModelListener;
       private boolean inDelaySlot; // Added 25 June 2007
    	
@@ -76,6 +85,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final int CODE_COLUMN = 2;
       private static final int BASIC_COLUMN = 3;
       private static final int SOURCE_COLUMN = 4;
+      private static final int ROW_CACHE_SIZE = 1024; // rows of formatted strings kept, must be power of 2
    	
       private static final Font monospacedPlain12Point = new Font("Monospaced",Font.PLAIN,12);
    	// The following is displayed in the Basic and Source columns if existing code is overwritten using self-modifying code feature 
@@ -105,50 +115,34 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *  Should convert the lines of code over to the table rows and columns.
    	  **/
        public  void setupTable(){
-         int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
          codeHighlighting = true;
          breakpointsEnabled = true;
          ArrayList sourceStatementList = Globals.program.getMachineList();
-         data = new Object[sourceStatementList.size()][columnNames.length];
-         intAddresses = new int[data.length];
-         addressRows = new Hashtable(data.length);
-         executeMods = new Hashtable<Integer,ModifiedCode>(data.length);
+         statements = sourceStatementList;
+         intAddresses = new int[sourceStatementList.size()];
+         addressIndex = new AddressIndex(intAddresses.length);
+         indexRows = new int[intAddresses.length];
+         breakpoints = new BitSet(intAddresses.length);
+         executeMods = new Hashtable<Integer,ModifiedCode>();
+         cachedRows = new int[ROW_CACHE_SIZE];
+         cachedRowStrings = new String[ROW_CACHE_SIZE][];
+         clearRowCache();
+         highlightRow = -1;
       	// Get highest source line number to determine #leading spaces so line numbers will vertically align
       	// In multi-file situation, this will not necessarily be the last line b/c sourceStatementList contains
       	// source lines from all files.  DPS 3-Oct-10
          int maxSourceLineNumber = 0;
-         for (int i=sourceStatementList.size()-1; i>=0; i--) {
+         for (int i = 0; i < sourceStatementList.size(); i++) {
             ProgramStatement statement = (ProgramStatement) sourceStatementList.get(i);
             if (statement.getSourceLine() > maxSourceLineNumber) {
                maxSourceLineNumber = statement.getSourceLine();
             }
-         }
-         int sourceLineDigits = (""+maxSourceLineNumber).length();
-         int leadingSpaces = 0;
-         int lastLine = -1;
-         for (int i = 0; i < sourceStatementList.size(); i++) {
-            ProgramStatement statement = (ProgramStatement) sourceStatementList.get(i);
             intAddresses[i] = statement.getAddress();
-            addressRows.put(new Integer(intAddresses[i]), new Integer(i));
-            data[i][BREAK_COLUMN] = Boolean.FALSE;
-            data[i][ADDRESS_COLUMN] = NumberDisplayBaseChooser.formatUnsignedInteger(statement.getAddress(), addressBase);
-            data[i][CODE_COLUMN] = NumberDisplayBaseChooser.formatNumber(statement.getBinaryStatement(), 16);
-            data[i][BASIC_COLUMN] = statement.getPrintableBasicAssemblyStatement();
-            String sourceString = "";
-            if (!statement.getSource().equals("")) {
-               leadingSpaces = sourceLineDigits - ("" + statement.getSourceLine()).length();
-               String lineNumber = "          ".substring(0, leadingSpaces)
-                  + statement.getSourceLine()+ ": ";
-               if (statement.getSourceLine()==lastLine)
-                  lineNumber="          ".substring(0, sourceLineDigits)+"  ";
-               sourceString = lineNumber 
-                  + mars.util.EditorFont.substituteSpacesForTabs(statement.getSource());		
-            }
-            data[i][SOURCE_COLUMN] = sourceString;
-            lastLine=statement.getSourceLine();
+            indexRows[addressIndex.indexOf(intAddresses[i])] = i;
          }
+         sourceLineDigits = (""+maxSourceLineNumber).length();
          contentPane.removeAll();
-         tableModel = new TextTableModel(data);
+         tableModel = new TextTableModel();
          if (tableModelListener!=null) {
             tableModel.addTableModelListener(tableModelListener);
             tableModel.fireTableDataChanged();// initialize listener
@@ -249,13 +243,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void updateCodeAddresses() {
          if (contentPane.getComponentCount() == 0) 
             return; // ignore if no content to change
-         int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-         int address;
-         String formattedAddress;
-         for (int i=0; i<intAddresses.length; i++) {
-            formattedAddress = NumberDisplayBaseChooser.formatUnsignedInteger(intAddresses[i], addressBase);
-            table.getModel().setValueAt(formattedAddress, i, ADDRESS_COLUMN);
-         }
+         clearRowCache();
+         tableModel.fireTableChanged(new TableModelEvent(tableModel, 0, tableModel.getRowCount()-1, ADDRESS_COLUMN));
       }
    
     	/**
@@ -265,27 +254,67 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void updateBasicStatements() {
          if (contentPane.getComponentCount() == 0) 
             return; // ignore if no content to change
-         ArrayList sourceStatementList = Globals.program.getMachineList();
-         for(int i=0; i < sourceStatementList.size(); i++) {
-            // Loop has been extended to cover self-modifying code.  If code at this memory location has been
-         	// modified at runtime, construct a ProgramStatement from the current address and binary code
-         	// then display its basic code.  DPS 11-July-2013
-            if (executeMods.get(i) == null) { // not modified, so use original logic.
-               ProgramStatement statement = (ProgramStatement) sourceStatementList.get(i); 
-               table.getModel().setValueAt(statement.getPrintableBasicAssemblyStatement(), i, BASIC_COLUMN);
-            }
-            else { 
-               try {
-                  ProgramStatement statement = new ProgramStatement(
-                     mars.util.Binary.stringToInt((String)table.getModel().getValueAt(i,CODE_COLUMN)),
-                     mars.util.Binary.stringToInt((String)table.getModel().getValueAt(i,ADDRESS_COLUMN))
-                     ); 
-                  table.getModel().setValueAt(statement.getPrintableBasicAssemblyStatement(), i, BASIC_COLUMN);					
-               } 
-                   catch (NumberFormatException e) { // should never happen but just in case...
-                     table.getModel().setValueAt("", i, BASIC_COLUMN);
-                  }
-            }
+         clearRowCache();
+         tableModel.fireTableChanged(new TableModelEvent(tableModel, 0, tableModel.getRowCount()-1, BASIC_COLUMN));
+      }
+   
+      /*
+       *  Formatted strings for the given table model row: address, code, basic and source.
+       *  Rows are formatted on first use and kept in a direct-mapped cache, so only rows
+       *  that are actually painted are ever formatted.
+       */
+       private String[] getRowStrings(int row) {
+         int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
+         if (addressBase != cachedAddressBase) {
+            clearRowCache();
+            cachedAddressBase = addressBase;
+         }
+         int slot = row & (ROW_CACHE_SIZE - 1);
+         if (cachedRows[slot] != row) {
+            cachedRowStrings[slot] = formatRow(row, addressBase);
+            cachedRows[slot] = row;
+         }
+         return cachedRowStrings[slot];
+      }
+   
+       private String[] formatRow(int row, int addressBase) {
+         ProgramStatement statement = (ProgramStatement) statements.get(row);
+         String[] strings = new String[4];
+         strings[0] = NumberDisplayBaseChooser.formatUnsignedInteger(statement.getAddress(), addressBase);
+         ModifiedCode mc = executeMods.get(row);
+         if (mc != null) {
+            // Code at this memory location has been modified at runtime, so construct a
+         	// ProgramStatement from the current address and binary code to display its basic code.
+            strings[1] = mars.util.Binary.intToHexString(mc.getValue());
+            strings[2] = new ProgramStatement(mc.getValue(), statement.getAddress()).getPrintableBasicAssemblyStatement();
+            strings[3] = modifiedCodeMarker;
+            return strings;
+         }
+         strings[1] = NumberDisplayBaseChooser.formatNumber(statement.getBinaryStatement(), 16);
+         strings[2] = statement.getPrintableBasicAssemblyStatement();
+         String sourceString = "";
+         if (!statement.getSource().equals("")) {
+            int leadingSpaces = sourceLineDigits - ("" + statement.getSourceLine()).length();
+            String lineNumber = "          ".substring(0, leadingSpaces)
+               + statement.getSourceLine()+ ": ";
+            int lastLine = (row == 0) ? -1 : ((ProgramStatement) statements.get(row-1)).getSourceLine();
+            if (statement.getSourceLine()==lastLine)
+               lineNumber="          ".substring(0, sourceLineDigits)+"  ";
+            sourceString = lineNumber 
+               + mars.util.EditorFont.substituteSpacesForTabs(statement.getSource());		
+         }
+         strings[3] = sourceString;
+         return strings;
+      }
+   
+       private void clearRowCache() {
+         Arrays.fill(cachedRows, -1);
+      }
+   
+       private void invalidateRow(int row) {
+         int slot = row & (ROW_CACHE_SIZE - 1);
+         if (cachedRows[slot] == row) {
+            cachedRows[slot] = -1;
          }
       }
    
@@ -327,9 +356,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             if (access.getAccessType()==AccessNotice.WRITE) { 
                int address = access.getAddress();
                int value = access.getValue();
-               String strValue = mars.util.Binary.intToHexString(access.getValue());
-               String strBasic = modifiedCodeMarker;
-               String strSource = modifiedCodeMarker;
             // Translate the address into table model row and modify the values in that row accordingly.
                int row = 0;
                try {
@@ -338,50 +364,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                    catch (IllegalArgumentException e) {
                      return; // do nothing if address modified is outside the range of original program.
                   }
-               ModifiedCode mc = executeMods.get(row);
-               if (mc==null) { // if not already modified
-                  // Not already modified and new code is same as original --> do nothing.
-                  if (tableModel.getValueAt(row, CODE_COLUMN).equals(strValue)) {
+               if (((ProgramStatement) statements.get(row)).getBinaryStatement() == value) {
+                  // Same as original code.  If it was modified, it has been restored (e.g. upon
+               	// backstepping) so display the original code, basic and source again.
+                  if (executeMods.remove(row) == null) {
                      return;
                   }
-                  mc = new ModifiedCode(
-                        					row,
-                        					tableModel.getValueAt(row, CODE_COLUMN),
-                        					tableModel.getValueAt(row, BASIC_COLUMN),
-                        					tableModel.getValueAt(row, SOURCE_COLUMN)
-                        					);
-                  executeMods.put(row, mc);
-                  // make a ProgramStatement and get basic code to display in BASIC_COLUMN
-                  strBasic = new ProgramStatement(value,address).getPrintableBasicAssemblyStatement();
                } 
                else {
-               // If restored to original value, restore the basic and source
-               // This will be the case upon backstepping.
-                  if (mc.getCode().equals(strValue)) {
-                     strBasic = (String) mc.getBasic();
-                     strSource = (String) mc.getSource();
-                  	// remove from executeMods since we are back to original
-                     executeMods.remove(row);
-                  } 
-                  else {
-                  // make a ProgramStatement and get basic code to display in BASIC_COLUMN
-                     strBasic = new ProgramStatement(value,address).getPrintableBasicAssemblyStatement();
-                  }
+                  executeMods.put(row, new ModifiedCode(value));
                }
-            	// For the code column, we don't want to do the following:					
-               //       tableModel.setValueAt(strValue,  row, CODE_COLUMN)
-            	// because that method will write to memory using Memory.setRawWord() which will
-            	// trigger notification to observers, which brings us back to here!!!  Infinite 
-            	// indirect recursion results.  Neither fun nor productive.  So what happens is
-            	// this: (1) change to memory cell causes setValueAt() to be automatically be
-            	// called.  (2) it updates the memory cell which in turn notifies us which invokes
-            	// the update() method - the method we're in right now.  All we need to do here is
-            	// update the table model then notify the controller/view to update its display.
-               data[row][CODE_COLUMN] = strValue;
-               tableModel.fireTableCellUpdated(row, CODE_COLUMN);
-            	// The other columns do not present a problem since they are not editable by user.
-               tableModel.setValueAt(strBasic,  row, BASIC_COLUMN);
-               tableModel.setValueAt(strSource, row, SOURCE_COLUMN);
+            	// Note we don't use tableModel.setValueAt(strValue, row, CODE_COLUMN) because that 
+            	// method will write to memory using Memory.setRawWord() which will trigger 
+            	// notification to observers, which brings us back to here!!!  Infinite 
+            	// indirect recursion results.  Just drop the cached row and repaint it.
+               invalidateRow(row);
+               tableModel.fireTableRowsUpdated(row, row);
             	// Let's update the value displayed in the DataSegmentWindow too.  But it only observes memory while 
             	// the MIPS program is running, and even then only in timed or step mode.  There are good reasons
             	// for that.  So we'll pretend to be Memory observable and send it a fake memory write update.
@@ -402,11 +400,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
        void resetModifiedSourceCode() {
          if (executeMods != null && !executeMods.isEmpty()) {
-            for (Enumeration<ModifiedCode> elements = executeMods.elements(); elements.hasMoreElements();) {
-               ModifiedCode mc = elements.nextElement();
-               tableModel.setValueAt(mc.getCode(), mc.getRow(), CODE_COLUMN);
-               tableModel.setValueAt(mc.getBasic(), mc.getRow(), BASIC_COLUMN);
-               tableModel.setValueAt(mc.getSource(), mc.getRow(), SOURCE_COLUMN);
+            for (Enumeration<Integer> rows = executeMods.keys(); rows.hasMoreElements();) {
+               int row = rows.nextElement().intValue();
+               invalidateRow(row);
+               tableModel.fireTableRowsUpdated(row, row);
             }
             executeMods.clear();
          }
@@ -426,13 +423,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
    	 
        public int getBreakpointCount() {
-         int breakpointCount = 0;
-         for(int i=0; i < data.length; i++){
-            if (((Boolean)data[i][BREAK_COLUMN]).booleanValue()) {
-               breakpointCount++;
-            }
-         }		 
-         return breakpointCount;
+         return breakpoints.cardinality();
       }
    	
    	/**
@@ -447,10 +438,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
          int[] breakpoints = new int[breakpointCount];
          breakpointCount = 0;
-         for(int i=0; i < data.length; i++){
-            if (((Boolean)data[i][BREAK_COLUMN]).booleanValue()) {
-               breakpoints[breakpointCount++] = intAddresses[i];
-            }
+         for (int i = this.breakpoints.nextSetBit(0); i >= 0; i = this.breakpoints.nextSetBit(i+1)) {
+            breakpoints[breakpointCount++] = intAddresses[i];
          }
          Arrays.sort(breakpoints);
          return breakpoints;
@@ -461,11 +450,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 * updates the display of the breakpoint column.
    	 */
        public void clearAllBreakpoints() {
-         for(int i=0; i < tableModel.getRowCount(); i++){
-            if (((Boolean)data[i][BREAK_COLUMN]).booleanValue())  {
+         for (int i = breakpoints.nextSetBit(0); i >= 0; i = breakpoints.nextSetBit(i+1)) {
             // must use this method to assure display updated and listener notified
-               tableModel.setValueAt(Boolean.FALSE, i, BREAK_COLUMN);
-            }         
+            tableModel.setValueAt(Boolean.FALSE, i, BREAK_COLUMN);
          }
       	// Handles an obscure situation: if you click to set some breakpoints then "immediately" clear them
       	// all using the shortcut (CTRL-K), the last checkmark set is not removed even though the breakpoint
@@ -523,6 +510,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
        public void highlightStepAtAddress(int address, boolean inDelaySlot) {
          highlightAddress = address;
+         int previousRow = highlightRow;
+         highlightRow = -1;
+         if (tableModel != null && previousRow >= 0 && previousRow < tableModel.getRowCount()) {
+            tableModel.fireTableRowsUpdated(previousRow, previousRow);
+         }
       	// Scroll if necessary to assure highlighted row is visible.
          int row = 0;
          try {
@@ -531,14 +523,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
              catch (IllegalArgumentException e) {
                return;
             }
+         highlightRow = row;
          table.scrollRectToVisible(table.getCellRect(row, 0, true));
          this.inDelaySlot = inDelaySlot;// Added 25 June 2007
-         // Trigger highlighting, which is done by the column's cell renderer.
-         // IMPLEMENTATION NOTE: Pretty crude implementation; mark all rows 
-         // as changed so assure that the previously highlighted row is 
-         // unhighlighted.  Would be better to keep track of previous row
-         // then fire two events: one for it and one for the new row.
-         table.tableChanged(new TableModelEvent(tableModel));
+         // Trigger highlighting, which is done by the column's cell renderer.  Only the
+      	// previously highlighted row and the new one need repainting.
+         tableModel.fireTableRowsUpdated(row, row);
          //this.inDelaySlot = false;// Added 25 June 2007
       }
    
@@ -565,8 +555,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void unhighlightAllSteps() {
          boolean saved = this.getCodeHighlighting();
          this.setCodeHighlighting(false);
-         table.tableChanged(new TableModelEvent(tableModel,0,data.length-1, BASIC_COLUMN));
-         table.tableChanged(new TableModelEvent(tableModel,0,data.length-1, SOURCE_COLUMN));
+         table.tableChanged(new TableModelEvent(tableModel,0,tableModel.getRowCount()-1, BASIC_COLUMN));
+         table.tableChanged(new TableModelEvent(tableModel,0,tableModel.getRowCount()-1, SOURCE_COLUMN));
          this.setCodeHighlighting(saved);
       }
      
@@ -666,15 +656,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  corresponding to this address.
    	 */
        private int findRowForAddress(int address) throws IllegalArgumentException {
-         int addressRow = 0;
-         try {
-            addressRow = ((Integer)addressRows.get(new Integer(address))).intValue();
-         } 
-             catch (NullPointerException e) {
-               throw new IllegalArgumentException(); // address not found in map
-               //return addressRow;// if address not in map, do nothing.
-            }
-         return addressRow;
+         int index = (addressIndex == null) ? -1 : addressIndex.find(address);
+         if (index < 0) {
+            throw new IllegalArgumentException(); // address not found in index
+         }
+         return indexRows[index];
       }  
      
    
@@ -682,18 +668,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    /** Inner class to implement the Table model for this JTable.
     */
        class TextTableModel extends AbstractTableModel {
-         Object[][] data;
-         
-          public TextTableModel(Object[][] d){
-            data=d;
-         }
       
           public int getColumnCount() {
             return columnNames.length;
          }
         
           public int getRowCount() {
-            return data.length;
+            return intAddresses.length;
          }
       
           public String getColumnName(int col) {
@@ -701,7 +682,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
       
           public Object getValueAt(int row, int col) {
-            return data[row][col];
+            if (col == BREAK_COLUMN) {
+               return Boolean.valueOf(breakpoints.get(row));
+            }
+            return getRowStrings(row)[col - 1];
          }
       
         /*
@@ -711,7 +695,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          * rather than a check box.
          */
           public Class getColumnClass(int c) {
-            return getValueAt(0, c).getClass();
+            return (c == BREAK_COLUMN) ? Boolean.class : String.class;
          }
       
         /*
@@ -731,38 +715,35 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
         /**
          * Set cell contents in the table model. Overrides inherited empty method.  
-         * Straightforward process except for the Code column.
+         * Only the Breakpoint and Code columns can be set; the others are derived from
+         * the program statement at this row.
          */
           @Override
           public void setValueAt(Object value, int row, int col) {
-            if (col != CODE_COLUMN) {
-               data[row][col] = value;
+            if (col == BREAK_COLUMN) {
+               breakpoints.set(row, Boolean.TRUE.equals(value));
                fireTableCellUpdated(row, col);
                return;
+            }
+            if (col != CODE_COLUMN) {
+               return;
             }	
          	// Handle changes in the Code column.		 
             int val=0;
-            int address=0; 
-            if (value.equals(data[row][col])) 
+            int address=intAddresses[row]; 
+            if (value.equals(getValueAt(row, col))) 
                return;
             try {
                val = mars.util.Binary.stringToInt((String) value);
             }
                 catch (NumberFormatException nfe) {
-                  data[row][col] = "INVALID";
+                  getRowStrings(row)[CODE_COLUMN - 1] = "INVALID";
                   fireTableCellUpdated(row, col);
                   return;
                }   
-            // calculate address from row and column
-            try {
-               address = mars.util.Binary.stringToInt((String)data[row][ADDRESS_COLUMN]);
-            }
-                catch (NumberFormatException nfe) {
-                  // can't really happen since memory addresses are completely under
-                  // the control of my software.
-               }				
          	//  Assures that if changed during MIPS program execution, the update will
-         	//  occur only between MIPS instructions.
+         	//  occur only between MIPS instructions.  If the write changes the code,
+         	//  the display is updated when Memory notifies us (see update()).
             synchronized (Globals.memoryAndRegistersLock) {
                try {
                   Globals.memory.setRawWord(address,val);
@@ -775,41 +756,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             }// end synchronized block
             return;
          }
-      
-      
-      
-          private void printDebugData() {
-            int numRows = getRowCount();
-            int numCols = getColumnCount();
-         
-            for (int i=0; i < numRows; i++) {
-               System.out.print("    row " + i + ":");
-               for (int j=0; j < numCols; j++) {
-                  System.out.print("  " + data[i][j]);
-               }
-               System.out.println();
-            }
-            System.out.println("--------------------------");
-         }
       }  
    
        private class ModifiedCode {
-         private Integer row;
-         private Object code, basic, source;
-          private ModifiedCode(Integer row, Object code, Object basic, Object source) {
-            this.row = row;
-            this.code = code;
-            this.basic = basic;
-            this.source = source;
+         private int value;
+          private ModifiedCode(int value) {
+            this.value = value;
          }
-          private Integer getRow() { 
-            return this.row; }
-          private Object getCode() { 
-            return this.code; }
-          private Object getBasic() { 
-            return  this.basic; }
-          private Object getSource() { 
-            return this.source; }
+          private int getValue() { 
+            return this.value; }
       }
    
      /*  a custom table cell renderer that we'll use to highlight the current line of 
@@ -1058,7 +1013,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      JCheckBox check = ((JCheckBox)((DefaultCellEditor)table.getCellEditor(0,index)).getComponent());
                      breakpointsEnabled = !breakpointsEnabled;
                      check.setEnabled(breakpointsEnabled);
-                     table.tableChanged(new TableModelEvent(tableModel,0,data.length-1, BREAK_COLUMN));
+                     table.tableChanged(new TableModelEvent(tableModel,0,tableModel.getRowCount()-1, BREAK_COLUMN));
                   }
                }
                 public void mouseEntered(MouseEvent e) {}
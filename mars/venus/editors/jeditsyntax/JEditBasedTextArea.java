@@ -30,6 +30,7 @@
       private boolean isCompoundEdit = false;
       private CompoundEdit compoundEdit;
       private JEditBasedTextArea sourceCode;
+      private SourceDiagnostics diagnostics;
      
        
     
@@ -59,6 +60,7 @@
          this.getDocument().addUndoableEditListener(undoableEditListener); 
          this.setFont(Globals.getSettings().getEditorFont());
          this.setTokenMarker(new MIPSTokenMarker());
+         this.diagnostics = new SourceDiagnostics(this);
       	
          addCaretListener(this);
       }
@@ -335,39 +337,49 @@
       
    /** Finds and replaces <B>ALL</B> occurrences of text in a string in a forward search.
    *  All replacements are bundled into one CompoundEdit, so one Undo operation will 
-   *  undo all of them.
+   *  undo all of them.  The occurrences are all located in one pass over the text
+   *  before any is replaced.
    * @param find the text to locate in the string
    * @param replace the text to replace the find text with - if the find text exists 
    * @param caseSensitive true for case sensitive. false to ignore case
    * @return the number of occurrences that were matched and replaced.
    */
        public int doReplaceAll(String find, String replace, boolean caseSensitive) {
-         int nextPosn = 0;
-         int findPosn = 0; // *** begin at start of text
+         if (find == null || find.length() == 0) {
+            return 0;
+         }
+         String text = sourceCode.getText();
+         if (!caseSensitive) {
+            text = text.toLowerCase();
+            find = find.toLowerCase();
+         }
+         // Offsets of the occurrences in the original text.  Text inserted by a
+      	// replacement is never searched, so there is no wrap-around problem.
+         int[] found = new int[16];
          int replaceCount = 0;
+         for (int posn = text.indexOf(find); posn >= 0; posn = text.indexOf(find, posn + find.length())) {
+            if (replaceCount == found.length) {
+               int[] more = new int[found.length * 2];
+               System.arraycopy(found, 0, more, 0, replaceCount);
+               found = more;
+            }
+            found[replaceCount++] = posn;
+         }
          compoundEdit = null; // new one will be created upon first replacement
          isCompoundEdit = true; // undo manager's action listener needs this
-         while (nextPosn >= 0) {
-            nextPosn = nextIndex( sourceCode.getText(), find, findPosn, caseSensitive );
-            if ( nextPosn >= 0 ) {
-               // nextIndex() will wrap around, which causes infinite loop if
-            	// find string is a substring of replacement string.  This 
-            	// statement will prevent that.
-               if (nextPosn < findPosn) { 
-                  break;
-               }
-               sourceCode.grabFocus();
-               sourceCode.setSelectionStart( nextPosn ); // posn cursor at word start
-               sourceCode.setSelectionEnd( nextPosn + find.length() ); //select found text
-               // Need to repeat start due to quirk in JEditTextArea implementation of setSelectionStart.
-               sourceCode.setSelectionStart( nextPosn );
-               if (compoundEdit == null) {
-                  compoundEdit = new CompoundEdit();
-               }
-               sourceCode.replaceSelection(replace);
-               findPosn = nextPosn + replace.length(); // set for next search
-               replaceCount++;
-            }
+         if (replaceCount > 0) {
+            sourceCode.grabFocus();
+            compoundEdit = new CompoundEdit();
+         }
+         int shift = 0; // change in length from replacements so far
+         for (int i = 0; i < replaceCount; i++) {
+            int nextPosn = found[i] + shift;
+            sourceCode.setSelectionStart( nextPosn ); // posn cursor at word start
+            sourceCode.setSelectionEnd( nextPosn + find.length() ); //select found text
+            // Need to repeat start due to quirk in JEditTextArea implementation of setSelectionStart.
+            sourceCode.setSelectionStart( nextPosn );
+            sourceCode.replaceSelection(replace);
+            shift += replace.length() - find.length();
          }
          isCompoundEdit = false;
          // Will be true if any replacements were performed
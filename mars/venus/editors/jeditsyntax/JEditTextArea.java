@@ -726,11 +726,14 @@ public class JEditTextArea extends JComponent
    {
       if(this.document == document)
          return;
-      if(this.document != null)
+      if(this.document != null) {
          this.document.removeDocumentListener(documentHandler);
+         this.document.removeTokensChangedListener(documentHandler);
+      }
       this.document = document;
    
       document.addDocumentListener(documentHandler);
+      document.addTokensChangedListener(documentHandler);
    
       select(0,0);
       updateScrollBars();
@@ -1907,7 +1910,7 @@ public class JEditTextArea extends JComponent
 
 
 
-   class DocumentHandler implements DocumentListener
+   class DocumentHandler implements DocumentListener, ChangeListener
    {
       public void insertUpdate(DocumentEvent evt)
       {
@@ -1980,6 +1983,12 @@ public class JEditTextArea extends JComponent
       public void changedUpdate(DocumentEvent evt)
       {
       }
+   
+      // Lines were tokenized in the background
+      public void stateChanged(ChangeEvent evt)
+      {
+         painter.repaint();
+      }
    }
 
    class DragHandler implements MouseMotionListener
@@ -109,17 +109,22 @@
    // protected members
       protected int mapLength;
    
+   // The key mixes in the length and the second character: the first and
+   // last characters alone put many instruction mnemonics in one bucket.
        protected int getStringMapKey(String s)
       {
-         return (Character.toUpperCase(s.charAt(0)) +
-            Character.toUpperCase(s.charAt(s.length()-1)))
+         int len = s.length();
+         return ((Character.toUpperCase(s.charAt(0)) * 31 +
+            Character.toUpperCase(s.charAt(len-1))) * 31 +
+            Character.toUpperCase(s.charAt(len > 1 ? 1 : 0)) + len)
             % mapLength;
       }
    
        protected int getSegmentMapKey(Segment s, int off, int len)
       {
-         return (Character.toUpperCase(s.array[off]) +
-            Character.toUpperCase(s.array[off + len - 1]))
+         return ((Character.toUpperCase(s.array[off]) * 31 +
+            Character.toUpperCase(s.array[off + len - 1])) * 31 +
+            Character.toUpperCase(s.array[off + (len > 1 ? 1 : 0)]) + len)
             % mapLength;
       }
    
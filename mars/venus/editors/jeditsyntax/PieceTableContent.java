@@ -0,0 +1,622 @@
+   package mars.venus.editors.jeditsyntax;
+
+   import java.lang.ref.WeakReference;
+   import java.util.Vector;
+   import javax.swing.text.*;
+   import javax.swing.undo.*;
+
+/**
+ * Document content kept as a piece table, used by SyntaxDocument in place of
+ * the gap buffer of PlainDocument.  The text is a sequence of pieces, each a
+ * range of a character buffer.  Buffers are never changed once written: typed
+ * or pasted text is appended to an add buffer and a piece referring to it is
+ * spliced into the sequence, so an edit costs time in proportion to the number
+ * of pieces and not to the length of the text.  Locating an offset is a binary
+ * search over the pieces.  When there are many pieces they are merged into one
+ * buffer again.
+ * <p>
+ * Because buffers are never changed, a snapshot of the text (see snapshot())
+ * only needs to hold on to the current piece arrays.  It stays valid as the
+ * document is edited and can be read from any thread, e.g. to assemble in the
+ * background.
+ * <p>
+ * Positions are kept the way GapContent keeps them: sorted by offset, and
+ * stored relative to a notional gap at the last edit, so that an edit only
+ * has to adjust the positions between it and the previous one.  Undo follows
+ * javax.swing.text.StringContent.
+ */
+
+    public class PieceTableContent implements AbstractDocument.Content {
+
+      // Pieces are merged into one buffer when there are more than this
+      private static final int MAX_PIECES = 1024;
+      private static final int MIN_ADD_BUFFER = 1024;
+
+      private char[][] buffers;  // buffer of each piece
+      private int[] starts;      // start of each piece in its buffer
+      private int[] lengths;     // length of each piece
+      private int[] offsets;     // offset of each piece in the text
+      private int pieceCount;
+      private int length;
+      private boolean shared;    // piece arrays are referenced by a snapshot
+
+      private char[] addBuffer = new char[MIN_ADD_BUFFER];
+      private int addLength;
+
+      // Positions, sorted by offset.  A mark before the gap has index equal to its
+      // offset; a mark at or after it has index equal to offset plus gapLength.
+      private MarkData[] marks = new MarkData[64];
+      private int markCount;
+      private int gapStart;
+      private long gapLength = 1L << 40;
+
+   /**
+    * Creates content holding the single newline that every document ends with.
+    */
+       public PieceTableContent() {
+         buffers = new char[16][];
+         starts = new int[16];
+         lengths = new int[16];
+         offsets = new int[16];
+         buffers[0] = new char[] {'\n'};
+         lengths[0] = 1;
+         pieceCount = 1;
+         length = 1;
+      }
+
+   /**
+    * @return length of the content, including the final newline
+    */
+       public int length() {
+         return length;
+      }
+
+   /**
+    * Inserts a string into the content.
+    * @param where the starting position &gt;= 0 &amp;&amp; &lt; length()
+    * @param str the non-null string to insert
+    * @return an UndoableEdit object for undoing
+    * @exception BadLocationException if the position is invalid
+    */
+       public UndoableEdit insertString(int where, String str) throws BadLocationException {
+         if (where >= length || where < 0) {
+            throw new BadLocationException("Invalid insert", length);
+         }
+         int count = str.length();
+         if (count == 0) {
+            return null;
+         }
+         if (addLength + count > addBuffer.length) {
+            // Start a new add buffer; pieces and snapshots keep the old one
+            addBuffer = new char[Math.max(MIN_ADD_BUFFER, Math.max(addBuffer.length, count) * 2)];
+            addLength = 0;
+         }
+         str.getChars(0, count, addBuffer, addLength);
+         int piece = findPiece(where);
+         int previous = piece - 1;
+         if (where == offsets[piece] && previous >= 0 && buffers[previous] == addBuffer
+             && starts[previous] + lengths[previous] == addLength) {
+            // Typing: extend the piece of the previous insert
+            unshare(pieceCount);
+            lengths[previous] += count;
+         }
+         else {
+            if (where > offsets[piece]) {
+               splitPiece(piece, where - offsets[piece]);
+               piece++;
+            }
+            insertPiece(piece, addBuffer, addLength, count);
+         }
+         addLength += count;
+         for (int i = piece; i < pieceCount; i++) {
+            offsets[i] = (i == 0) ? 0 : offsets[i - 1] + lengths[i - 1];
+         }
+         length += count;
+         updateMarksForInsert(where, count);
+         compactIfFragmented();
+         return new InsertUndo(where, count);
+      }
+
+   /**
+    * Removes part of the content.
+    * @param where the starting position &gt;= 0
+    * @param nitems the number of characters to remove &gt;= 0
+    * @return an UndoableEdit object for undoing
+    * @exception BadLocationException if the range is invalid
+    */
+       public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+         if (where < 0 || nitems < 0 || where + nitems >= length) {
+            throw new BadLocationException("Invalid remove", length);
+         }
+         if (nitems == 0) {
+            return null;
+         }
+         UndoableEdit edit = new RemoveUndo(where, getString(where, nitems));
+         int first = findPiece(where);
+         if (where > offsets[first]) {
+            splitPiece(first, where - offsets[first]);
+            first++;
+         }
+         int last = findPiece(where + nitems);
+         if (where + nitems > offsets[last]) {
+            splitPiece(last, where + nitems - offsets[last]);
+            last++;
+         }
+         // pieces first..last-1 hold exactly the removed text
+         removePieces(first, last - first);
+         for (int i = first; i < pieceCount; i++) {
+            offsets[i] = (i == 0) ? 0 : offsets[i - 1] + lengths[i - 1];
+         }
+         length -= nitems;
+         updateMarksForRemove(where, nitems);
+         compactIfFragmented();
+         return edit;
+      }
+
+   /**
+    * Retrieves a portion of the content.
+    * @param where the starting position &gt;= 0
+    * @param len the length to retrieve &gt;= 0
+    * @return a string representing the content
+    * @exception BadLocationException if the range is invalid
+    */
+       public String getString(int where, int len) throws BadLocationException {
+         checkRange(where, len);
+         char[] chars = new char[len];
+         copyChars(buffers, starts, lengths, offsets, pieceCount, where, len, chars);
+         return new String(chars);
+      }
+
+   /**
+    * Retrieves a portion of the content.  If the range lies in one piece the
+    * segment refers to its buffer directly, which must not be modified.
+    * @param where the starting position &gt;= 0
+    * @param len the number of characters to retrieve &gt;= 0
+    * @param chars the Segment object to return the characters in
+    * @exception BadLocationException if the range is invalid
+    */
+       public void getChars(int where, int len, Segment chars) throws BadLocationException {
+         checkRange(where, len);
+         int piece = findPiece(where);
+         if (where - offsets[piece] + len <= lengths[piece]) {
+            chars.array = buffers[piece];
+            chars.offset = starts[piece] + where - offsets[piece];
+         }
+         else {
+            chars.array = new char[len];
+            chars.offset = 0;
+            copyChars(buffers, starts, lengths, offsets, pieceCount, where, len, chars.array);
+         }
+         chars.count = len;
+      }
+
+   /**
+    * Creates a position within the content that will track change as the
+    * content is mutated.
+    * @param offset the offset in the content &gt;= 0
+    * @return a Position
+    * @exception BadLocationException for an invalid offset
+    */
+       public Position createPosition(int offset) throws BadLocationException {
+         if (offset < 0 || offset > length) {
+            throw new BadLocationException("Invalid position", offset);
+         }
+         if (markCount == marks.length) {
+            purgeMarks();
+            if (markCount > marks.length * 3 / 4) {
+               MarkData[] newMarks = new MarkData[marks.length * 2];
+               System.arraycopy(marks, 0, newMarks, 0, markCount);
+               marks = newMarks;
+            }
+         }
+         StickyPosition position = new StickyPosition();
+         int i = findMark(offset + 1);
+         System.arraycopy(marks, i, marks, i + 1, markCount - i);
+         marks[i] = new MarkData(position, indexOf(offset));
+         markCount++;
+         position.mark = marks[i];
+         return position;
+      }
+
+   /**
+    * Returns the current text, without the final newline, as an immutable
+    * character sequence.  This takes constant time; the text is only copied
+    * when the snapshot's toString() is called.
+    * @return snapshot of the text
+    */
+       public CharSequence snapshot() {
+         shared = true;
+         return new Snapshot(buffers, starts, lengths, offsets, pieceCount, length - 1);
+      }
+
+      // Index of the piece containing offset; the last piece for offset length.
+       private int findPiece(int offset) {
+         int low = 0;
+         int high = pieceCount - 1;
+         while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (offsets[middle] <= offset) {
+               low = middle;
+            }
+            else {
+               high = middle - 1;
+            }
+         }
+         return low;
+      }
+
+       private void checkRange(int where, int len) throws BadLocationException {
+         if (where < 0 || len < 0 || where + len > length) {
+            throw new BadLocationException("Invalid range", length);
+         }
+      }
+
+      // Piece arrays must not change while a snapshot refers to them
+       private void unshare(int capacity) {
+         if (!shared && capacity <= buffers.length) {
+            return;
+         }
+         int size = Math.max(buffers.length, (capacity > buffers.length) ? capacity * 2 : 0);
+         char[][] newBuffers = new char[size][];
+         int[] newStarts = new int[size];
+         int[] newLengths = new int[size];
+         int[] newOffsets = new int[size];
+         System.arraycopy(buffers, 0, newBuffers, 0, pieceCount);
+         System.arraycopy(starts, 0, newStarts, 0, pieceCount);
+         System.arraycopy(lengths, 0, newLengths, 0, pieceCount);
+         System.arraycopy(offsets, 0, newOffsets, 0, pieceCount);
+         buffers = newBuffers;
+         starts = newStarts;
+         lengths = newLengths;
+         offsets = newOffsets;
+         shared = false;
+      }
+
+      // Open a gap of count pieces at index
+       private void openPieces(int index, int count) {
+         unshare(pieceCount + count);
+         int moved = pieceCount - index;
+         System.arraycopy(buffers, index, buffers, index + count, moved);
+         System.arraycopy(starts, index, starts, index + count, moved);
+         System.arraycopy(lengths, index, lengths, index + count, moved);
+         System.arraycopy(offsets, index, offsets, index + count, moved);
+         pieceCount += count;
+      }
+
+       private void insertPiece(int index, char[] buffer, int start, int count) {
+         openPieces(index, 1);
+         buffers[index] = buffer;
+         starts[index] = start;
+         lengths[index] = count;
+      }
+
+      // Split a piece in two, the first having the given length
+       private void splitPiece(int index, int firstLength) {
+         openPieces(index + 1, 1);
+         buffers[index + 1] = buffers[index];
+         starts[index + 1] = starts[index] + firstLength;
+         lengths[index + 1] = lengths[index] - firstLength;
+         offsets[index + 1] = offsets[index] + firstLength;
+         lengths[index] = firstLength;
+      }
+
+       private void removePieces(int index, int count) {
+         unshare(pieceCount);
+         int moved = pieceCount - index - count;
+         System.arraycopy(buffers, index + count, buffers, index, moved);
+         System.arraycopy(starts, index + count, starts, index, moved);
+         System.arraycopy(lengths, index + count, lengths, index, moved);
+         System.arraycopy(offsets, index + count, offsets, index, moved);
+         for (int i = pieceCount - count; i < pieceCount; i++) {
+            buffers[i] = null;
+         }
+         pieceCount -= count;
+      }
+
+      // Merge all pieces into one buffer once there are too many of them
+       private void compactIfFragmented() {
+         if (pieceCount <= MAX_PIECES) {
+            return;
+         }
+         char[] text = new char[length];
+         copyChars(buffers, starts, lengths, offsets, pieceCount, 0, length, text);
+         unshare(1);
+         for (int i = 0; i < pieceCount; i++) {
+            buffers[i] = null;
+         }
+         buffers[0] = text;
+         starts[0] = 0;
+         lengths[0] = length;
+         offsets[0] = 0;
+         pieceCount = 1;
+      }
+
+       private static void copyChars(char[][] buffers, int[] starts, int[] lengths, int[] offsets,
+                                     int pieceCount, int where, int len, char[] destination) {
+         int low = 0;
+         int high = pieceCount - 1;
+         while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (offsets[middle] <= where) {
+               low = middle;
+            }
+            else {
+               high = middle - 1;
+            }
+         }
+         int copied = 0;
+         for (int piece = low; copied < len; piece++) {
+            int from = (piece == low) ? where - offsets[piece] : 0;
+            int count = Math.min(lengths[piece] - from, len - copied);
+            System.arraycopy(buffers[piece], starts[piece] + from, destination, copied, count);
+            copied += count;
+         }
+      }
+
+      // Index to store for a mark at the given offset
+       private long indexOf(int offset) {
+         return (offset < gapStart) ? offset : offset + gapLength;
+      }
+   
+       private int offsetOf(MarkData mark) {
+         return (int) ((mark.index < gapStart) ? mark.index : mark.index - gapLength);
+      }
+   
+      // Position in marks of the first mark whose offset is at least offset
+       private int findMark(int offset) {
+         int low = 0;
+         int high = markCount;
+         while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (offsetOf(marks[middle]) < offset) {
+               low = middle + 1;
+            }
+            else {
+               high = middle;
+            }
+         }
+         return low;
+      }
+   
+      // Move the gap to offset, re-indexing the marks it passes over
+       private void moveGap(int offset) {
+         if (offset < gapStart) {
+            int end = findMark(gapStart);
+            for (int i = findMark(offset); i < end; i++) {
+               marks[i].index += gapLength;
+            }
+         }
+         else if (offset > gapStart) {
+            int end = findMark(offset);
+            for (int i = findMark(gapStart); i < end; i++) {
+               marks[i].index -= gapLength;
+            }
+         }
+         gapStart = offset;
+      }
+   
+       private void updateMarksForInsert(int offset, int count) {
+         moveGap(offset);
+         gapStart += count;
+         gapLength -= count;
+         if (offset == 0) {
+            // zero is a special case where marks at it do not move
+            for (int i = 0; i < markCount && marks[i].index == count + gapLength; i++) {
+               marks[i].index = 0;
+            }
+         }
+      }
+   
+       private void updateMarksForRemove(int offset, int count) {
+         moveGap(offset);
+         int start = findMark(offset);
+         int end = findMark(offset + count);
+         gapLength += count;
+         for (int i = start; i < end; i++) {
+            marks[i].index = offset + gapLength; // removed, so now at offset
+         }
+      }
+   
+      // Marks in the given range, with their current offsets, so that undo can put
+      // them back where they were
+       private Vector getPositionsInRange(int offset, int count) {
+         Vector refs = new Vector();
+         int end = findMark(offset + count + 1);
+         for (int i = findMark(offset); i < end; i++) {
+            refs.addElement(new UndoPosRef(marks[i]));
+         }
+         return refs;
+      }
+   
+      // Put marks back where they were before an edit that has been undone.  They
+      // are all at offsets of the range edited, so only that part of the mark
+      // array has to be sorted again.
+       private void updateUndoPositions(Vector refs, int offset, int count) {
+         int start = findMark(offset);
+         int end = findMark(offset + count + 1);
+         for (int i = 0; i < refs.size(); i++) {
+            ((UndoPosRef) refs.elementAt(i)).resetLocation();
+         }
+         for (int i = start + 1; i < end; i++) {
+            MarkData mark = marks[i];
+            int j = i;
+            while (j > start && marks[j - 1].index > mark.index) {
+               marks[j] = marks[j - 1];
+               j--;
+            }
+            marks[j] = mark;
+         }
+      }
+   
+      // Drop the marks whose positions are no longer used
+       private void purgeMarks() {
+         int live = 0;
+         for (int i = 0; i < markCount; i++) {
+            if (marks[i].get() != null) {
+               marks[live++] = marks[i];
+            }
+         }
+         for (int i = live; i < markCount; i++) {
+            marks[i] = null;
+         }
+         markCount = live;
+      }
+   
+      // The position handed out; a mark is dropped once it is no longer referenced
+       private final class StickyPosition implements Position {
+         MarkData mark;
+      
+          public int getOffset() {
+            return offsetOf(mark);
+         }
+      }
+   
+       private static final class MarkData extends WeakReference {
+         long index;
+      
+          MarkData(StickyPosition position, long index) {
+            super(position);
+            this.index = index;
+         }
+      }
+   
+       private final class UndoPosRef {
+         private MarkData mark;
+         private int undoLocation;
+      
+          UndoPosRef(MarkData mark) {
+            this.mark = mark;
+            this.undoLocation = offsetOf(mark);
+         }
+      
+          void resetLocation() {
+            mark.index = indexOf(undoLocation);
+         }
+      }
+   
+      // Immutable view of the pieces at one moment
+       private static final class Snapshot implements CharSequence {
+         private final char[][] buffers;
+         private final int[] starts;
+         private final int[] lengths;
+         private final int[] offsets;
+         private final int pieceCount;
+         private final int length;
+         private String text;
+
+          Snapshot(char[][] buffers, int[] starts, int[] lengths, int[] offsets, int pieceCount, int length) {
+            this.buffers = buffers;
+            this.starts = starts;
+            this.lengths = lengths;
+            this.offsets = offsets;
+            this.pieceCount = pieceCount;
+            this.length = length;
+         }
+
+          public int length() {
+            return length;
+         }
+
+          public char charAt(int index) {
+            if (index < 0 || index >= length) {
+               throw new IndexOutOfBoundsException("index "+index+", length "+length);
+            }
+            char[] c = new char[1];
+            copyChars(buffers, starts, lengths, offsets, pieceCount, index, 1, c);
+            return c[0];
+         }
+
+          public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+         }
+
+          public synchronized String toString() {
+            if (text == null) {
+               char[] chars = new char[length];
+               copyChars(buffers, starts, lengths, offsets, pieceCount, 0, length, chars);
+               text = new String(chars);
+            }
+            return text;
+         }
+      }
+
+      // Undo of an insert: removes the text again, keeping it for redo
+       private class InsertUndo extends AbstractUndoableEdit {
+         private static final long serialVersionUID = 1L;
+         private int offset;
+         private int count;
+         private String string;
+         private Vector posRefs;
+
+          InsertUndo(int offset, int count) {
+            this.offset = offset;
+            this.count = count;
+         }
+
+          public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+               string = getString(offset, count);
+               posRefs = getPositionsInRange(offset, count);
+               remove(offset, count);
+            }
+                catch (BadLocationException bl) {
+                  throw new CannotUndoException();
+               }
+         }
+
+          public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+               insertString(offset, string);
+               if (posRefs != null) {
+                  updateUndoPositions(posRefs, offset, count);
+                  posRefs = null;
+               }
+               string = null;
+            }
+                catch (BadLocationException bl) {
+                  throw new CannotRedoException();
+               }
+         }
+      }
+
+      // Undo of a remove: inserts the removed text again
+       private class RemoveUndo extends AbstractUndoableEdit {
+         private static final long serialVersionUID = 1L;
+         private int offset;
+         private String string;
+         private Vector posRefs;
+
+          RemoveUndo(int offset, String string) {
+            this.offset = offset;
+            this.string = string;
+            posRefs = getPositionsInRange(offset, string.length());
+         }
+
+          public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+               insertString(offset, string);
+               if (posRefs != null) {
+                  updateUndoPositions(posRefs, offset, string.length());
+                  posRefs = null;
+               }
+            }
+                catch (BadLocationException bl) {
+                  throw new CannotUndoException();
+               }
+         }
+
+          public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+               posRefs = getPositionsInRange(offset, string.length());
+               remove(offset, string.length());
+            }
+                catch (BadLocationException bl) {
+                  throw new CannotRedoException();
+               }
+         }
+      }
+   }
@@ -0,0 +1,264 @@
+   package mars.venus.editors.jeditsyntax;
+
+   import mars.*;
+   import mars.assembler.SourceAnalyzer;
+   import java.awt.*;
+   import java.awt.event.*;
+   import java.util.*;
+   import java.util.concurrent.*;
+   import javax.swing.*;
+   import javax.swing.event.*;
+   import javax.swing.text.*;
+
+/**
+ * Live error checking for the editor.  Shortly after the user stops typing, the
+ * source is handed to a SourceAnalyzer on a background thread, and the problems it
+ * finds are underlined with a wavy line; hovering over one shows its message.
+ * An edit made while a check is running cancels that check, so the check of a
+ * large file never delays typing and stale results are never shown.  Underlines on
+ * lines after an edit move with the text until the next check replaces them.
+ * <p>
+ * All editors share a single worker thread.  Each has its own SourceAnalyzer, which
+ * remembers the lines it has seen, so after an edit only the changed lines are
+ * looked at again.
+ * <p>
+ * Checking is skipped, and any underlines removed, while the EDITOR_ERROR_CHECKING
+ * setting is off.
+ */
+
+    public class SourceDiagnostics implements TextAreaPainter.Highlight, DocumentListener, ActionListener {
+
+      /** Milliseconds of typing inactivity before the source is checked. */
+      public static final int DELAY = 500;
+      private static final Color ERROR_COLOR = Color.RED;
+      private static final Color WARNING_COLOR = new Color(0xE0, 0x90, 0x00);
+
+      private static ExecutorService worker;
+
+      private JEditTextArea textArea;
+      private TextAreaPainter.Highlight next;
+      private SourceAnalyzer analyzer = new SourceAnalyzer();
+      private javax.swing.Timer timer;
+      private Future pending;
+      private int requests;                    // number of the latest check requested
+      private Diagnostic[] diagnostics = new Diagnostic[0]; // ordered by line
+      private Segment lineSegment = new Segment();
+
+   /**
+    * Check the source in the given text area as it is edited.  Adds itself to the
+    * area's painter as a custom highlight.
+    * @param textArea the text area
+    */
+       public SourceDiagnostics(JEditTextArea textArea) {
+         this.textArea = textArea;
+         timer = new javax.swing.Timer(DELAY, this);
+         timer.setRepeats(false);
+         textArea.getDocument().addDocumentListener(this);
+         textArea.getPainter().addCustomHighlight(this);
+      }
+
+       public void init(JEditTextArea textArea, TextAreaPainter.Highlight next) {
+         this.next = next;
+      }
+
+       public void paintHighlight(Graphics gfx, int line, int y) {
+         if (diagnostics.length > 0 && line >= 0 && line < textArea.getLineCount()) {
+            FontMetrics fm = textArea.getPainter().getFontMetrics();
+            int baseline = y + fm.getHeight() + fm.getMaxDescent() - 1;
+            for (int i = find(line); i < diagnostics.length && diagnostics[i].line == line; i++) {
+               int[] span = span(diagnostics[i]);
+               int x1 = textArea._offsetToX(line, span[0]);
+               int x2 = textArea._offsetToX(line, span[1]);
+               gfx.setColor(diagnostics[i].message.isWarning() ? WARNING_COLOR : ERROR_COLOR);
+               for (int x = x1; x < Math.max(x2, x1 + 4); x += 4) {
+                  gfx.drawLine(x, baseline, x + 2, baseline - 2);
+                  gfx.drawLine(x + 2, baseline - 2, x + 4, baseline);
+               }
+            }
+         }
+         if (next != null) {
+            next.paintHighlight(gfx, line, y);
+         }
+      }
+
+       public String getToolTipText(MouseEvent evt) {
+         int line = textArea.yToLine(evt.getY());
+         int offset = textArea.xToOffset(line, evt.getX());
+         StringBuffer text = null;
+         for (int i = find(line); i < diagnostics.length && diagnostics[i].line == line; i++) {
+            int[] span = span(diagnostics[i]);
+            if (offset >= span[0] && offset <= span[1]) {
+               text = (text == null) ? new StringBuffer("<html>") : text.append("<br>");
+               text.append(diagnostics[i].message.isWarning() ? ErrorList.WARNING_MESSAGE_PREFIX : ErrorList.ERROR_MESSAGE_PREFIX)
+                   .append(ErrorList.MESSAGE_SEPARATOR)
+                   .append(diagnostics[i].message.getMessage().replaceAll("&", "&amp;").replaceAll("<", "&lt;"));
+            }
+         }
+         if (text != null) {
+            return text.append("</html>").toString();
+         }
+         if (next != null) {
+            return next.getToolTipText(evt);
+         }
+         return (textArea.getTokenMarker() == null) ? null : textArea.getSyntaxSensitiveToolTipText(evt.getX(), evt.getY());
+      }
+
+   /**
+    * Timer has expired: start checking the current text.
+    */
+       public void actionPerformed(ActionEvent e) {
+         cancel();
+         final int request = ++requests;
+         if (!Globals.getSettings().getBooleanSetting(Settings.EDITOR_ERROR_CHECKING)) {
+            setDiagnostics(new Diagnostic[0]);
+            return;
+         }
+         final CharSequence text = ((SyntaxDocument) textArea.getDocument()).getTextSnapshot();
+         final boolean warnOnly = Globals.getSettings().getBooleanSetting(Settings.ASSEMBLE_ALL_ENABLED);
+         pending = getWorker().submit(
+               new Runnable() {
+                   public void run() {
+                     final ArrayList messages = analyzer.analyze(text, null, warnOnly);
+                     if (messages == null) {
+                        return;
+                     }
+                     SwingUtilities.invokeLater(
+                           new Runnable() {
+                               public void run() {
+                                 if (request == requests) {
+                                    publish(messages);
+                                 }
+                              }
+                           });
+                  }
+               });
+      }
+
+       public void insertUpdate(DocumentEvent evt) {
+         edited(evt, true);
+      }
+
+       public void removeUpdate(DocumentEvent evt) {
+         edited(evt, false);
+      }
+
+       public void changedUpdate(DocumentEvent evt) {
+      }
+
+      // Forget about the edited line, move the underlines on lines after it and
+      // schedule a new check.
+       private void edited(DocumentEvent evt, boolean insert) {
+         timer.restart();
+         cancel();
+         requests++;
+         if (diagnostics.length == 0) {
+            return;
+         }
+         Element root = textArea.getDocument().getDefaultRootElement();
+         int line = root.getElementIndex(evt.getOffset());
+         DocumentEvent.ElementChange change = evt.getChange(root);
+         int lines = (change == null) ? 0 : change.getChildrenAdded().length - change.getChildrenRemoved().length;
+         ArrayList kept = new ArrayList();
+         for (int i = 0; i < diagnostics.length; i++) {
+            Diagnostic diagnostic = diagnostics[i];
+            if (diagnostic.line < line) {
+               kept.add(diagnostic);
+            }
+            else if (diagnostic.line > line - (insert ? 0 : lines)) {
+               kept.add(new Diagnostic(diagnostic.line + lines, diagnostic.message));
+            }
+         }
+         setDiagnostics((Diagnostic[]) kept.toArray(new Diagnostic[kept.size()]));
+      }
+
+       private void cancel() {
+         if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+         }
+      }
+
+       private void publish(ArrayList messages) {
+         pending = null;
+         Diagnostic[] result = new Diagnostic[messages.size()];
+         for (int i = 0; i < result.length; i++) {
+            ErrorMessage message = (ErrorMessage) messages.get(i);
+            result[i] = new Diagnostic(message.getLine() - 1, message);
+         }
+         setDiagnostics(result);
+      }
+
+       private void setDiagnostics(Diagnostic[] newDiagnostics) {
+         if (diagnostics.length == 0 && newDiagnostics.length == 0) {
+            return;
+         }
+         diagnostics = newDiagnostics;
+         textArea.getPainter().repaint();
+      }
+
+      // Index of first diagnostic for the line, or of the first one after it.
+       private int find(int line) {
+         int low = 0;
+         int high = diagnostics.length;
+         while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (diagnostics[middle].line < line) {
+               low = middle + 1;
+            }
+            else {
+               high = middle;
+            }
+         }
+         return low;
+      }
+
+      // Start and end offset in its line of the text a diagnostic is about: the word at
+      // its position, or the whole line if the position is not within the line.
+       private int[] span(Diagnostic diagnostic) {
+         textArea.getLineText(diagnostic.line, lineSegment);
+         int length = lineSegment.count;
+         int start = diagnostic.message.getPosition() - 1;
+         if (start < 0 || start >= length) {
+            start = 0;
+            while (start < length && Character.isWhitespace(lineSegment.array[lineSegment.offset + start])) {
+               start++;
+            }
+            return new int[] {Math.min(start, length), length};
+         }
+         int end = start;
+         boolean quoted = lineSegment.array[lineSegment.offset + start] == '"';
+         while (end < length) {
+            char c = lineSegment.array[lineSegment.offset + end];
+            if (quoted ? (c == '"' && end > start) : (Character.isWhitespace(c) || c == ',' || c == '#')) {
+               break;
+            }
+            end++;
+         }
+         return new int[] {start, (quoted && end < length) ? end + 1 : Math.max(end, start + 1)};
+      }
+
+       private static synchronized ExecutorService getWorker() {
+         if (worker == null) {
+            worker = Executors.newSingleThreadExecutor(
+                  new ThreadFactory() {
+                      public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "MARS source check");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                     }
+                  });
+         }
+         return worker;
+      }
+
+       private static class Diagnostic {
+         int line;              // 0-based
+         ErrorMessage message;
+
+          Diagnostic(int line, ErrorMessage message) {
+            this.line = line;
+            this.message = message;
+         }
+      }
+   }
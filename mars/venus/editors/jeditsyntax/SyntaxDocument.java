@@ -23,6 +23,32 @@ import javax.swing.undo.UndoableEdit;
  */
 public class SyntaxDocument extends PlainDocument
 {
+	/**
+	 * Creates an empty document, whose text is kept in a piece table.
+	 */
+	public SyntaxDocument()
+	{
+		super(new PieceTableContent());
+	}
+
+	/**
+	 * Returns the current text of the document as an immutable
+	 * character sequence.  This is cheap, even for a large document,
+	 * and the snapshot can be read from any thread.
+	 */
+	public CharSequence getTextSnapshot()
+	{
+		readLock();
+		try
+		{
+			return ((PieceTableContent)getContent()).snapshot();
+		}
+		finally
+		{
+			readUnlock();
+		}
+	}
+
 	/**
 	 * Returns the token marker that is to be used to split lines
 	 * of this document up into tokens. May return null if this
@@ -68,8 +94,15 @@ public class SyntaxDocument extends PlainDocument
 	 */
 	public void tokenizeLines(int start, int len)
 	{
-		if(tokenMarker == null || !tokenMarker.supportsMultilineTokens())
+		if(tokenMarker == null)
+			return;
+		if(!tokenMarker.supportsMultilineTokens())
+		{
+			// Lines can be tokenized in any order, so there is no need
+			// to do it now; just get them cached before they are painted.
+			tokenizeLinesInBackground(start,len);
 			return;
+		}
 
 		Segment lineSegment = new Segment();
 		Element map = getDefaultRootElement();
@@ -93,6 +126,60 @@ public class SyntaxDocument extends PlainDocument
 		}
 	}
 
+	/**
+	 * Passes the specified lines to the token marker to be tokenized
+	 * on a background thread.  Registered change listeners are
+	 * notified once the results are in, so that the lines can be
+	 * repainted.  Does nothing if the token marker does not support
+	 * this.
+	 * @param start The first line to parse
+	 * @param len The number of lines, after the first one to parse
+	 */
+	public void tokenizeLinesInBackground(int start, int len)
+	{
+		Element map = getDefaultRootElement();
+		if(tokenMarker == null || len <= 0 || start >= map.getElementCount())
+			return;
+		int end = Math.min(start + len, map.getElementCount()) - 1;
+		int startOffset = map.getElement(start).getStartOffset();
+		int endOffset = map.getElement(end).getEndOffset() - 1;
+		try
+		{
+			char[] text = getText(startOffset,endOffset - startOffset).toCharArray();
+			tokenMarker.tokenizeInBackground(start,text,
+				new Runnable()
+				{
+					public void run()
+					{
+						fireTokensChanged();
+					}
+				});
+		}
+		catch(BadLocationException bl)
+		{
+			bl.printStackTrace();
+		}
+	}
+
+	/**
+	 * Adds a listener that is notified when lines have been tokenized
+	 * on a background thread.
+	 * @param listener The listener
+	 */
+	public void addTokensChangedListener(ChangeListener listener)
+	{
+		listenerList.add(ChangeListener.class,listener);
+	}
+
+	/**
+	 * Removes a listener added by <code>addTokensChangedListener</code>.
+	 * @param listener The listener
+	 */
+	public void removeTokensChangedListener(ChangeListener listener)
+	{
+		listenerList.remove(ChangeListener.class,listener);
+	}
+
 	/**
 	 * Starts a compound edit that can be undone in one operation.
 	 * Subclasses that implement undo should override this method;
@@ -130,14 +217,20 @@ public class SyntaxDocument extends PlainDocument
 	{
 		if(tokenMarker != null)
 		{
-			DocumentEvent.ElementChange ch = evt.getChange(
-				getDefaultRootElement());
+			Element map = getDefaultRootElement();
+			DocumentEvent.ElementChange ch = evt.getChange(map);
+			int added = 0;
 			if(ch != null)
 			{
-				tokenMarker.insertLines(ch.getIndex() + 1,
-					ch.getChildrenAdded().length -
-					ch.getChildrenRemoved().length);
+				added = ch.getChildrenAdded().length -
+					ch.getChildrenRemoved().length;
+				tokenMarker.insertLines(ch.getIndex() + 1,added);
 			}
+			int line = map.getElementIndex(evt.getOffset());
+			tokenMarker.invalidateLines(line,added + 1);
+			// Pasted text is tokenized ahead of scrolling to it
+			if(added > 0)
+				tokenizeLinesInBackground(line,added + 1);
 		}
 
 		super.fireInsertUpdate(evt);
@@ -160,8 +253,26 @@ public class SyntaxDocument extends PlainDocument
 					ch.getChildrenRemoved().length -
 					ch.getChildrenAdded().length);
 			}
+			tokenMarker.invalidateLines(getDefaultRootElement()
+				.getElementIndex(evt.getOffset()),1);
 		}
 
 		super.fireRemoveUpdate(evt);
 	}
+
+	// Tell listeners that background tokenizing has updated some lines
+	private void fireTokensChanged()
+	{
+		Object[] listeners = listenerList.getListenerList();
+		ChangeEvent evt = null;
+		for(int i = listeners.length - 2; i >= 0; i -= 2)
+		{
+			if(listeners[i] == ChangeListener.class)
+			{
+				if(evt == null)
+					evt = new ChangeEvent(this);
+				((ChangeListener)listeners[i + 1]).stateChanged(evt);
+			}
+		}
+	}
 }
@@ -32,6 +32,20 @@
          this.keywords = keywords;
       }
    
+   /**
+    *  String and character literals end with the line, so every line starts
+    *  in the Token.NULL state and lines can be tokenized in any order.
+    */
+       public boolean supportsMultilineTokens()
+      {
+         return false;
+      }
+   
+       protected TokenMarker createBackgroundMarker()
+      {
+         return new MIPSTokenMarker(keywords);
+      }
+   
        public static String[] getMIPSTokenLabels() 
       {
          if (tokenLabels == null) 
@@ -233,7 +247,7 @@
       {  
          ArrayList matches = null;
          if (token != null && token.id == Token.KEYWORD1) {
-            ArrayList instrMatches =  mars.Globals.instructionSet.matchOperator(tokenText);
+            List instrMatches =  mars.Globals.instructionSet.matchOperator(tokenText);
             if (instrMatches.size() > 0) {
                int realMatches = 0;
                matches = new ArrayList();
@@ -411,9 +425,9 @@
    	// do exact match.  If false, will do prefix match.   Text is returned as ArrayList
    	// of PopupHelpItem objects. If no matches, returns null.
        private ArrayList getTextFromInstructionMatch(String tokenText, boolean exact) {
-         String text = null;
-         ArrayList matches = null;
+         List matches = null;
          ArrayList results = new ArrayList();
+         boolean extended = mars.Globals.getSettings().getExtendedAssemblerEnabled();
          if (exact) {
             matches =  mars.Globals.instructionSet.matchOperator(tokenText);
          } 
@@ -423,62 +437,92 @@
          if (matches == null) {
             return null;
          }
+         if (!exact) {
+            String[][] table = getPrefixHelpTable(matches, extended);
+            if (table[0].length == 0) {
+               return null;
+            }
+            for (int i=0; i<table[0].length; i++) {
+               results.add(new PopupHelpItem(tokenText, table[0][i], table[1][i], exact));
+            }
+            return results;
+         }
          int realMatches = 0;
-         HashMap insts = new HashMap();
-         TreeSet mnemonics = new TreeSet();
          for (int i=0; i<matches.size(); i++) {
             Instruction inst = (Instruction) matches.get(i);
-            if (mars.Globals.getSettings().getExtendedAssemblerEnabled() || inst instanceof BasicInstruction) {
-               if (exact) {
-                  results.add(new PopupHelpItem(tokenText, inst.getExampleFormat(), inst.getDescription(), exact));
-               } 
-               else {
+            if (extended || inst instanceof BasicInstruction) {
+               results.add(new PopupHelpItem(tokenText, inst.getExampleFormat(), inst.getDescription(), exact));
+               realMatches++;
+            }
+         }
+         if (realMatches == 0) {
+            results.add(new PopupHelpItem(tokenText, tokenText, "(not a basic instruction)", exact));
+         } 
+         return results;
+      }
+   
+      // Return the distinct example mnemonics, sorted, of the instructions in a prefix
+   	// match list (element 0) with the description of the first instruction for each
+   	// (element 1).  Match lists are shared by InstructionSet, so the table is computed
+   	// only once per list, until the instruction set changes.
+       private static synchronized String[][] getPrefixHelpTable(List matches, boolean extended) {
+         int generation = mars.Globals.instructionSet.getGeneration();
+         if (generation != prefixHelpGeneration) {
+            prefixHelpTables[0].clear();
+            prefixHelpTables[1].clear();
+            prefixHelpGeneration = generation;
+         }
+         IdentityHashMap tables = prefixHelpTables[extended ? 1 : 0];
+         String[][] table = (String[][]) tables.get(matches);
+         if (table == null) {
+            HashMap insts = new HashMap();
+            TreeSet mnemonics = new TreeSet();
+            for (int i=0; i<matches.size(); i++) {
+               Instruction inst = (Instruction) matches.get(i);
+               if (extended || inst instanceof BasicInstruction) {
                   String mnemonic = inst.getExampleFormat().split(" ")[0];
                   if (!insts.containsKey(mnemonic)) {
                      mnemonics.add(mnemonic);
                      insts.put(mnemonic, inst.getDescription());
                   }
                }
-               realMatches++;
-            }
-         }
-         if (realMatches == 0) {
-            if (exact) {
-               results.add(new PopupHelpItem(tokenText, tokenText, "(not a basic instruction)", exact));
-            } 
-            else {
-               return null;
             }
-         } 
-         else {
-            if (!exact) {
-               Iterator mnemonicList = mnemonics.iterator();
-               while (mnemonicList.hasNext()) {
-                  String mnemonic = (String) mnemonicList.next();
-                  String info = (String) insts.get(mnemonic);
-                  results.add(new PopupHelpItem(tokenText, mnemonic, info, exact));
-               }   
+            table = new String[2][mnemonics.size()];
+            Iterator mnemonicList = mnemonics.iterator();
+            for (int i=0; mnemonicList.hasNext(); i++) {
+               table[0][i] = (String) mnemonicList.next();
+               table[1][i] = (String) insts.get(table[0][i]);
             }
+            tables.put(matches, table);
          }
-         return results;
+         return table;
       }
    
    
    /**
     *  Get KeywordMap containing all MIPS key words.  This includes all instruction mnemonics,
-    *  assembler directives, and register names.
+    *  assembler directives, and register names.  The map is built once and shared by all
+    *  MIPS token markers until the instruction set changes (i.e. another language is selected).
     *
     *  @return KeywordMap where key is the keyword and associated value is the token type (e.g. Token.KEYWORD1).
     */
    
    
-       public static KeywordMap getKeywords()
+       public static synchronized KeywordMap getKeywords()
       {
-         cKeywords = new KeywordMap(false);
-         // add Instruction mnemonics
+         int generation = mars.Globals.instructionSet.getGeneration();
+         if (cKeywords != null && generation == cKeywordsGeneration) {
+            return cKeywords;
+         }
+         KeywordMap cKeywords = new KeywordMap(false, KEYWORD_MAP_LENGTH);
+         // add Instruction mnemonics, once each although most have several formats
          java.util.ArrayList instructionSet = mars.Globals.instructionSet.getInstructionList();
+         HashSet mnemonics = new HashSet();
          for (int i=0; i< instructionSet.size(); i++) {
-            cKeywords.add( ((mars.mips.instructions.Instruction)instructionSet.get(i)).getName(), Token.KEYWORD1 );
+            String mnemonic = ((mars.mips.instructions.Instruction)instructionSet.get(i)).getName();
+            if (mnemonics.add(mnemonic)) {
+               cKeywords.add( mnemonic, Token.KEYWORD1 );
+            }
          }
          // add assembler directives
          java.util.ArrayList directiveSet = mars.assembler.Directives.getDirectiveList();
@@ -498,11 +542,17 @@
          }     
          // Note: Coprocessor 0 registers referenced only by number: $8, $12, $13, $14. These are already in the map
       
+         MIPSTokenMarker.cKeywords = cKeywords;
+         cKeywordsGeneration = generation;
          return cKeywords;
       }
    
    // private members
+      private static final int KEYWORD_MAP_LENGTH = 509;
       private static KeywordMap cKeywords;
+      private static int cKeywordsGeneration;
+      private static IdentityHashMap[] prefixHelpTables = { new IdentityHashMap(), new IdentityHashMap() };
+      private static int prefixHelpGeneration = -1;
       private static String[] tokenLabels, tokenExamples;
       private KeywordMap keywords;
       private int lastOffset;
@@ -9,6 +9,7 @@
 
    package mars.venus.editors.jeditsyntax.tokenmarker;
 
+   import javax.swing.SwingUtilities;
    import javax.swing.text.Segment;
    import java.util.*;
 
@@ -17,10 +18,13 @@
  * a length field and an indentification tag that can be mapped to a color
  * for painting that token.<p>
  *
- * For performance reasons, the linked list of tokens is reused after each
- * line is tokenized. Therefore, the return value of <code>markTokens</code>
- * should only be used for immediate painting. Notably, it cannot be
- * cached.
+ * The token list of each line is cached with the line, and is only built
+ * again once the line has been changed (see <code>invalidateLines</code>) or
+ * the token type it starts in is different.  The list returned by
+ * <code>markTokens</code> belongs to the cache and must not be modified.
+ * Lines can also be tokenized on a background thread ahead of painting (see
+ * <code>tokenizeInBackground</code>) if the token marker does not support
+ * multiline tokens.<p>
  *
  * @author Slava Pestov
  * @version $Id: TokenMarker.java,v 1.32 1999/12/13 03:40:30 sp Exp $
@@ -40,8 +44,6 @@
                + lineIndex);
          }
       
-         lastToken = null;
-      
          LineInfo info = lineInfo[lineIndex];
          LineInfo prev;
          if(lineIndex == 0)
@@ -50,8 +52,20 @@
             prev = lineInfo[lineIndex - 1];
       
          byte oldToken = info.token;
-         byte token = markTokensImpl(prev == null ?
-            Token.NULL : prev.token,line,lineIndex);
+         byte startToken = (prev == null) ? Token.NULL : prev.token;
+         byte token;
+         if(info.tokens != null && info.tokensVersion == info.version
+         && info.startToken == startToken) {
+            token = oldToken;
+         }
+         else {
+            lastToken = null;
+            token = markTokensImpl(startToken,line,lineIndex);
+            addToken(0,Token.END);
+            info.tokens = copyTokens();
+            info.tokensVersion = info.version;
+            info.startToken = startToken;
+         }
       
          info.token = token;
       
@@ -94,9 +108,7 @@
       
          lastLine = lineIndex;
       
-         addToken(0,Token.END);
-      
-         return firstToken;
+         return info.tokens;
       }
    
    /**
@@ -167,6 +179,95 @@
             index,lineInfo.length - len);
       }
    
+   /**
+    * Informs the token marker that the text of lines has changed.  Their
+    * cached tokens will not be used again.
+    * @param index The first line number
+    * @param lines The number of lines
+    */
+       public void invalidateLines(int index, int lines) {
+         int end = Math.min(index + lines, length);
+         for(int i = Math.max(index, 0); i < end; i++) {
+            lineInfo[i].version++;
+         }
+      }
+   
+   /**
+    * Tokenizes lines on a background thread, so that their tokens are cached by
+    * the time they are painted.  Tokenizing earlier lines first is not needed,
+    * so this does nothing if the token marker supports multiline tokens or
+    * does not implement <code>createBackgroundMarker</code>.  The results are
+    * stored on the event dispatch thread, but only for lines that have not been
+    * changed in the meantime; then <code>whenDone</code> is run there too.  A
+    * request still in progress is abandoned when another one is made.  This
+    * must be called on the event dispatch thread.
+    * @param index The first line number
+    * @param text The text of the lines, separated by '\n'
+    * @param whenDone Run after the results are stored, or null
+    */
+       public void tokenizeInBackground(int index, final char[] text, final Runnable whenDone) {
+         final int request = ++backgroundRequest;
+         final TokenMarker marker = (supportsMultilineTokens()) ? null : createBackgroundMarker();
+         if(marker == null || index < 0 || index >= length)
+            return;
+         int lines = 1;
+         for(int i = 0; i < text.length; i++) {
+            if(text[i] == '\n')
+               lines++;
+         }
+         lines = Math.min(lines, length - index);
+         final LineInfo[] infos = new LineInfo[lines];
+         final int[] versions = new int[lines];
+         System.arraycopy(lineInfo, index, infos, 0, lines);
+         for(int i = 0; i < lines; i++) {
+            versions[i] = infos[i].version;
+         }
+         Thread worker = 
+            new Thread() {
+                public void run() {
+                  final Token[] tokens = new Token[infos.length];
+                  final byte[] ends = new byte[infos.length];
+                  Segment line = new Segment(text, 0, 0);
+                  int start = 0;
+                  for(int i = 0; i < infos.length; i++) {
+                     if(request != backgroundRequest)
+                        return;
+                     int end = start;
+                     while(end < text.length && text[end] != '\n')
+                        end++;
+                     line.offset = start;
+                     line.count = end - start;
+                     marker.lastToken = null;
+                     ends[i] = marker.markTokensImpl(Token.NULL, line, -1);
+                     marker.addToken(0, Token.END);
+                     tokens[i] = marker.copyTokens();
+                     start = end + 1;
+                  }
+                  SwingUtilities.invokeLater(
+                        new Runnable() {
+                           public void run() {
+                              if(request != backgroundRequest)
+                                 return;
+                              for(int i = 0; i < infos.length; i++) {
+                                 LineInfo info = infos[i];
+                                 if(info.version == versions[i]) {
+                                    info.tokens = tokens[i];
+                                    info.tokensVersion = versions[i];
+                                    info.startToken = Token.NULL;
+                                    info.token = ends[i];
+                                 }
+                              }
+                              if(whenDone != null)
+                                 whenDone.run();
+                           }
+                        });
+               }
+            };
+         worker.setDaemon(true);
+         worker.setPriority(Thread.MIN_PRIORITY);
+         worker.start();
+      }
+   
    /**
     * Returns the number of lines in this token marker.
     */
@@ -210,6 +311,17 @@
          return null;
       }
    
+ /**
+    * Creates a token marker with the same settings as this one, which is used
+    * to tokenize lines on a background thread.  It will only be called upon to
+    * tokenize lines that start in the <code>Token.NULL</code> state, and the
+    * line index it is given is -1.  The default returns null: no background
+    * tokenizing.
+    */
+       protected TokenMarker createBackgroundMarker() {
+         return null;
+      }
+   
    // protected members
    
    /**
@@ -310,6 +422,20 @@
          }
       }
    
+   // Copy of the token list just built, which is reused for the next line.
+       private Token copyTokens() {
+         Token copy = new Token(firstToken.length, firstToken.id);
+         Token last = copy;
+         for(Token t = firstToken; t.id != Token.END; t = t.next) {
+            last.next = new Token(t.next.length, t.next.id);
+            last = last.next;
+         }
+         return copy;
+      }
+   
+   // Identifies the latest tokenizeInBackground request; earlier ones give up.
+      private volatile int backgroundRequest;
+   
    /**
     * Inner class for storing information about tokenized lines.
     */
@@ -342,5 +468,16 @@
        * basis.
        */
          public Object obj;
+      
+      /**
+       * Incremented each time the text of the line changes.
+       */
+         public int version;
+      
+      // Cached tokens of the line, valid if tokensVersion is version and the
+      // line still starts with startToken.
+         Token tokens;
+         int tokensVersion;
+         byte startToken;
       }
    }